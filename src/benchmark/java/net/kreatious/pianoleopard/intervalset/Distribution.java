@@ -0,0 +1,69 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import java.util.Random;
+
+/**
+ * Distributions of intervals used by the benchmarks.
+ *
+ * @author Jay-R Studer
+ */
+public enum Distribution {
+    /**
+     * Intervals of up to 10000 ticks starting uniformly at random
+     */
+    UNIFORM {
+        @Override
+        void generate(long[] lows, long[] highs, Random random) {
+            final long domain = 100L * lows.length;
+            for (int i = 0; i != lows.length; i++) {
+                lows[i] = (long) (random.nextDouble() * domain);
+                highs[i] = lows[i] + random.nextInt(10000);
+            }
+        }
+    },
+
+    /**
+     * Short overlapping notes played in sequence, a third of which start
+     * together with the previous note as a chord
+     */
+    NOTES {
+        @Override
+        void generate(long[] lows, long[] highs, Random random) {
+            long time = 0;
+            for (int i = 0; i != lows.length; i++) {
+                if (random.nextInt(3) != 0) {
+                    time += random.nextInt(200);
+                }
+                lows[i] = time;
+                highs[i] = time + 50 + random.nextInt(950);
+            }
+        }
+    },
+
+    /**
+     * Long pedal presses that rarely overlap each other
+     */
+    PEDALS {
+        @Override
+        void generate(long[] lows, long[] highs, Random random) {
+            long time = 0;
+            for (int i = 0; i != lows.length; i++) {
+                time += 2000 + random.nextInt(18000);
+                lows[i] = time;
+                highs[i] = time + 1000 + random.nextInt(29000);
+            }
+        }
+    };
+
+    /**
+     * Fills the specified arrays with intervals from this distribution.
+     *
+     * @param lows
+     *            the array to fill with the low end of each interval
+     * @param highs
+     *            the array to fill with the high end of each interval
+     * @param random
+     *            the source of randomness
+     */
+    abstract void generate(long[] lows, long[] highs, Random random);
+}
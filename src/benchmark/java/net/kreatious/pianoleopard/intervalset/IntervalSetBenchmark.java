@@ -0,0 +1,295 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the throughput of {@link IntervalSet} against a naive sorted array
+ * of intervals. Run with {@code -prof gc} to report the bytes allocated per
+ * operation.
+ * <p>
+ * The tree and the sorted array are held by separate states, so each
+ * benchmark only fills the collection it measures.
+ *
+ * @author Jay-R Studer
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class IntervalSetBenchmark {
+    private static final int QUERIES = 1024;
+    private static final long QUERY_WIDTH = 5000;
+    private static final long WINDOW_STEP = QUERY_WIDTH / 16;
+
+    /**
+     * Holds the generated intervals, and the queries and insertions to
+     * perform.
+     */
+    @State(Scope.Benchmark)
+    public static class Intervals {
+        /**
+         * The number of intervals in each set
+         */
+        @Param({ "1000", "10000", "100000", "1000000", "10000000" })
+        public int size;
+
+        /**
+         * The distribution of intervals in each set
+         */
+        @Param
+        public Distribution distribution;
+
+        private long[] lows;
+        private long[] highs;
+        private final long[] queryLows = new long[QUERIES];
+        private final long[] extraLows = new long[QUERIES];
+        private final long[] extraHighs = new long[QUERIES];
+        private final Integer[] extraValues = new Integer[QUERIES];
+        private long maximum;
+        private int next;
+        private Consumer<Integer> consumer;
+
+        /**
+         * Generates intervals from the distribution, and chooses the queries
+         * and insertions to perform.
+         *
+         * @param blackhole
+         *            consumes the values visited by the benchmarks
+         */
+        @Setup
+        public void setUp(Blackhole blackhole) {
+            consumer = blackhole::consume;
+
+            final Random random = new Random(311);
+            lows = new long[size];
+            highs = new long[size];
+            distribution.generate(lows, highs, random);
+
+            maximum = 0;
+            for (int i = 0; i != size; i++) {
+                maximum = Math.max(maximum, highs[i]);
+            }
+
+            for (int i = 0; i != QUERIES; i++) {
+                queryLows[i] = (long) (random.nextDouble() * maximum);
+                final int index = random.nextInt(size);
+                extraLows[i] = lows[index];
+                extraHighs[i] = highs[index];
+                extraValues[i] = size + i;
+            }
+        }
+
+        private int nextIndex() {
+            next = (next + 1) % QUERIES;
+            return next;
+        }
+    }
+
+    /**
+     * Holds a tree filled with the generated intervals.
+     */
+    @State(Scope.Benchmark)
+    public static class Tree {
+        private final IntervalSet<Integer> set = new IntervalSet<>();
+        private final WindowCursor<Integer> window = set.windowCursor();
+        private final WindowCursor<Integer> requeryingWindow = WindowCursor.requerying(set.cursor());
+        private long windowLow;
+
+        /**
+         * Inserts the generated intervals into the tree.
+         *
+         * @param intervals
+         *            the generated intervals
+         */
+        @Setup
+        public void setUp(Intervals intervals) {
+            for (int i = 0; i != intervals.size; i++) {
+                set.put(intervals.lows[i], intervals.highs[i], i);
+            }
+        }
+    }
+
+    /**
+     * Holds a sorted array filled with the generated intervals.
+     */
+    @State(Scope.Benchmark)
+    public static class Baseline {
+        private SortedArrayIntervals<Integer> baseline;
+
+        /**
+         * Sorts the generated intervals into the array.
+         *
+         * @param intervals
+         *            the generated intervals
+         */
+        @Setup
+        public void setUp(Intervals intervals) {
+            final Integer[] values = new Integer[intervals.size];
+            for (int i = 0; i != values.length; i++) {
+                values[i] = i;
+            }
+            baseline = new SortedArrayIntervals<>(intervals.lows, intervals.highs, values);
+        }
+    }
+
+    /**
+     * Inserts and then removes an interval from a tree.
+     *
+     * @param intervals
+     *            the interval to insert
+     * @param tree
+     *            the tree to modify
+     * @return whether the interval was removed
+     */
+    @Benchmark
+    public boolean putAndRemove(Intervals intervals, Tree tree) {
+        final int index = intervals.nextIndex();
+        final Integer value = intervals.extraValues[index];
+        tree.set.put(intervals.extraLows[index], intervals.extraHighs[index], value);
+        return tree.set.removeFirst(intervals.extraLows[index], intervals.extraHighs[index], value::equals)
+                .isPresent();
+    }
+
+    /**
+     * Inserts and then removes an interval from a sorted array.
+     *
+     * @param intervals
+     *            the interval to insert
+     * @param baseline
+     *            the sorted array to modify
+     * @return whether the interval was removed
+     */
+    @Benchmark
+    public boolean baselinePutAndRemove(Intervals intervals, Baseline baseline) {
+        final int index = intervals.nextIndex();
+        final Integer value = intervals.extraValues[index];
+        baseline.baseline.put(intervals.extraLows[index], intervals.extraHighs[index], value);
+        return baseline.baseline.remove(intervals.extraLows[index], intervals.extraHighs[index], value);
+    }
+
+    /**
+     * Iterates over the values of a tree overlapping a range.
+     *
+     * @param intervals
+     *            the range to query
+     * @param tree
+     *            the tree to query
+     * @param blackhole
+     *            consumes the visited values
+     */
+    @Benchmark
+    public void subSet(Intervals intervals, Tree tree, Blackhole blackhole) {
+        final long low = intervals.queryLows[intervals.nextIndex()];
+        for (final Integer value : tree.set.subSet(low, low + QUERY_WIDTH)) {
+            blackhole.consume(value);
+        }
+    }
+
+    /**
+     * Visits the values of a tree overlapping a range without allocating.
+     *
+     * @param intervals
+     *            the range to query
+     * @param tree
+     *            the tree to query
+     */
+    @Benchmark
+    public void forEachInRange(Intervals intervals, Tree tree) {
+        final long low = intervals.queryLows[intervals.nextIndex()];
+        tree.set.forEachInRange(low, low + QUERY_WIDTH, intervals.consumer);
+    }
+
+    /**
+     * Visits the values of a sorted array overlapping a range.
+     *
+     * @param intervals
+     *            the range to query
+     * @param baseline
+     *            the sorted array to query
+     */
+    @Benchmark
+    public void baselineSubSet(Intervals intervals, Baseline baseline) {
+        final long low = intervals.queryLows[intervals.nextIndex()];
+        baseline.baseline.forEachInRange(low, low + QUERY_WIDTH, intervals.consumer);
+    }
+
+    /**
+     * Slides a window forwards across a tree, as a consumer following
+     * playback would, returning to the start once it passes the end.
+     *
+     * @param intervals
+     *            provides the extent of the intervals
+     * @param tree
+     *            the tree and window to move
+     * @return the number of values in the window
+     */
+    @Benchmark
+    public int slideWindow(Intervals intervals, Tree tree) {
+        return slide(intervals, tree, tree.window);
+    }
+
+    /**
+     * Slides a window that requeries the tree on every move, for comparison
+     * with {@link #slideWindow}.
+     *
+     * @param intervals
+     *            provides the extent of the intervals
+     * @param tree
+     *            the tree and window to move
+     * @return the number of values in the window
+     */
+    @Benchmark
+    public int slideRequeryingWindow(Intervals intervals, Tree tree) {
+        return slide(intervals, tree, tree.requeryingWindow);
+    }
+
+    private static int slide(Intervals intervals, Tree tree, WindowCursor<Integer> window) {
+        tree.windowLow = tree.windowLow > intervals.maximum ? 0 : tree.windowLow + WINDOW_STEP;
+        window.moveTo(tree.windowLow, tree.windowLow + QUERY_WIDTH);
+        return window.size();
+    }
+
+    /**
+     * Iterates over every value of a tree.
+     *
+     * @param tree
+     *            the tree to iterate over
+     * @param blackhole
+     *            consumes the visited values
+     */
+    @Benchmark
+    public void iterate(Tree tree, Blackhole blackhole) {
+        for (final Integer value : tree.set) {
+            blackhole.consume(value);
+        }
+    }
+
+    /**
+     * Visits every value of a sorted array.
+     *
+     * @param intervals
+     *            provides the consumer of the visited values
+     * @param baseline
+     *            the sorted array to visit
+     */
+    @Benchmark
+    public void baselineIterate(Intervals intervals, Baseline baseline) {
+        baseline.baseline.forEach(intervals.consumer);
+    }
+}
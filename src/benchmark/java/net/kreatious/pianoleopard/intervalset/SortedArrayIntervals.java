@@ -0,0 +1,112 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A naive interval collection used as the baseline for the benchmarks.
+ * <p>
+ * Intervals are kept in parallel arrays sorted by their keys. Insertions and
+ * removals shift the arrays, and range queries scan every interval starting
+ * before the end of the range.
+ *
+ * @author Jay-R Studer
+ */
+class SortedArrayIntervals<V> {
+    private long[] lows;
+    private long[] highs;
+    private Object[] values;
+    private int size;
+
+    /**
+     * Sorts the specified intervals once, instead of inserting them one at a
+     * time in O(n^2) time. Intervals with equal keys keep their order, as if
+     * they had been inserted in order.
+     *
+     * @param lows
+     *            the low end of each interval
+     * @param highs
+     *            the high end of each interval
+     * @param values
+     *            the value of each interval
+     */
+    SortedArrayIntervals(long[] lows, long[] highs, V[] values) {
+        final Integer[] order = new Integer[lows.length];
+        Arrays.setAll(order, Integer::valueOf);
+        Arrays.sort(order, (first, second) -> Interval.compare(lows[first], highs[first], lows[second],
+                highs[second]));
+
+        size = lows.length;
+        this.lows = new long[Math.max(size, 16)];
+        this.highs = new long[this.lows.length];
+        this.values = new Object[this.lows.length];
+        for (int i = 0; i != size; i++) {
+            this.lows[i] = lows[order[i]];
+            this.highs[i] = highs[order[i]];
+            this.values[i] = values[order[i]];
+        }
+    }
+
+    void put(long low, long high, V value) {
+        if (size == lows.length) {
+            lows = Arrays.copyOf(lows, 2 * size);
+            highs = Arrays.copyOf(highs, 2 * size);
+            values = Arrays.copyOf(values, 2 * size);
+        }
+
+        final int index = upperBound(low, high);
+        System.arraycopy(lows, index, lows, index + 1, size - index);
+        System.arraycopy(highs, index, highs, index + 1, size - index);
+        System.arraycopy(values, index, values, index + 1, size - index);
+        lows[index] = low;
+        highs[index] = high;
+        values[index] = value;
+        size++;
+    }
+
+    boolean remove(long low, long high, V value) {
+        for (int i = upperBound(low, high) - 1; i >= 0 && lows[i] == low && highs[i] == high; i--) {
+            if (values[i].equals(value)) {
+                System.arraycopy(lows, i + 1, lows, i, size - i - 1);
+                System.arraycopy(highs, i + 1, highs, i, size - i - 1);
+                System.arraycopy(values, i + 1, values, i, size - i - 1);
+                values[--size] = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the index of the first interval greater than the specified key
+     */
+    private int upperBound(long low, long high) {
+        int from = 0;
+        int to = size;
+        while (from < to) {
+            final int middle = (from + to) >>> 1;
+            if (Interval.compare(lows[middle], highs[middle], low, high) <= 0) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEachInRange(long low, long high, Consumer<? super V> action) {
+        for (int i = 0; i != size && lows[i] <= high; i++) {
+            if (highs[i] >= low) {
+                action.accept((V) values[i]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(Consumer<? super V> action) {
+        for (int i = 0; i != size; i++) {
+            action.accept((V) values[i]);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiUnavailableException;
+
+import net.kreatious.pianoleopard.midi.OutputModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Acceptance benchmarks for opening "black MIDI" files, generated by
+ * {@link MidiFileGenerator} with 1, 5 and 10 million notes. The benchmarks run
+ * with a 1 GB heap, so a file that cannot be opened within that budget fails
+ * with an {@link OutOfMemoryError}.
+ * <p>
+ * Files are opened through {@link OutputModel#openMidiFile(File)}, the same
+ * path the application takes, so the measurements include preparing the file
+ * for playback.
+ *
+ * @author Jay-R Studer
+ */
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class DenseSequenceBenchmark {
+    private static final int TRACKS = 16;
+    private static final long WINDOW = TimeUnit.SECONDS.toMicros(5);
+
+    /**
+     * Holds a generated MIDI file.
+     */
+    @State(Scope.Benchmark)
+    public static class Generated {
+        /**
+         * The number of notes in the generated file
+         */
+        @Param({ "1000000", "5000000", "10000000" })
+        public int notes;
+
+        private File file;
+
+        /**
+         * Generates the MIDI file.
+         *
+         * @throws IOException
+         *             if the file cannot be written
+         */
+        @Setup
+        public void setUp() throws IOException {
+            file = File.createTempFile("dense", ".mid");
+            MidiFileGenerator.write(file.toPath(), TRACKS, notes, 311);
+        }
+
+        /**
+         * Deletes the MIDI file.
+         *
+         * @throws IOException
+         *             if the file cannot be deleted
+         */
+        @TearDown
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    /**
+     * Holds an output model that opens the generated file.
+     */
+    @State(Scope.Benchmark)
+    public static class Opened {
+        private OutputModel model;
+        private ParsedSequence sequence;
+
+        /**
+         * Creates an output model that is not connected to any MIDI device.
+         *
+         * @throws MidiUnavailableException
+         *             if the MIDI system is unavailable
+         */
+        @Setup(Level.Iteration)
+        public void setUp() throws MidiUnavailableException {
+            model = new OutputModel();
+            model.addOpenListener(opened -> sequence = opened);
+        }
+
+        /**
+         * Closes the output model, releasing the opened sequence.
+         *
+         * @throws InterruptedException
+         *             if the current thread is interrupted
+         * @throws IOException
+         *             if the output model cannot be closed
+         */
+        @TearDown(Level.Iteration)
+        public void tearDown() throws InterruptedException, IOException {
+            model.close();
+            sequence = null;
+        }
+    }
+
+    /**
+     * Holds a completely indexed sequence parsed from a generated file.
+     */
+    @State(Scope.Benchmark)
+    public static class Parsed {
+        private ParsedSequence sequence;
+        private long duration;
+        private long time;
+
+        /**
+         * Parses the generated file and waits for it to be indexed.
+         *
+         * @param generated
+         *            the generated file to parse
+         * @throws IOException
+         *             if the file cannot be read
+         * @throws InvalidMidiDataException
+         *             if the generated file is invalid
+         */
+        @Setup
+        public void setUp(Generated generated) throws IOException, InvalidMidiDataException {
+            sequence = ParsedSequence.parse(generated.file);
+            sequence.whenIndexed().join();
+            duration = sequence.getStatistics().getDuration();
+        }
+
+        /**
+         * Advances the visible window by one frame at 60 frames per second.
+         */
+        @Setup(Level.Invocation)
+        public void advance() {
+            time = (time + TimeUnit.SECONDS.toMicros(1) / 60) % duration;
+        }
+    }
+
+    /**
+     * Measures the time until a file can be painted and played, while the
+     * rest of its tracks are indexed in the background.
+     *
+     * @param generated
+     *            the generated file to open
+     * @param opened
+     *            the output model to open the file with
+     * @return the opened sequence
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ParsedSequence open(Generated generated, Opened opened) throws IOException {
+        opened.model.openMidiFile(generated.file);
+        return opened.sequence;
+    }
+
+    /**
+     * Measures the time until every track of a file is completely indexed.
+     *
+     * @param generated
+     *            the generated file to open
+     * @param opened
+     *            the output model to open the file with
+     * @return the opened sequence
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ParsedSequence openAndIndex(Generated generated, Opened opened) throws IOException {
+        opened.model.openMidiFile(generated.file);
+        opened.sequence.whenIndexed().join();
+        return opened.sequence;
+    }
+
+    /**
+     * Measures visiting the notes of every track within a window the size of
+     * the visible screen, as done when painting a frame.
+     *
+     * @param parsed
+     *            the sequence to query
+     * @param blackhole
+     *            consumes the visited notes
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void visibleWindow(Parsed parsed, Blackhole blackhole) {
+        for (final ParsedTrack track : parsed.sequence.getTracks()) {
+            track.forEachNote(parsed.time, parsed.time + WINDOW,
+                    (onTime, offTime, key, velocity, channel) -> blackhole.consume(key));
+        }
+    }
+
+    /**
+     * Measures counting the notes of every track within a window the size of
+     * the visible screen, which does not depend on the number of notes in the
+     * window.
+     *
+     * @param parsed
+     *            the sequence to query
+     * @return the number of visible notes
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public long countVisible(Parsed parsed) {
+        long result = 0;
+        for (final ParsedTrack track : parsed.sequence.getTracks()) {
+            result += track.countNotePairs(parsed.time, parsed.time + WINDOW);
+        }
+        return result;
+    }
+}
@@ -1,10 +1,9 @@
 package net.kreatious.pianoleopard;
 
-import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 import net.kreatious.pianoleopard.midi.InputModel;
-import net.kreatious.pianoleopard.midi.event.Event;
-import net.kreatious.pianoleopard.midi.event.NoteEvent;
+import net.kreatious.pianoleopard.midi.event.PackedEvent;
 
 import com.sun.jna.Native;
 import com.sun.jna.Platform;
@@ -31,11 +30,11 @@ class AntiIdle {
 
             // Try calling the function to see if it can be linked
             final Kernel32 kernel32 = (Kernel32) Native.loadLibrary("kernel32", Kernel32.class);
-            final Consumer<Event> listener = event -> kernel32.SetThreadExecutionState(ES_SYSTEM_REQUIRED
+            final LongConsumer listener = event -> kernel32.SetThreadExecutionState(ES_SYSTEM_REQUIRED
                     | ES_DISPLAY_REQUIRED);
-            listener.accept(new NoteEvent(0, true, 0));
+            listener.accept(PackedEvent.encodeNote(0, 0, 127, true, 0));
 
-            inputModel.addInputListener(listener);
+            inputModel.addPackedInputListener(listener);
         } catch (final UnsatisfiedLinkError e) {
             // Windows API is not supported on the current platform.
             e.printStackTrace();
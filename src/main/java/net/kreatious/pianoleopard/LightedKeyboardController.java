@@ -2,19 +2,23 @@ package net.kreatious.pianoleopard;
 
 import static net.kreatious.pianoleopard.keyboardselect.LightedKeyboardSelector.NAV_CHANNEL_PREFERENCE;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.prefs.Preferences;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.ShortMessage;
 
 import net.kreatious.pianoleopard.Keys.KeyIterator;
+import net.kreatious.pianoleopard.intervalset.WindowCursor;
 import net.kreatious.pianoleopard.midi.InputModel;
 import net.kreatious.pianoleopard.midi.OutputModel;
 import net.kreatious.pianoleopard.midi.OutputModel.EventAction;
-import net.kreatious.pianoleopard.midi.event.Event;
 import net.kreatious.pianoleopard.midi.event.EventPair;
 import net.kreatious.pianoleopard.midi.event.NoteEvent;
+import net.kreatious.pianoleopard.midi.event.PackedEvent;
 import net.kreatious.pianoleopard.midi.track.ParsedSequence;
 import net.kreatious.pianoleopard.midi.track.ParsedTrack;
 
@@ -33,9 +37,12 @@ class LightedKeyboardController {
     private final OutputModel outputModel;
     private final Keys litKeys = new Keys();
     private final Keys keysToLight = new Keys();
+    private final Consumer<EventPair<NoteEvent>> keyLighter = this::lightKey;
 
     private volatile ParsedSequence sequence = ParsedSequence.createEmpty();
+    private volatile Map<ParsedTrack, WindowCursor<EventPair<NoteEvent>>> windows = new IdentityHashMap<>();
     private int navChannel;
+    private long timePlusOffset;
 
     private LightedKeyboardController(OutputModel outputModel) {
         this.outputModel = outputModel;
@@ -60,7 +67,7 @@ class LightedKeyboardController {
         result.navChannel = preferences.getInt(NAV_CHANNEL_PREFERENCE, 3);
         outputModel.addCurrentTimeListener(result::setCurrentTime);
         outputModel.addOpenListener(result::setCurrentSequence);
-        inputModel.addInputListener(result::onUserEvent);
+        inputModel.addPackedInputListener(result::onUserEvent);
 
         // Remap output channels if there's a conflict with navigation channel
         outputModel.addEventHandler((message, event) -> {
@@ -79,17 +86,17 @@ class LightedKeyboardController {
         return result;
     }
 
-    private void onUserEvent(Event event) {
+    private void onUserEvent(long event) {
         try {
-            if (event instanceof NoteEvent == false) {
+            if (!PackedEvent.isNote(event)) {
                 return;
             }
 
-            final int key = ((NoteEvent) event).getKey();
-            if (event.isOn() && !litKeys.contains(key)) {
+            final int key = PackedEvent.getKey(event);
+            if (PackedEvent.isOn(event) && !litKeys.contains(key)) {
                 // User pressed an unlit key
                 outputModel.sendMessage(new ShortMessage(ShortMessage.NOTE_OFF, navChannel, key, 127));
-            } else if (!event.isOn() && litKeys.contains(key)) {
+            } else if (!PackedEvent.isOn(event) && litKeys.contains(key)) {
                 // User released a lit key
                 outputModel.sendMessage(new ShortMessage(ShortMessage.NOTE_ON, navChannel, key, 1));
             }
@@ -101,6 +108,12 @@ class LightedKeyboardController {
 
     private void setCurrentSequence(ParsedSequence sequence) {
         try {
+            // Every track gets a window, as tracks may be activated later
+            final Map<ParsedTrack, WindowCursor<EventPair<NoteEvent>>> newWindows = new IdentityHashMap<>();
+            for (final ParsedTrack track : sequence.getTracks()) {
+                newWindows.put(track, track.createNoteWindow());
+            }
+            windows = newWindows;
             this.sequence = sequence;
             for (int key = 0; key != 128; key++) {
                 if (litKeys.contains(key)) {
@@ -124,22 +137,30 @@ class LightedKeyboardController {
     }
 
     private void updateKeysToLight(long time) {
-        final long timePlusOffset = time + OFFSET;
+        timePlusOffset = time + OFFSET;
+        final Map<ParsedTrack, WindowCursor<EventPair<NoteEvent>>> currentWindows = windows;
         for (final ParsedTrack track : sequence.getActiveTracks()) {
-            for (final EventPair<NoteEvent> note : track.getNotePairs(timePlusOffset - NOTE_GAP, timePlusOffset)) {
-                if (note.getDuration() <= TimeUnit.MILLISECONDS.toMicros(10)) {
-                    // Note too short
-                    continue;
-                } else if (timePlusOffset >= note.getOffTime() - NOTE_GAP) {
-                    // Force a gap between notes
-                    continue;
-                }
-
-                keysToLight.add(note.getOff().getKey());
+            final WindowCursor<EventPair<NoteEvent>> window = currentWindows.get(track);
+            if (window != null) {
+                // Windows of inactive tracks fall behind, and reposition once activated
+                window.moveTo(timePlusOffset - NOTE_GAP, timePlusOffset);
+                window.forEach(keyLighter);
             }
         }
     }
 
+    private void lightKey(EventPair<NoteEvent> note) {
+        if (note.getOffTime() - note.getOnTime() <= TimeUnit.MILLISECONDS.toMicros(10)) {
+            // Note too short
+            return;
+        } else if (timePlusOffset >= note.getOffTime() - NOTE_GAP) {
+            // Force a gap between notes
+            return;
+        }
+
+        keysToLight.add(note.getOn().getKey());
+    }
+
     private void updateLitKeys() throws InvalidMidiDataException {
         final KeyIterator litKeysIt = litKeys.iterator();
         while (litKeysIt.hasNext()) {
@@ -6,6 +6,7 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.prefs.Preferences;
 
 import javax.swing.JFrame;
@@ -18,7 +19,7 @@ import net.kreatious.pianoleopard.history.History;
 import net.kreatious.pianoleopard.keyboardselect.SelectKeyboardDialog;
 import net.kreatious.pianoleopard.midi.InputModel;
 import net.kreatious.pianoleopard.midi.OutputModel;
-import net.kreatious.pianoleopard.midi.SystemSequencerFactory;
+import net.kreatious.pianoleopard.midi.track.SequenceCache;
 import net.kreatious.pianoleopard.painter.PainterPanel;
 
 import com.jgoodies.forms.factories.FormFactory;
@@ -42,7 +43,10 @@ public class Main {
         try {
             UIManager.setLookAndFeel(new NimbusLookAndFeel());
 
-            final OutputModel outputModel = new OutputModel(new SystemSequencerFactory());
+            final OutputModel outputModel = new OutputModel();
+            final SequenceCache cache = new SequenceCache(Paths.get("cache"));
+            cache.clean();
+            outputModel.setSequenceCache(cache);
             final InputModel inputModel = InputModel.create(outputModel);
             final JFrame applet = create(outputModel, inputModel);
             applet.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -2,15 +2,14 @@ package net.kreatious.pianoleopard;
 
 import java.awt.Component;
 import java.awt.event.ItemEvent;
-import java.util.Optional;
-import java.util.function.BiFunction;
 
 import javax.sound.midi.MidiMessage;
 import javax.swing.JToggleButton;
 
 import net.kreatious.pianoleopard.midi.OutputModel;
 import net.kreatious.pianoleopard.midi.OutputModel.EventAction;
-import net.kreatious.pianoleopard.midi.event.Event;
+import net.kreatious.pianoleopard.midi.OutputModel.EventHandler;
+import net.kreatious.pianoleopard.midi.event.PackedEvent;
 
 /**
  * Provides the controller for the play along action.
@@ -39,12 +38,12 @@ class PlayAlongController {
         return button;
     }
 
-    private static class PlayAlongEventHandler implements BiFunction<MidiMessage, Optional<Event>, EventAction> {
+    private static class PlayAlongEventHandler implements EventHandler {
         boolean playAlong;
 
         @Override
-        public EventAction apply(MidiMessage message, Optional<Event> event) {
-            if (!event.isPresent()) {
+        public EventAction apply(MidiMessage message, long event) {
+            if (event == PackedEvent.NONE) {
                 return EventAction.UNHANDLED;
             } else if (playAlong) {
                 return EventAction.PLAY;
@@ -4,9 +4,8 @@ import java.awt.Component;
 import java.awt.FlowLayout;
 import java.awt.Insets;
 import java.awt.event.ItemEvent;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -14,14 +13,16 @@ import javax.sound.midi.MidiMessage;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JToggleButton;
+import javax.swing.SwingUtilities;
 
 import net.kreatious.pianoleopard.midi.OutputModel;
 import net.kreatious.pianoleopard.midi.OutputModel.EventAction;
+import net.kreatious.pianoleopard.midi.OutputModel.EventHandler;
 import net.kreatious.pianoleopard.midi.event.Event;
 import net.kreatious.pianoleopard.midi.event.EventPair;
-import net.kreatious.pianoleopard.midi.event.NoteEvent;
-import net.kreatious.pianoleopard.midi.event.PedalEvent;
+import net.kreatious.pianoleopard.midi.event.PackedEvent;
 import net.kreatious.pianoleopard.midi.event.Slot;
+import net.kreatious.pianoleopard.midi.track.NoteVisitor;
 import net.kreatious.pianoleopard.midi.track.ParsedSequence;
 import net.kreatious.pianoleopard.midi.track.ParsedTrack;
 
@@ -45,14 +46,17 @@ class PracticeTrackController {
     }
 
     /**
-     * Reconstructs the panel's buttons when a new song is opened.
+     * Reconstructs the panel's buttons when a new song is opened, and again
+     * once its tracks are completely indexed, since tracks may only contain
+     * notes after the indexed prefix.
      *
      * @author Jay-R Studer
      */
     private static final class OpenListener implements Consumer<ParsedSequence> {
         private final JPanel panel;
-        private static final Predicate<ParsedTrack> CONTAINS_NOTES = track -> track.getNotePairs(0, Long.MAX_VALUE)
-                .iterator().hasNext();
+        private volatile ParsedSequence current;
+        private static final Predicate<ParsedTrack> CONTAINS_NOTES = track -> track.getStatistics()
+                .getNoteCount() != 0;
 
         private OpenListener(JPanel panel) {
             this.panel = panel;
@@ -60,16 +64,33 @@ class PracticeTrackController {
 
         @Override
         public void accept(ParsedSequence sequence) {
+            current = sequence;
+            createButtons(sequence);
+
+            final CompletableFuture<?> indexed = sequence.whenIndexed();
+            if (!indexed.isDone()) {
+                indexed.thenRun(() -> SwingUtilities.invokeLater(() -> {
+                    if (current == sequence) {
+                        createButtons(sequence);
+                    }
+                }));
+            }
+        }
+
+        private void createButtons(ParsedSequence sequence) {
             panel.removeAll();
             panel.add(new JLabel("Tracks:"));
             sequence.getTracks().stream().filter(CONTAINS_NOTES)
                     .forEach(track -> panel.add(createButton(sequence, track)));
             panel.revalidate();
+            panel.repaint();
         }
 
         private static Component createButton(ParsedSequence sequence, ParsedTrack track) {
             final JToggleButton button = new JToggleButton();
             button.setMargin(new Insets(8, 8, 8, 8));
+            button.setToolTipText(track.getStatistics().getNoteCount() + " notes, up to "
+                    + track.getStatistics().getMaxPolyphony() + " at once");
             button.addItemListener(e -> sequence.setTrackActive(track, e.getStateChange() == ItemEvent.SELECTED));
             button.setSelected(sequence.getActiveTracks().contains(track));
             button.addMouseListener(new ToggleListener(toggle -> sequence.setTrackActive(track, button.isSelected()
@@ -78,10 +99,17 @@ class PracticeTrackController {
         }
     }
 
-    private static final class PracticeTrackEventHandler implements
-            BiFunction<MidiMessage, Optional<Event>, EventAction> {
+    private static final class PracticeTrackEventHandler implements EventHandler {
         private static final long TOLERANCE = TimeUnit.SECONDS.toMicros(2);
         private ParsedSequence sequence = ParsedSequence.createEmpty();
+        private final Consumer<EventPair<? extends Event>> slotMatcher = this::matchSlot;
+        private final NoteVisitor noteMatcher = this::matchNote;
+
+        // Only accessed by the player thread during a call to apply
+        private Slot searchSlot;
+        private int searchChannel;
+        private int searchKey;
+        private boolean slotFound;
 
         static void create(OutputModel outputModel) {
             final PracticeTrackEventHandler eventHandler = new PracticeTrackEventHandler();
@@ -94,34 +122,39 @@ class PracticeTrackController {
          * inactive tracks at the current time.
          */
         @Override
-        public EventAction apply(MidiMessage message, Optional<Event> optionalEvent) {
-            if (!optionalEvent.isPresent()) {
+        public EventAction apply(MidiMessage message, long event) {
+            if (event == PackedEvent.NONE) {
                 return EventAction.UNHANDLED;
-            }
-
-            final Event event = optionalEvent.get();
-            if (!event.isOn()) {
+            } else if (!PackedEvent.isOn(event)) {
                 // Never mute a note off event
                 return EventAction.PLAY;
             }
 
+            final long time = PackedEvent.getTime(event);
+            searchSlot = PackedEvent.getSlot(event);
+            searchChannel = PackedEvent.getChannel(event);
+            searchKey = PackedEvent.isNote(event) ? PackedEvent.getKey(event) : -1;
+            slotFound = false;
             for (final ParsedTrack track : sequence.getInactiveTracks()) {
-                final Iterable<? extends EventPair<? extends Event>> pairs;
-                if (event instanceof NoteEvent) {
-                    pairs = track.getNotePairs(event.getTime(), event.getTime() + TOLERANCE);
-                } else if (event instanceof PedalEvent) {
-                    pairs = track.getPedalPairs(event.getTime(), event.getTime() + TOLERANCE);
+                if (PackedEvent.isNote(event)) {
+                    track.forEachNote(time, time + TOLERANCE, noteMatcher);
                 } else {
-                    return EventAction.UNHANDLED;
+                    track.forEachPedalPair(time, time + TOLERANCE, slotMatcher);
                 }
 
-                for (final EventPair<? extends Event> pair : pairs) {
-                    if (pair.getSlot().equals(event.getSlot())) {
-                        return EventAction.PLAY;
-                    }
+                if (slotFound) {
+                    return EventAction.PLAY;
                 }
             }
             return EventAction.MUTE;
         }
+
+        private void matchSlot(EventPair<? extends Event> pair) {
+            slotFound |= pair.getSlot().equals(searchSlot);
+        }
+
+        private void matchNote(long onTime, long offTime, int key, int velocity, int channel) {
+            slotFound |= key == searchKey && channel == searchChannel;
+        }
     }
 }
@@ -32,6 +32,20 @@ public abstract class HistoryVisitor {
     public void onFile(byte[] hash, long time) {
     }
 
+    /**
+     * Called when the first frame of an opened file has been painted. The
+     * file will be given by a previous call to {@link #onFile(byte[], long)}
+     * if it was opened from disk.
+     *
+     * @param elapsed
+     *            the time in nanoseconds from when the file started opening
+     *            until its first frame was painted
+     * @param time
+     *            the epoch time in milliseconds the frame was painted at
+     */
+    public void onFirstFrame(long elapsed, long time) {
+    }
+
     /**
      * Called when the user has pressed a key in the past.
      *
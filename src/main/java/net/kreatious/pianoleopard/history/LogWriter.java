@@ -1,6 +1,5 @@
 package net.kreatious.pianoleopard.history;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
@@ -14,12 +13,9 @@ import javax.sound.midi.ShortMessage;
 
 import net.kreatious.pianoleopard.midi.InputModel;
 import net.kreatious.pianoleopard.midi.OutputModel;
-import net.kreatious.pianoleopard.midi.event.Event;
-import net.kreatious.pianoleopard.midi.event.NoteEvent;
-import net.kreatious.pianoleopard.midi.event.PedalEvent;
+import net.kreatious.pianoleopard.midi.event.PackedEvent;
 
-import com.google.common.hash.Hashing;
-import com.google.common.io.Files;
+import com.google.common.hash.HashCode;
 
 /**
  * Provides logging of keys and songs played
@@ -88,6 +84,10 @@ class LogWriter {
                         readBuffer.get(hash);
                         visitor.onFile(hash, timeOffset + readVariableLengthLong(readBuffer));
                         break;
+                    case FIRST_FRAME:
+                        visitor.onFirstFrame(readVariableLengthLong(readBuffer),
+                                timeOffset + readVariableLengthLong(readBuffer));
+                        break;
                     case HEADER:
                         // fall through
                     case OFFSET_CHANGED:
@@ -138,10 +138,11 @@ class LogWriter {
             logger.logHeader();
             outputModel.addOpenListener(sequence -> {
                 logger.flush();
-                sequence.getFile().ifPresent(logger::logFile);
+                sequence.getFile().flatMap(file -> sequence.getContentHash()).ifPresent(logger::logFile);
             });
             outputModel.addPlayListener(logger::logStart);
-            inputModel.addInputListener(logger::logKey);
+            outputModel.addFirstFrameListener(logger::logFirstFrame);
+            inputModel.addPackedInputListener(logger::logKey);
 
             return Optional.of(logger);
         } catch (final IOException e) {
@@ -205,32 +206,37 @@ class LogWriter {
         writeUnhandledMessage(Message.HEADER, () -> writeVariableLengthLong(offset));
     }
 
-    private synchronized void logKey(Event event) {
-        if (event instanceof NoteEvent) {
-            final NoteEvent noteEvent = (NoteEvent) event;
+    private synchronized void logKey(long event) {
+        if (PackedEvent.isNote(event)) {
+            final int command = PackedEvent.isOn(event) ? ShortMessage.NOTE_ON : ShortMessage.NOTE_OFF;
             writeMessage(Message.KEY, () -> {
-                buffer.put((byte) ((event.isOn() ? ShortMessage.NOTE_ON : ShortMessage.NOTE_OFF) | noteEvent
-                        .getChannel()));
-                buffer.put((byte) noteEvent.getKey());
-                buffer.put((byte) noteEvent.getVelocity());
+                buffer.put((byte) (command | PackedEvent.getChannel(event)));
+                buffer.put((byte) PackedEvent.getKey(event));
+                buffer.put((byte) PackedEvent.getVelocity(event));
                 writeVariableLengthLong(System.currentTimeMillis() - offset);
-                writeVariableLengthLong(event.getTime());
+                writeVariableLengthLong(PackedEvent.getTime(event));
             });
-        } else if (event instanceof PedalEvent) {
-            final PedalEvent pedalEvent = (PedalEvent) event;
+        } else if (PackedEvent.isPedal(event)) {
             writeMessage(Message.KEY, () -> {
-                buffer.put((byte) (ShortMessage.CONTROL_CHANGE | event.getChannel()));
-                buffer.put((byte) pedalEvent.getPedal().getData());
-                buffer.put((byte) (pedalEvent.isOn() ? 127 : 0));
+                buffer.put((byte) (ShortMessage.CONTROL_CHANGE | PackedEvent.getChannel(event)));
+                buffer.put((byte) PackedEvent.getPedal(event).getData());
+                buffer.put((byte) (PackedEvent.isOn(event) ? 127 : 0));
                 writeVariableLengthLong(System.currentTimeMillis() - offset);
-                writeVariableLengthLong(event.getTime());
+                writeVariableLengthLong(PackedEvent.getTime(event));
             });
         }
     }
 
-    private synchronized void logFile(File midi) {
+    private synchronized void logFile(HashCode hash) {
         writeMessage(Message.FILE, () -> {
-            buffer.put(Hashing.sha256().hashBytes(Files.toByteArray(midi)).asBytes());
+            buffer.put(hash.asBytes());
+            writeVariableLengthLong(System.currentTimeMillis() - offset);
+        });
+    }
+
+    private synchronized void logFirstFrame(long elapsed) {
+        writeMessage(Message.FIRST_FRAME, () -> {
+            writeVariableLengthLong(elapsed);
             writeVariableLengthLong(System.currentTimeMillis() - offset);
         });
     }
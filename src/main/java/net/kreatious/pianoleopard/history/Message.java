@@ -31,7 +31,12 @@ enum Message {
     /**
      * Resynchronizes the value of the offset variable
      */
-    OFFSET_CHANGED(5);
+    OFFSET_CHANGED(5),
+
+    /**
+     * The first frame of an opened file was painted
+     */
+    FIRST_FRAME(6);
 
     private static final Message[] VALUES = new Message[256];
     static {
@@ -0,0 +1,623 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * An interval set that a single writer may modify while any number of readers
+ * query it without locking.
+ * <p>
+ * The set is a persistent left leaning red-black tree. Nodes are never
+ * modified after construction; an insertion copies the path from the root to
+ * the new node and publishes the new root with a single volatile write.
+ * Every query reads the root once, so it observes a consistent snapshot of the
+ * set and is unaffected by concurrent insertions.
+ * <p>
+ * Writers must be serialized externally. This set does not support null
+ * values, but does support duplicate intervals.
+ * <p>
+ * A set constructed with a horizon retains only the values inserted within
+ * the horizon of the current time of its clock. The clock is independent of
+ * the intervals, so values are evicted even if their intervals never advance.
+ * Expired values are evicted in batches whenever the set doubles in size, so
+ * the cost of eviction is amortized over the insertions and the size of the
+ * set is bounded by the number of values inserted within the horizon.
+ *
+ * @author Jay-R Studer
+ * @param <V>
+ *            the type of mapped values
+ */
+public class ConcurrentIntervalSet<V> implements Iterable<V> {
+    private static final int MINIMUM_EVICTION_SIZE = 256;
+
+    // Nullable - performance reasons
+    private volatile Node<V> root;
+
+    private final long horizon;
+    private final LongSupplier clock;
+    private final Consumer<? super V> evicted;
+    private int evictionSize = MINIMUM_EVICTION_SIZE;
+
+    /**
+     * Constructs a new empty {@link ConcurrentIntervalSet} that retains every
+     * value until it is cleared.
+     */
+    public ConcurrentIntervalSet() {
+        this(Long.MAX_VALUE, () -> 0, value -> {
+            // Intentionally empty; values never expire
+        });
+    }
+
+    /**
+     * Constructs a new empty {@link ConcurrentIntervalSet} that evicts values
+     * inserted more than the specified horizon before the current time of the
+     * specified clock.
+     *
+     * @param horizon
+     *            the amount of time to retain values for, in units of the
+     *            clock
+     * @param clock
+     *            the monotonic clock that insertions are stamped with, such
+     *            as {@link System#nanoTime}
+     * @param evicted
+     *            the action to perform for each evicted value, such as
+     *            spilling it to a log
+     * @throws IllegalArgumentException
+     *             if {@code horizon} is negative
+     */
+    public ConcurrentIntervalSet(long horizon, LongSupplier clock, Consumer<? super V> evicted) {
+        if (horizon < 0) {
+            throw new IllegalArgumentException("Horizon " + horizon + " is negative");
+        }
+        this.horizon = horizon;
+        this.clock = Objects.requireNonNull(clock);
+        this.evicted = Objects.requireNonNull(evicted);
+    }
+
+    private static final class Node<V> {
+        private final long low;
+        private final long high;
+        private final long maximum;
+        private final int size;
+        private final Object[] values;
+        // Nullable - the insertion time of each value, if the set has a horizon
+        private final long[] stamps;
+        private final boolean red;
+
+        // Nullable - performance reasons
+        private final Node<V> left;
+        private final Node<V> right;
+
+        Node(long low, long high, Object[] values, long[] stamps, Node<V> left, Node<V> right, boolean red) {
+            this.low = low;
+            this.high = high;
+            this.values = values;
+            this.stamps = stamps;
+            this.left = left;
+            this.right = right;
+            this.red = red;
+
+            long max = high;
+            int count = values.length;
+            if (left != null) {
+                max = Math.max(max, left.maximum);
+                count += left.size;
+            }
+            if (right != null) {
+                max = Math.max(max, right.maximum);
+                count += right.size;
+            }
+            maximum = max;
+            size = count;
+        }
+
+        Node<V> with(Node<V> newLeft, Node<V> newRight, boolean newRed) {
+            return new Node<>(low, high, values, stamps, newLeft, newRight, newRed);
+        }
+
+        @SuppressWarnings("unchecked")
+        V value(int index) {
+            return (V) values[index];
+        }
+    }
+
+    /**
+     * Removes all values from this set.
+     */
+    public void clear() {
+        root = null;
+        evictionSize = MINIMUM_EVICTION_SIZE;
+    }
+
+    /**
+     * Returns the size of this set.
+     *
+     * @return the number of values in this collection
+     */
+    public int size() {
+        final Node<V> current = root;
+        return current == null ? 0 : current.size;
+    }
+
+    /**
+     * Associates the specified interval with the specified value in this set.
+     * If the specified interval is invalid, nothing is inserted.
+     * <p>
+     * This method must not be called concurrently with any other method that
+     * modifies this set.
+     *
+     * @param low
+     *            the low end of the range the specified value to associate
+     * @param high
+     *            the high end of the range the specified value to associate
+     * @param value
+     *            value to be associated with the specified key
+     * @return the specified value if it was already associated with the
+     *         interval, otherwise empty
+     * @throws NullPointerException
+     *             if the specified value is null
+     */
+    public Optional<V> put(long low, long high, V value) {
+        Objects.requireNonNull(value);
+        if (low > high) {
+            return Optional.empty();
+        }
+
+        final Node<V> current = root;
+        if (contains(current, low, high, value)) {
+            return Optional.of(value);
+        }
+
+        if (horizon == Long.MAX_VALUE) {
+            root = blacken(insert(current, low, high, new Object[] { value }, null));
+            return Optional.empty();
+        }
+
+        final long now = clock.getAsLong();
+        root = blacken(insert(current, low, high, new Object[] { value }, new long[] { now }));
+        if (size() >= evictionSize) {
+            removeMatching(Long.MIN_VALUE, true, now, evicted);
+            evictionSize = Math.max(MINIMUM_EVICTION_SIZE, 2 * size());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Removes every value whose interval ends before the specified time. The
+     * remaining values are published as a single new snapshot.
+     * <p>
+     * This method takes linear time and must not be called concurrently with
+     * any other method that modifies this set.
+     *
+     * @param time
+     *            the time that retained values end at or after
+     * @param action
+     *            the action to perform for each removed value, in ascending
+     *            order of intervals
+     */
+    public void removeEndingBefore(long time, Consumer<? super V> action) {
+        final Node<V> current = root;
+        if (current == null || current.maximum < time) {
+            root = null;
+            forEachInRange(current, Long.MIN_VALUE, Long.MAX_VALUE, action);
+            return;
+        }
+        if (hasEndingBefore(current, time)) {
+            removeMatching(time, false, 0, action);
+        }
+    }
+
+    /**
+     * Removes every value whose interval ends before the specified time, and
+     * if expiring, every value inserted more than the horizon before the
+     * specified time of the clock. Nothing is published if no value is
+     * removed.
+     */
+    private void removeMatching(long time, boolean expire, long now, Consumer<? super V> action) {
+        final List<Node<V>> retained = new ArrayList<>();
+        final int removed = partition(root, time, expire, now, retained, action);
+        if (removed != 0) {
+            final int size = retained.size();
+            root = build(retained, 0, size, 31 - Integer.numberOfLeadingZeros(size + 1));
+        }
+    }
+
+    private static boolean hasEndingBefore(Node<?> node, long time) {
+        return node != null
+                && (node.high < time || hasEndingBefore(node.left, time) || hasEndingBefore(node.right, time));
+    }
+
+    private int partition(Node<V> node, long time, boolean expire, long now, List<Node<V>> retained,
+            Consumer<? super V> action) {
+        if (node == null) {
+            return 0;
+        }
+
+        int removed = partition(node.left, time, expire, now, retained, action);
+        if (node.high < time) {
+            for (int i = 0; i != node.values.length; i++) {
+                action.accept(node.value(i));
+            }
+            removed += node.values.length;
+        } else if (!expire || node.stamps == null) {
+            retained.add(node);
+        } else {
+            final Object[] values = new Object[node.values.length];
+            final long[] stamps = new long[node.stamps.length];
+            int count = 0;
+            for (int i = 0; i != node.values.length; i++) {
+                // Compared by difference, as monotonic clocks may overflow
+                if (now - node.stamps[i] > horizon) {
+                    action.accept(node.value(i));
+                } else {
+                    values[count] = node.values[i];
+                    stamps[count] = node.stamps[i];
+                    count++;
+                }
+            }
+
+            if (count == node.values.length) {
+                retained.add(node);
+            } else if (count != 0) {
+                retained.add(new Node<>(node.low, node.high, Arrays.copyOf(values, count), Arrays.copyOf(stamps,
+                        count), null, null, false));
+            }
+            removed += node.values.length - count;
+        }
+        return removed + partition(node.right, time, expire, now, retained, action);
+    }
+
+    /**
+     * Builds a tree with the specified black height from nodes in ascending
+     * order. Each black node is given either no red child or a single red left
+     * child, as in a 2-3 tree, so the result is a valid left leaning red-black
+     * tree. The number of nodes must be between {@code 2^blackHeight - 1} and
+     * {@code 3^blackHeight - 1}.
+     */
+    private static <V> Node<V> build(List<Node<V>> nodes, int from, int to, int blackHeight) {
+        if (blackHeight == 0) {
+            return null;
+        }
+
+        final int size = to - from;
+        long childMaximum = 1;
+        for (int i = 1; i != blackHeight; i++) {
+            childMaximum *= 3;
+        }
+        childMaximum--;
+
+        if (size - 1 <= 2 * childMaximum) {
+            final int mid = from + (size - 1) / 2;
+            final Node<V> node = nodes.get(mid);
+            return new Node<>(node.low, node.high, node.values, node.stamps, build(nodes, from, mid,
+                    blackHeight - 1), build(nodes, mid + 1, to, blackHeight - 1), false);
+        }
+
+        final int first = from + (size - 2) / 3;
+        final int second = first + 1 + (size - 1) / 3;
+        final Node<V> red = nodes.get(first);
+        final Node<V> black = nodes.get(second);
+        final Node<V> left = new Node<>(red.low, red.high, red.values, red.stamps, build(nodes, from, first,
+                blackHeight - 1), build(nodes, first + 1, second, blackHeight - 1), true);
+        return new Node<>(black.low, black.high, black.values, black.stamps, left, build(nodes, second + 1, to,
+                blackHeight - 1), false);
+    }
+
+    private static <V> Node<V> blacken(Node<V> node) {
+        return node.red ? node.with(node.left, node.right, false) : node;
+    }
+
+    private static <V> boolean contains(Node<V> root, long low, long high, V value) {
+        Node<V> node = root;
+        while (node != null) {
+            final int comparison = Interval.compare(low, high, node.low, node.high);
+            if (comparison < 0) {
+                node = node.left;
+            } else if (comparison > 0) {
+                node = node.right;
+            } else {
+                return Arrays.asList(node.values).contains(value);
+            }
+        }
+        return false;
+    }
+
+    private static <V> Node<V> insert(Node<V> node, long low, long high, Object[] values, long[] stamps) {
+        if (node == null) {
+            return new Node<>(low, high, values, stamps, null, null, true);
+        }
+
+        Node<V> result;
+        final int comparison = Interval.compare(low, high, node.low, node.high);
+        if (comparison < 0) {
+            result = node.with(insert(node.left, low, high, values, stamps), node.right, node.red);
+        } else if (comparison > 0) {
+            result = node.with(node.left, insert(node.right, low, high, values, stamps), node.red);
+        } else {
+            final Object[] combined = Arrays.copyOf(node.values, node.values.length + values.length);
+            System.arraycopy(values, 0, combined, node.values.length, values.length);
+            long[] combinedStamps = null;
+            if (stamps != null) {
+                combinedStamps = Arrays.copyOf(node.stamps, node.stamps.length + stamps.length);
+                System.arraycopy(stamps, 0, combinedStamps, node.stamps.length, stamps.length);
+            }
+            return new Node<>(low, high, combined, combinedStamps, node.left, node.right, node.red);
+        }
+
+        if (isRed(result.right) && !isRed(result.left)) {
+            result = rotateLeft(result);
+        }
+        if (isRed(result.left) && isRed(result.left.left)) {
+            result = rotateRight(result);
+        }
+        if (isRed(result.left) && isRed(result.right)) {
+            result = result.with(result.left.with(result.left.left, result.left.right, false),
+                    result.right.with(result.right.left, result.right.right, false), true);
+        }
+        return result;
+    }
+
+    private static boolean isRed(Node<?> node) {
+        return node != null && node.red;
+    }
+
+    private static <V> Node<V> rotateLeft(Node<V> node) {
+        final Node<V> right = node.right;
+        return right.with(node.with(node.left, right.left, true), right.right, node.red);
+    }
+
+    private static <V> Node<V> rotateRight(Node<V> node) {
+        final Node<V> left = node.left;
+        return left.with(left.left, node.with(left.right, node.right, true), node.red);
+    }
+
+    /**
+     * Returns an iterable read only view of the values in this set that
+     * overlaps the specified interval. Each iterator returned by the view
+     * traverses a snapshot of this set taken when the iterator was created.
+     *
+     * @param low
+     *            low portion of the interval to retrieve
+     * @param high
+     *            high portion of the interval to retrieve
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     * @return a read only view of the portion of this set overlapping the
+     *         specified interval.
+     */
+    public Iterable<V> subSet(long low, long high) {
+        if (low > high) {
+            throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
+        }
+        return () -> new RangeIterator<>(this, low, high);
+    }
+
+    /**
+     * Performs the given action for each value in a snapshot of this set that
+     * overlaps the specified interval, in ascending order of intervals. This
+     * method does not allocate any objects.
+     *
+     * @param low
+     *            low portion of the interval to visit
+     * @param high
+     *            high portion of the interval to visit
+     * @param action
+     *            the action to be performed for each value
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     */
+    public void forEachInRange(long low, long high, Consumer<? super V> action) {
+        if (low > high) {
+            throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
+        }
+        forEachInRange(root, low, high, action);
+    }
+
+    private static <V> void forEachInRange(Node<V> subtree, long low, long high, Consumer<? super V> action) {
+        Node<V> node = subtree;
+        while (node != null && node.maximum >= low) {
+            forEachInRange(node.left, low, high, action);
+            if (node.low > high) {
+                return;
+            } else if (node.high >= low) {
+                for (int i = 0; i != node.values.length; i++) {
+                    action.accept(node.value(i));
+                }
+            }
+            node = node.right;
+        }
+    }
+
+    /**
+     * Counts the values in a snapshot of this set that overlap the specified
+     * interval. Like {@link #forEachInRange}, this only visits the nodes that
+     * cannot be ruled out by their cached maximums, and does not allocate any
+     * objects.
+     *
+     * @param low
+     *            low portion of the interval to count
+     * @param high
+     *            high portion of the interval to count
+     * @return the number of values overlapping the specified interval
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     */
+    public int count(long low, long high) {
+        if (low > high) {
+            throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
+        }
+        return count(root, low, high);
+    }
+
+    private static int count(Node<?> subtree, long low, long high) {
+        int result = 0;
+        Node<?> node = subtree;
+        while (node != null && node.maximum >= low) {
+            result += count(node.left, low, high);
+            if (node.low > high) {
+                return result;
+            } else if (node.high >= low) {
+                result += node.values.length;
+            }
+            node = node.right;
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new cursor over the values in this set. Each time the cursor
+     * is positioned with {@link IntervalCursor#reset}, it takes a new snapshot
+     * of this set.
+     *
+     * @return a new {@link IntervalCursor} over this set
+     */
+    public IntervalCursor<V> cursor() {
+        return new RangeCursor<>(this);
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+        return new RangeIterator<>(this, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Performs an in order traversal of a snapshot, skipping subtrees whose
+     * maximum ends before the range and stopping at the first node that starts
+     * after the range.
+     */
+    private static class RangeCursor<V> implements IntervalCursor<V> {
+        /**
+         * The height of a left leaning red-black tree is at most twice the
+         * base 2 logarithm of its size
+         */
+        private static final int MAXIMUM_HEIGHT = 2 * Integer.SIZE;
+
+        private final ConcurrentIntervalSet<V> set;
+        private long low;
+        private long high;
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private final Node<V>[] stack = new Node[MAXIMUM_HEIGHT];
+        private int depth;
+
+        // Nullable - performance reasons
+        private Node<V> current;
+        private int currentIndex;
+        private Node<V> next;
+        private int index;
+
+        RangeCursor(ConcurrentIntervalSet<V> set) {
+            this.set = set;
+        }
+
+        @Override
+        public void reset(long low, long high) {
+            if (low > high) {
+                throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
+            }
+
+            this.low = low;
+            this.high = high;
+            Arrays.fill(stack, 0, depth, null);
+            depth = 0;
+            current = null;
+            descend(set.root);
+            next = findNext();
+            index = 0;
+        }
+
+        private void descend(Node<V> subtree) {
+            for (Node<V> node = subtree; node != null && node.maximum >= low; node = node.left) {
+                stack[depth++] = node;
+            }
+        }
+
+        private Node<V> findNext() {
+            while (depth != 0) {
+                final Node<V> node = stack[--depth];
+                stack[depth] = null;
+                if (node.low > high) {
+                    Arrays.fill(stack, 0, depth, null);
+                    depth = 0;
+                    return null;
+                }
+
+                descend(node.right);
+                if (node.high >= low) {
+                    return node;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean advance() {
+            current = next;
+            if (next == null) {
+                return false;
+            }
+
+            currentIndex = index++;
+            if (index == next.values.length) {
+                next = findNext();
+                index = 0;
+            }
+            return true;
+        }
+
+        final boolean hasRemaining() {
+            return next != null;
+        }
+
+        @Override
+        public V get() {
+            return currentNode().value(currentIndex);
+        }
+
+        @Override
+        public long getLow() {
+            return currentNode().low;
+        }
+
+        @Override
+        public long getHigh() {
+            return currentNode().high;
+        }
+
+        private Node<V> currentNode() {
+            if (current == null) {
+                throw new NoSuchElementException();
+            }
+            return current;
+        }
+    }
+
+    private static class RangeIterator<V> extends RangeCursor<V> implements Iterator<V> {
+        RangeIterator(ConcurrentIntervalSet<V> set, long low, long high) {
+            super(set);
+            reset(low, high);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasRemaining();
+        }
+
+        @Override
+        public V next() {
+            if (!hasRemaining()) {
+                throw new NoSuchElementException();
+            }
+
+            advance();
+            return get();
+        }
+    }
+}
@@ -1,40 +1,71 @@
 package net.kreatious.pianoleopard.intervalset;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
-import java.util.Optional;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
-import java.util.stream.Stream;
-
+import java.util.function.Predicate;
+
+/**
+ * A node within an {@link IntervalSet}.
+ * <p>
+ * The interval bounds and the subtree maximum are stored inline as primitives
+ * and the links to neighboring nodes are nullable. The first value is also
+ * stored inline, and only additional values overflow into an array, so that
+ * the only object allocated for an insertion is usually the entry itself.
+ * Each entry stores the number of values in its subtree, allowing values to
+ * be ranked and selected by position. If the set maintains any
+ * {@link Summary}, each entry also stores the summaries of its subtree.
+ *
+ * @author Jay-R Studer
+ */
 class Entry<V> {
-    private Interval key;
+    private long low;
+    private long high;
     private long maximum;
-    private List<V> values = new ArrayList<>();
-    private Optional<Entry<V>> left = Optional.empty();
-    private Optional<Entry<V>> right = Optional.empty();
-    private Optional<Entry<V>> parent = Optional.empty();
+    private int valueCount = 1;
+    private int subtreeSize = 1;
+
+    // Nullable - performance reasons
+    private V value;
+    private Object[] overflow;
+    private Entry<V> left;
+    private Entry<V> right;
+    private Entry<V> parent;
     private boolean red;
+    private final Summary<? super V>[] summaryFunctions;
+    private final long[] summaries;
 
-    Entry(Interval key, V value, Optional<Entry<V>> parent) {
+    Entry(long low, long high, V value, Entry<V> parent, Summary<? super V>[] summaryFunctions) {
         Objects.requireNonNull(value);
-        this.key = key;
-        values.add(value);
+        this.low = low;
+        this.high = high;
+        this.value = value;
         this.parent = parent;
-        this.maximum = key.getHigh();
+        maximum = high;
+        this.summaryFunctions = summaryFunctions;
+        summaries = summaryFunctions == null ? null : new long[summaryFunctions.length];
+        updateSummaries();
     }
 
-    Optional<Entry<V>> getLeft() {
+    /**
+     * @return the left child of this entry, or null if there is none
+     */
+    Entry<V> getLeft() {
         return left;
     }
 
-    Optional<Entry<V>> getRight() {
+    /**
+     * @return the right child of this entry, or null if there is none
+     */
+    Entry<V> getRight() {
         return right;
     }
 
-    Optional<Entry<V>> getParent() {
+    /**
+     * @return the parent of this entry, or null if this entry is the root
+     */
+    Entry<V> getParent() {
         return parent;
     }
 
@@ -42,61 +73,117 @@ class Entry<V> {
         return maximum;
     }
 
-    private boolean isRed() {
-        return red;
+    long getLow() {
+        return low;
+    }
+
+    long getHigh() {
+        return high;
+    }
+
+    /**
+     * Tests if the key of this entry overlaps the specified interval
+     *
+     * @return true if this entry overlaps {@code [low, high]}, otherwise false
+     */
+    boolean overlaps(long searchLow, long searchHigh) {
+        return low <= searchHigh && high >= searchLow;
+    }
+
+    /**
+     * Compares the specified key to the key of this entry.
+     *
+     * @return a negative integer, zero, or a positive integer as the specified
+     *         key is less than, equal to, or greater than the key of this
+     *         entry.
+     */
+    int compareKey(long searchLow, long searchHigh) {
+        return Interval.compare(searchLow, searchHigh, low, high);
+    }
+
+    private static boolean isRed(Entry<?> entry) {
+        return entry != null && entry.red;
+    }
+
+    private static void setRed(Entry<?> entry, boolean red) {
+        if (entry != null) {
+            entry.red = red;
+        }
+    }
+
+    private static <V> Entry<V> parentOf(Entry<V> entry) {
+        return entry == null ? null : entry.parent;
+    }
+
+    private static <V> Entry<V> leftOf(Entry<V> entry) {
+        return entry == null ? null : entry.left;
+    }
+
+    private static <V> Entry<V> rightOf(Entry<V> entry) {
+        return entry == null ? null : entry.right;
     }
 
     /**
      * Performs a left tree rotation about this entry
      *
-     * @return the new root node to set, if any, otherwise an empty optional
+     * @param root
+     *            the current root node of the tree
+     * @return the new root node of the tree
      */
-    private Optional<Entry<V>> rotateLeft() {
-        final Optional<Entry<V>> oldRight = right;
-        Optional<Entry<V>> newRoot = Optional.empty();
+    private Entry<V> rotateLeft(Entry<V> root) {
+        final Entry<V> oldRight = right;
+        Entry<V> newRoot = root;
 
-        right = oldRight.flatMap(Entry::getLeft);
-        oldRight.flatMap(Entry::getLeft).ifPresent(rightLeft -> rightLeft.parent = Optional.of(this));
-        oldRight.get().parent = parent;
+        right = oldRight.left;
+        if (right != null) {
+            right.parent = this;
+        }
+        oldRight.parent = parent;
 
-        if (parent.flatMap(Entry::getLeft).equals(Optional.of(this))) {
-            parent.get().left = oldRight;
-        } else if (parent.isPresent()) {
-            parent.get().right = oldRight;
-        } else {
+        if (parent == null) {
             newRoot = oldRight;
+        } else if (parent.left == this) {
+            parent.left = oldRight;
+        } else {
+            parent.right = oldRight;
         }
 
-        oldRight.get().left = Optional.of(this);
+        oldRight.left = this;
         parent = oldRight;
-        augment();
+        updateMaximum();
+        oldRight.updateMaximum();
         return newRoot;
     }
 
     /**
      * Performs a right tree rotation about this entry
      *
-     * @return the new root node to set, if any, otherwise an empty optional
+     * @param root
+     *            the current root node of the tree
+     * @return the new root node of the tree
      */
-    private Optional<Entry<V>> rotateRight() {
-        final Optional<Entry<V>> oldLeft = left;
-        Optional<Entry<V>> newRoot = Optional.empty();
+    private Entry<V> rotateRight(Entry<V> root) {
+        final Entry<V> oldLeft = left;
+        Entry<V> newRoot = root;
 
-        left = oldLeft.flatMap(Entry::getRight);
-        oldLeft.flatMap(Entry::getRight).ifPresent(leftRight -> leftRight.parent = Optional.of(this));
-        oldLeft.get().parent = parent;
+        left = oldLeft.right;
+        if (left != null) {
+            left.parent = this;
+        }
+        oldLeft.parent = parent;
 
-        if (parent.flatMap(Entry::getRight).equals(Optional.of(this))) {
-            parent.get().right = oldLeft;
-        } else if (parent.isPresent()) {
-            parent.get().left = oldLeft;
-        } else {
+        if (parent == null) {
             newRoot = oldLeft;
+        } else if (parent.right == this) {
+            parent.right = oldLeft;
+        } else {
+            parent.left = oldLeft;
         }
 
-        oldLeft.get().right = Optional.of(this);
+        oldLeft.right = this;
         parent = oldLeft;
-        augment();
+        updateMaximum();
+        oldLeft.updateMaximum();
         return newRoot;
     }
 
@@ -107,61 +194,55 @@ class Entry<V> {
      *            the current root node of the tree
      * @return the new root node of the tree
      */
-    Optional<Entry<V>> rebalance(Optional<Entry<V>> root) {
+    Entry<V> rebalance(Entry<V> root) {
         red = true;
 
-        final AtomicReference<Optional<Entry<V>>> currentRoot = new AtomicReference<>(root);
-        final Consumer<Entry<V>> assignToCurrentRoot = newRoot -> currentRoot.set(Optional.of(newRoot));
-        final Consumer<Entry<V>> setRed = current -> current.red = true;
-        final Consumer<Entry<V>> setBlack = current -> current.red = false;
-
-        Optional<Entry<V>> node = Optional.of(this);
-        while (node.isPresent() && !node.equals(currentRoot.get())
-                && node.flatMap(Entry::getParent).filter(Entry::isRed).isPresent()) {
-            final Optional<Entry<V>> nodeParent = node.flatMap(Entry::getParent);
-            final Optional<Entry<V>> parentParent = nodeParent.flatMap(Entry::getParent);
-            if (nodeParent.equals(parentParent.flatMap(Entry::getRight))) {
-                final Optional<Entry<V>> parentParentLeft = parentParent.flatMap(Entry::getLeft);
-                if (parentParentLeft.filter(Entry::isRed).isPresent()) {
-                    nodeParent.ifPresent(setBlack);
-                    parentParent.ifPresent(setRed);
-                    parentParentLeft.ifPresent(setBlack);
+        Entry<V> currentRoot = root;
+        Entry<V> node = this;
+        while (node != currentRoot && isRed(node.parent)) {
+            // A red parent is never the root, so the grandparent always exists
+            final Entry<V> nodeParent = node.parent;
+            final Entry<V> parentParent = nodeParent.parent;
+            if (nodeParent == parentParent.right) {
+                final Entry<V> parentParentLeft = parentParent.left;
+                if (isRed(parentParentLeft)) {
+                    nodeParent.red = false;
+                    parentParent.red = true;
+                    parentParentLeft.red = false;
                     node = parentParent;
                 } else {
-                    if (node.equals(nodeParent.flatMap(Entry::getLeft))) {
-                        node = node.flatMap(Entry::getParent);
-                        node.flatMap(Entry::rotateRight).ifPresent(assignToCurrentRoot);
+                    if (node == nodeParent.left) {
+                        node = nodeParent;
+                        currentRoot = node.rotateRight(currentRoot);
                     }
-                    final Optional<Entry<V>> newParent = node.flatMap(Entry::getParent);
-                    final Optional<Entry<V>> newParentParent = newParent.flatMap(Entry::getParent);
-                    newParent.ifPresent(setBlack);
-                    newParentParent.ifPresent(setRed);
-                    newParentParent.flatMap(Entry::rotateLeft).ifPresent(assignToCurrentRoot);
+                    final Entry<V> newParentParent = node.parent.parent;
+                    node.parent.red = false;
+                    newParentParent.red = true;
+                    currentRoot = newParentParent.rotateLeft(currentRoot);
                 }
             } else {
-                final Optional<Entry<V>> parentParentRight = parentParent.flatMap(Entry::getRight);
-                if (parentParentRight.filter(Entry::isRed).isPresent()) {
-                    nodeParent.ifPresent(setBlack);
-                    parentParent.ifPresent(setRed);
-                    parentParentRight.ifPresent(setBlack);
+                final Entry<V> parentParentRight = parentParent.right;
+                if (isRed(parentParentRight)) {
+                    nodeParent.red = false;
+                    parentParent.red = true;
+                    parentParentRight.red = false;
                     node = parentParent;
                 } else {
-                    if (node.equals(nodeParent.flatMap(Entry::getRight))) {
-                        node = node.flatMap(Entry::getParent);
-                        node.flatMap(Entry::rotateLeft).ifPresent(assignToCurrentRoot);
+                    if (node == nodeParent.right) {
+                        node = nodeParent;
+                        currentRoot = node.rotateLeft(currentRoot);
                     }
-                    final Optional<Entry<V>> newParent = node.flatMap(Entry::getParent);
-                    final Optional<Entry<V>> newParentParent = newParent.flatMap(Entry::getParent);
-                    newParent.ifPresent(setBlack);
-                    newParentParent.ifPresent(setRed);
-                    newParentParent.flatMap(Entry::rotateRight).ifPresent(assignToCurrentRoot);
+                    final Entry<V> newParentParent = node.parent.parent;
+                    node.parent.red = false;
+                    newParentParent.red = true;
+                    currentRoot = newParentParent.rotateRight(currentRoot);
                 }
             }
         }
         augment();
 
-        currentRoot.get().ifPresent(setBlack);
-        return currentRoot.get();
+        currentRoot.red = false;
+        return currentRoot;
     }
 
     /**
@@ -169,52 +250,58 @@ class Entry<V> {
      *
      * @param root
      *            the current root node
-     * @return the new root node
+     * @return the new root node, or null if the tree is now empty
      */
-    Optional<Entry<V>> remove(Optional<Entry<V>> root) {
-        if (left.isPresent() && right.isPresent()) {
-            Entry<V> inOrderSuccessor = right.get();
-            while (inOrderSuccessor.left.isPresent()) {
-                inOrderSuccessor = inOrderSuccessor.left.get();
+    Entry<V> remove(Entry<V> root) {
+        if (left != null && right != null) {
+            Entry<V> inOrderSuccessor = right;
+            while (inOrderSuccessor.left != null) {
+                inOrderSuccessor = inOrderSuccessor.left;
             }
 
-            key = inOrderSuccessor.key;
-            values = inOrderSuccessor.values;
+            low = inOrderSuccessor.low;
+            high = inOrderSuccessor.high;
+            value = inOrderSuccessor.value;
+            overflow = inOrderSuccessor.overflow;
+            valueCount = inOrderSuccessor.valueCount;
             return inOrderSuccessor.remove(root);
         }
 
-        Optional<Entry<V>> currentRoot = root;
-        if (left.isPresent() || right.isPresent()) {
-            final Entry<V> onlyChild = left.isPresent() ? left.get() : right.get();
-
+        Entry<V> currentRoot = root;
+        final Entry<V> onlyChild = left != null ? left : right;
+        if (onlyChild != null) {
             onlyChild.parent = parent;
-            if (parent.isPresent()) {
-                parent.get().insertNode(onlyChild);
+            if (parent == null) {
+                currentRoot = onlyChild;
+            } else if (parent.left == this) {
+                parent.left = onlyChild;
             } else {
-                currentRoot = Optional.of(onlyChild);
+                parent.right = onlyChild;
             }
 
-            left = Optional.empty();
-            right = Optional.empty();
-            parent = Optional.empty();
+            left = null;
+            right = null;
+            parent = null;
 
             if (!red) {
                 currentRoot = onlyChild.deletionRebalance(currentRoot);
             }
-        } else if (parent.isPresent()) {
+            onlyChild.augment();
+        } else if (parent != null) {
             if (!red) {
                 currentRoot = deletionRebalance(currentRoot);
             }
 
-            final Entry<V> p = parent.get();
-            if (p.left.equals(Optional.of(this))) {
-                p.left = Optional.empty();
-            } else if (p.right.equals(Optional.of(this))) {
-                p.right = Optional.empty();
+            final Entry<V> p = parent;
+            if (p.left == this) {
+                p.left = null;
+            } else if (p.right == this) {
+                p.right = null;
             }
-            parent = Optional.empty();
+            parent = null;
+            p.augment();
         } else {
-            currentRoot = Optional.empty();
+            currentRoot = null;
         }
 
         return currentRoot;
@@ -227,109 +314,220 @@ class Entry<V> {
      *            the current root node of the tree
      * @return the new root node of the tree
      */
-    private Optional<Entry<V>> deletionRebalance(Optional<Entry<V>> root) {
-        final AtomicReference<Optional<Entry<V>>> currentRoot = new AtomicReference<>(root);
-        final Consumer<Entry<V>> assignToCurrentRoot = newRoot -> currentRoot.set(Optional.of(newRoot));
-        final Consumer<Entry<V>> setRed = current -> current.red = true;
-        final Consumer<Entry<V>> setBlack = current -> current.red = false;
-
-        Optional<Entry<V>> node = Optional.of(this);
-        while (!(node.equals(currentRoot.get()) || node.filter(Entry::isRed).isPresent())) {
-            final Optional<Entry<V>> nodeParent = node.flatMap(Entry::getParent);
-            final Optional<Entry<V>> nodeParentLeft = nodeParent.flatMap(Entry::getLeft);
-            final Optional<Entry<V>> nodeParentRight = nodeParent.flatMap(Entry::getRight);
-            if (node.equals(nodeParentRight)) {
-                Optional<Entry<V>> sibling = nodeParentLeft;
-
-                if (sibling.filter(Entry::isRed).isPresent()) {
-                    sibling.ifPresent(setBlack);
-                    nodeParent.ifPresent(setRed);
-                    nodeParent.flatMap(Entry::rotateRight).ifPresent(assignToCurrentRoot);
-                    sibling = nodeParentLeft;
+    private Entry<V> deletionRebalance(Entry<V> root) {
+        Entry<V> currentRoot = root;
+        Entry<V> node = this;
+        while (node != currentRoot && !isRed(node)) {
+            if (node == leftOf(parentOf(node))) {
+                Entry<V> sibling = rightOf(parentOf(node));
+                if (isRed(sibling)) {
+                    setRed(sibling, false);
+                    setRed(parentOf(node), true);
+                    currentRoot = parentOf(node).rotateLeft(currentRoot);
+                    sibling = rightOf(parentOf(node));
                 }
 
-                final Optional<Entry<V>> siblingRight = sibling.flatMap(Entry::getRight);
-                final Optional<Entry<V>> siblingLeft = sibling.flatMap(Entry::getLeft);
-                if (siblingRight.filter(Entry::isRed).isPresent() || siblingLeft.filter(Entry::isRed).isPresent()) {
-                    if (!siblingLeft.filter(Entry::isRed).isPresent()) {
-                        siblingRight.ifPresent(setBlack);
-                        sibling.ifPresent(setRed);
-                        sibling.flatMap(Entry::rotateLeft).ifPresent(assignToCurrentRoot);
-                        sibling = nodeParentLeft;
-                    }
-                    sibling.ifPresent(s -> s.red = nodeParent.filter(Entry::isRed).isPresent());
-                    nodeParent.ifPresent(setRed);
-                    siblingLeft.ifPresent(setBlack);
-                    nodeParent.flatMap(Entry::rotateRight).ifPresent(assignToCurrentRoot);
-                    node = currentRoot.get();
+                if (!isRed(leftOf(sibling)) && !isRed(rightOf(sibling))) {
+                    setRed(sibling, true);
+                    node = parentOf(node);
                 } else {
-                    sibling.ifPresent(setRed);
-                    node = nodeParent;
+                    if (!isRed(rightOf(sibling))) {
+                        setRed(leftOf(sibling), false);
+                        setRed(sibling, true);
+                        currentRoot = sibling.rotateRight(currentRoot);
+                        sibling = rightOf(parentOf(node));
+                    }
+                    setRed(sibling, isRed(parentOf(node)));
+                    setRed(parentOf(node), false);
+                    setRed(rightOf(sibling), false);
+                    currentRoot = parentOf(node).rotateLeft(currentRoot);
+                    node = currentRoot;
                 }
             } else {
-                Optional<Entry<V>> sibling = nodeParentRight;
-                if (sibling.filter(Entry::isRed).isPresent()) {
-                    sibling.ifPresent(setBlack);
-                    nodeParent.ifPresent(setRed);
-                    nodeParent.flatMap(Entry::rotateLeft).ifPresent(assignToCurrentRoot);
-                    sibling = nodeParentRight;
+                Entry<V> sibling = leftOf(parentOf(node));
+                if (isRed(sibling)) {
+                    setRed(sibling, false);
+                    setRed(parentOf(node), true);
+                    currentRoot = parentOf(node).rotateRight(currentRoot);
+                    sibling = leftOf(parentOf(node));
                 }
 
-                final Optional<Entry<V>> siblingLeft = sibling.flatMap(Entry::getLeft);
-                final Optional<Entry<V>> siblingRight = sibling.flatMap(Entry::getRight);
-                if (siblingLeft.filter(Entry::isRed).isPresent() || siblingRight.filter(Entry::isRed).isPresent()) {
-                    if (!siblingRight.filter(Entry::isRed).isPresent()) {
-                        siblingLeft.ifPresent(setBlack);
-                        sibling.ifPresent(setRed);
-                        sibling.flatMap(Entry::rotateRight).ifPresent(assignToCurrentRoot);
-                        sibling = nodeParentRight;
-                    }
-                    sibling.ifPresent(s -> s.red = nodeParent.filter(Entry::isRed).isPresent());
-                    nodeParent.ifPresent(setBlack);
-                    siblingRight.ifPresent(setBlack);
-                    nodeParent.flatMap(Entry::rotateLeft).ifPresent(assignToCurrentRoot);
-                    node = currentRoot.get();
+                if (!isRed(rightOf(sibling)) && !isRed(leftOf(sibling))) {
+                    setRed(sibling, true);
+                    node = parentOf(node);
                 } else {
-                    sibling.ifPresent(setRed);
-                    node = nodeParent;
+                    if (!isRed(leftOf(sibling))) {
+                        setRed(rightOf(sibling), false);
+                        setRed(sibling, true);
+                        currentRoot = sibling.rotateLeft(currentRoot);
+                        sibling = leftOf(parentOf(node));
+                    }
+                    setRed(sibling, isRed(parentOf(node)));
+                    setRed(parentOf(node), false);
+                    setRed(leftOf(sibling), false);
+                    currentRoot = parentOf(node).rotateRight(currentRoot);
+                    node = currentRoot;
                 }
             }
         }
+
+        setRed(node, false);
+        return currentRoot;
+    }
+
+    /**
+     * Recalculates the maximum and size of this entry from its own key and
+     * its immediate children.
+     */
+    private void updateMaximum() {
+        long result = high;
+        int count = valueCount;
+        if (left != null) {
+            result = Math.max(result, left.maximum);
+            count += left.subtreeSize;
+        }
+        if (right != null) {
+            result = Math.max(result, right.maximum);
+            count += right.subtreeSize;
+        }
+        maximum = result;
+        subtreeSize = count;
+        updateSummaries();
+    }
+
+    /**
+     * Recalculates the summaries of this entry from its own values and its
+     * immediate children.
+     */
+    private void updateSummaries() {
+        if (summaries == null) {
+            return;
+        }
+
+        for (int i = 0; i != summaries.length; i++) {
+            final Summary<? super V> summary = summaryFunctions[i];
+            long result = ownSummary(i);
+            if (left != null) {
+                result = summary.combine(left.summaries[i], result);
+            }
+            if (right != null) {
+                result = summary.combine(result, right.summaries[i]);
+            }
+            summaries[i] = result;
+        }
+    }
+
+    /**
+     * @return the summary of the values in this entry alone
+     */
+    private long ownSummary(int index) {
+        final Summary<? super V> summary = summaryFunctions[index];
+        long result = summary.identity();
+        for (int i = 0; i != valueCount; i++) {
+            result = summary.combine(result, summary.of(low, high, getValue(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Recalculates the sizes and summaries of this entry and its ancestors
+     * after values were added or removed from this entry.
+     */
+    void valuesChanged() {
         augment();
+    }
+
+    /**
+     * Summarizes the values within this subtree whose low value is within
+     * {@code [from, to]}, combining the summaries of whole subtrees along the
+     * two boundary paths.
+     */
+    long summarizeStarting(int index, long from, long to) {
+        final Summary<? super V> summary = summaryFunctions[index];
+        Entry<V> entry = this;
+        while (entry != null) {
+            if (entry.low < from) {
+                entry = entry.right;
+            } else if (entry.low > to) {
+                entry = entry.left;
+            } else {
+                long result = entry.ownSummary(index);
+                for (Entry<V> child = entry.left; child != null;) {
+                    if (child.low >= from) {
+                        result = summary.combine(result, child.ownSummary(index));
+                        if (child.right != null) {
+                            result = summary.combine(result, child.right.summaries[index]);
+                        }
+                        child = child.left;
+                    } else {
+                        child = child.right;
+                    }
+                }
+                for (Entry<V> child = entry.right; child != null;) {
+                    if (child.low <= to) {
+                        result = summary.combine(result, child.ownSummary(index));
+                        if (child.left != null) {
+                            result = summary.combine(result, child.left.summaries[index]);
+                        }
+                        child = child.right;
+                    } else {
+                        child = child.left;
+                    }
+                }
+                return result;
+            }
+        }
+        return summary.identity();
+    }
 
-        node.ifPresent(setBlack);
-        return currentRoot.get();
+    /**
+     * Summarizes the values within this subtree that start before the
+     * specified point and end at or after it.
+     */
+    long summarizeStraddling(int index, long point) {
+        final Summary<? super V> summary = summaryFunctions[index];
+        long result = summary.identity();
+        for (Entry<V> entry = this; entry != null && entry.maximum >= point; entry = entry.right) {
+            if (entry.left != null) {
+                result = summary.combine(result, entry.left.summarizeStraddling(index, point));
+            }
+            if (entry.low >= point) {
+                break;
+            } else if (entry.high >= point) {
+                result = summary.combine(result, entry.ownSummary(index));
+            }
+        }
+        return result;
     }
 
+    /**
+     * Recalculates the maximum and size of this entry and every one of its
+     * ancestors.
+     */
     private void augment() {
-        Optional<Entry<V>> node = Optional.of(this);
-        do {
-            node.get().maximum = Stream
-                    .concat(Stream.<Optional<Entry<V>>> of(node.flatMap(Entry::getLeft), node.flatMap(Entry::getRight))
-                            .filter(Optional::isPresent).map(child -> child.get().maximum),
-                            Stream.of(node.get().getKey().getHigh())).max(Long::compare).get();
-            node = node.flatMap(Entry::getParent);
-        } while (node.isPresent());
+        for (Entry<V> node = this; node != null; node = node.parent) {
+            node.updateMaximum();
+        }
     }
 
     /**
      * Finds the entry with the specified key.
      *
-     * @return the entry with the specified key, otherwise empty.
+     * @return the entry with the specified key, otherwise null.
      */
-    Optional<Entry<V>> binarySearchExact(Interval searchKey) {
-        Optional<Entry<V>> current = Optional.of(this);
+    Entry<V> binarySearchExact(long searchLow, long searchHigh) {
+        Entry<V> current = this;
         do {
-            final int comparison = searchKey.compareTo(current.get().getKey());
+            final int comparison = current.compareKey(searchLow, searchHigh);
             if (comparison < 0) {
-                current = current.flatMap(Entry::getLeft);
+                current = current.left;
             } else if (comparison > 0) {
-                current = current.flatMap(Entry::getRight);
+                current = current.right;
             } else {
                 return current;
             }
-        } while (current.isPresent());
-        return Optional.empty();
+        } while (current != null);
+        return null;
     }
 
     /**
@@ -339,44 +537,242 @@ class Entry<V> {
      * otherwise the entry which should be the parent of the inserted value is
      * returned.
      *
-     * @return the insertion position for the specified interval, never empty.
+     * @return the insertion position for the specified interval, never null.
      */
-    Optional<Entry<V>> binarySearchInexact(Interval searchKey) {
-        Optional<Entry<V>> current = Optional.of(this);
+    Entry<V> binarySearchInexact(long searchLow, long searchHigh) {
+        Entry<V> current = this;
         while (true) {
-            final Optional<Entry<V>> previous = current;
-            final int comparison = searchKey.compareTo(current.get().getKey());
+            final Entry<V> previous = current;
+            final int comparison = current.compareKey(searchLow, searchHigh);
             if (comparison < 0) {
-                current = current.flatMap(Entry::getLeft);
+                current = current.left;
             } else if (comparison > 0) {
-                current = current.flatMap(Entry::getRight);
+                current = current.right;
             } else {
                 return current;
             }
 
-            if (!current.isPresent()) {
+            if (current == null) {
                 return previous;
             }
         }
     }
 
+    /**
+     * Finds the entry with the smallest key whose low value is after the
+     * specified point.
+     *
+     * @return the first entry starting after {@code point}, otherwise null
+     */
+    Entry<V> nextStartingAfter(long point) {
+        Entry<V> result = null;
+        Entry<V> entry = this;
+        while (entry != null) {
+            if (entry.low > point) {
+                result = entry;
+                entry = entry.left;
+            } else {
+                entry = entry.right;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts the values within this subtree whose low value is before the
+     * specified point. Since entries are ordered by their low values first,
+     * these values precede all others in order.
+     */
+    int countStartingBefore(long point) {
+        int result = 0;
+        Entry<V> entry = this;
+        while (entry != null) {
+            if (entry.low < point) {
+                result += entry.valueCount + (entry.left == null ? 0 : entry.left.subtreeSize);
+                entry = entry.right;
+            } else {
+                entry = entry.left;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the value at the specified position in the ascending order of
+     * this subtree.
+     *
+     * @return the value at {@code index}, which must be less than the size of
+     *         this subtree
+     */
+    V select(int index) {
+        int remaining = index;
+        Entry<V> entry = this;
+        while (true) {
+            final int leftSize = entry.left == null ? 0 : entry.left.subtreeSize;
+            if (remaining < leftSize) {
+                entry = entry.left;
+            } else if (remaining < leftSize + entry.valueCount) {
+                return entry.getValue(remaining - leftSize);
+            } else {
+                remaining -= leftSize + entry.valueCount;
+                entry = entry.right;
+            }
+        }
+    }
+
+    /**
+     * Finds the entry within this subtree with the largest high value before
+     * the specified point.
+     * <p>
+     * Subtrees whose maximum is before the point are resolved by their
+     * maximum alone, and subtrees starting at or after the point are skipped,
+     * so only the paths to intervals containing the point are explored.
+     *
+     * @return the last entry ending before {@code point}, otherwise null
+     */
+    Entry<V> previousEndingBefore(long point) {
+        Entry<V> result = null;
+        for (Entry<V> entry = this; entry != null; entry = entry.left) {
+            if (entry.maximum < point) {
+                return later(result, entry.findMaximum());
+            } else if (entry.low >= point) {
+                continue;
+            }
+
+            if (entry.high < point) {
+                result = later(result, entry);
+            }
+            if (entry.right != null) {
+                result = later(result, entry.right.previousEndingBefore(point));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the entry within this subtree whose high value is the maximum
+     */
+    private Entry<V> findMaximum() {
+        Entry<V> entry = this;
+        while (entry.high != entry.maximum) {
+            entry = entry.left != null && entry.left.maximum == entry.maximum ? entry.left : entry.right;
+        }
+        return entry;
+    }
+
+    private static <V> Entry<V> later(Entry<V> first, Entry<V> second) {
+        if (first == null) {
+            return second;
+        } else if (second == null) {
+            return first;
+        }
+        return second.high > first.high ? second : first;
+    }
+
+    /**
+     * Performs the given action for each value within this subtree that
+     * overlaps the specified interval, in ascending order.
+     */
+    void forEachInRange(long searchLow, long searchHigh, Consumer<? super V> action) {
+        Entry<V> entry = this;
+        while (entry != null && entry.maximum >= searchLow) {
+            if (entry.left != null) {
+                entry.left.forEachInRange(searchLow, searchHigh, action);
+            }
+            if (entry.low > searchHigh) {
+                return;
+            }
+            if (entry.high >= searchLow) {
+                for (int i = 0; i != entry.valueCount; i++) {
+                    action.accept(entry.getValue(i));
+                }
+            }
+            entry = entry.right;
+        }
+    }
+
+    /**
+     * Performs the given action for each entry within this subtree that
+     * overlaps the specified interval, in ascending order.
+     */
+    void forEachEntryInRange(long searchLow, long searchHigh, Consumer<? super Entry<V>> action) {
+        Entry<V> entry = this;
+        while (entry != null && entry.maximum >= searchLow) {
+            if (entry.left != null) {
+                entry.left.forEachEntryInRange(searchLow, searchHigh, action);
+            }
+            if (entry.low > searchHigh) {
+                return;
+            }
+            if (entry.high >= searchLow) {
+                action.accept(entry);
+            }
+            entry = entry.right;
+        }
+    }
+
+    /**
+     * Links the specified entries into a new balanced tree in linear time.
+     * Entries on the deepest level are colored red and all others black, so
+     * that every path from the root has the same number of black entries.
+     *
+     * @param entries
+     *            the entries to link, in ascending order of their keys
+     * @return the root of the new tree, or null if there are no entries
+     */
+    static <V> Entry<V> build(List<Entry<V>> entries) {
+        final int deepestLevel = 31 - Integer.numberOfLeadingZeros(entries.size());
+        return build(entries, 0, entries.size(), 0, deepestLevel, null);
+    }
+
+    private static <V> Entry<V> build(List<Entry<V>> entries, int from, int to, int level, int deepestLevel,
+            Entry<V> parent) {
+        if (from == to) {
+            return null;
+        }
+
+        final int middle = (from + to) >>> 1;
+        final Entry<V> entry = entries.get(middle);
+        entry.parent = parent;
+        entry.red = level == deepestLevel && level != 0;
+        entry.left = build(entries, from, middle, level + 1, deepestLevel, entry);
+        entry.right = build(entries, middle + 1, to, level + 1, deepestLevel, entry);
+        entry.updateMaximum();
+        return entry;
+    }
+
     /**
      * Inserts a entry as a child of this entry, without rebalancing the tree.
      */
     void insertNode(Entry<V> entry) {
-        if (entry.key.compareTo(getKey()) < 0) {
-            left = Optional.of(entry);
+        if (compareKey(entry.low, entry.high) < 0) {
+            left = entry;
         } else {
-            right = Optional.of(entry);
+            right = entry;
         }
     }
 
-    Interval getKey() {
-        return key;
+    /**
+     * @return the number of values in this entry
+     */
+    int getValueCount() {
+        return valueCount;
     }
 
-    Collection<V> getValues() {
-        return values;
+    /**
+     * @return the value at the specified index, in insertion order
+     */
+    @SuppressWarnings("unchecked")
+    V getValue(int index) {
+        return index == 0 ? value : (V) overflow[index - 1];
+    }
+
+    private void setValue(int index, V newValue) {
+        if (index == 0) {
+            value = newValue;
+        } else {
+            overflow[index - 1] = newValue;
+        }
     }
 
     /**
@@ -384,38 +780,81 @@ class Entry<V> {
      * <p>
      * Entries do not allow duplicates and act as a set.
      *
-     * @param value
+     * @param newValue
      *            the value to add
      * @return true if a value was added, false otherwise
      */
-    boolean addValue(V value) {
-        Objects.requireNonNull(value);
-        if (values.contains(value)) {
-            return false;
+    boolean addValue(V newValue) {
+        Objects.requireNonNull(newValue);
+        for (int i = 0; i != valueCount; i++) {
+            if (getValue(i).equals(newValue)) {
+                return false;
+            }
+        }
+
+        if (overflow == null) {
+            overflow = new Object[1];
+        } else if (valueCount - 1 == overflow.length) {
+            overflow = Arrays.copyOf(overflow, 2 * overflow.length);
         }
-        values.add(value);
+        overflow[valueCount - 1] = newValue;
+        valueCount++;
+        valuesChanged();
         return true;
     }
 
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) {
-            return true;
-        } else if (!(o instanceof Entry)) {
-            return false;
-        } else {
-            final Entry<?> other = (Entry<?>) o;
-            return key == other.getKey();
+    /**
+     * Removes the first value of this entry matching the specified criteria,
+     * without removing this entry from the tree or updating its summaries.
+     *
+     * @return the removed value, or null if no value matched
+     */
+    V removeFirstValue(Predicate<? super V> criteria) {
+        for (int i = 0; i != valueCount; i++) {
+            final V result = getValue(i);
+            if (criteria.test(result)) {
+                for (int j = i + 1; j != valueCount; j++) {
+                    setValue(j - 1, getValue(j));
+                }
+                truncateValues(valueCount - 1);
+                return result;
+            }
         }
+        return null;
     }
 
-    @Override
-    public int hashCode() {
-        return key.hashCode() ^ values.hashCode();
+    /**
+     * Removes every value of this entry matching the specified criteria,
+     * without removing this entry from the tree or updating its summaries.
+     *
+     * @return the number of values removed
+     */
+    int removeValues(Predicate<? super V> criteria) {
+        int kept = 0;
+        for (int i = 0; i != valueCount; i++) {
+            final V current = getValue(i);
+            if (!criteria.test(current)) {
+                setValue(kept++, current);
+            }
+        }
+
+        final int removed = valueCount - kept;
+        truncateValues(kept);
+        return removed;
+    }
+
+    private void truncateValues(int count) {
+        for (int i = count; i != valueCount; i++) {
+            setValue(i, null);
+        }
+        valueCount = count;
+        if (count <= 1) {
+            overflow = null;
+        }
     }
 
     @Override
     public String toString() {
-        return key + "=" + maximum;
+        return low + "-" + high + "=" + maximum;
     }
 }
@@ -0,0 +1,914 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * An immutable, array backed set of intervals. The user can efficiently find
+ * all intervals that overlap with a given interval or point.
+ * <p>
+ * Intervals are stored in parallel arrays sorted by their low value, then by
+ * their high value. The sorted arrays double as an implicit balanced tree: the
+ * root of the range {@code [lo, hi)} is the element at {@code (lo + hi) / 2},
+ * and each element caches the largest high value found within its implicit
+ * subtree. Range queries visit matching elements in ascending array order,
+ * which keeps iteration over adjacent notes cache friendly.
+ * <p>
+ * Unlike {@link IntervalSet}, this set is built once in O(n log n) time and
+ * does not allocate any objects per interval.
+ * <p>
+ * This set does not support null values, but does support duplicate
+ * intervals.
+ * <p>
+ * A set may maintain any number of {@link Summary} aggregates for each
+ * implicit subtree, which allows range aggregates to be calculated without
+ * enumerating values.
+ *
+ * @author Jay-R Studer
+ * @param <V>
+ *            the type of mapped values
+ */
+public class ImmutableIntervalSet<V> implements Iterable<V> {
+    private static final ImmutableIntervalSet<?> EMPTY = new ImmutableIntervalSet<>(new long[0], new long[0],
+            new Object[0], Collections.emptyList());
+
+    private final long[] lows;
+    private final long[] highs;
+    private final long[] maximums;
+    private final Object[] values;
+    private final List<Summary<? super V>> summaryFunctions;
+    private final long[][] summaries;
+
+    private ImmutableIntervalSet(long[] lows, long[] highs, Object[] values,
+            List<Summary<? super V>> summaryFunctions) {
+        this.lows = lows;
+        this.highs = highs;
+        this.values = values;
+        maximums = new long[lows.length];
+        buildMaximums(0, lows.length);
+
+        this.summaryFunctions = summaryFunctions;
+        summaries = new long[summaryFunctions.size()][];
+        for (int i = 0; i != summaries.length; i++) {
+            summaries[i] = new long[lows.length];
+            buildSummaries(summaryFunctions.get(i), summaries[i], 0, lows.length);
+        }
+    }
+
+    /**
+     * Calculates the largest high value within the implicit subtree spanning
+     * {@code [lo, hi)}.
+     */
+    private long buildMaximums(int lo, int hi) {
+        if (lo >= hi) {
+            return Long.MIN_VALUE;
+        }
+
+        final int mid = (lo + hi) >>> 1;
+        final long maximum = Math.max(highs[mid], Math.max(buildMaximums(lo, mid), buildMaximums(mid + 1, hi)));
+        maximums[mid] = maximum;
+        return maximum;
+    }
+
+    /**
+     * Calculates the specified summary for the implicit subtree spanning
+     * {@code [lo, hi)}.
+     */
+    private long buildSummaries(Summary<? super V> summary, long[] result, int lo, int hi) {
+        if (lo >= hi) {
+            return summary.identity();
+        }
+
+        final int mid = (lo + hi) >>> 1;
+        final long left = buildSummaries(summary, result, lo, mid);
+        final long right = buildSummaries(summary, result, mid + 1, hi);
+        result[mid] = summary.combine(summary.combine(left, summary.of(lows[mid], highs[mid], value(mid))), right);
+        return result[mid];
+    }
+
+    /**
+     * Returns an empty immutable interval set.
+     *
+     * @param <V>
+     *            the type of mapped values
+     * @return an empty {@link ImmutableIntervalSet}
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> ImmutableIntervalSet<V> of() {
+        return (ImmutableIntervalSet<V>) EMPTY;
+    }
+
+    /**
+     * Returns a new builder for accumulating intervals.
+     *
+     * @param <V>
+     *            the type of mapped values
+     * @return a new {@link Builder}
+     */
+    public static <V> Builder<V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Accumulates intervals in any order, then sorts and indexes them in a
+     * single pass.
+     *
+     * @author Jay-R Studer
+     * @param <V>
+     *            the type of mapped values
+     */
+    public static class Builder<V> {
+        private long[] lows = new long[16];
+        private long[] highs = new long[16];
+        private Object[] values = new Object[16];
+        private int size;
+        private final List<Summary<? super V>> summaryFunctions = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Maintains the specified summary for each subtree of the built set.
+         *
+         * @param summary
+         *            the summary to maintain
+         * @return this builder
+         */
+        public Builder<V> summarizedBy(Summary<? super V> summary) {
+            summaryFunctions.add(Objects.requireNonNull(summary));
+            return this;
+        }
+
+        /**
+         * Associates the specified interval with the specified value. If the
+         * specified interval is invalid, nothing is added.
+         *
+         * @param low
+         *            the low end of the range the specified value to associate
+         * @param high
+         *            the high end of the range the specified value to associate
+         * @param value
+         *            value to be associated with the specified key
+         * @return this builder
+         * @throws NullPointerException
+         *             if the specified value is null
+         */
+        public Builder<V> add(long low, long high, V value) {
+            Objects.requireNonNull(value);
+            if (low > high) {
+                return this;
+            }
+
+            if (size == lows.length) {
+                final int capacity = size * 2;
+                lows = Arrays.copyOf(lows, capacity);
+                highs = Arrays.copyOf(highs, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            lows[size] = low;
+            highs[size] = high;
+            values[size] = value;
+            size++;
+            return this;
+        }
+
+        /**
+         * Builds an immutable interval set containing every added interval.
+         * <p>
+         * Values that are equal to another value with the same interval are
+         * only added once. Values with equal intervals are iterated in the
+         * order they were added.
+         *
+         * @return a new {@link ImmutableIntervalSet}
+         */
+        public ImmutableIntervalSet<V> build() {
+            final int[] order = new int[size];
+            for (int i = 0; i != size; i++) {
+                order[i] = i;
+            }
+            if (!isSorted()) {
+                mergeSort(order, order.clone(), 0, size);
+            }
+
+            final long[] sortedLows = new long[size];
+            final long[] sortedHighs = new long[size];
+            final Object[] sortedValues = new Object[size];
+            int count = 0;
+            int runStart = 0;
+            for (final int index : order) {
+                if (count == 0 || lows[index] != sortedLows[count - 1] || highs[index] != sortedHighs[count - 1]) {
+                    runStart = count;
+                } else if (containsValue(sortedValues, runStart, count, values[index])) {
+                    continue;
+                }
+
+                sortedLows[count] = lows[index];
+                sortedHighs[count] = highs[index];
+                sortedValues[count] = values[index];
+                count++;
+            }
+
+            if (count == 0 && summaryFunctions.isEmpty()) {
+                return of();
+            }
+            return new ImmutableIntervalSet<>(Arrays.copyOf(sortedLows, count), Arrays.copyOf(sortedHighs, count),
+                    Arrays.copyOf(sortedValues, count), new ArrayList<>(summaryFunctions));
+        }
+
+        private static boolean containsValue(Object[] values, int from, int to, Object value) {
+            for (int i = from; i != to; i++) {
+                if (values[i].equals(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isSorted() {
+            for (int i = 1; i < size; i++) {
+                if (compare(i - 1, i) > 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int compare(int first, int second) {
+            return Interval.compare(lows[first], highs[first], lows[second], highs[second]);
+        }
+
+        /**
+         * Stable merge sort of the indices in {@code [from, to)}, using
+         * {@code scratch} as a copy of {@code order} for the same range.
+         */
+        private void mergeSort(int[] order, int[] scratch, int from, int to) {
+            if (to - from < 2) {
+                return;
+            }
+
+            final int mid = (from + to) >>> 1;
+            mergeSort(scratch, order, from, mid);
+            mergeSort(scratch, order, mid, to);
+
+            int left = from;
+            int right = mid;
+            for (int i = from; i != to; i++) {
+                if (right == to || left != mid && compare(scratch[left], scratch[right]) <= 0) {
+                    order[i] = scratch[left++];
+                } else {
+                    order[i] = scratch[right++];
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the size of this set.
+     *
+     * @return the number of values in this collection
+     */
+    public int size() {
+        return lows.length;
+    }
+
+    /**
+     * Returns an iterable read only view of the values in this set that
+     * overlaps the specified interval. If {@code low} and {@code high} are
+     * equal, the returned view contains the intervals containing a single
+     * point.
+     *
+     * @param low
+     *            low portion of the interval to retrieve
+     * @param high
+     *            high portion of the interval to retrieve
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     * @return a read only view of the portion of this set overlapping the
+     *         specified interval.
+     */
+    public Iterable<V> subSet(long low, long high) {
+        if (low > high) {
+            throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
+        }
+        return new RangeIterable(low, high);
+    }
+
+    /**
+     * Returns an iterable read only view of the values in this set whose
+     * intervals contain the specified point.
+     *
+     * @param point
+     *            the point to retrieve intervals for
+     * @return a read only view of the portion of this set containing the
+     *         specified point.
+     */
+    public Iterable<V> stab(long point) {
+        return subSet(point, point);
+    }
+
+    /**
+     * Returns the value whose interval starts soonest after the specified
+     * point. If several values share that interval, the first one added is
+     * returned. This runs in O(log n) time.
+     *
+     * @param point
+     *            the exclusive point to search after
+     * @return the value with the earliest low value after {@code point}, or
+     *         empty if no interval starts after {@code point}
+     */
+    public Optional<V> nextStartingAfter(long point) {
+        final int index = upperBound(point);
+        return index == lows.length ? Optional.empty() : Optional.of(value(index));
+    }
+
+    /**
+     * Returns the value whose interval ends latest before the specified point.
+     * If several intervals end at the same time, any one of them is returned.
+     * <p>
+     * This runs in O(log n) time for each interval containing the point,
+     * since those are the only intervals the cached maximums cannot rule out.
+     *
+     * @param point
+     *            the exclusive point to search before
+     * @return the value with the latest high value before {@code point}, or
+     *         empty if no interval ends before {@code point}
+     */
+    public Optional<V> previousEndingBefore(long point) {
+        final int index = previousEndingBefore(0, lows.length, point);
+        return index == -1 ? Optional.empty() : Optional.of(value(index));
+    }
+
+    /**
+     * Returns the number of values in this set whose interval starts before
+     * the specified point. These are the values preceding all others in the
+     * order of this set. This runs in O(log n) time.
+     *
+     * @param point
+     *            the exclusive point to count values before
+     * @return the number of values with a low value before {@code point}
+     */
+    public int rank(long point) {
+        return lowerBound(point);
+    }
+
+    /**
+     * Returns the value at the specified position in the ascending order of
+     * intervals, as visited by {@link #iterator()}. This runs in constant
+     * time.
+     *
+     * @param index
+     *            the zero based position of the value to return
+     * @return the value at the specified position
+     * @throws IndexOutOfBoundsException
+     *             if {@code index} is negative or not less than {@link #size()}
+     */
+    public V select(int index) {
+        if (index < 0 || index >= lows.length) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + lows.length);
+        }
+        return value(index);
+    }
+
+    /**
+     * Searches the implicit subtree spanning {@code [from, to)} for the
+     * element with the largest high value before the specified point.
+     *
+     * @return the index of the found element, or -1 if there is none
+     */
+    private int previousEndingBefore(int from, int to, long point) {
+        int result = -1;
+        int hi = to;
+        while (from < hi) {
+            final int mid = (from + hi) >>> 1;
+            if (maximums[mid] < point) {
+                return later(result, findMaximum(from, hi));
+            } else if (lows[mid] < point) {
+                if (highs[mid] < point) {
+                    result = later(result, mid);
+                }
+                result = later(result, previousEndingBefore(mid + 1, hi, point));
+            }
+            hi = mid;
+        }
+        return result;
+    }
+
+    /**
+     * @return the index of the element within the implicit subtree spanning
+     *         {@code [lo, hi)} whose high value is the maximum
+     */
+    private int findMaximum(int lo, int hi) {
+        int from = lo;
+        int to = hi;
+        while (true) {
+            final int mid = (from + to) >>> 1;
+            if (highs[mid] == maximums[mid]) {
+                return mid;
+            } else if (from < mid && maximums[(from + mid) >>> 1] == maximums[mid]) {
+                to = mid;
+            } else {
+                from = mid + 1;
+            }
+        }
+    }
+
+    private int later(int first, int second) {
+        if (first == -1) {
+            return second;
+        } else if (second == -1) {
+            return first;
+        }
+        return highs[second] > highs[first] ? second : first;
+    }
+
+    /**
+     * @return the index of the first element whose low value is after the
+     *         specified value
+     */
+    private int upperBound(long value) {
+        int lo = 0;
+        int hi = lows.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (lows[mid] <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Performs the given action for each value in this set that overlaps the
+     * specified interval, in ascending order of intervals. Unlike
+     * {@link #subSet(long, long)}, this method does not allocate any objects.
+     *
+     * @param low
+     *            low portion of the interval to visit
+     * @param high
+     *            high portion of the interval to visit
+     * @param action
+     *            the action to be performed for each value
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     */
+    public void forEachInRange(long low, long high, Consumer<? super V> action) {
+        if (low > high) {
+            throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
+        }
+        forEachInRange(0, lows.length, low, high, action);
+    }
+
+    /**
+     * Visits the implicit subtree spanning {@code [from, to)}, recursing into
+     * left subtrees and looping over right subtrees.
+     */
+    private void forEachInRange(int from, int to, long low, long high, Consumer<? super V> action) {
+        int lo = from;
+        while (lo < to) {
+            final int mid = (lo + to) >>> 1;
+            if (maximums[mid] < low) {
+                return;
+            }
+
+            forEachInRange(lo, mid, low, high, action);
+            if (lows[mid] > high) {
+                return;
+            } else if (highs[mid] >= low) {
+                action.accept(value(mid));
+            }
+            lo = mid + 1;
+        }
+    }
+
+    /**
+     * Summarizes the values in this set that overlap the specified interval.
+     * <p>
+     * Values starting within the interval are summarized in O(log n) time
+     * from the subtree summaries. Values starting before the interval and
+     * ending within or after it are found using the cached maximums, costing
+     * O(log n) for each such value.
+     *
+     * @param summary
+     *            the summary to calculate, which must have been passed to this
+     *            set's builder
+     * @param low
+     *            low portion of the interval to summarize
+     * @param high
+     *            high portion of the interval to summarize
+     * @return the combined summary of the overlapping values
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}, or if this set
+     *             does not maintain the specified summary
+     */
+    public long summarize(Summary<? super V> summary, long low, long high) {
+        final long starting = summarizeStarting(summary, low, high);
+        return summary.combine(summarizeStraddling(summary, 0, lows.length, lowerBound(low), low), starting);
+    }
+
+    /**
+     * Summarizes the values in this set whose low value is within the
+     * specified interval. This runs in O(log n) time.
+     *
+     * @param summary
+     *            the summary to calculate, which must have been passed to this
+     *            set's builder
+     * @param from
+     *            the inclusive lower bound of the low values to summarize
+     * @param to
+     *            the inclusive upper bound of the low values to summarize
+     * @return the combined summary of the values starting within the interval
+     * @throws IllegalArgumentException
+     *             if {@code from} is greater than {@code to}, or if this set
+     *             does not maintain the specified summary
+     */
+    public long summarizeStarting(Summary<? super V> summary, long from, long to) {
+        if (from > to) {
+            throw new IllegalArgumentException("Range " + from + " -> " + to + " is invalid");
+        }
+
+        final long[] subtrees = summaries[summaryIndex(summary)];
+        return summarizeIndices(summary, subtrees, lowerBound(from), upperBound(to), 0, lows.length);
+    }
+
+    private int summaryIndex(Summary<? super V> summary) {
+        for (int i = 0; i != summaryFunctions.size(); i++) {
+            if (summaryFunctions.get(i) == summary) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Summary " + summary + " is not maintained by this set");
+    }
+
+    /**
+     * Summarizes the elements with indices in {@code [from, to)} within the
+     * implicit subtree spanning {@code [lo, hi)}.
+     */
+    private long summarizeIndices(Summary<? super V> summary, long[] subtrees, int from, int to, int lo, int hi) {
+        if (lo >= hi || to <= lo || hi <= from) {
+            return summary.identity();
+        }
+
+        final int mid = (lo + hi) >>> 1;
+        if (from <= lo && hi <= to) {
+            return subtrees[mid];
+        }
+
+        long result = summarizeIndices(summary, subtrees, from, to, lo, mid);
+        if (from <= mid && mid < to) {
+            result = summary.combine(result, summary.of(lows[mid], highs[mid], value(mid)));
+        }
+        return summary.combine(result, summarizeIndices(summary, subtrees, from, to, mid + 1, hi));
+    }
+
+    /**
+     * Summarizes the elements with indices before {@code end} that end at or
+     * after the specified point within the implicit subtree spanning
+     * {@code [from, to)}, skipping subtrees whose maximum is before the point.
+     */
+    private long summarizeStraddling(Summary<? super V> summary, int from, int to, int end, long point) {
+        long result = summary.identity();
+        int lo = from;
+        int hi = to;
+        while (lo < hi && lo < end) {
+            final int mid = (lo + hi) >>> 1;
+            if (maximums[mid] < point) {
+                return result;
+            } else if (mid >= end) {
+                hi = mid;
+                continue;
+            }
+
+            result = summary.combine(result, summarizeStraddling(summary, lo, mid, end, point));
+            if (highs[mid] >= point) {
+                result = summary.combine(result, summary.of(lows[mid], highs[mid], value(mid)));
+            }
+            lo = mid + 1;
+        }
+        return result;
+    }
+
+    /**
+     * @return the index of the first element whose low value is at or after
+     *         the specified value
+     */
+    private int lowerBound(long value) {
+        int lo = 0;
+        int hi = lows.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (lows[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns a new cursor over the values in this set. The cursor is
+     * initially empty until positioned with {@link IntervalCursor#reset}, and
+     * may be repositioned any number of times without allocating.
+     *
+     * @return a new {@link IntervalCursor} over this set
+     */
+    public IntervalCursor<V> cursor() {
+        return new RangeCursor();
+    }
+
+    /**
+     * Returns a new window cursor over the values in this set. Since this set
+     * is sorted by low value, moving the window forwards sweeps over only the
+     * intervals that entered or exited the window.
+     *
+     * @return a new {@link WindowCursor} over this set
+     */
+    public WindowCursor<V> windowCursor() {
+        return new SweepWindowCursor();
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+        return new Iterator<V>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index != values.length;
+            }
+
+            @Override
+            public V next() {
+                if (index == values.length) {
+                    throw new NoSuchElementException();
+                }
+                return value(index++);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int index) {
+        return (V) values[index];
+    }
+
+    private class RangeIterable implements Iterable<V> {
+        private final long low;
+        private final long high;
+
+        RangeIterable(long low, long high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return new RangeIterator(low, high);
+        }
+    }
+
+    /**
+     * Performs an in order traversal of the implicit tree, skipping subtrees
+     * whose maximum ends before the range and stopping at the first element
+     * that starts after the range.
+     */
+    private class RangeCursor implements IntervalCursor<V> {
+        private long low;
+        private long high;
+
+        /**
+         * Pairs of (element, exclusive end of its right subtree) whose left
+         * subtrees are being visited
+         */
+        private final int[] stack = new int[2 * (33 - Integer.numberOfLeadingZeros(lows.length))];
+        private int depth;
+        private int current = -1;
+        private int next = -1;
+
+        @Override
+        public void reset(long low, long high) {
+            if (low > high) {
+                throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
+            }
+
+            this.low = low;
+            this.high = high;
+            depth = 0;
+            current = -1;
+            descend(0, lows.length);
+            next = findNext();
+        }
+
+        private void descend(int lo, int hi) {
+            int end = hi;
+            while (lo < end) {
+                final int mid = (lo + end) >>> 1;
+                if (maximums[mid] < low) {
+                    return;
+                }
+                stack[depth++] = mid;
+                stack[depth++] = end;
+                end = mid;
+            }
+        }
+
+        private int findNext() {
+            while (depth != 0) {
+                final int end = stack[--depth];
+                final int mid = stack[--depth];
+                if (lows[mid] > high) {
+                    depth = 0;
+                    return -1;
+                }
+
+                descend(mid + 1, end);
+                if (highs[mid] >= low) {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean advance() {
+            current = next;
+            if (next == -1) {
+                return false;
+            }
+            next = findNext();
+            return true;
+        }
+
+        boolean hasRemaining() {
+            return next != -1;
+        }
+
+        @Override
+        public V get() {
+            return value(currentIndex());
+        }
+
+        @Override
+        public long getLow() {
+            return lows[currentIndex()];
+        }
+
+        @Override
+        public long getHigh() {
+            return highs[currentIndex()];
+        }
+
+        private int currentIndex() {
+            if (current == -1) {
+                throw new NoSuchElementException();
+            }
+            return current;
+        }
+    }
+
+    private class RangeIterator extends RangeCursor implements Iterator<V> {
+        RangeIterator(long low, long high) {
+            reset(low, high);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasRemaining();
+        }
+
+        @Override
+        public V next() {
+            if (!hasRemaining()) {
+                throw new NoSuchElementException();
+            }
+
+            advance();
+            return get();
+        }
+    }
+
+    /**
+     * Sweeps the window across the sorted arrays. Elements before
+     * {@code nextIndex} start at or before the window's high value; those
+     * overlapping the window are held in a min heap ordered by high value, so
+     * that elements which ended before the window are found at the top.
+     */
+    private class SweepWindowCursor implements WindowCursor<V> {
+        private final RangeCursor seek = new RangeCursor();
+        private boolean positioned;
+        private long low;
+        private long high;
+        private int nextIndex;
+        private int[] heap = new int[16];
+        private int size;
+
+        @Override
+        public void moveTo(long newLow, long newHigh, Listener<? super V> listener) {
+            if (newLow > newHigh) {
+                throw new IllegalArgumentException("Range " + newLow + " -> " + newHigh + " is invalid");
+            }
+
+            if (!positioned || newLow < low || newHigh < high || newLow > high) {
+                seek(newLow, newHigh, listener);
+            } else {
+                slide(newLow, newHigh, listener);
+            }
+            low = newLow;
+            high = newHigh;
+            positioned = true;
+        }
+
+        private void slide(long newLow, long newHigh, Listener<? super V> listener) {
+            while (size != 0 && highs[heap[0]] < newLow) {
+                listener.exited(value(poll()));
+            }
+
+            for (; nextIndex != lows.length && lows[nextIndex] <= newHigh; nextIndex++) {
+                if (highs[nextIndex] >= newLow) {
+                    push(nextIndex);
+                    listener.entered(value(nextIndex));
+                }
+            }
+        }
+
+        private void seek(long newLow, long newHigh, Listener<? super V> listener) {
+            for (int i = 0; i != size; i++) {
+                if (lows[heap[i]] > newHigh || highs[heap[i]] < newLow) {
+                    listener.exited(value(heap[i]));
+                }
+            }
+
+            size = 0;
+            seek.reset(newLow, newHigh);
+            while (seek.advance()) {
+                final int index = seek.current;
+                push(index);
+                if (!positioned || lows[index] > high || highs[index] < low) {
+                    listener.entered(value(index));
+                }
+            }
+            nextIndex = upperBound(newHigh);
+        }
+
+        private void push(int index) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+
+            int child = size++;
+            while (child != 0) {
+                final int parent = (child - 1) >>> 1;
+                if (highs[heap[parent]] <= highs[index]) {
+                    break;
+                }
+                heap[child] = heap[parent];
+                child = parent;
+            }
+            heap[child] = index;
+        }
+
+        private int poll() {
+            final int result = heap[0];
+            final int last = heap[--size];
+
+            int parent = 0;
+            while (true) {
+                int child = 2 * parent + 1;
+                if (child >= size) {
+                    break;
+                } else if (child + 1 < size && highs[heap[child + 1]] < highs[heap[child]]) {
+                    child++;
+                }
+
+                if (highs[last] <= highs[heap[child]]) {
+                    break;
+                }
+                heap[parent] = heap[child];
+                parent = child;
+            }
+            heap[parent] = last;
+            return result;
+        }
+
+        @Override
+        public void forEach(Consumer<? super V> action) {
+            for (int i = 0; i != size; i++) {
+                action.accept(value(heap[i]));
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -1,10 +1,8 @@
 package net.kreatious.pianoleopard.intervalset;
 
-import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.Optional;
 
 /**
  * Provides in order iteration over an entire set
@@ -14,59 +12,60 @@ import java.util.Optional;
 class InOrderIterator<V> implements Iterator<V> {
     private final IntervalSet<V> set;
     private final int expectedModifications;
-    private Optional<Entry<V>> next;
-    private Optional<Iterator<V>> subiterator;
+
+    // Nullable - performance reasons
+    private Entry<V> next;
+    private int index;
 
     InOrderIterator(IntervalSet<V> set) {
         this.set = set;
         expectedModifications = set.getModifications();
         next = findSmallestEntry();
-        subiterator = next.map(Entry::getValues).map(Collection::iterator);
     }
 
-    private Optional<Entry<V>> findSmallestEntry() {
-        Optional<Entry<V>> leftMost = set.getRoot();
-        while (leftMost.flatMap(Entry::getLeft).isPresent()) {
-            leftMost = leftMost.flatMap(Entry::getLeft);
+    private Entry<V> findSmallestEntry() {
+        Entry<V> leftMost = set.getRoot();
+        while (leftMost != null && leftMost.getLeft() != null) {
+            leftMost = leftMost.getLeft();
         }
         return leftMost;
     }
 
     @Override
     public final boolean hasNext() {
-        return subiterator.map(Iterator::hasNext).orElse(false);
+        return next != null;
     }
 
     @Override
     public V next() {
-        if (!subiterator.isPresent()) {
+        if (next == null) {
             throw new NoSuchElementException();
         } else if (set.getModifications() != expectedModifications) {
             throw new ConcurrentModificationException();
         }
 
-        final V result = subiterator.map(Iterator::next).get();
-        if (!subiterator.map(Iterator::hasNext).orElse(false)) {
+        final V result = next.getValue(index++);
+        if (index == next.getValueCount()) {
             next = successor(next);
-            subiterator = next.map(Entry::getValues).map(Collection::iterator);
+            index = 0;
         }
         return result;
     }
 
-    private Optional<Entry<V>> successor(Optional<Entry<V>> entry) {
-        if (entry.flatMap(Entry::getRight).isPresent()) {
-            Optional<Entry<V>> current = entry.flatMap(Entry::getRight);
-            while (current.flatMap(Entry::getLeft).isPresent()) {
-                current = current.flatMap(Entry::getLeft);
+    static <V> Entry<V> successor(Entry<V> entry) {
+        if (entry.getRight() != null) {
+            Entry<V> current = entry.getRight();
+            while (current.getLeft() != null) {
+                current = current.getLeft();
             }
             return current;
         }
 
-        Optional<Entry<V>> parent = entry.flatMap(Entry::getParent);
-        Optional<Entry<V>> child = entry;
-        while (parent.flatMap(Entry::getRight).equals(child)) {
+        Entry<V> parent = entry.getParent();
+        Entry<V> child = entry;
+        while (parent != null && parent.getRight() == child) {
             child = parent;
-            parent = parent.flatMap(Entry::getParent);
+            parent = parent.getParent();
         }
         return parent;
     }
@@ -1,7 +1,5 @@
 package net.kreatious.pianoleopard.intervalset;
 
-import java.util.Comparator;
-
 class Interval implements Comparable<Interval> {
     private final long low;
     private final long high;
@@ -59,6 +57,22 @@ class Interval implements Comparable<Interval> {
 
     @Override
     public int compareTo(Interval o) {
-        return Comparator.comparing(Interval::getLow).thenComparing(Interval::getHigh).compare(this, o);
+        return compare(low, high, o.low, o.high);
+    }
+
+    /**
+     * Compares two intervals by their low values, then by their high values.
+     *
+     * @return a negative integer, zero, or a positive integer as the first
+     *         interval is less than, equal to, or greater than the second
+     *         interval.
+     */
+    static int compare(long low1, long high1, long low2, long high2) {
+        if (low1 != low2) {
+            return low1 < low2 ? -1 : 1;
+        } else if (high1 != high2) {
+            return high1 < high2 ? -1 : 1;
+        }
+        return 0;
     }
 }
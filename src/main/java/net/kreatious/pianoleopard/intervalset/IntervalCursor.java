@@ -0,0 +1,68 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A reusable cursor over the values overlapping an interval.
+ * <p>
+ * Unlike {@link Iterable#iterator()}, a cursor can be repositioned onto a new
+ * interval with {@link #reset(long, long)} without allocating any objects,
+ * which makes it suitable for queries issued on every frame.
+ * <p>
+ * A cursor is not positioned on a value until {@link #advance()} returns
+ * true. Cursors are not thread safe.
+ *
+ * @author Jay-R Studer
+ * @param <V>
+ *            the type of values visited by this cursor
+ */
+public interface IntervalCursor<V> {
+    /**
+     * Repositions this cursor before the first value overlapping the
+     * specified interval. If {@code low} and {@code high} are equal, the
+     * cursor visits the intervals containing a single point.
+     *
+     * @param low
+     *            low portion of the interval to visit
+     * @param high
+     *            high portion of the interval to visit
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     */
+    void reset(long low, long high);
+
+    /**
+     * Moves this cursor to the next value overlapping the interval.
+     *
+     * @return true if the cursor is positioned on a value, false if there are
+     *         no more values
+     */
+    boolean advance();
+
+    /**
+     * Returns the value this cursor is positioned on.
+     *
+     * @return the current value
+     * @throws NoSuchElementException
+     *             if the cursor is not positioned on a value
+     */
+    V get();
+
+    /**
+     * Returns the low end of the interval this cursor is positioned on.
+     *
+     * @return the low end of the current interval
+     * @throws NoSuchElementException
+     *             if the cursor is not positioned on a value
+     */
+    long getLow();
+
+    /**
+     * Returns the high end of the interval this cursor is positioned on.
+     *
+     * @return the high end of the current interval
+     * @throws NoSuchElementException
+     *             if the cursor is not positioned on a value
+     */
+    long getHigh();
+}
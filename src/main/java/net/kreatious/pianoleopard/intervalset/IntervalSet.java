@@ -1,7 +1,11 @@
 package net.kreatious.pianoleopard.intervalset;
 
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 /**
@@ -13,21 +17,58 @@ import java.util.function.Predicate;
  * <p>
  * This set does not support null keys or values, but does support duplicate
  * intervals.
+ * <p>
+ * A set may maintain any number of {@link Summary} aggregates for each subtree,
+ * which allows range aggregates to be calculated without enumerating values.
  *
  * @author Jay-R Studer
  * @param <V>
  *            the type of mapped values
  */
 public class IntervalSet<V> implements Iterable<V> {
-    private Optional<Entry<V>> root = Optional.empty();
+    // Nullable - performance reasons
+    private Entry<V> root;
     private int size;
     private int modifications;
 
+    // Nullable - performance reasons
+    private final Summary<? super V>[] summaries;
+
+    /**
+     * Constructs a new empty {@link IntervalSet} without any summaries.
+     */
+    public IntervalSet() {
+        summaries = null;
+    }
+
+    /**
+     * Constructs a new empty {@link IntervalSet} maintaining the specified
+     * summaries.
+     *
+     * @param summaries
+     *            the summaries to maintain for each subtree
+     */
+    @SafeVarargs
+    public IntervalSet(Summary<? super V>... summaries) {
+        if (summaries.length == 0) {
+            this.summaries = null;
+            return;
+        }
+
+        // Copied element by element, so that the caller's array is never stored
+        @SuppressWarnings("unchecked")
+        final Summary<? super V>[] copy = (Summary<? super V>[]) new Summary<?>[summaries.length];
+        for (int i = 0; i != copy.length; i++) {
+            copy[i] = summaries[i];
+        }
+        this.summaries = copy;
+    }
+
     /**
      * Removes all values from this set.
      */
     public void clear() {
-        root = Optional.empty();
+        root = null;
         size = 0;
         modifications++;
     }
@@ -63,17 +104,16 @@ public class IntervalSet<V> implements Iterable<V> {
             return Optional.empty();
         }
 
-        final Interval key = new Interval(low, high);
-        if (!root.isPresent()) {
-            root = Optional.of(new Entry<>(key, value, Optional.empty()));
+        if (root == null) {
+            root = new Entry<>(low, high, value, null, summaries);
             size = 1;
             modifications++;
             return Optional.empty();
         }
 
-        final Optional<Entry<V>> parent = root.get().binarySearchInexact(key);
-        if (parent.filter(p -> p.getKey().compareTo(key) == 0).isPresent()) {
-            if (parent.get().addValue(value)) {
+        final Entry<V> parent = root.binarySearchInexact(low, high);
+        if (parent.compareKey(low, high) == 0) {
+            if (parent.addValue(value)) {
                 size++;
                 modifications++;
                 return Optional.empty();
@@ -81,8 +121,8 @@ public class IntervalSet<V> implements Iterable<V> {
             return Optional.of(value);
         }
 
-        final Entry<V> entry = new Entry<>(key, value, parent);
-        parent.get().insertNode(entry);
+        final Entry<V> entry = new Entry<>(low, high, value, parent, summaries);
+        parent.insertNode(entry);
         root = entry.rebalance(root);
         size++;
         modifications++;
@@ -106,25 +146,116 @@ public class IntervalSet<V> implements Iterable<V> {
      *             if the specified key is null
      */
     public Optional<V> removeFirst(long low, long high, Predicate<? super V> criteria) {
-        final Optional<Entry<V>> entryToRemove = root
-                .flatMap(entry -> entry.binarySearchExact(new Interval(low, high)));
-        if (!entryToRemove.isPresent()) {
+        if (root == null) {
             return Optional.empty();
+        } else if (low > high) {
+            throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
         }
 
-        final Entry<V> entry = entryToRemove.get();
-        final Optional<V> result = entry.getValues().stream().filter(criteria).findAny();
-        if (!result.isPresent()) {
+        final Entry<V> entry = root.binarySearchExact(low, high);
+        if (entry == null) {
             return Optional.empty();
         }
 
-        entry.getValues().remove(result.get());
-        if (entry.getValues().isEmpty()) {
+        final V value = entry.removeFirstValue(criteria);
+        if (value == null) {
+            return Optional.empty();
+        } else if (entry.getValueCount() == 0) {
             root = entry.remove(root);
+        } else {
+            entry.valuesChanged();
         }
         size--;
         modifications++;
-        return result;
+        return Optional.of(value);
+    }
+
+    /**
+     * Removes every value from this set that overlaps the specified interval.
+     *
+     * @param low
+     *            low portion of the interval to remove
+     * @param high
+     *            high portion of the interval to remove
+     * @return the number of values removed
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     */
+    public int removeRange(long low, long high) {
+        return removeIf(low, high, value -> true);
+    }
+
+    /**
+     * Removes every value from this set that overlaps the specified interval
+     * and matches the given criteria.
+     * <p>
+     * The tree is rebalanced once for the whole batch: if many entries become
+     * empty, the remaining entries are relinked into a balanced tree in linear
+     * time, otherwise the empty entries are deleted individually.
+     *
+     * @param low
+     *            low portion of the interval to remove
+     * @param high
+     *            high portion of the interval to remove
+     * @param criteria
+     *            the criteria that removed values must match
+     * @return the number of values removed
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     */
+    public int removeIf(long low, long high, Predicate<? super V> criteria) {
+        if (low > high) {
+            throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
+        } else if (root == null) {
+            return 0;
+        }
+
+        final List<Entry<V>> overlapping = new ArrayList<>();
+        root.forEachEntryInRange(low, high, overlapping::add);
+
+        int removed = 0;
+        final List<Entry<V>> emptied = new ArrayList<>();
+        final List<Entry<V>> changed = new ArrayList<>();
+        for (final Entry<V> entry : overlapping) {
+            final int count = entry.removeValues(criteria);
+            if (count == 0) {
+                continue;
+            }
+            removed += count;
+            changed.add(entry);
+            if (entry.getValueCount() == 0) {
+                emptied.add(entry);
+            }
+        }
+        if (removed == 0) {
+            return 0;
+        }
+
+        if ((long) emptied.size() * (32 - Integer.numberOfLeadingZeros(size)) >= size) {
+            final List<Entry<V>> retained = new ArrayList<>(size);
+            root.forEachEntryInRange(Long.MIN_VALUE, Long.MAX_VALUE, entry -> {
+                if (entry.getValueCount() != 0) {
+                    retained.add(entry);
+                }
+            });
+            root = Entry.build(retained);
+        } else {
+            changed.forEach(Entry::valuesChanged);
+
+            // Removing an entry may move the key of its successor into it, so
+            // the emptied entries are found again by key
+            final long[] keys = new long[2 * emptied.size()];
+            for (int i = 0; i != emptied.size(); i++) {
+                keys[2 * i] = emptied.get(i).getLow();
+                keys[2 * i + 1] = emptied.get(i).getHigh();
+            }
+            for (int i = 0; i != keys.length; i += 2) {
+                root = root.binarySearchExact(keys[i], keys[i + 1]).remove(root);
+            }
+        }
+        size -= removed;
+        modifications++;
+        return removed;
     }
 
     /**
@@ -146,6 +277,200 @@ public class IntervalSet<V> implements Iterable<V> {
         return new RangeIterable<>(this, low, high);
     }
 
+    /**
+     * Returns an iterable read only view of the values in this set whose
+     * intervals contain the specified point.
+     *
+     * @param point
+     *            the point to retrieve intervals for
+     * @return a read only view of the portion of this set containing the
+     *         specified point.
+     */
+    public Iterable<V> stab(long point) {
+        return subSet(point, point);
+    }
+
+    /**
+     * Returns the value whose interval starts soonest after the specified
+     * point. If several values share that interval, the first one added is
+     * returned. This runs in O(log n) time.
+     *
+     * @param point
+     *            the exclusive point to search after
+     * @return the value with the earliest low value after {@code point}, or
+     *         empty if no interval starts after {@code point}
+     */
+    public Optional<V> nextStartingAfter(long point) {
+        return firstValue(root == null ? null : root.nextStartingAfter(point));
+    }
+
+    /**
+     * Returns the value whose interval ends latest before the specified point.
+     * If several intervals end at the same time, any one of them is returned.
+     * <p>
+     * This runs in O(log n) time for each interval containing the point,
+     * since those are the only intervals the maximum augmentation cannot rule
+     * out.
+     *
+     * @param point
+     *            the exclusive point to search before
+     * @return the value with the latest high value before {@code point}, or
+     *         empty if no interval ends before {@code point}
+     */
+    public Optional<V> previousEndingBefore(long point) {
+        return firstValue(root == null ? null : root.previousEndingBefore(point));
+    }
+
+    /**
+     * Returns the number of values in this set whose interval starts before
+     * the specified point. These are the values preceding all others in the
+     * order of this set. This runs in O(log n) time.
+     *
+     * @param point
+     *            the exclusive point to count values before
+     * @return the number of values with a low value before {@code point}
+     */
+    public int rank(long point) {
+        return root == null ? 0 : root.countStartingBefore(point);
+    }
+
+    /**
+     * Returns the value at the specified position in the ascending order of
+     * intervals, as visited by {@link #iterator()}. This runs in O(log n)
+     * time.
+     *
+     * @param index
+     *            the zero based position of the value to return
+     * @return the value at the specified position
+     * @throws IndexOutOfBoundsException
+     *             if {@code index} is negative or not less than {@link #size()}
+     */
+    public V select(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + size);
+        }
+        return root.select(index);
+    }
+
+    private static <V> Optional<V> firstValue(Entry<V> entry) {
+        return entry == null ? Optional.empty() : Optional.of(entry.getValue(0));
+    }
+
+    /**
+     * Performs the given action for each value in this set that overlaps the
+     * specified interval, in ascending order of intervals. Unlike
+     * {@link #subSet(long, long)}, this method does not allocate any objects.
+     *
+     * @param low
+     *            low portion of the interval to visit
+     * @param high
+     *            high portion of the interval to visit
+     * @param action
+     *            the action to be performed for each value
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     * @throws ConcurrentModificationException
+     *             if the action modifies this set
+     */
+    public void forEachInRange(long low, long high, Consumer<? super V> action) {
+        if (low > high) {
+            throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
+        } else if (root == null) {
+            return;
+        }
+
+        final int expectedModifications = modifications;
+        root.forEachInRange(low, high, action);
+        if (modifications != expectedModifications) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Summarizes the values in this set that overlap the specified interval.
+     * <p>
+     * Values starting within the interval are summarized in O(log n) time
+     * from the subtree summaries. Values starting before the interval and
+     * ending within or after it are found using the maximum augmentation,
+     * costing O(log n) for each such value.
+     *
+     * @param summary
+     *            the summary to calculate, which must have been passed to this
+     *            set's constructor
+     * @param low
+     *            low portion of the interval to summarize
+     * @param high
+     *            high portion of the interval to summarize
+     * @return the combined summary of the overlapping values
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}, or if this set
+     *             does not maintain the specified summary
+     */
+    public long summarize(Summary<? super V> summary, long low, long high) {
+        final long starting = summarizeStarting(summary, low, high);
+        if (root == null) {
+            return starting;
+        }
+        return summary.combine(root.summarizeStraddling(summaryIndex(summary), low), starting);
+    }
+
+    /**
+     * Summarizes the values in this set whose low value is within the
+     * specified interval. This runs in O(log n) time.
+     *
+     * @param summary
+     *            the summary to calculate, which must have been passed to this
+     *            set's constructor
+     * @param from
+     *            the inclusive lower bound of the low values to summarize
+     * @param to
+     *            the inclusive upper bound of the low values to summarize
+     * @return the combined summary of the values starting within the interval
+     * @throws IllegalArgumentException
+     *             if {@code from} is greater than {@code to}, or if this set
+     *             does not maintain the specified summary
+     */
+    public long summarizeStarting(Summary<? super V> summary, long from, long to) {
+        if (from > to) {
+            throw new IllegalArgumentException("Range " + from + " -> " + to + " is invalid");
+        }
+
+        final int index = summaryIndex(summary);
+        return root == null ? summary.identity() : root.summarizeStarting(index, from, to);
+    }
+
+    private int summaryIndex(Summary<? super V> summary) {
+        for (int i = 0; summaries != null && i != summaries.length; i++) {
+            if (summaries[i] == summary) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Summary " + summary + " is not maintained by this set");
+    }
+
+    /**
+     * Returns a new cursor over the values in this set. The cursor is
+     * initially empty until positioned with {@link IntervalCursor#reset}, and
+     * may be repositioned any number of times without allocating.
+     *
+     * @return a new {@link IntervalCursor} over this set
+     */
+    public IntervalCursor<V> cursor() {
+        return new RangeCursor<>(this);
+    }
+
+    /**
+     * Returns a new window cursor over the values in this set. Moving the
+     * window forwards sweeps over only the intervals that entered or exited
+     * the window. If this set was modified since the window last moved, the
+     * window is instead requeried and its contents compared by identity.
+     *
+     * @return a new {@link WindowCursor} over this set
+     */
+    public WindowCursor<V> windowCursor() {
+        return new SweepWindowCursor<>(this);
+    }
+
     @Override
     public Iterator<V> iterator() {
         return new InOrderIterator<>(this);
@@ -155,7 +480,10 @@ public class IntervalSet<V> implements Iterable<V> {
         return modifications;
     }
 
-    Optional<Entry<V>> getRoot() {
+    /**
+     * @return the root entry of this set, or null if this set is empty
+     */
+    Entry<V> getRoot() {
         return root;
     }
 }
@@ -0,0 +1,225 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/**
+ * Matches the values of two interval sets whose intervals overlap and whose
+ * keys are equal, such as the notes a song expects against the notes a user
+ * played.
+ * <p>
+ * The join sweeps both sets once in order of their low values. Values wait in
+ * a queue for their key until a value from the other set arrives or they end,
+ * so the join runs in O((n + m) log(n + m)) time regardless of how many values
+ * overlap each other.
+ *
+ * @author Jay-R Studer
+ */
+public final class OverlapJoin {
+    private OverlapJoin() {
+    }
+
+    /**
+     * Receives the results of a join.
+     *
+     * @author Jay-R Studer
+     * @param <L>
+     *            the type of left values
+     * @param <R>
+     *            the type of right values
+     */
+    public interface Listener<L, R> {
+        /**
+         * Called when a left value is matched with a right value.
+         *
+         * @param left
+         *            the matched left value
+         * @param right
+         *            the matched right value
+         */
+        void matched(L left, R right);
+
+        /**
+         * Called when a left value ends without being matched.
+         *
+         * @param left
+         *            the unmatched left value
+         */
+        void unmatchedLeft(L left);
+
+        /**
+         * Called when a right value ends without being matched.
+         *
+         * @param right
+         *            the unmatched right value
+         */
+        void unmatchedRight(R right);
+    }
+
+    /**
+     * Joins the values of two cursors. Each value is matched with at most one
+     * value from the other cursor: the earliest starting unmatched value with
+     * an equal key whose interval overlaps, or starts at most the tolerance
+     * after the other interval ends.
+     * <p>
+     * Both cursors are reset to visit every value, and must visit values in
+     * ascending order of their low values, as the cursors of
+     * {@link IntervalSet} and {@link ImmutableIntervalSet} do.
+     *
+     * @param left
+     *            the cursor over the left values
+     * @param leftKey
+     *            extracts the key from left values
+     * @param right
+     *            the cursor over the right values
+     * @param rightKey
+     *            extracts the key from right values
+     * @param tolerance
+     *            the largest gap between two intervals that still overlap
+     * @param listener
+     *            the listener to notify of matched and unmatched values
+     * @param <L>
+     *            the type of left values
+     * @param <R>
+     *            the type of right values
+     * @throws IllegalArgumentException
+     *             if {@code tolerance} is negative
+     * @throws IllegalStateException
+     *             if a cursor does not visit its values in ascending order
+     */
+    public static <L, R> void join(IntervalCursor<L> left, Function<? super L, ?> leftKey, IntervalCursor<R> right,
+            Function<? super R, ?> rightKey, long tolerance, Listener<? super L, ? super R> listener) {
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("Tolerance " + tolerance + " is negative");
+        }
+
+        final Sweep<L, R> sweep = new Sweep<>(tolerance, listener);
+        left.reset(Long.MIN_VALUE, Long.MAX_VALUE);
+        right.reset(Long.MIN_VALUE, Long.MAX_VALUE);
+        boolean hasLeft = left.advance();
+        boolean hasRight = right.advance();
+        long previousLeft = Long.MIN_VALUE;
+        long previousRight = Long.MIN_VALUE;
+        while (hasLeft || hasRight) {
+            if (hasLeft && (!hasRight || left.getLow() <= right.getLow())) {
+                previousLeft = checkOrder(previousLeft, left.getLow());
+                sweep.arrive(left.getLow(), left.getHigh(), leftKey.apply(left.get()), left.get(), true);
+                hasLeft = left.advance();
+            } else {
+                previousRight = checkOrder(previousRight, right.getLow());
+                sweep.arrive(right.getLow(), right.getHigh(), rightKey.apply(right.get()), right.get(), false);
+                hasRight = right.advance();
+            }
+        }
+        sweep.expireAll();
+    }
+
+    private static long checkOrder(long previous, long low) {
+        if (low < previous) {
+            throw new IllegalStateException("Cursor visited " + low + " after " + previous);
+        }
+        return low;
+    }
+
+    /**
+     * A value waiting to be matched
+     */
+    private static final class Pending {
+        private final Object value;
+        private final long end;
+        private final boolean isLeft;
+        private boolean done;
+
+        Pending(Object value, long end, boolean isLeft) {
+            this.value = value;
+            this.end = end;
+            this.isLeft = isLeft;
+        }
+    }
+
+    private static final class Sweep<L, R> {
+        private final long tolerance;
+        private final Listener<? super L, ? super R> listener;
+        private final PriorityQueue<Pending> byEnd = new PriorityQueue<>(Comparator.comparingLong(
+                pending -> pending.end));
+        private final Map<Object, Deque<Pending>> leftByKey = new HashMap<>();
+        private final Map<Object, Deque<Pending>> rightByKey = new HashMap<>();
+
+        Sweep(long tolerance, Listener<? super L, ? super R> listener) {
+            this.tolerance = tolerance;
+            this.listener = listener;
+        }
+
+        void arrive(long low, long high, Object key, Object value, boolean isLeft) {
+            expire(low);
+
+            final Deque<Pending> candidates = (isLeft ? rightByKey : leftByKey).get(key);
+            while (candidates != null && !candidates.isEmpty()) {
+                final Pending candidate = candidates.pollFirst();
+                if (!candidate.done) {
+                    candidate.done = true;
+                    if (isLeft) {
+                        matched(value, candidate.value);
+                    } else {
+                        matched(candidate.value, value);
+                    }
+                    return;
+                }
+            }
+
+            final Pending pending = new Pending(value, saturatedAdd(high, tolerance), isLeft);
+            byEnd.add(pending);
+            (isLeft ? leftByKey : rightByKey).computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(pending);
+        }
+
+        /**
+         * Reports every pending value that ends before the specified low value
+         * as unmatched.
+         */
+        void expire(long low) {
+            while (!byEnd.isEmpty() && byEnd.peek().end < low) {
+                expire(byEnd.poll());
+            }
+        }
+
+        /**
+         * Reports every remaining pending value as unmatched.
+         */
+        void expireAll() {
+            while (!byEnd.isEmpty()) {
+                expire(byEnd.poll());
+            }
+        }
+
+        private void expire(Pending pending) {
+            if (!pending.done) {
+                pending.done = true;
+                unmatched(pending);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void matched(Object left, Object right) {
+            listener.matched((L) left, (R) right);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void unmatched(Pending pending) {
+            if (pending.isLeft) {
+                listener.unmatchedLeft((L) pending.value);
+            } else {
+                listener.unmatchedRight((R) pending.value);
+            }
+        }
+
+        private static long saturatedAdd(long value, long amount) {
+            final long result = value + amount;
+            return result < value ? Long.MAX_VALUE : result;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+
+/**
+ * Provides fast ordered visitation of values within a range, without
+ * allocating when repositioned.
+ *
+ * @author Jay-R Studer
+ */
+class RangeCursor<V> implements IntervalCursor<V> {
+    private final IntervalSet<V> set;
+    private int expectedModifications;
+    private long low;
+    private long high;
+
+    // Nullable - performance reasons
+    private Entry<V> current;
+    private int currentIndex;
+    private Entry<V> next;
+    private int index;
+
+    RangeCursor(IntervalSet<V> set) {
+        this.set = set;
+        expectedModifications = set.getModifications();
+    }
+
+    @Override
+    public void reset(long low, long high) {
+        if (low > high) {
+            throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
+        }
+
+        this.low = low;
+        this.high = high;
+        expectedModifications = set.getModifications();
+        current = null;
+        next = first();
+        index = 0;
+    }
+
+    @Override
+    public boolean advance() {
+        if (set.getModifications() != expectedModifications) {
+            throw new ConcurrentModificationException();
+        } else if (next == null) {
+            current = null;
+            return false;
+        }
+
+        current = next;
+        currentIndex = index++;
+        if (index == next.getValueCount()) {
+            next = successor(next);
+            index = 0;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if {@link #advance()} will position this cursor on a value
+     */
+    final boolean hasRemaining() {
+        return next != null;
+    }
+
+    @Override
+    public V get() {
+        return currentEntry().getValue(currentIndex);
+    }
+
+    @Override
+    public long getLow() {
+        return currentEntry().getLow();
+    }
+
+    @Override
+    public long getHigh() {
+        return currentEntry().getHigh();
+    }
+
+    private Entry<V> currentEntry() {
+        if (current == null) {
+            throw new NoSuchElementException();
+        }
+        return current;
+    }
+
+    private Entry<V> first() {
+        Entry<V> entry = set.getRoot();
+        while (entry != null) {
+            if (maximumIsAfterRangeStart(entry.getLeft())) {
+                entry = entry.getLeft();
+            } else if (entry.overlaps(low, high)) {
+                return entry;
+            } else {
+                entry = entry.getRight();
+            }
+        }
+        return null;
+    }
+
+    private boolean maximumIsAfterRangeStart(Entry<V> entry) {
+        return entry != null && entry.getMaximum() >= low;
+    }
+
+    private Entry<V> successor(Entry<V> entry) {
+        // Visit next child
+        if (entry.getLow() <= high && maximumIsAfterRangeStart(entry.getRight())) {
+            Entry<V> child = entry.getRight();
+            do {
+                if (maximumIsAfterRangeStart(child.getLeft())) {
+                    child = child.getLeft();
+                } else if (child.getLow() <= high && !child.overlaps(low, high)) {
+                    child = child.getRight();
+                } else {
+                    return child.overlaps(low, high) ? child : null;
+                }
+            } while (child != null);
+            return null;
+        }
+
+        // Find parent node whose right child is the current node
+        Entry<V> parent = entry.getParent();
+        Entry<V> child = entry;
+        while (parent != null && parent.getRight() == child) {
+            child = parent;
+            parent = parent.getParent();
+        }
+
+        // Parent node contains the requested range
+        if (parent != null && parent.overlaps(low, high)) {
+            return parent;
+        }
+
+        // Parent's right child contains additional intervals
+        if (parent != null) {
+            return successor(parent);
+        }
+
+        return null;
+    }
+}
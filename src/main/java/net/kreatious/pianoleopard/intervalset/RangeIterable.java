@@ -1,40 +1,24 @@
 package net.kreatious.pianoleopard.intervalset;
 
 import java.util.Iterator;
-import java.util.Optional;
-import java.util.function.Predicate;
 
 class RangeIterable<V> implements Iterable<V> {
     private final IntervalSet<V> set;
-    private final Interval range;
-    private final Optional<Entry<V>> first;
+    private final long low;
+    private final long high;
 
     RangeIterable(IntervalSet<V> intervalSet, long lowKey, long highKey) {
+        if (lowKey > highKey) {
+            throw new IllegalArgumentException("Range " + lowKey + " -> " + highKey + " is invalid");
+        }
+
         set = intervalSet;
-        range = new Interval(lowKey, highKey);
-        first = first();
+        low = lowKey;
+        high = highKey;
     }
 
     @Override
     public Iterator<V> iterator() {
-        return new RangeIterator<>(set, range, first);
-    }
-
-    private Optional<Entry<V>> first() {
-        final Predicate<Entry<V>> withinResult = current -> current.getKey().containsInterval(range);
-        final Predicate<Entry<V>> maximumIsAfterRangeStart = current -> current.getMaximum() >= range.getLow();
-
-        Optional<Entry<V>> current = set.getRoot();
-        while (true) {
-            if (current.flatMap(Entry::getLeft).filter(maximumIsAfterRangeStart).isPresent()) {
-                current = current.flatMap(Entry::getLeft);
-            } else if (current.filter(withinResult).isPresent()) {
-                return current;
-            } else if (current.flatMap(Entry::getRight).isPresent()) {
-                current = current.flatMap(Entry::getRight);
-            } else {
-                return Optional.empty();
-            }
-        }
+        return new RangeIterator<>(set, low, high);
     }
 }
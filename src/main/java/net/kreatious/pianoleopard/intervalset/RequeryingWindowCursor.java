@@ -0,0 +1,56 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * A window cursor that requeries an {@link IntervalCursor} every time the
+ * window moves, reporting the difference between the old and new contents.
+ *
+ * @author Jay-R Studer
+ */
+class RequeryingWindowCursor<V> implements WindowCursor<V> {
+    private final IntervalCursor<V> cursor;
+    private Set<V> current = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Set<V> next = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    RequeryingWindowCursor(IntervalCursor<V> cursor) {
+        this.cursor = cursor;
+    }
+
+    @Override
+    public void moveTo(long low, long high, Listener<? super V> listener) {
+        cursor.reset(low, high);
+        while (cursor.advance()) {
+            next.add(cursor.get());
+        }
+
+        for (final V value : current) {
+            if (!next.contains(value)) {
+                listener.exited(value);
+            }
+        }
+        for (final V value : next) {
+            if (!current.contains(value)) {
+                listener.entered(value);
+            }
+        }
+
+        final Set<V> previous = current;
+        current = next;
+        next = previous;
+        next.clear();
+    }
+
+    @Override
+    public void forEach(Consumer<? super V> action) {
+        current.forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return current.size();
+    }
+}
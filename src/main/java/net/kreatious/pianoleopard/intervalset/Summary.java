@@ -0,0 +1,133 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * An aggregate that interval sets maintain for every subtree, allowing range
+ * aggregates to be calculated without enumerating values.
+ * <p>
+ * A summary is a commutative monoid over {@code long} values: combining must
+ * be associative and commutative, and combining with the identity must not
+ * change a value. Summaries are compared by identity, so the same instance
+ * passed to a set's constructor must be used to query it.
+ *
+ * @author Jay-R Studer
+ * @param <V>
+ *            the type of values summarized
+ */
+public interface Summary<V> {
+    /**
+     * Returns the summary of no values.
+     *
+     * @return the identity element
+     */
+    long identity();
+
+    /**
+     * Summarizes a single value.
+     *
+     * @param low
+     *            the low end of the value's interval
+     * @param high
+     *            the high end of the value's interval
+     * @param value
+     *            the value to summarize
+     * @return the summary of the value
+     */
+    long of(long low, long high, V value);
+
+    /**
+     * Combines two summaries.
+     *
+     * @param first
+     *            the first summary
+     * @param second
+     *            the second summary
+     * @return the combined summary
+     */
+    long combine(long first, long second);
+
+    /**
+     * Creates a summary counting the number of values.
+     *
+     * @param <V>
+     *            the type of values summarized
+     * @return a new counting {@link Summary}
+     */
+    static <V> Summary<V> count() {
+        return new Summary<V>() {
+            @Override
+            public long identity() {
+                return 0;
+            }
+
+            @Override
+            public long of(long low, long high, V value) {
+                return 1;
+            }
+
+            @Override
+            public long combine(long first, long second) {
+                return first + second;
+            }
+        };
+    }
+
+    /**
+     * Creates a summary of the smallest property of the values. The summary of
+     * no values is {@link Long#MAX_VALUE}.
+     *
+     * @param property
+     *            the property of each value to summarize
+     * @param <V>
+     *            the type of values summarized
+     * @return a new minimum {@link Summary}
+     */
+    static <V> Summary<V> minimum(ToLongFunction<? super V> property) {
+        return new Summary<V>() {
+            @Override
+            public long identity() {
+                return Long.MAX_VALUE;
+            }
+
+            @Override
+            public long of(long low, long high, V value) {
+                return property.applyAsLong(value);
+            }
+
+            @Override
+            public long combine(long first, long second) {
+                return Math.min(first, second);
+            }
+        };
+    }
+
+    /**
+     * Creates a summary of the largest property of the values. The summary of
+     * no values is {@link Long#MIN_VALUE}.
+     *
+     * @param property
+     *            the property of each value to summarize
+     * @param <V>
+     *            the type of values summarized
+     * @return a new maximum {@link Summary}
+     */
+    static <V> Summary<V> maximum(ToLongFunction<? super V> property) {
+        return new Summary<V>() {
+            @Override
+            public long identity() {
+                return Long.MIN_VALUE;
+            }
+
+            @Override
+            public long of(long low, long high, V value) {
+                return property.applyAsLong(value);
+            }
+
+            @Override
+            public long combine(long first, long second) {
+                return Math.max(first, second);
+            }
+        };
+    }
+}
@@ -0,0 +1,198 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Sweeps a window forwards across an {@link IntervalSet}. Entries starting
+ * after the window's high value are reached in order from {@code next}; the
+ * values overlapping the window are held in a min heap ordered by high value,
+ * so that values which ended before the window are found at the top.
+ * <p>
+ * The set may be modified between moves. A modification is detected by the
+ * set's modification count, in which case the window is requeried and its
+ * contents compared by identity, as by a {@link RequeryingWindowCursor}.
+ *
+ * @author Jay-R Studer
+ */
+class SweepWindowCursor<V> implements WindowCursor<V> {
+    private final IntervalSet<V> set;
+    private final RangeCursor<V> seek;
+    private int expectedModifications;
+    private boolean positioned;
+    private long low;
+    private long high;
+
+    // Nullable - performance reasons
+    private Entry<V> next;
+
+    private Object[] values = new Object[16];
+    private long[] lows = new long[16];
+    private long[] highs = new long[16];
+    private int size;
+
+    SweepWindowCursor(IntervalSet<V> set) {
+        this.set = set;
+        seek = new RangeCursor<>(set);
+    }
+
+    @Override
+    public void moveTo(long newLow, long newHigh, Listener<? super V> listener) {
+        if (newLow > newHigh) {
+            throw new IllegalArgumentException("Range " + newLow + " -> " + newHigh + " is invalid");
+        }
+
+        if (!positioned || set.getModifications() != expectedModifications) {
+            requery(newLow, newHigh, listener);
+        } else if (newLow < low || newHigh < high || newLow > high) {
+            seek(newLow, newHigh, listener);
+        } else {
+            slide(newLow, newHigh, listener);
+        }
+        low = newLow;
+        high = newHigh;
+        positioned = true;
+        expectedModifications = set.getModifications();
+    }
+
+    private void slide(long newLow, long newHigh, Listener<? super V> listener) {
+        while (size != 0 && highs[0] < newLow) {
+            listener.exited(poll());
+        }
+
+        for (; next != null && next.getLow() <= newHigh; next = InOrderIterator.successor(next)) {
+            if (next.getHigh() >= newLow) {
+                for (int i = 0; i != next.getValueCount(); i++) {
+                    push(next.getValue(i), next.getLow(), next.getHigh());
+                    listener.entered(next.getValue(i));
+                }
+            }
+        }
+    }
+
+    private void seek(long newLow, long newHigh, Listener<? super V> listener) {
+        for (int i = 0; i != size; i++) {
+            if (lows[i] > newHigh || highs[i] < newLow) {
+                listener.exited(value(i));
+            }
+        }
+
+        fill(newLow, newHigh);
+        for (int i = 0; i != size; i++) {
+            if (lows[i] > high || highs[i] < low) {
+                listener.entered(value(i));
+            }
+        }
+    }
+
+    private void requery(long newLow, long newHigh, Listener<? super V> listener) {
+        final Set<Object> previous = Collections.newSetFromMap(new IdentityHashMap<>());
+        previous.addAll(Arrays.asList(values).subList(0, size));
+
+        fill(newLow, newHigh);
+        final Set<Object> current = Collections.newSetFromMap(new IdentityHashMap<>());
+        current.addAll(Arrays.asList(values).subList(0, size));
+
+        for (final Object value : previous) {
+            if (!current.contains(value)) {
+                listener.exited(cast(value));
+            }
+        }
+        for (int i = 0; i != size; i++) {
+            if (!previous.contains(values[i])) {
+                listener.entered(value(i));
+            }
+        }
+    }
+
+    /**
+     * Replaces the contents of the heap with the values overlapping the
+     * specified window, and finds the first entry starting after it.
+     */
+    private void fill(long newLow, long newHigh) {
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        seek.reset(newLow, newHigh);
+        while (seek.advance()) {
+            push(seek.get(), seek.getLow(), seek.getHigh());
+        }
+
+        final Entry<V> root = set.getRoot();
+        next = root == null ? null : root.nextStartingAfter(newHigh);
+    }
+
+    private void push(V value, long valueLow, long valueHigh) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            lows = Arrays.copyOf(lows, size * 2);
+            highs = Arrays.copyOf(highs, size * 2);
+        }
+
+        int child = size++;
+        while (child != 0) {
+            final int parent = (child - 1) >>> 1;
+            if (highs[parent] <= valueHigh) {
+                break;
+            }
+            move(parent, child);
+            child = parent;
+        }
+        values[child] = value;
+        lows[child] = valueLow;
+        highs[child] = valueHigh;
+    }
+
+    private V poll() {
+        final V result = value(0);
+        final int last = --size;
+
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= size) {
+                break;
+            } else if (child + 1 < size && highs[child + 1] < highs[child]) {
+                child++;
+            }
+
+            if (highs[last] <= highs[child]) {
+                break;
+            }
+            move(child, parent);
+            parent = child;
+        }
+        move(last, parent);
+        values[last] = null;
+        return result;
+    }
+
+    private void move(int from, int to) {
+        values[to] = values[from];
+        lows[to] = lows[from];
+        highs[to] = highs[from];
+    }
+
+    private V value(int index) {
+        return cast(values[index]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V cast(Object value) {
+        return (V) value;
+    }
+
+    @Override
+    public void forEach(Consumer<? super V> action) {
+        for (int i = 0; i != size; i++) {
+            action.accept(value(i));
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
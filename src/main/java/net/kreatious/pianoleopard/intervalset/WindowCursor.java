@@ -0,0 +1,121 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import java.util.function.Consumer;
+
+/**
+ * A stateful cursor over the values overlapping a moving window.
+ * <p>
+ * The cursor remembers which values overlap the current window. Moving the
+ * window forwards only examines the values that entered or exited it, so the
+ * work done by a small step is proportional to the number of values that
+ * changed. Moving the window backwards, or to a window that does not overlap
+ * the previous one, repositions the cursor from scratch.
+ * <p>
+ * Window cursors are not thread safe.
+ *
+ * @author Jay-R Studer
+ * @param <V>
+ *            the type of values visited by this cursor
+ */
+public interface WindowCursor<V> {
+    /**
+     * Receives the changes to a window's contents as it moves.
+     *
+     * @author Jay-R Studer
+     * @param <V>
+     *            the type of values in the window
+     */
+    interface Listener<V> {
+        /**
+         * A listener that ignores all changes
+         */
+        Listener<Object> IGNORE = new Listener<Object>() {
+            @Override
+            public void entered(Object value) {
+                // Intentionally empty
+            }
+
+            @Override
+            public void exited(Object value) {
+                // Intentionally empty
+            }
+        };
+
+        /**
+         * Called when a value starts overlapping the window.
+         *
+         * @param value
+         *            the value that entered the window
+         */
+        void entered(V value);
+
+        /**
+         * Called when a value stops overlapping the window.
+         *
+         * @param value
+         *            the value that exited the window
+         */
+        void exited(V value);
+    }
+
+    /**
+     * Moves the window to the specified interval, notifying the listener of
+     * every value that exited and then every value that entered the window.
+     *
+     * @param low
+     *            low portion of the new window
+     * @param high
+     *            high portion of the new window
+     * @param listener
+     *            the listener to notify of changes to the window's contents
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     */
+    void moveTo(long low, long high, Listener<? super V> listener);
+
+    /**
+     * Moves the window to the specified interval without reporting changes.
+     *
+     * @param low
+     *            low portion of the new window
+     * @param high
+     *            high portion of the new window
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     */
+    default void moveTo(long low, long high) {
+        moveTo(low, high, Listener.IGNORE);
+    }
+
+    /**
+     * Performs the given action for each value currently overlapping the
+     * window, in no particular order.
+     *
+     * @param action
+     *            the action to be performed for each value
+     */
+    void forEach(Consumer<? super V> action);
+
+    /**
+     * Returns the number of values currently overlapping the window.
+     *
+     * @return the number of values in the window
+     */
+    int size();
+
+    /**
+     * Creates a window cursor that requeries the specified cursor every time
+     * the window moves, for sets that cannot be swept incrementally.
+     * <p>
+     * Values are compared by identity to determine the changes to the window.
+     *
+     * @param cursor
+     *            the cursor to requery
+     * @param <V>
+     *            the type of values visited by the cursor
+     * @return a new {@link WindowCursor} backed by the specified cursor
+     */
+    static <V> WindowCursor<V> requerying(IntervalCursor<V> cursor) {
+        return new RequeryingWindowCursor<>(cursor);
+    }
+}
@@ -1,12 +1,13 @@
 package net.kreatious.pianoleopard.midi;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
 
 import javax.sound.midi.MidiDevice;
 import javax.sound.midi.MidiDevice.Info;
@@ -14,11 +15,13 @@ import javax.sound.midi.MidiMessage;
 import javax.sound.midi.MidiUnavailableException;
 import javax.sound.midi.Receiver;
 
-import net.kreatious.pianoleopard.intervalset.IntervalSet;
+import net.kreatious.pianoleopard.intervalset.ConcurrentIntervalSet;
 import net.kreatious.pianoleopard.midi.event.Event;
 import net.kreatious.pianoleopard.midi.event.EventFactory;
 import net.kreatious.pianoleopard.midi.event.EventPair;
 import net.kreatious.pianoleopard.midi.event.NoteEvent;
+import net.kreatious.pianoleopard.midi.event.PackedEvent;
+import net.kreatious.pianoleopard.midi.event.PackedPairingTable;
 import net.kreatious.pianoleopard.midi.event.PedalEvent;
 import net.kreatious.pianoleopard.midi.track.ParsedSequence;
 import net.kreatious.pianoleopard.midi.track.ParsedTrack;
@@ -32,13 +35,24 @@ public class InputModel implements AutoCloseable, ParsedTrack {
     private Optional<MidiDevice> input = Optional.empty();
     private final UserNoteRecorder userRecorder = new UserNoteRecorder();
 
-    private final IntervalSet<EventPair<NoteEvent>> notes = new IntervalSet<>();
-    private final IntervalSet<EventPair<PedalEvent>> pedals = new IntervalSet<>();
+    /**
+     * The amount of time in nanoseconds that played events are retained for.
+     * Older events are already recorded by the history log, so they are
+     * discarded. The horizon is measured by a monotonic clock rather than the
+     * song time, which does not advance while playback is stopped.
+     */
+    private static final long RECORDING_HORIZON = TimeUnit.MINUTES.toNanos(10);
+
+    private final ConcurrentIntervalSet<EventPair<NoteEvent>> notes;
+    private final ConcurrentIntervalSet<EventPair<PedalEvent>> pedals;
 
     private final List<Consumer<? super Info>> inputDeviceListeners = new CopyOnWriteArrayList<>();
     private final List<Consumer<? super Event>> inputListeners = new CopyOnWriteArrayList<>();
+    private final List<LongConsumer> packedInputListeners = new CopyOnWriteArrayList<>();
 
-    private InputModel(MidiDevice input) throws MidiUnavailableException {
+    private InputModel(MidiDevice input, LongSupplier clock) throws MidiUnavailableException {
+        notes = new ConcurrentIntervalSet<>(RECORDING_HORIZON, clock, InputModel::discard);
+        pedals = new ConcurrentIntervalSet<>(RECORDING_HORIZON, clock, InputModel::discard);
         setInputDevice(input);
     }
 
@@ -56,55 +70,108 @@ public class InputModel implements AutoCloseable, ParsedTrack {
      *             if the MIDI system is unavailable.
      */
     public static InputModel create(OutputModel outputModel) throws MidiUnavailableException {
-        final InputModel input = new InputModel(new InitialMidiDevice());
+        return create(outputModel, System::nanoTime);
+    }
+
+    /**
+     * Constructs a new {@link InputModel} that measures the recording horizon
+     * with the specified clock.
+     *
+     * @param outputModel
+     *            the output model to coordinate with
+     * @param clock
+     *            the monotonic clock in nanoseconds
+     * @return a new instance of {@link InputModel}
+     * @throws MidiUnavailableException
+     *             if the MIDI system is unavailable.
+     */
+    static InputModel create(OutputModel outputModel, LongSupplier clock) throws MidiUnavailableException {
+        final InputModel input = new InputModel(new InitialMidiDevice(), clock);
         outputModel.addOpenListener(input::setCurrentSequence);
         outputModel.addPlayListener(input.userRecorder::clear);
         outputModel.addCurrentTimeListener(input.userRecorder::setCurrentTime);
         return input;
     }
 
+    private static void discard(@SuppressWarnings("unused") EventPair<?> pair) {
+        // Intentionally empty; see RECORDING_HORIZON
+    }
+
     private void setCurrentSequence(@SuppressWarnings("unused") ParsedSequence sequence) {
         userRecorder.clear();
     }
 
+    /**
+     * Records the events played by the user.
+     * <p>
+     * Events are written by the MIDI input thread and read by the painting
+     * thread. Writers are serialized on this recorder, while readers never
+     * lock: the completed pairs are stored in a {@link ConcurrentIntervalSet}
+     * and the pressed events in {@link PackedPairingTable}s. A completed pair
+     * is added to its set before its on event is removed, and readers visit
+     * the pressed events before the set, so a pair being completed is never
+     * missed, although it may be visited twice.
+     * <p>
+     * Pressed events are kept as {@link PackedEvent}s. Event objects are only
+     * created for a pair once it is completed, and for the listeners added
+     * with {@link InputModel#addInputListener}.
+     */
     private final class UserNoteRecorder implements Receiver, ParsedTrack {
-        private final Map<Object, NoteEvent> onNotes = new HashMap<>();
-        private final Map<Object, PedalEvent> onPedals = new HashMap<>();
+        private final PackedPairingTable onNotes = new PackedPairingTable();
+        private final PackedPairingTable onPedals = new PackedPairingTable();
 
-        private long currentTime;
+        private volatile long currentTime;
 
-        private synchronized void setCurrentTime(long time) {
+        private void setCurrentTime(long time) {
             currentTime = time;
         }
 
         @Override
         public synchronized void send(MidiMessage message, long timeStamp) {
-            EventFactory.create(message, currentTime).ifPresent(this::userPressedEvent);
-        }
+            final long event = EventFactory.createPacked(message, currentTime);
+            if (event == PackedEvent.NONE) {
+                return;
+            }
+
+            if (PackedEvent.isNote(event)) {
+                userPressedEvent(event, onNotes, notes);
+            } else {
+                userPressedEvent(event, onPedals, pedals);
+            }
 
-        private void userPressedEvent(Event event) {
-            if (event instanceof NoteEvent) {
-                userPressedEvent((NoteEvent) event, onNotes, notes);
-            } else if (event instanceof PedalEvent) {
-                userPressedEvent((PedalEvent) event, onPedals, pedals);
+            if (!inputListeners.isEmpty()) {
+                final Event created = PackedEvent.toEvent(event);
+                inputListeners.forEach(listener -> listener.accept(created));
+            }
+            for (final LongConsumer listener : packedInputListeners) {
+                listener.accept(event);
             }
-            inputListeners.forEach(listener -> listener.accept(event));
         }
 
-        private <K extends Event> void userPressedEvent(K event, Map<Object, K> onEvents,
-                IntervalSet<EventPair<K>> fullEvents) {
-            synchronized (fullEvents) {
-                final long eventTime = event.getTime();
-                if (event.isOn()) {
-                    onEvents.put(event.getSlot(), event);
-                } else {
-                    Optional.ofNullable(onEvents.remove(event.getSlot())).ifPresent(onEvent -> {
-                        fullEvents.put(onEvent.getTime(), eventTime, new EventPair<>(onEvent, event));
-                    });
+        private <K extends Event> void userPressedEvent(long event, PackedPairingTable onEvents,
+                ConcurrentIntervalSet<EventPair<K>> fullEvents) {
+            if (PackedEvent.isOn(event) && PackedEvent.isNote(event)) {
+                onEvents.add(event);
+            } else if (PackedEvent.isOn(event)) {
+                onEvents.set(event);
+            } else {
+                final long onEvent = onEvents.peek(event);
+                if (onEvent != PackedEvent.NONE) {
+                    fullEvents.put(PackedEvent.getTime(onEvent), PackedEvent.getTime(event), toPair(onEvent, event));
+                    onEvents.poll(event);
                 }
             }
         }
 
+        private <K extends Event> EventPair<K> toPair(long on, long off) {
+            return new EventPair<>(toEvent(on), toEvent(off));
+        }
+
+        @SuppressWarnings("unchecked")
+        private <K extends Event> K toEvent(long event) {
+            return (K) PackedEvent.toEvent(event);
+        }
+
         @Override
         public Iterable<EventPair<NoteEvent>> getNotePairs(long low, long high) {
             return getPairs(low, high, onNotes, notes);
@@ -115,25 +182,52 @@ public class InputModel implements AutoCloseable, ParsedTrack {
             return getPairs(low, high, onPedals, pedals);
         }
 
-        private synchronized <K extends Event> Iterable<EventPair<K>> getPairs(long low, long high,
-                Map<Object, K> onEvents, IntervalSet<EventPair<K>> fullEvents) {
-            synchronized (fullEvents) {
-                final List<EventPair<K>> result = new ArrayList<>();
-                fullEvents.subSet(low, high).forEach(result::add);
-                onEvents.values().forEach(event -> result.add(new EventPair<>(event, event.createOff(currentTime))));
-                return result;
-            }
+        private <K extends Event> Iterable<EventPair<K>> getPairs(long low, long high, PackedPairingTable onEvents,
+                ConcurrentIntervalSet<EventPair<K>> fullEvents) {
+            final List<EventPair<K>> pressed = new ArrayList<>();
+            this.<K> forEachPressed(onEvents, pressed::add);
+
+            final List<EventPair<K>> result = new ArrayList<>();
+            fullEvents.forEachInRange(low, high, result::add);
+            result.addAll(pressed);
+            return result;
         }
 
-        void clear() {
-            synchronized (notes) {
-                notes.clear();
-                onNotes.clear();
-            }
-            synchronized (pedals) {
-                pedals.clear();
-                onPedals.clear();
-            }
+        @Override
+        public long countNotePairs(long low, long high) {
+            return onNotes.size() + notes.count(low, high);
+        }
+
+        @Override
+        public void forEachNotePair(long low, long high, Consumer<? super EventPair<NoteEvent>> action) {
+            forEachPair(low, high, onNotes, notes, action);
+        }
+
+        @Override
+        public void forEachPedalPair(long low, long high, Consumer<? super EventPair<PedalEvent>> action) {
+            forEachPair(low, high, onPedals, pedals, action);
+        }
+
+        private <K extends Event> void forEachPair(long low, long high, PackedPairingTable onEvents,
+                ConcurrentIntervalSet<EventPair<K>> fullEvents, Consumer<? super EventPair<K>> action) {
+            forEachPressed(onEvents, action);
+            fullEvents.forEachInRange(low, high, action);
+        }
+
+        private <K extends Event> void forEachPressed(PackedPairingTable onEvents,
+                Consumer<? super EventPair<K>> action) {
+            final long time = currentTime;
+            onEvents.forEach(on -> {
+                final K event = toEvent(on);
+                action.accept(new EventPair<>(event, event.createOff(time)));
+            });
+        }
+
+        synchronized void clear() {
+            notes.clear();
+            onNotes.clear();
+            pedals.clear();
+            onPedals.clear();
         }
 
         @Override
@@ -180,6 +274,17 @@ public class InputModel implements AutoCloseable, ParsedTrack {
         inputListeners.add(listener);
     }
 
+    /**
+     * Adds a listener to notify when the user has pressed a key, without
+     * creating an event object for it.
+     *
+     * @param listener
+     *            the listener to add, which receives {@link PackedEvent}s
+     */
+    public void addPackedInputListener(LongConsumer listener) {
+        packedInputListeners.add(listener);
+    }
+
     @Override
     public void close() {
         input.ifPresent(MidiDevice::close);
@@ -194,4 +299,19 @@ public class InputModel implements AutoCloseable, ParsedTrack {
     public Iterable<EventPair<PedalEvent>> getPedalPairs(long low, long high) {
         return userRecorder.getPedalPairs(low, high);
     }
+
+    @Override
+    public long countNotePairs(long low, long high) {
+        return userRecorder.countNotePairs(low, high);
+    }
+
+    @Override
+    public void forEachNotePair(long low, long high, Consumer<? super EventPair<NoteEvent>> action) {
+        userRecorder.forEachNotePair(low, high, action);
+    }
+
+    @Override
+    public void forEachPedalPair(long low, long high, Consumer<? super EventPair<PedalEvent>> action) {
+        userRecorder.forEachPedalPair(low, high, action);
+    }
 }
@@ -2,15 +2,15 @@ package net.kreatious.pianoleopard.midi;
 
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.Thread.State;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
-import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.LongConsumer;
 
@@ -18,20 +18,23 @@ import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiDevice;
 import javax.sound.midi.MidiDevice.Info;
 import javax.sound.midi.MidiMessage;
-import javax.sound.midi.MidiSystem;
 import javax.sound.midi.MidiUnavailableException;
 import javax.sound.midi.Receiver;
-import javax.sound.midi.Sequencer;
 import javax.sound.midi.ShortMessage;
 
-import net.kreatious.pianoleopard.midi.event.Event;
 import net.kreatious.pianoleopard.midi.event.EventFactory;
+import net.kreatious.pianoleopard.midi.event.PackedEvent;
 import net.kreatious.pianoleopard.midi.track.ParsedSequence;
+import net.kreatious.pianoleopard.midi.track.SequenceCache;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.ByteStreams;
 
 /**
- * Model for the MIDI output sequencer, allows controllers to listen for events.
+ * Model for the MIDI output sequence player, allows controllers to listen for events.
+ * <p>
+ * Opened files are played by a {@link SequencePlayer} directly from their
+ * parsed tracks.
  *
  * @author Jay-R Studer
  */
@@ -66,17 +69,42 @@ public class OutputModel implements AutoCloseable {
         UNHANDLED;
     }
 
+    /**
+     * Handles the MIDI messages sent by the player.
+     *
+     * @author Jay-R Studer
+     */
+    @FunctionalInterface
+    public interface EventHandler {
+        /**
+         * Determines the action to take for a MIDI message.
+         *
+         * @param message
+         *            the message about to be sent
+         * @param event
+         *            the {@link PackedEvent} decoded from the original message,
+         *            or {@link PackedEvent#NONE} if the message is not a
+         *            supported event type
+         * @return the action to take for the message
+         */
+        EventAction apply(MidiMessage message, long event);
+    }
+
     private static final long ALWAYS_SEND = -10;
-    private final Sequencer sequencer;
+    private final SequencePlayer player;
     private ParsedSequence sequence = ParsedSequence.createEmpty();
+    private volatile long openTime = System.nanoTime();
+    private volatile long timeToFirstFrame = -1;
     private Optional<MidiDevice> output = Optional.empty();
     private Optional<Receiver> receiver = Optional.empty();
+    private Optional<SequenceCache> cache = Optional.empty();
 
     private final List<Consumer<? super Info>> outputDeviceListeners = new CopyOnWriteArrayList<>();
     private final List<Consumer<? super ParsedSequence>> openListeners = new CopyOnWriteArrayList<>();
     private final List<Runnable> playListeners = new CopyOnWriteArrayList<>();
     private final List<LongConsumer> currentTimeListeners = new CopyOnWriteArrayList<>();
-    private final List<BiFunction<MidiMessage, Optional<Event>, EventAction>> eventHandlers = new CopyOnWriteArrayList<>();
+    private final List<LongConsumer> firstFrameListeners = new CopyOnWriteArrayList<>();
+    private final List<EventHandler> eventHandlers = new CopyOnWriteArrayList<>();
     private final List<Closeable> closeables = new CopyOnWriteArrayList<>();
 
     private final Thread tickThread = new Thread("output model current tick thread") {
@@ -84,7 +112,7 @@ public class OutputModel implements AutoCloseable {
         public void run() {
             try {
                 while (true) {
-                    currentTimeListeners.forEach(listener -> listener.accept(sequencer.getMicrosecondPosition()));
+                    currentTimeListeners.forEach(listener -> listener.accept(player.getMicrosecondPosition()));
                     Thread.sleep(TimeUnit.SECONDS.toMillis(1) / 120);
                 }
             } catch (final InterruptedException e) {
@@ -100,19 +128,21 @@ public class OutputModel implements AutoCloseable {
      * construction, it is expected that an output device will be set by the
      * consumer.
      *
-     * @param sequencerFactory
-     *            A factory for producing the {@link Sequencer}, such as
-     *            {@link SystemSequencerFactory}.
      * @throws MidiUnavailableException
      *             if the MIDI system is unavailable.
      */
-    public OutputModel(SequencerFactory sequencerFactory) throws MidiUnavailableException {
-        sequencer = sequencerFactory.getSequencer();
+    public OutputModel() throws MidiUnavailableException {
+        this(new SequencePlayer());
+    }
+
+    @VisibleForTesting
+    OutputModel(SequencePlayer player) throws MidiUnavailableException {
+        this.player = player;
         setOutputDevice(new InitialMidiDevice());
     }
 
     /**
-     * Reconnects the sequencer to a different MIDI output device.
+     * Reconnects the player to a different MIDI output device.
      *
      * @param output
      *            the new output MIDI device to reconnect to
@@ -120,21 +150,14 @@ public class OutputModel implements AutoCloseable {
      *             if the MIDI system is unavailable.
      */
     public synchronized void setOutputDevice(MidiDevice output) throws MidiUnavailableException {
-        try {
-            sequencer.close();
-            this.output.ifPresent(MidiDevice::close);
-            this.output = Optional.of(output);
-
-            output.open();
-            receiver = Optional.of(new MutingReceiverProxy(output.getReceiver()));
-            sequencer.getTransmitter().setReceiver(receiver.get());
-            sequencer.open();
-            sequencer.setSequence(sequence.getSequence());
-            outputDeviceListeners.forEach(listener -> listener.accept(output.getDeviceInfo()));
-        } catch (final InvalidMidiDataException e) {
-            // Sequence should still be valid since openMidiFile didn't throw
-            throw new IllegalStateException(e);
-        }
+        player.stop();
+        this.output.ifPresent(MidiDevice::close);
+        this.output = Optional.of(output);
+
+        output.open();
+        receiver = Optional.of(new MutingReceiverProxy(output.getReceiver()));
+        player.setReceiver(receiver.get());
+        outputDeviceListeners.forEach(listener -> listener.accept(output.getDeviceInfo()));
     }
 
     /**
@@ -144,11 +167,11 @@ public class OutputModel implements AutoCloseable {
      * sequence.
      */
     public void start() {
-        sequencer.stop();
-        sequencer.setMicrosecondPosition(0);
+        player.stop();
+        player.setMicrosecondPosition(0);
         resetReceiver();
         playListeners.forEach(Runnable::run);
-        sequencer.start();
+        player.start();
     }
 
     private class MutingReceiverProxy implements Receiver {
@@ -165,9 +188,16 @@ public class OutputModel implements AutoCloseable {
                 return;
             }
 
-            final Optional<Event> event = EventFactory.create(message, sequencer.getMicrosecondPosition());
-            if (eventHandlers.stream().map(eventHandler -> eventHandler.apply(message, event)).min(Enum::compareTo)
-                    .orElse(EventAction.UNHANDLED) != EventAction.MUTE) {
+            final long event = EventFactory.createPacked(message, player.getMicrosecondPosition());
+            EventAction action = EventAction.UNHANDLED;
+            for (final EventHandler eventHandler : eventHandlers) {
+                final EventAction result = eventHandler.apply(message, event);
+                if (result.compareTo(action) < 0) {
+                    action = result;
+                }
+            }
+
+            if (action != EventAction.MUTE) {
                 wrapped.send(message, timeStamp);
             }
         }
@@ -190,7 +220,7 @@ public class OutputModel implements AutoCloseable {
      *            the tempo factor to set
      */
     public void setTempoFactor(float factor) {
-        sequencer.setTempoFactor(factor);
+        player.setTempoFactor(factor);
     }
 
     /**
@@ -200,13 +230,7 @@ public class OutputModel implements AutoCloseable {
      *            the time in microseconds to seek to
      */
     public void setCurrentTime(long time) {
-        if (sequencer.isRunning()) {
-            sequencer.stop();
-            sequencer.setMicrosecondPosition(time);
-            sequencer.start();
-        } else {
-            sequencer.setMicrosecondPosition(time);
-        }
+        player.setMicrosecondPosition(time);
     }
 
     /**
@@ -221,30 +245,83 @@ public class OutputModel implements AutoCloseable {
      *             if an I/O error occurs
      */
     public void openMidiFile(File midi) throws IOException {
-        try (InputStream in = new FileInputStream(midi)) {
-            openMidiFile(in, Optional.of(midi));
+        openTime = System.nanoTime();
+        try {
+            open(cache.isPresent() ? cache.get().parse(midi) : ParsedSequence.parse(midi), Optional.of(midi));
+        } catch (final InvalidMidiDataException e) {
+            throw new IOException(e);
         }
     }
 
     @VisibleForTesting
     void openMidiFile(InputStream midiStream, Optional<File> midi) throws IOException {
+        openTime = System.nanoTime();
         try {
-            if (tickThread.getState() == State.NEW) {
-                tickThread.start();
-            }
-
-            sequence = ParsedSequence.parseByTracks(MidiSystem.getSequence(midiStream));
-            sequence.setFile(midi);
-            sequencer.stop();
-            sequencer.setSequence(sequence.getSequence());
-            sequencer.setMicrosecondPosition(0);
-            resetReceiver();
-            openListeners.forEach(listener -> listener.accept(sequence));
+            open(ParsedSequence.parse(ByteBuffer.wrap(ByteStreams.toByteArray(midiStream))), midi);
         } catch (final InvalidMidiDataException e) {
             throw new IOException(e);
         }
     }
 
+    private void open(ParsedSequence parsed, Optional<File> midi) {
+        if (tickThread.getState() == State.NEW) {
+            tickThread.start();
+        }
+
+        parsed.setFile(midi);
+        sequence = parsed;
+        timeToFirstFrame = -1;
+        player.setSequence(parsed);
+        resetReceiver();
+        openListeners.forEach(listener -> listener.accept(sequence));
+    }
+
+    /**
+     * Sets the cache used to skip parsing MIDI files that were opened before.
+     *
+     * @param cache
+     *            the {@link SequenceCache} to parse MIDI files with
+     */
+    public void setSequenceCache(SequenceCache cache) {
+        this.cache = Optional.of(cache);
+    }
+
+    /**
+     * Gets the length of the current sequence.
+     *
+     * @return the length of the current sequence in microseconds
+     */
+    public long getMicrosecondLength() {
+        return player.getMicrosecondLength();
+    }
+
+    /**
+     * Records that the first frame of the current sequence has been painted,
+     * and notifies the first frame listeners of the time taken since the file
+     * started opening. Later calls for the same sequence are ignored.
+     */
+    public void firstFramePainted() {
+        if (timeToFirstFrame != -1) {
+            return;
+        }
+
+        final long elapsed = System.nanoTime() - openTime;
+        timeToFirstFrame = elapsed;
+        firstFrameListeners.forEach(listener -> listener.accept(elapsed));
+    }
+
+    /**
+     * Gets the time taken from when the current MIDI file started opening
+     * until its first frame was painted.
+     *
+     * @return the time to the first frame in nanoseconds, or empty if the first
+     *         frame of the current sequence has not been painted yet
+     */
+    public OptionalLong getTimeToFirstFrame() {
+        final long result = timeToFirstFrame;
+        return result == -1 ? OptionalLong.empty() : OptionalLong.of(result);
+    }
+
     /**
      * Adds a listener to notify when the output device has changed.
      *
@@ -284,17 +361,28 @@ public class OutputModel implements AutoCloseable {
      * the event.
      * <p>
      * Event handlers are allowed to mutate the channel of the MidiMessage
-     * object before returning. The {@link Event} object contains the original
-     * message before any mutations are applied. Handlers are encouraged to use
-     * the Event object whenever possible.
+     * object before returning. The packed event contains the original message
+     * before any mutations are applied. Handlers are encouraged to use the
+     * packed event whenever possible.
      *
      * @param handler
      *            the event handler to add.
      */
-    public void addEventHandler(BiFunction<MidiMessage, Optional<Event>, EventAction> handler) {
+    public void addEventHandler(EventHandler handler) {
         eventHandlers.add(handler);
     }
 
+    /**
+     * Adds a listener to notify with the time in nanoseconds taken to paint
+     * the first frame of each opened MIDI file.
+     *
+     * @param listener
+     *            the listener to add
+     */
+    public void addFirstFrameListener(LongConsumer listener) {
+        firstFrameListeners.add(listener);
+    }
+
     /**
      * Adds a listener to notify when the current playback time in microseconds
      * has changed.
@@ -339,7 +427,7 @@ public class OutputModel implements AutoCloseable {
         tickThread.interrupt();
         tickThread.join();
 
-        sequencer.close();
+        player.close();
         resetReceiver();
         output.ifPresent(MidiDevice::close);
 
@@ -0,0 +1,388 @@
+package net.kreatious.pianoleopard.midi;
+
+import java.lang.Thread.State;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+import net.kreatious.pianoleopard.midi.track.ControlVisitor;
+import net.kreatious.pianoleopard.midi.track.NoteVisitor;
+import net.kreatious.pianoleopard.midi.track.ParsedSequence;
+import net.kreatious.pianoleopard.midi.track.ParsedTrack;
+
+/**
+ * Plays a parsed sequence to a receiver in real time, directly from the
+ * columns of its tracks.
+ * <p>
+ * Unlike a {@link javax.sound.midi.Sequencer}, no
+ * {@link javax.sound.midi.Sequence} is needed, so a file is never parsed a
+ * second time to play it. The messages of each chunk of the sequence are
+ * collected and sorted, then sent from a daemon thread as their time arrives.
+ * Only channel messages are played, since system exclusive and meta events
+ * are not kept by parsed tracks.
+ * <p>
+ * Stopping or seeking turns off every sounding note. Seeking also chases the
+ * latest controller, program and pitch bend values before the new position.
+ *
+ * @author Jay-R Studer
+ */
+class SequencePlayer implements AutoCloseable {
+    private static final long CHUNK = TimeUnit.MILLISECONDS.toMicros(100);
+    private static final int TIME_SHIFT = 26;
+
+    /**
+     * Messages at the same time are sent in order of rank, so that notes are
+     * released before they are struck again and programs change before the
+     * notes that use them.
+     */
+    private static final int OFF = 0;
+    private static final int CONTROL = 1;
+    private static final int ON = 2;
+    private static final int ZERO_LENGTH_OFF = 3;
+
+    private static final int CHASED_PER_CHANNEL = 130;
+    private static final int CHASED_PROGRAM = 128;
+    private static final int CHASED_PITCH_BEND = 129;
+
+    private final Thread thread = new Thread(this::play, "sequence player thread");
+    private final boolean[] sounding = new boolean[16 * 128];
+    private final int[] chased = new int[16 * CHASED_PER_CHANNEL];
+    private final ControlVisitor chaser = this::chase;
+    private ParsedSequence sequence = ParsedSequence.createEmpty();
+    private Optional<Receiver> receiver = Optional.empty();
+    private boolean running;
+    private long position;
+    private long positionNanos;
+    private long next;
+    private float tempoFactor = 1;
+    private int generation;
+
+    // Only accessed by the player thread
+    private final NoteVisitor noteCollector = this::collectNote;
+    private final ControlVisitor controlCollector = this::collectControl;
+    private long[] messages = new long[64];
+    private int count;
+    private long collectLow;
+    private long collectHigh;
+
+    /**
+     * Constructs a new {@link SequencePlayer} holding an empty sequence. The
+     * player thread is started by the first call to {@link #start()}.
+     */
+    SequencePlayer() {
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Sets the receiver that played messages are sent to.
+     *
+     * @param receiver
+     *            the receiver to send messages to
+     */
+    synchronized void setReceiver(Receiver receiver) {
+        this.receiver = Optional.of(receiver);
+    }
+
+    /**
+     * Stops playback and replaces the played sequence, positioned at its
+     * beginning.
+     *
+     * @param sequence
+     *            the parsed sequence to play
+     */
+    synchronized void setSequence(ParsedSequence sequence) {
+        stop();
+        this.sequence = sequence;
+        position = 0;
+        next = 0;
+        generation++;
+    }
+
+    /**
+     * Starts playback from the current position. Does nothing if the player
+     * is already running.
+     */
+    synchronized void start() {
+        if (running) {
+            return;
+        } else if (thread.getState() == State.NEW) {
+            thread.start();
+        }
+
+        running = true;
+        positionNanos = System.nanoTime();
+        next = position;
+        generation++;
+        notifyAll();
+    }
+
+    /**
+     * Stops playback at the current position and turns off every sounding
+     * note. Does nothing if the player is not running.
+     */
+    synchronized void stop() {
+        if (!running) {
+            return;
+        }
+
+        position = getMicrosecondPosition();
+        running = false;
+        generation++;
+        silence();
+        notifyAll();
+    }
+
+    /**
+     * Determines if the player is playing. The player stops by itself once
+     * it reaches the end of the sequence.
+     *
+     * @return true if the player is running, otherwise false
+     */
+    synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Gets the current position of the player in the sequence.
+     *
+     * @return the current position in microseconds
+     */
+    synchronized long getMicrosecondPosition() {
+        if (!running) {
+            return position;
+        }
+        final long elapsed = (long) ((System.nanoTime() - positionNanos) / 1000 * (double) tempoFactor);
+        return Math.min(position + elapsed, sequence.getMicrosecondLength());
+    }
+
+    /**
+     * Moves the player to the specified position, chasing the controller,
+     * program and pitch bend values in effect there. Playback continues from
+     * the new position if the player is running.
+     *
+     * @param time
+     *            the position to move to in microseconds
+     */
+    synchronized void setMicrosecondPosition(long time) {
+        silence();
+        position = Math.max(0, Math.min(time, sequence.getMicrosecondLength()));
+        positionNanos = System.nanoTime();
+        next = position;
+        generation++;
+        chase();
+        notifyAll();
+    }
+
+    /**
+     * Gets the length of the played sequence.
+     *
+     * @return the length of the sequence in microseconds
+     */
+    synchronized long getMicrosecondLength() {
+        return sequence.getMicrosecondLength();
+    }
+
+    /**
+     * Adjusts the speed of playback. Values higher than 1.0 are faster than
+     * normal, and values less than 1.0 are slower than normal.
+     *
+     * @param factor
+     *            the tempo factor to set
+     */
+    synchronized void setTempoFactor(float factor) {
+        position = getMicrosecondPosition();
+        positionNanos = System.nanoTime();
+        tempoFactor = factor;
+        notifyAll();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        stop();
+        thread.interrupt();
+        thread.join();
+    }
+
+    private void play() {
+        try {
+            while (true) {
+                final ParsedSequence played;
+                final long low;
+                final int current;
+                synchronized (this) {
+                    while (!running) {
+                        wait();
+                    }
+                    played = sequence;
+                    low = next;
+                    current = generation;
+                }
+
+                // Tracks that are still being indexed may block, so the lock is not held
+                collect(played, low, low + CHUNK);
+                synchronized (this) {
+                    send(low, current);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Collects the messages occurring within {@code [low, high)} from every
+     * track, sorted by time and rank.
+     */
+    private void collect(ParsedSequence played, long low, long high) {
+        count = 0;
+        collectLow = low;
+        collectHigh = high;
+        for (final ParsedTrack track : played.getTracks()) {
+            track.forEachNote(low, high - 1, noteCollector);
+            track.forEachControl(low, high - 1, controlCollector);
+        }
+        Arrays.sort(messages, 0, count);
+    }
+
+    private void collectNote(long onTime, long offTime, int key, int velocity, int channel) {
+        if (onTime >= collectLow && onTime < collectHigh) {
+            add(onTime, ON, ShortMessage.NOTE_ON | channel, key, velocity);
+        }
+        if (offTime >= collectLow && offTime < collectHigh) {
+            add(offTime, offTime == onTime ? ZERO_LENGTH_OFF : OFF, ShortMessage.NOTE_OFF | channel, key, 0);
+        }
+    }
+
+    private void collectControl(long time, int status, int data1, int data2) {
+        add(time, CONTROL, status, data1, data2);
+    }
+
+    private void add(long time, int rank, int status, int data1, int data2) {
+        if (count == messages.length) {
+            messages = Arrays.copyOf(messages, count * 2);
+        }
+        messages[count++] = time - collectLow << TIME_SHIFT | rank << 24 | status << 16 | data1 << 8 | data2;
+    }
+
+    /**
+     * Sends the collected messages as their time arrives, and advances to the
+     * next chunk. Returns early if playback was stopped or moved meanwhile.
+     */
+    private void send(long low, int current) throws InterruptedException {
+        for (int i = 0; i != count; i++) {
+            if (!await(low + (messages[i] >>> TIME_SHIFT), current)) {
+                return;
+            }
+            send((int) messages[i] & 0xFFFFFF);
+        }
+
+        final long length = sequence.getMicrosecondLength();
+        if (low + CHUNK <= length) {
+            next = low + CHUNK;
+        } else if (await(length, current)) {
+            stop();
+        }
+    }
+
+    /**
+     * Waits until playback reaches the specified time.
+     *
+     * @return true if the time was reached, or false if playback was stopped
+     *         or moved first
+     */
+    private boolean await(long time, int current) throws InterruptedException {
+        final long target = Math.min(time, sequence.getMicrosecondLength());
+        while (current == generation) {
+            final long remaining = target - getMicrosecondPosition();
+            if (remaining <= 0) {
+                return true;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, (long) (remaining * 1000 / (double) tempoFactor)));
+        }
+        return false;
+    }
+
+    private void send(int message) {
+        final int status = message >>> 16 & 0xFF;
+        final int data1 = message >>> 8 & 0x7F;
+        final int data2 = message & 0x7F;
+        final int command = status & 0xF0;
+        if (command == ShortMessage.NOTE_ON || command == ShortMessage.NOTE_OFF) {
+            sounding[(status & 0x0F) << 7 | data1] = command == ShortMessage.NOTE_ON && data2 != 0;
+        }
+
+        if (receiver.isPresent()) {
+            try {
+                receiver.get().send(new ShortMessage(status, data1, data2), -1);
+            } catch (final InvalidMidiDataException e) {
+                // Unreachable since every message is a channel message
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Turns off every sounding note.
+     */
+    private void silence() {
+        for (int i = 0; i != sounding.length; i++) {
+            if (sounding[i]) {
+                send((ShortMessage.NOTE_OFF | i >>> 7) << 16 | (i & 0x7F) << 8);
+            }
+        }
+    }
+
+    /**
+     * Sends the latest controller, program and pitch bend values of each
+     * channel occurring before the current position.
+     */
+    private void chase() {
+        if (position == 0) {
+            return;
+        }
+
+        Arrays.fill(chased, -1);
+        for (final ParsedTrack track : sequence.getTracks()) {
+            track.forEachControl(Long.MIN_VALUE, position - 1, chaser);
+        }
+
+        for (int channel = 0; channel != 16; channel++) {
+            final int base = channel * CHASED_PER_CHANNEL;
+            for (int controller = 0; controller != CHASED_PROGRAM; controller++) {
+                if (chased[base + controller] != -1) {
+                    send((ShortMessage.CONTROL_CHANGE | channel) << 16 | controller << 8 | chased[base + controller]);
+                }
+            }
+            if (chased[base + CHASED_PROGRAM] != -1) {
+                send((ShortMessage.PROGRAM_CHANGE | channel) << 16 | chased[base + CHASED_PROGRAM] << 8);
+            }
+            if (chased[base + CHASED_PITCH_BEND] != -1) {
+                send((ShortMessage.PITCH_BEND | channel) << 16 | chased[base + CHASED_PITCH_BEND]);
+            }
+        }
+    }
+
+    private void chase(long time, int status, int data1, int data2) {
+        final int base = (status & 0x0F) * CHASED_PER_CHANNEL;
+        switch (status & 0xF0) {
+        case ShortMessage.CONTROL_CHANGE:
+            // Channel mode messages are not chased
+            if (data1 < 120) {
+                chased[base + data1] = data2;
+            }
+            break;
+        case ShortMessage.PROGRAM_CHANGE:
+            chased[base + CHASED_PROGRAM] = data1;
+            break;
+        case ShortMessage.PITCH_BEND:
+            chased[base + CHASED_PITCH_BEND] = data1 << 8 | data2;
+            break;
+        default:
+            break;
+        }
+    }
+}
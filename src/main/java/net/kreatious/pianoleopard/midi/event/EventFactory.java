@@ -39,6 +39,28 @@ public class EventFactory {
         return create(message, time);
     }
 
+    /**
+     * Constructs a new immutable subclass of {@link Event} with the appropriate
+     * information, converting its timestamp with a cursor. Events should be
+     * provided in the order they occur in their track.
+     *
+     * @param event
+     *            the {@link MidiEvent} to create an event for
+     * @param cursor
+     *            the {@link TempoCache.Cursor} to convert timestamps with
+     * @return An optional containing a supported event type, otherwise an empty
+     *         optional.
+     */
+    public static Optional<Event> create(MidiEvent event, TempoCache.Cursor cursor) {
+        if (event.getMessage() instanceof ShortMessage == false) {
+            return Optional.empty();
+        }
+
+        final ShortMessage message = (ShortMessage) event.getMessage();
+        final long time = cursor.ticksToMicroseconds(event.getTick());
+        return create(message, time);
+    }
+
     /**
      * Constructs a new immutable subclass of {@link Event} with the appropriate
      * information.
@@ -58,12 +80,97 @@ public class EventFactory {
     }
 
     private static Optional<Event> create(ShortMessage message, long time) {
-        if (NoteEvent.canCreate(message)) {
-            return Optional.of(new NoteEvent(message, time));
-        } else if (PedalEvent.canCreate(message)) {
-            return Optional.of(new PedalEvent(message, time));
+        return create(message.getStatus(), message.getData1(), message.getData2(), time);
+    }
+
+    /**
+     * Constructs a new immutable subclass of {@link Event} from the raw bytes
+     * of a channel message, without requiring a {@link ShortMessage}.
+     *
+     * @param status
+     *            the status byte of the message, containing the command and
+     *            channel
+     * @param data1
+     *            the first data byte of the message
+     * @param data2
+     *            the second data byte of the message, or 0 if it has none
+     * @param time
+     *            the time in microseconds to create an event for
+     * @return An optional containing a supported event type, otherwise an empty
+     *         optional.
+     */
+    public static Optional<Event> create(int status, int data1, int data2, long time) {
+        final int command = status & 0xF0;
+        final int channel = status & 0x0F;
+        if (NoteEvent.canCreate(command, data1)) {
+            return Optional.of(new NoteEvent(command, channel, data1, data2, time));
+        } else if (PedalEvent.canCreate(command, data1)) {
+            return Optional.of(new PedalEvent(channel, data1, data2, time));
         } else {
             return Optional.empty();
         }
     }
+
+    /**
+     * Encodes a message into a {@link PackedEvent} without creating any
+     * objects.
+     *
+     * @param message
+     *            the {@link MidiMessage} to encode
+     * @param time
+     *            the time in microseconds to encode the event with
+     * @return the packed event if the message is a supported event type,
+     *         otherwise {@link PackedEvent#NONE}.
+     */
+    public static long createPacked(MidiMessage message, long time) {
+        if (message instanceof ShortMessage == false) {
+            return PackedEvent.NONE;
+        }
+
+        final ShortMessage shortMessage = (ShortMessage) message;
+        return createPacked(shortMessage.getStatus(), shortMessage.getData1(), shortMessage.getData2(), time);
+    }
+
+    /**
+     * Encodes the raw bytes of a channel message into a {@link PackedEvent}
+     * without creating any objects.
+     *
+     * @param status
+     *            the status byte of the message, containing the command and
+     *            channel
+     * @param data1
+     *            the first data byte of the message
+     * @param data2
+     *            the second data byte of the message, or 0 if it has none
+     * @param time
+     *            the time in microseconds to encode the event with
+     * @return the packed event if the message is a supported event type,
+     *         otherwise {@link PackedEvent#NONE}.
+     */
+    public static long createPacked(int status, int data1, int data2, long time) {
+        return PackedEvent.encode(status, data1, data2, time);
+    }
+
+    /**
+     * Constructs a new note event pair from the fields of a note.
+     * <p>
+     * The off event shares the slot of the on event, and has a velocity of
+     * 127.
+     *
+     * @param channel
+     *            the channel of the note between 0 and 15 inclusive
+     * @param key
+     *            the raw MIDI key (note) between 0 and 127 inclusive
+     * @param velocity
+     *            the velocity of the note on event, between 1 and 127 inclusive
+     * @param onTime
+     *            the time in microseconds that the note starts
+     * @param offTime
+     *            the time in microseconds that the note ends
+     * @return a new note {@link EventPair}
+     */
+    public static EventPair<NoteEvent> createNotePair(int channel, int key, int velocity, long onTime, long offTime) {
+        final NoteEvent on = new NoteEvent(ShortMessage.NOTE_ON, channel, key, velocity, onTime);
+        return new EventPair<>(on, on.createOff(offTime));
+    }
 }
@@ -28,7 +28,7 @@ public class EventPair<T extends Event> {
             throw new IllegalArgumentException("off (" + off + ") was on");
         } else if (on.getChannel() != off.getChannel()) {
             throw new IllegalArgumentException("on (" + on + ") is not on the same channel as off (" + off + ")");
-        } else if (!on.getSlot().equals(off.getSlot())) {
+        } else if (on.getSlot() != off.getSlot()) {
             throw new IllegalArgumentException("on (" + on + ") is not on the same slot as off (" + off + ")");
         } else if (on.getTime() > off.getTime()) {
             this.on = on;
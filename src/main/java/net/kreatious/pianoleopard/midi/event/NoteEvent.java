@@ -12,7 +12,7 @@ public class NoteEvent extends Event {
     private final int key;
     private final int velocity;
     private final boolean on;
-    private transient Slot slot;
+    private final Slot slot;
 
     /**
      * Array of flags indicating if a raw MIDI key (note) modulus 12 is sharp or
@@ -47,24 +47,24 @@ public class NoteEvent extends Event {
         this.key = key;
         this.on = on;
         velocity = 127;
-        slot = new Slot(getChannel(), key);
+        slot = Slot.of(getChannel(), key);
     }
 
-    NoteEvent(ShortMessage message, long time) {
-        super(message, time);
+    NoteEvent(int command, int channel, int data1, int data2, long time) {
+        super(channel, time);
 
-        key = message.getData1();
-        velocity = message.getData2();
-        slot = new Slot(message.getChannel(), key);
+        key = data1;
+        velocity = data2;
+        slot = Slot.of(channel, key);
 
-        if (message.getCommand() == ShortMessage.NOTE_OFF) {
+        if (command == ShortMessage.NOTE_OFF) {
             on = false;
         } else if (velocity == 0) {
             on = false;
-        } else if (message.getCommand() == ShortMessage.NOTE_ON) {
+        } else if (command == ShortMessage.NOTE_ON) {
             on = true;
         } else {
-            throw new IllegalArgumentException("message " + message.getCommand() + " is not a note on/off message");
+            throw new IllegalArgumentException("message " + command + " is not a note on/off message");
         }
     }
 
@@ -76,8 +76,8 @@ public class NoteEvent extends Event {
         this.slot = slot;
     }
 
-    static boolean canCreate(ShortMessage message) {
-        return message.getCommand() == ShortMessage.NOTE_OFF || message.getCommand() == ShortMessage.NOTE_ON;
+    static boolean canCreate(int command, int data1) {
+        return (command == ShortMessage.NOTE_OFF || command == ShortMessage.NOTE_ON) && data1 < 128;
     }
 
     /**
@@ -109,6 +109,18 @@ public class NoteEvent extends Event {
      *         otherwise.
      */
     public boolean isSharp() {
+        return isSharp(key);
+    }
+
+    /**
+     * Returns if the specified key is considered sharp or not.
+     *
+     * @param key
+     *            the raw MIDI key (note) number, between 0 and 127 inclusive
+     * @return {@code true} if the key is a sharp note, {@code false}
+     *         otherwise.
+     */
+    public static boolean isSharp(int key) {
         return SHARP_KEYS[key % 12];
     }
 
@@ -0,0 +1,222 @@
+package net.kreatious.pianoleopard.midi.event;
+
+import javax.sound.midi.ShortMessage;
+
+/**
+ * Encodes note and pedal events into a single {@code long}, allowing events to
+ * be passed through hot paths and stored in primitive arrays without creating
+ * any objects.
+ * <p>
+ * The bits of a packed event are laid out as follows, from least to most
+ * significant:
+ * <ul>
+ * <li>7 bits for the raw MIDI key of a note, or the ordinal of a pedal
+ * <li>7 bits for the velocity of a note, or the data2 value of a pedal
+ * <li>4 bits for the channel
+ * <li>1 bit that is set for on events
+ * <li>1 bit that is set for pedal events
+ * <li>1 bit that is always set, so that no event is equal to {@link #NONE}
+ * <li>43 bits for the signed time in microseconds, which covers about 50 days
+ * </ul>
+ *
+ * @author Jay-R Studer
+ */
+public class PackedEvent {
+    /**
+     * The packed value representing the absence of an event, analogous to an
+     * empty {@link java.util.Optional Optional}.
+     */
+    public static final long NONE = 0;
+
+    private static final int VELOCITY_SHIFT = 7;
+    private static final int CHANNEL_SHIFT = 14;
+    private static final long ON = 1L << 18;
+    private static final long PEDAL = 1L << 19;
+    private static final long PRESENT = 1L << 20;
+    private static final int TIME_SHIFT = 21;
+
+    private static final Pedal[] PEDALS = Pedal.values();
+
+    /**
+     * Private constructor to prevent instantiation by external consumers
+     */
+    private PackedEvent() {
+    }
+
+    /**
+     * Encodes a note on or off event.
+     *
+     * @param channel
+     *            the channel of the note between 0 and 15 inclusive
+     * @param key
+     *            the raw MIDI key (note) between 0 and 127 inclusive
+     * @param velocity
+     *            the velocity of the note between 0 and 127 inclusive
+     * @param on
+     *            {@code true} if this is a note on event, otherwise
+     *            {@code false}
+     * @param time
+     *            the time that this event occurs, in microseconds
+     * @return the packed event
+     */
+    public static long encodeNote(int channel, int key, int velocity, boolean on, long time) {
+        return encode(channel, key, velocity, on, time);
+    }
+
+    /**
+     * Encodes a pedal event.
+     *
+     * @param channel
+     *            the channel of the pedal between 0 and 15 inclusive
+     * @param pedal
+     *            the pedal
+     * @param on
+     *            {@code true} if the pedal is pressed, otherwise {@code false}
+     * @param time
+     *            the time that this event occurs, in microseconds
+     * @return the packed event
+     */
+    public static long encodePedal(int channel, Pedal pedal, boolean on, long time) {
+        return encode(channel, pedal.ordinal(), on ? 127 : 0, on, time) | PEDAL;
+    }
+
+    private static long encode(int channel, int data1, int data2, boolean on, long time) {
+        return time << TIME_SHIFT | PRESENT | (on ? ON : 0) | (long) channel << CHANNEL_SHIFT
+                | (data2 & 0x7F) << VELOCITY_SHIFT | data1 & 0x7F;
+    }
+
+    /**
+     * Encodes the raw bytes of a channel message, as done by
+     * {@link EventFactory#createPacked(int, int, int, long)}.
+     */
+    static long encode(int status, int data1, int data2, long time) {
+        final int command = status & 0xF0;
+        final int channel = status & 0x0F;
+        if (NoteEvent.canCreate(command, data1)) {
+            return encode(channel, data1, data2, command == ShortMessage.NOTE_ON && data2 != 0, time);
+        } else if (PedalEvent.canCreate(command, data1)) {
+            return encode(channel, Pedal.get(data1).ordinal(), data2, data2 >= 64, time) | PEDAL;
+        } else {
+            return NONE;
+        }
+    }
+
+    /**
+     * Gets the time in microseconds at which a packed event occurs.
+     *
+     * @param event
+     *            the packed event
+     * @return the time in microseconds when the event occurs
+     */
+    public static long getTime(long event) {
+        return event >> TIME_SHIFT;
+    }
+
+    /**
+     * Gets the channel on which a packed event occurs.
+     *
+     * @param event
+     *            the packed event
+     * @return the channel between 0 and 15 inclusive
+     */
+    public static int getChannel(long event) {
+        return (int) (event >>> CHANNEL_SHIFT) & 0x0F;
+    }
+
+    /**
+     * Gets if a packed event is an on event, as defined by
+     * {@link Event#isOn()}.
+     *
+     * @param event
+     *            the packed event
+     * @return true if the event marks the start of an interval, false
+     *         otherwise
+     */
+    public static boolean isOn(long event) {
+        return (event & ON) != 0;
+    }
+
+    /**
+     * Gets if a packed event is a note event.
+     *
+     * @param event
+     *            the packed event
+     * @return true if the event is a note event, false if it is a pedal event
+     *         or {@link #NONE}
+     */
+    public static boolean isNote(long event) {
+        return (event & (PRESENT | PEDAL)) == PRESENT;
+    }
+
+    /**
+     * Gets if a packed event is a pedal event.
+     *
+     * @param event
+     *            the packed event
+     * @return true if the event is a pedal event, otherwise false
+     */
+    public static boolean isPedal(long event) {
+        return (event & PEDAL) != 0;
+    }
+
+    /**
+     * Gets the raw MIDI key of a packed note event.
+     *
+     * @param event
+     *            the packed note event
+     * @return the key between 0 and 127 inclusive
+     */
+    public static int getKey(long event) {
+        return (int) event & 0x7F;
+    }
+
+    /**
+     * Gets the velocity of a packed note event.
+     *
+     * @param event
+     *            the packed note event
+     * @return the velocity between 0 and 127 inclusive
+     */
+    public static int getVelocity(long event) {
+        return (int) (event >>> VELOCITY_SHIFT) & 0x7F;
+    }
+
+    /**
+     * Gets the pedal of a packed pedal event.
+     *
+     * @param event
+     *            the packed pedal event
+     * @return the pedal associated with the event
+     */
+    public static Pedal getPedal(long event) {
+        return PEDALS[(int) event & 0x7F];
+    }
+
+    /**
+     * Gets the interned slot of a packed event, as defined by
+     * {@link Event#getSlot()}.
+     *
+     * @param event
+     *            the packed event
+     * @return the slot of the event
+     */
+    public static Slot getSlot(long event) {
+        return isPedal(event) ? Slot.of(getChannel(event), getPedal(event)) : Slot.of(getChannel(event),
+                getKey(event));
+    }
+
+    /**
+     * Creates an event object from a packed event.
+     *
+     * @param event
+     *            the packed event, which must not be {@link #NONE}
+     * @return a new {@link NoteEvent} or {@link PedalEvent}
+     */
+    public static Event toEvent(long event) {
+        if (isPedal(event)) {
+            return new PedalEvent(getChannel(event), getTime(event), getPedal(event), isOn(event));
+        }
+        return new NoteEvent(isOn(event) ? ShortMessage.NOTE_ON : ShortMessage.NOTE_OFF, getChannel(event),
+                getKey(event), getVelocity(event), getTime(event));
+    }
+}
@@ -0,0 +1,162 @@
+package net.kreatious.pianoleopard.midi.event;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongConsumer;
+
+/**
+ * Holds the {@link PackedEvent}s waiting to be paired with an off event, in
+ * the same way as {@link PairingTable} but without creating event objects.
+ * <p>
+ * A slot holding a single on event stores it in a primitive array, so queuing
+ * it does not allocate. Overlapping notes on the same key are queued in an
+ * array that takes precedence over the single event. Queues are limited to
+ * {@link PairingTable#CAPACITY} events, after which the oldest event is
+ * discarded.
+ * <p>
+ * This table may be modified by a single thread at a time. Other threads may
+ * read it concurrently without locking, and always observe a queue as it was
+ * before or after each modification.
+ *
+ * @author Jay-R Studer
+ */
+public class PackedPairingTable {
+    /**
+     * The single on event held by each slot, or {@link PackedEvent#NONE}.
+     * Ignored while the slot holds a queue.
+     */
+    private final AtomicLongArray single = new AtomicLongArray(Slot.COUNT);
+
+    /**
+     * Each element is null, or an array of at least two events that is never
+     * modified once stored. Readers check the queue before the single event,
+     * so the single event is always written first.
+     */
+    private final AtomicReferenceArray<long[]> queues = new AtomicReferenceArray<>(Slot.COUNT);
+
+    /**
+     * Adds an on event to the back of the queue for its slot.
+     *
+     * @param on
+     *            the packed on event to add
+     */
+    public void add(long on) {
+        final int index = PackedEvent.getSlot(on).getIndex();
+        final long[] queue = queues.get(index);
+        if (queue != null) {
+            final int from = queue.length == PairingTable.CAPACITY ? 1 : 0;
+            final long[] result = Arrays.copyOfRange(queue, from, queue.length + 1);
+            result[result.length - 1] = on;
+            queues.lazySet(index, result);
+        } else if (single.get(index) != PackedEvent.NONE) {
+            queues.lazySet(index, new long[] { single.get(index), on });
+        } else {
+            single.lazySet(index, on);
+        }
+    }
+
+    /**
+     * Replaces every on event held for the slot of an event with the
+     * specified event.
+     *
+     * @param on
+     *            the packed on event to hold
+     */
+    public void set(long on) {
+        final int index = PackedEvent.getSlot(on).getIndex();
+        single.lazySet(index, on);
+        queues.lazySet(index, null);
+    }
+
+    /**
+     * Gets the oldest on event held for the slot of an event without removing
+     * it.
+     *
+     * @param event
+     *            a packed event in the slot to get the on event for
+     * @return the oldest on event held for the slot, or
+     *         {@link PackedEvent#NONE} if there are none
+     */
+    public long peek(long event) {
+        final int index = PackedEvent.getSlot(event).getIndex();
+        final long[] queue = queues.get(index);
+        return queue != null ? queue[0] : single.get(index);
+    }
+
+    /**
+     * Removes the oldest on event held for the slot of an event.
+     *
+     * @param event
+     *            a packed event in the slot to remove the on event for
+     * @return the removed on event, or {@link PackedEvent#NONE} if there were
+     *         none
+     */
+    public long poll(long event) {
+        final int index = PackedEvent.getSlot(event).getIndex();
+        final long[] queue = queues.get(index);
+        if (queue == null) {
+            final long result = single.get(index);
+            single.lazySet(index, PackedEvent.NONE);
+            return result;
+        } else if (queue.length == 2) {
+            single.lazySet(index, queue[1]);
+            queues.lazySet(index, null);
+        } else {
+            queues.lazySet(index, Arrays.copyOfRange(queue, 1, queue.length));
+        }
+        return queue[0];
+    }
+
+    /**
+     * Performs the given action for each on event held by this table, ordered
+     * by slot and then from oldest to newest.
+     *
+     * @param action
+     *            the action to be performed for each packed on event
+     */
+    public void forEach(LongConsumer action) {
+        for (int i = 0; i != Slot.COUNT; i++) {
+            final long[] queue = queues.get(i);
+            if (queue != null) {
+                for (final long event : queue) {
+                    action.accept(event);
+                }
+            } else {
+                final long event = single.get(i);
+                if (event != PackedEvent.NONE) {
+                    action.accept(event);
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the on events held by this table without allocating any
+     * objects.
+     *
+     * @return the number of on events held by this table
+     */
+    public int size() {
+        int result = 0;
+        for (int i = 0; i != Slot.COUNT; i++) {
+            final long[] queue = queues.get(i);
+            if (queue != null) {
+                result += queue.length;
+            } else if (single.get(i) != PackedEvent.NONE) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes every on event held by this table.
+     */
+    public void clear() {
+        for (int i = 0; i != Slot.COUNT; i++) {
+            single.lazySet(i, PackedEvent.NONE);
+            queues.lazySet(i, null);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package net.kreatious.pianoleopard.midi.event;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Holds the on events waiting to be paired with an off event, in an array
+ * indexed by {@link Slot#getIndex()} instead of a hash map.
+ * <p>
+ * Each slot holds a small first in, first out queue, so that overlapping notes
+ * on the same key are each paired with their own off event. A slot holding a
+ * single on event stores the event directly, so queuing it does not allocate.
+ * Queues are limited to {@link #CAPACITY} events, after which the oldest event
+ * is discarded.
+ * <p>
+ * This table pairs the events of a track while it is parsed, and is not
+ * thread safe. Events received while playing are paired by
+ * {@link PackedPairingTable} instead.
+ *
+ * @author Jay-R Studer
+ * @param <K>
+ *            the type of event held by this table
+ */
+public class PairingTable<K extends Event> {
+    /**
+     * The maximum number of on events held by each slot.
+     */
+    public static final int CAPACITY = 16;
+
+    /**
+     * Each element is null, a single event, or an array of at least two
+     * events.
+     */
+    private final Object[] pending = new Object[Slot.COUNT];
+
+    /**
+     * Adds an on event to the back of the queue for its slot.
+     *
+     * @param on
+     *            the on event to add
+     */
+    public void add(K on) {
+        final int index = on.getSlot().getIndex();
+        final Object current = pending[index];
+        if (current == null) {
+            pending[index] = on;
+        } else if (current instanceof Event) {
+            pending[index] = new Object[] { current, on };
+        } else {
+            final Object[] queue = (Object[]) current;
+            final int from = queue.length == CAPACITY ? 1 : 0;
+            final Object[] result = Arrays.copyOfRange(queue, from, queue.length + 1);
+            result[result.length - 1] = on;
+            pending[index] = result;
+        }
+    }
+
+    /**
+     * Replaces every on event held for the slot of an event with the
+     * specified event.
+     *
+     * @param on
+     *            the on event to hold
+     */
+    public void set(K on) {
+        pending[on.getSlot().getIndex()] = on;
+    }
+
+    /**
+     * Removes the oldest on event held for a slot.
+     *
+     * @param slot
+     *            the slot to remove the event for
+     * @return the removed on event, or empty if there were none
+     */
+    public Optional<K> poll(Slot slot) {
+        final int index = slot.getIndex();
+        final Object current = pending[index];
+        if (current instanceof Object[]) {
+            final Object[] queue = (Object[]) current;
+            pending[index] = queue.length == 2 ? queue[1] : Arrays.copyOfRange(queue, 1, queue.length);
+        } else {
+            pending[index] = null;
+        }
+        return Optional.ofNullable(first(current));
+    }
+
+    /**
+     * Gets the time of the earliest on event held by this table.
+     *
+     * @return the earliest time in microseconds of a held on event, or
+     *         {@link Long#MAX_VALUE} if no events are held
+     */
+    public long getEarliestTime() {
+        long result = Long.MAX_VALUE;
+        for (final Object current : pending) {
+            if (current != null) {
+                result = Math.min(result, first(current).getTime());
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private K first(Object current) {
+        return (K) (current instanceof Object[] ? ((Object[]) current)[0] : current);
+    }
+}
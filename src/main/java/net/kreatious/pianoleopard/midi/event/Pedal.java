@@ -1,6 +1,7 @@
 package net.kreatious.pianoleopard.midi.event;
 
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Represents the various foot pedal
@@ -39,6 +40,14 @@ public enum Pedal {
      */
     SOFT(67);
 
+    /**
+     * The pedals indexed by their MIDI data value minus 64, as returned by
+     * {@link #lookup(int)}.
+     */
+    private static final Pedal[] PEDALS = { SUSTAIN, PORTAMENTO, SOSTENUTO, SOFT };
+    @SuppressWarnings("unchecked")
+    private static final Optional<Pedal>[] LOOKUP = Stream.of(PEDALS).map(Optional::of).toArray(Optional[]::new);
+
     private final int data;
 
     private Pedal(int data) {
@@ -63,17 +72,18 @@ public enum Pedal {
      *         empty
      */
     public static Optional<Pedal> lookup(int data) {
-        switch (data) {
-        case 64:
-            return Optional.of(SUSTAIN);
-        case 65:
-            return Optional.of(PORTAMENTO);
-        case 66:
-            return Optional.of(SOSTENUTO);
-        case 67:
-            return Optional.of(SOFT);
-        default:
-            return Optional.empty();
-        }
+        return data >= 64 && data < 64 + LOOKUP.length ? LOOKUP[data - 64] : Optional.empty();
+    }
+
+    /**
+     * Determines the pedal associated with a MIDI data value without
+     * allocating.
+     *
+     * @param data
+     *            the MIDI data1 value associated with a control change message
+     * @return the pedal associated with the data, or null
+     */
+    static Pedal get(int data) {
+        return data >= 64 && data < 64 + PEDALS.length ? PEDALS[data - 64] : null;
     }
 }
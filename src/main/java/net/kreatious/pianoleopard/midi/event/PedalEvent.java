@@ -12,14 +12,20 @@ public class PedalEvent extends Event {
     private final boolean on;
     private final Slot slot;
 
-    PedalEvent(ShortMessage message, long time) {
-        super(message, time);
+    PedalEvent(int channel, int data1, int data2, long time) {
+        super(channel, time);
+
+        pedal = Pedal.get(data1);
+        if (pedal == null) {
+            throw new IllegalArgumentException(data1 + " is not a pedal message");
+        }
 
-        pedal = Pedal.lookup(message.getData1()).orElseThrow(
-                () -> new IllegalArgumentException(message.getData1() + " is not a pedal message"));
+        on = data2 >= 64;
+        slot = Slot.of(channel, pedal);
+    }
 
-        on = message.getData2() >= 64;
-        slot = new Slot(message.getChannel(), pedal);
+    PedalEvent(int channel, long time, Pedal pedal, boolean on) {
+        this(channel, time, pedal, on, Slot.of(channel, pedal));
     }
 
     private PedalEvent(int channel, long time, Pedal pedal, boolean on, Slot slot) {
@@ -29,9 +35,8 @@ public class PedalEvent extends Event {
         this.slot = slot;
     }
 
-    static boolean canCreate(ShortMessage message) {
-        return message.getCommand() == ShortMessage.CONTROL_CHANGE && message.getData1() >= 64
-                && message.getData1() <= 67;
+    static boolean canCreate(int command, int data1) {
+        return command == ShortMessage.CONTROL_CHANGE && data1 >= 64 && data1 <= 67;
     }
 
     /**
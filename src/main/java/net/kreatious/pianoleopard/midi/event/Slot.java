@@ -4,34 +4,87 @@ package net.kreatious.pianoleopard.midi.event;
  * Represents a slot that uniquely identifies which interval events within the
  * same channel belong to. Intended to be used as a key for maps.
  * <p>
- * A slot contains a channel and a key.
+ * A slot contains a channel and a key. Slots are interned, so there is exactly
+ * one instance for each channel and key, and two slots are equal only if they
+ * are the same instance.
  *
  * @author Jay-R Studer
  */
 public class Slot {
-    private final int channel;
+    /**
+     * The number of slots within each channel, one for each MIDI key followed
+     * by one for each pedal.
+     */
+    private static final int SLOTS_PER_CHANNEL = 128 + Pedal.values().length;
+
+    /**
+     * The total number of distinct slots.
+     */
+    public static final int COUNT = 16 * SLOTS_PER_CHANNEL;
+
+    private static final Slot[] SLOTS = new Slot[COUNT];
+
+    static {
+        for (int channel = 0; channel != 16; channel++) {
+            for (int key = 0; key != 128; key++) {
+                final int index = channel * SLOTS_PER_CHANNEL + key;
+                SLOTS[index] = new Slot(index, key);
+            }
+            for (final Pedal pedal : Pedal.values()) {
+                final int index = channel * SLOTS_PER_CHANNEL + 128 + pedal.ordinal();
+                SLOTS[index] = new Slot(index, pedal);
+            }
+        }
+    }
+
+    private final int index;
     private final Object key;
 
-    Slot(int channel, Object key) {
-        this.channel = channel;
+    private Slot(int index, Object key) {
+        this.index = index;
         this.key = key;
     }
 
-    @Override
-    public boolean equals(Object obj) {
-        if (obj == this) {
-            return true;
-        }
-        if (!(obj instanceof Slot)) {
-            return false;
-        }
-        final Slot other = (Slot) obj;
-        return channel == other.channel && key.equals(other.key);
+    /**
+     * Returns the slot of a note.
+     *
+     * @param channel
+     *            the channel between 0 and 15 inclusive
+     * @param key
+     *            the raw MIDI key (note) between 0 and 127 inclusive
+     * @return the interned slot for the note
+     */
+    static Slot of(int channel, int key) {
+        return SLOTS[channel * SLOTS_PER_CHANNEL + key];
+    }
+
+    /**
+     * Returns the slot of a pedal.
+     *
+     * @param channel
+     *            the channel between 0 and 15 inclusive
+     * @param pedal
+     *            the pedal
+     * @return the interned slot for the pedal
+     */
+    static Slot of(int channel, Pedal pedal) {
+        return SLOTS[channel * SLOTS_PER_CHANNEL + 128 + pedal.ordinal()];
+    }
+
+    /**
+     * Returns a dense index for this slot, suitable for indexing arrays of
+     * length {@link #COUNT} instead of hashing.
+     *
+     * @return the index of this slot, between 0 inclusive and {@link #COUNT}
+     *         exclusive
+     */
+    public int getIndex() {
+        return index;
     }
 
     @Override
     public int hashCode() {
-        return 31 * channel + key.hashCode();
+        return index;
     }
 
     @Override
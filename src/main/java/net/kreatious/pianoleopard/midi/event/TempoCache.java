@@ -1,6 +1,5 @@
 package net.kreatious.pianoleopard.midi.event;
 
-import static java.util.stream.Collectors.collectingAndThen;
 import static java.util.stream.Collectors.toMap;
 
 import java.nio.ByteBuffer;
@@ -20,7 +19,12 @@ import javax.sound.midi.Sequence;
 import com.google.common.annotations.VisibleForTesting;
 
 /**
- * Maps from MIDI ticks to microseconds.
+ * Maps between MIDI ticks and microseconds.
+ * <p>
+ * The tempo map is stored as sorted primitive arrays of the ticks at which
+ * each tempo starts, the tempo, and the elapsed microseconds at that tick.
+ * Conversions binary search these arrays, and a {@link Cursor} converts
+ * increasing ticks in amortized constant time.
  * <p>
  * This class is intended to be used only by the midi package and its
  * subpackages.
@@ -30,8 +34,43 @@ import com.google.common.annotations.VisibleForTesting;
 public class TempoCache {
     private final int resolution;
 
-    private final NavigableMap<Long, Integer> tempos;
-    private final NavigableMap<Long, Long> microseconds = new TreeMap<>();
+    private final long[] ticks;
+    private final int[] tempos;
+    private final long[] microseconds;
+
+    /**
+     * Converts increasing MIDI ticks into microseconds, such as the ticks of
+     * the events of a single track. Each conversion resumes from the tempo of
+     * the previous conversion, so converting a track costs O(n + t) time for
+     * n events and t tempo changes instead of O(n log t).
+     * <p>
+     * Decreasing ticks are also converted correctly, at the cost of a binary
+     * search. Cursors are not thread safe.
+     */
+    public class Cursor {
+        private int segment;
+
+        private Cursor() {
+        }
+
+        /**
+         * Converts a MIDI tick into elapsed microseconds
+         *
+         * @param tick
+         *            the MIDI tick to convert into microseconds
+         * @return the corresponding number of microseconds
+         */
+        public long ticksToMicroseconds(long tick) {
+            if (tick < ticks[segment]) {
+                segment = findSegment(ticks, tick);
+            } else {
+                while (segment + 1 != ticks.length && ticks[segment + 1] <= tick) {
+                    segment++;
+                }
+            }
+            return convertTicks(segment, tick);
+        }
+    }
 
     /**
      * Constructs a new TempoCache with the specified MIDI Sequence
@@ -40,42 +79,65 @@ public class TempoCache {
      *            the {@link Sequence} to build a tempo cache for
      */
     public TempoCache(Sequence sequence) {
-        resolution = sequence.getResolution();
+        this(sequence.getDivisionType(), sequence.getResolution(),
+                sequence.getDivisionType() == Sequence.PPQ ? extractTempos(sequence) : Collections.emptyMap());
+    }
 
-        if (sequence.getDivisionType() != Sequence.PPQ) {
+    /**
+     * Constructs a new TempoCache with the specified timing information, for
+     * callers that decode MIDI files without creating a {@link Sequence}.
+     *
+     * @param divisionType
+     *            the timing division type, as defined by {@link Sequence}
+     * @param resolution
+     *            the timing resolution, as defined by {@link Sequence}
+     * @param tempos
+     *            the set tempo messages in microseconds per quarter note, keyed
+     *            by ticks. Ignored for SMPTE division types.
+     */
+    public TempoCache(float divisionType, int resolution, Map<Long, Integer> tempos) {
+        this.resolution = resolution;
+
+        if (divisionType != Sequence.PPQ) {
             // SMPTE time divisions are constant throughout
-            tempos = new TreeMap<>(Collections.singletonMap(Long.MIN_VALUE,
-                    (int) (TimeUnit.SECONDS.toMicros(1) / sequence.getDivisionType())));
-            microseconds.put(0L, 0L);
+            ticks = new long[] { 0 };
+            this.tempos = new int[] { (int) (TimeUnit.SECONDS.toMicros(1) / divisionType) };
+            microseconds = new long[] { 0 };
             return;
         }
 
-        // Get set tempo messages in micros per quarter note, keyed by ticks
-        tempos = Stream
-                .of(sequence.getTracks())
-                .limit(1)
+        // The default unspecified PPQ tempo is 0.5s per quarter note
+        final NavigableMap<Long, Integer> sorted = new TreeMap<>(tempos);
+        sorted.putIfAbsent(0L, 500000);
+
+        ticks = new long[sorted.size()];
+        this.tempos = new int[sorted.size()];
+        microseconds = new long[sorted.size()];
+
+        // Cache the total elapsed microsecond durations at each tempo change
+        int segment = 0;
+        for (final Entry<Long, Integer> tempo : sorted.entrySet()) {
+            ticks[segment] = tempo.getKey();
+            this.tempos[segment] = tempo.getValue();
+            if (segment != 0) {
+                microseconds[segment] = convertTicks(segment - 1, tempo.getKey());
+            }
+            segment++;
+        }
+    }
+
+    /**
+     * Gets the set tempo messages of every track of a sequence in micros per
+     * quarter note, keyed by ticks. If several tracks change the tempo at the
+     * same tick, the last track wins.
+     */
+    private static Map<Long, Integer> extractTempos(Sequence sequence) {
+        return Stream.of(sequence.getTracks())
                 .flatMap(track -> IntStream.range(0, track.size()).mapToObj(track::get))
                 .filter(midiEvent -> midiEvent.getMessage().getStatus() == MetaMessage.META)
                 .filter(midiEvent -> midiEvent.getMessage().getMessage()[1] == 0x51)
                 .filter(midiEvent -> midiEvent.getMessage().getMessage()[2] == 0x03)
-                .collect(
-                        collectingAndThen(
-                                toMap(MidiEvent::getTick, TempoCache::extractTempo, (oldValue, newValue) -> newValue,
-                                        TreeMap::new), (Map<Long, Integer> map) -> (NavigableMap<Long, Integer>) map));
-
-        // The default unspecified PPQ tempo is 0.5s per quarter note
-        int previousTempo = 500000;
-        tempos.putIfAbsent(0L, previousTempo);
-
-        // Cache the total elapsed microsecond durations, keyed by ticks
-        long previousEventTick = 0;
-        long elapsedMicroseconds = 0;
-        for (final Entry<Long, Integer> tempo : tempos.entrySet()) {
-            elapsedMicroseconds += (tempo.getKey() - previousEventTick) * previousTempo / resolution;
-            previousEventTick = tempo.getKey();
-            previousTempo = tempo.getValue();
-            microseconds.put(tempo.getKey(), elapsedMicroseconds);
-        }
+                .collect(toMap(MidiEvent::getTick, TempoCache::extractTempo, (oldValue, newValue) -> newValue));
     }
 
     /**
@@ -97,6 +159,28 @@ public class TempoCache {
         return ByteBuffer.wrap(event.getMessage().getMessage()).getInt(2) & 0xFFFFFF;
     }
 
+    /**
+     * Finds the index of the last value less than or equal to the specified
+     * value, or 0 if there is none.
+     */
+    private static int findSegment(long[] sorted, long value) {
+        int lo = 1;
+        int hi = sorted.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (sorted[mid] <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+
+    private long convertTicks(int segment, long tick) {
+        return microseconds[segment] + (tick - ticks[segment]) * tempos[segment] / resolution;
+    }
+
     /**
      * Converts a MIDI tick into elapsed microseconds
      *
@@ -105,10 +189,31 @@ public class TempoCache {
      * @return the corresponding number of microseconds
      */
     public long ticksToMicroseconds(long ticks) {
-        final long previousEventTick = microseconds.floorKey(ticks);
-        final long elapsedMicroseconds = microseconds.get(previousEventTick);
-        final int currentTempo = tempos.floorEntry(ticks).getValue();
+        return convertTicks(findSegment(this.ticks, ticks), ticks);
+    }
+
+    /**
+     * Converts elapsed microseconds into a MIDI tick, rounding down. This is
+     * the inverse of {@link #ticksToMicroseconds(long)} up to rounding.
+     *
+     * @param microseconds
+     *            the elapsed microseconds to convert into MIDI ticks
+     * @return the corresponding MIDI tick
+     */
+    public long microsecondsToTicks(long microseconds) {
+        final int segment = findSegment(this.microseconds, microseconds);
+        if (tempos[segment] == 0) {
+            return ticks[segment];
+        }
+        return ticks[segment] + (microseconds - this.microseconds[segment]) * resolution / tempos[segment];
+    }
 
-        return elapsedMicroseconds + (ticks - previousEventTick) * currentTempo / resolution;
+    /**
+     * Creates a new cursor for converting increasing MIDI ticks.
+     *
+     * @return a new {@link Cursor} positioned at the first tempo
+     */
+    public Cursor cursor() {
+        return new Cursor();
     }
 }
@@ -0,0 +1,178 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stores the channel messages of a track that are not notes as columns of
+ * primitive arrays, in the order they occur.
+ * <p>
+ * Each message costs 12 bytes for its time and its status and data bytes
+ * packed into an int. Tracks usually contain far fewer of these messages than
+ * notes, but they are needed to play the track back.
+ *
+ * @author Jay-R Studer
+ */
+class ControlTable {
+    private final long[] times;
+    private final int[] messages;
+
+    private ControlTable(long[] times, int[] messages) {
+        this.times = times;
+        this.messages = messages;
+    }
+
+    /**
+     * Accumulates messages in the order they occur.
+     */
+    static class Builder {
+        private long[] times = new long[16];
+        private int[] messages = new int[16];
+        private int size;
+
+        /**
+         * Adds a message to this builder. Messages must be added in the order
+         * they occur.
+         *
+         * @param time
+         *            the time in microseconds that the message occurs at
+         * @param status
+         *            the status byte of the message
+         * @param data1
+         *            the first data byte of the message
+         * @param data2
+         *            the second data byte of the message
+         * @return this builder
+         */
+        Builder add(long time, int status, int data1, int data2) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                messages = Arrays.copyOf(messages, size * 2);
+            }
+            times[size] = time;
+            messages[size] = (status & 0xFF) << 16 | (data1 & 0x7F) << 8 | data2 & 0x7F;
+            size++;
+            return this;
+        }
+
+        /**
+         * Builds a table containing every added message.
+         *
+         * @return a new {@link ControlTable}
+         */
+        ControlTable build() {
+            return build(Long.MAX_VALUE);
+        }
+
+        /**
+         * Builds a table containing the added messages that occur at or
+         * before the specified time. This builder is not modified, so tables
+         * may be built concurrently.
+         *
+         * @param horizon
+         *            the latest time in microseconds that messages may occur
+         *            at
+         * @return a new {@link ControlTable}
+         */
+        ControlTable build(long horizon) {
+            final int count = search(times, size, horizon);
+            return new ControlTable(Arrays.copyOf(times, count), Arrays.copyOf(messages, count));
+        }
+    }
+
+    /**
+     * Writes the columns of this table in a format read by
+     * {@link #read(ByteBuffer)}.
+     *
+     * @param output
+     *            the output to write to
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    void write(DataOutput output) throws IOException {
+        output.writeInt(times.length);
+        for (final long time : times) {
+            output.writeLong(time);
+        }
+        for (final int message : messages) {
+            output.writeInt(message);
+        }
+    }
+
+    /**
+     * Reads a table written by {@link #write(DataOutput)}, advancing the
+     * position of the buffer past it.
+     *
+     * @param input
+     *            the buffer to read from
+     * @return a new {@link ControlTable}
+     * @throws java.nio.BufferUnderflowException
+     *             if the buffer is truncated
+     */
+    static ControlTable read(ByteBuffer input) {
+        final int size = input.getInt();
+        final long[] times = new long[size];
+        input.asLongBuffer().get(times);
+        input.position(input.position() + size * Long.BYTES);
+
+        final int[] messages = new int[size];
+        input.asIntBuffer().get(messages);
+        input.position(input.position() + size * Integer.BYTES);
+        return new ControlTable(times, messages);
+    }
+
+    /**
+     * Returns the number of messages in this table.
+     *
+     * @return the number of messages
+     */
+    int size() {
+        return times.length;
+    }
+
+    /**
+     * Visits each message occurring within the specified interval, in the
+     * order they occur. This method does not allocate any objects.
+     *
+     * @param low
+     *            the lower inclusive bound to visit messages for in
+     *            microseconds
+     * @param high
+     *            the upper inclusive bound to visit messages for in
+     *            microseconds
+     * @param visitor
+     *            the visitor to receive each message
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     */
+    void forEach(long low, long high, ControlVisitor visitor) {
+        if (low > high) {
+            throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
+        }
+
+        for (int i = low == Long.MIN_VALUE ? 0 : search(times, times.length, low - 1); i != times.length
+                && times[i] <= high; i++) {
+            final int message = messages[i];
+            visitor.visitControl(times[i], message >>> 16, message >>> 8 & 0x7F, message & 0x7F);
+        }
+    }
+
+    /**
+     * Counts the sorted times less than or equal to the specified time.
+     */
+    private static int search(long[] times, int size, long time) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (times[mid] <= time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,25 @@
+package net.kreatious.pianoleopard.midi.track;
+
+/**
+ * Receives the channel messages of a track that are not notes, such as
+ * controller, program and pitch bend changes.
+ *
+ * @author Jay-R Studer
+ */
+@FunctionalInterface
+public interface ControlVisitor {
+    /**
+     * Visits a single channel message.
+     *
+     * @param time
+     *            the time in microseconds that the message occurs at
+     * @param status
+     *            the status byte of the message, including its channel
+     * @param data1
+     *            the first data byte of the message
+     * @param data2
+     *            the second data byte of the message, or 0 if the message
+     *            only has one data byte
+     */
+    void visitControl(long time, int status, int data1, int data2);
+}
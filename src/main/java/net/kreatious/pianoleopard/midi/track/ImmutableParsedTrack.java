@@ -1,22 +1,143 @@
 package net.kreatious.pianoleopard.midi.track;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 import javax.sound.midi.Track;
 
-import net.kreatious.pianoleopard.intervalset.IntervalSet;
+import net.kreatious.pianoleopard.intervalset.ImmutableIntervalSet;
+import net.kreatious.pianoleopard.intervalset.IntervalCursor;
+import net.kreatious.pianoleopard.intervalset.WindowCursor;
 import net.kreatious.pianoleopard.midi.event.Event;
 import net.kreatious.pianoleopard.midi.event.EventPair;
 import net.kreatious.pianoleopard.midi.event.NoteEvent;
+import net.kreatious.pianoleopard.midi.event.PackedEvent;
 import net.kreatious.pianoleopard.midi.event.PedalEvent;
 import net.kreatious.pianoleopard.midi.event.TempoCache;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
 /**
  * Represents a parsed MIDI track with efficient retrieval by time range.
+ * <p>
+ * Notes are stored in a columnar {@link NoteTable}. Note event pairs are only
+ * created for the notes visited by the pair based queries, so consumers that
+ * are called often should prefer {@link #forEachNote}. The {@link PitchIndex}
+ * doubles the memory used by notes, so it is only built by the first query on
+ * a range of keys. The remaining channel messages are kept in a
+ * {@link ControlTable} for playback.
  *
  * @author Jay-R Studer
  */
 class ImmutableParsedTrack implements ParsedTrack {
-    private final IntervalSet<EventPair<NoteEvent>> notes;
-    private final IntervalSet<EventPair<PedalEvent>> pedals;
+    private final NoteTable notes;
+    private final ImmutableIntervalSet<EventPair<PedalEvent>> pedals;
+    private final ControlTable controls;
+    private final Supplier<PitchIndex> notesByPitch;
+    private final TrackStatistics statistics;
+
+    /**
+     * Accumulates the event pairs of a track as its events are visited.
+     */
+    static class Builder extends TrackVisitor {
+        private final NoteTable.Builder noteBuilder = new NoteTable.Builder();
+        private final List<EventPair<PedalEvent>> pedalPairs = new ArrayList<>();
+        private final ControlTable.Builder controlBuilder = new ControlTable.Builder();
+        private final TrackStatistics.Builder statisticsBuilder = new TrackStatistics.Builder();
+
+        @Override
+        void accept(Event event) {
+            statisticsBuilder.visit(event);
+            super.accept(event);
+        }
+
+        @Override
+        protected void visitControl(long time, int status, int data1, int data2) {
+            controlBuilder.add(time, status, data1, data2);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void visitEventPair(EventPair<? extends Event> pair) {
+            if (pair.getOff() instanceof NoteEvent) {
+                final NoteEvent on = (NoteEvent) pair.getOn();
+                noteBuilder.add(pair.getOnTime(), pair.getOffTime(), on.getKey(), on.getVelocity(), on.getChannel());
+                statisticsBuilder.addNote(pair.getOnTime(), pair.getOffTime(), on.getKey());
+            } else if (pair.getOff() instanceof PedalEvent) {
+                pedalPairs.add((EventPair<PedalEvent>) pair);
+                statisticsBuilder.addPedal(((PedalEvent) pair.getOn()).getPedal(), pair.getOffTime());
+            }
+        }
+
+        /**
+         * Constructs a new {@link ImmutableParsedTrack} containing the event
+         * pairs visited so far.
+         *
+         * @return a new {@link ImmutableParsedTrack}
+         */
+        ImmutableParsedTrack build() {
+            return build(Long.MAX_VALUE);
+        }
+
+        /**
+         * Constructs a new {@link ImmutableParsedTrack} containing the event
+         * pairs visited so far that start at or before the specified time.
+         * The statistics of the returned track still describe every event
+         * pair visited so far. This builder is not modified, so tracks may be
+         * built concurrently.
+         *
+         * @param horizon
+         *            the latest time in microseconds that event pairs may
+         *            start at
+         * @return a new {@link ImmutableParsedTrack} that answers queries
+         *         ending at or before {@code horizon} exactly
+         */
+        ImmutableParsedTrack build(long horizon) {
+            final ImmutableIntervalSet.Builder<EventPair<PedalEvent>> pedals = ImmutableIntervalSet.builder();
+            for (final EventPair<PedalEvent> pair : pedalPairs) {
+                if (pair.getOnTime() <= horizon) {
+                    pedals.add(pair.getOnTime(), pair.getOffTime(), pair);
+                }
+            }
+            return new ImmutableParsedTrack(noteBuilder.build(horizon), pedals.build(), controlBuilder.build(horizon),
+                    statisticsBuilder.build());
+        }
+
+        /**
+         * Constructs a new parsed track from a track that is still being
+         * decoded, indexing the event pairs visited so far before returning.
+         * <p>
+         * If the track is not completely decoded yet, a
+         * {@link ProgressiveParsedTrack} is returned. Its prefix answers
+         * queries ending at or before {@code horizon}, or before the earliest
+         * event pair that is still incomplete. Once {@code decoded} completes,
+         * the complete track is indexed on the common fork join pool. This
+         * builder must only be modified by the decoder completing
+         * {@code decoded} afterwards.
+         *
+         * @param horizon
+         *            the latest time in microseconds that every event starting
+         *            at or before has been visited
+         * @param decoded
+         *            the future completed once every event of the track has
+         *            been visited
+         * @return a new {@link ParsedTrack}
+         */
+        ParsedTrack buildProgressively(long horizon, CompletableFuture<?> decoded) {
+            if (decoded.isDone()) {
+                return build();
+            }
+            final long indexed = Math.min(horizon, getEarliestIncompleteTime() - 1);
+            return new ProgressiveParsedTrack(indexed, build(indexed), decoded.thenApplyAsync(x -> build()));
+        }
+    }
 
     /**
      * Constructs a new {@link ImmutableParsedTrack} by parsing the specified
@@ -28,28 +149,142 @@ class ImmutableParsedTrack implements ParsedTrack {
      *            the {@link TempoCache} to convert ticks into microseconds
      */
     ImmutableParsedTrack(Track track, TempoCache cache) {
-        notes = new IntervalSet<>();
-        pedals = new IntervalSet<>();
-        new TrackVisitor() {
-            @Override
-            @SuppressWarnings("unchecked")
-            protected void visitEventPair(EventPair<? extends Event> pair) {
-                if (pair.getOff() instanceof NoteEvent) {
-                    notes.put(pair.getOnTime(), pair.getOffTime(), (EventPair<NoteEvent>) pair);
-                } else if (pair.getOff() instanceof PedalEvent) {
-                    pedals.put(pair.getOnTime(), pair.getOffTime(), (EventPair<PedalEvent>) pair);
-                }
-            }
-        }.accept(track, cache);
+        this(visit(track, cache).build());
+    }
+
+    private ImmutableParsedTrack(ImmutableParsedTrack track) {
+        notes = track.notes;
+        pedals = track.pedals;
+        controls = track.controls;
+        notesByPitch = track.notesByPitch;
+        statistics = track.statistics;
+    }
+
+    private ImmutableParsedTrack(NoteTable notes, ImmutableIntervalSet<EventPair<PedalEvent>> pedals,
+            ControlTable controls, TrackStatistics statistics) {
+        this.notes = notes;
+        this.pedals = pedals;
+        this.controls = controls;
+        this.statistics = statistics;
+        notesByPitch = Suppliers.memoize(() -> new PitchIndex(notes));
+    }
+
+    /**
+     * Writes the notes, pedals, controls and statistics of this track in a
+     * format read
+     * by {@link #read(ByteBuffer)}. Each pedal pair is written as two
+     * {@link PackedEvent}s.
+     *
+     * @param output
+     *            the output to write to
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    void write(DataOutput output) throws IOException {
+        notes.write(output);
+        output.writeInt(pedals.size());
+        for (final EventPair<PedalEvent> pedal : pedals) {
+            final int channel = pedal.getOn().getChannel();
+            output.writeLong(PackedEvent.encodePedal(channel, pedal.getOn().getPedal(), true, pedal.getOnTime()));
+            output.writeLong(PackedEvent.encodePedal(channel, pedal.getOn().getPedal(), false, pedal.getOffTime()));
+        }
+        controls.write(output);
+        statistics.write(output);
+    }
+
+    /**
+     * Reads a track written by {@link #write(DataOutput)}, advancing the
+     * position of the buffer past it.
+     *
+     * @param input
+     *            the buffer to read from
+     * @return a new {@link ImmutableParsedTrack}
+     * @throws java.nio.BufferUnderflowException
+     *             if the buffer is truncated
+     */
+    static ImmutableParsedTrack read(ByteBuffer input) {
+        final NoteTable notes = NoteTable.read(input);
+        final ImmutableIntervalSet.Builder<EventPair<PedalEvent>> pedals = ImmutableIntervalSet.builder();
+        for (int i = input.getInt(); i > 0; i--) {
+            final PedalEvent on = (PedalEvent) PackedEvent.toEvent(input.getLong());
+            final PedalEvent off = (PedalEvent) PackedEvent.toEvent(input.getLong());
+            pedals.add(on.getTime(), off.getTime(), new EventPair<>(on, off));
+        }
+        final ControlTable controls = ControlTable.read(input);
+        return new ImmutableParsedTrack(notes, pedals.build(), controls, TrackStatistics.read(input));
+    }
+
+    private static Builder visit(Track track, TempoCache cache) {
+        final Builder builder = new Builder();
+        builder.accept(track, cache);
+        return builder;
+    }
+
+    @Override
+    public TrackStatistics getStatistics() {
+        return statistics;
     }
 
     @Override
     public Iterable<EventPair<NoteEvent>> getNotePairs(long low, long high) {
-        return notes.subSet(low, high);
+        final List<EventPair<NoteEvent>> result = new ArrayList<>();
+        notes.forEachPair(low, high, result::add);
+        return Collections.unmodifiableList(result);
     }
 
     @Override
     public Iterable<EventPair<PedalEvent>> getPedalPairs(long low, long high) {
         return pedals.subSet(low, high);
     }
+
+    @Override
+    public long countNotePairs(long low, long high) {
+        return notes.count(low, high);
+    }
+
+    @Override
+    public void forEachNote(long low, long high, NoteVisitor visitor) {
+        notes.forEach(low, high, visitor);
+    }
+
+    @Override
+    public void forEachNotePair(long low, long high, Consumer<? super EventPair<NoteEvent>> action) {
+        notes.forEachPair(low, high, action);
+    }
+
+    @Override
+    public void forEachNotePair(long low, long high, int lowKey, int highKey,
+            Consumer<? super EventPair<NoteEvent>> action) {
+        notesByPitch.get().forEachNotePair(low, high, lowKey, highKey, action);
+    }
+
+    @Override
+    public void forEachPedalPair(long low, long high, Consumer<? super EventPair<PedalEvent>> action) {
+        pedals.forEachInRange(low, high, action);
+    }
+
+    @Override
+    public void forEachControl(long low, long high, ControlVisitor visitor) {
+        controls.forEach(low, high, visitor);
+    }
+
+    @Override
+    public IntervalCursor<EventPair<NoteEvent>> createNoteCursor() {
+        return notes.cursor();
+    }
+
+    @Override
+    public IntervalCursor<EventPair<PedalEvent>> createPedalCursor() {
+        return pedals.cursor();
+    }
+
+    @Override
+    public WindowCursor<EventPair<NoteEvent>> createNoteWindow() {
+        return notes.windowCursor();
+    }
+
+    @Override
+    public WindowCursor<EventPair<PedalEvent>> createPedalWindow() {
+        return pedals.windowCursor();
+    }
 }
@@ -0,0 +1,61 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+
+import net.kreatious.pianoleopard.intervalset.IntervalCursor;
+import net.kreatious.pianoleopard.midi.event.Event;
+import net.kreatious.pianoleopard.midi.event.EventPair;
+
+/**
+ * Adapts a range query returning an {@link Iterable} into an
+ * {@link IntervalCursor}, for tracks that cannot reposition a cursor without
+ * allocating.
+ *
+ * @author Jay-R Studer
+ * @param <K>
+ *            the type of event visited by this cursor
+ */
+class IterableCursor<K extends Event> implements IntervalCursor<EventPair<K>> {
+    private final BiFunction<Long, Long, Iterable<EventPair<K>>> query;
+    private Iterator<EventPair<K>> iterator = Collections.emptyIterator();
+
+    // Nullable - performance reasons
+    private EventPair<K> current;
+
+    IterableCursor(BiFunction<Long, Long, Iterable<EventPair<K>>> query) {
+        this.query = query;
+    }
+
+    @Override
+    public void reset(long low, long high) {
+        iterator = query.apply(low, high).iterator();
+        current = null;
+    }
+
+    @Override
+    public boolean advance() {
+        current = iterator.hasNext() ? iterator.next() : null;
+        return current != null;
+    }
+
+    @Override
+    public EventPair<K> get() {
+        if (current == null) {
+            throw new NoSuchElementException();
+        }
+        return current;
+    }
+
+    @Override
+    public long getLow() {
+        return get().getOnTime();
+    }
+
+    @Override
+    public long getHigh() {
+        return get().getOffTime();
+    }
+}
@@ -0,0 +1,636 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+import net.kreatious.pianoleopard.intervalset.ImmutableIntervalSet;
+import net.kreatious.pianoleopard.intervalset.IntervalCursor;
+import net.kreatious.pianoleopard.intervalset.WindowCursor;
+import net.kreatious.pianoleopard.midi.event.EventFactory;
+import net.kreatious.pianoleopard.midi.event.EventPair;
+import net.kreatious.pianoleopard.midi.event.NoteEvent;
+
+/**
+ * Stores notes as columns of primitive arrays, sorted by their on and off
+ * times.
+ * <p>
+ * Each note costs 32 bytes for its times, the cached subtree maximum and the
+ * sorted off time, plus 3 bytes for its key, velocity and channel. Note event
+ * pairs are only created for the notes visited by the pair based queries, the
+ * notes retrieved from a cursor and the notes entering a window.
+ * <p>
+ * The arrays are indexed as an implicit balanced binary search tree in the
+ * same way as {@link ImmutableIntervalSet}, where the subtree spanning
+ * {@code [lo, hi)} is rooted at {@code (lo + hi) >>> 1}.
+ *
+ * @author Jay-R Studer
+ */
+class NoteTable {
+    private final long[] onTimes;
+    private final long[] offTimes;
+    private final long[] maximums;
+    private final long[] sortedOffTimes;
+    private final byte[] keys;
+    private final byte[] velocities;
+    private final byte[] channels;
+
+    private NoteTable(long[] onTimes, long[] offTimes, byte[] keys, byte[] velocities, byte[] channels) {
+        this.onTimes = onTimes;
+        this.offTimes = offTimes;
+        this.keys = keys;
+        this.velocities = velocities;
+        this.channels = channels;
+
+        maximums = new long[onTimes.length];
+        buildMaximums(0, onTimes.length);
+        sortedOffTimes = offTimes.clone();
+        Arrays.sort(sortedOffTimes);
+    }
+
+    private NoteTable(long[] onTimes, long[] offTimes, long[] maximums, long[] sortedOffTimes, byte[] keys,
+            byte[] velocities, byte[] channels) {
+        this.onTimes = onTimes;
+        this.offTimes = offTimes;
+        this.maximums = maximums;
+        this.sortedOffTimes = sortedOffTimes;
+        this.keys = keys;
+        this.velocities = velocities;
+        this.channels = channels;
+    }
+
+    private long buildMaximums(int lo, int hi) {
+        if (lo >= hi) {
+            return Long.MIN_VALUE;
+        }
+
+        final int mid = (lo + hi) >>> 1;
+        final long maximum = Math.max(offTimes[mid], Math.max(buildMaximums(lo, mid), buildMaximums(mid + 1, hi)));
+        maximums[mid] = maximum;
+        return maximum;
+    }
+
+    /**
+     * Accumulates notes in any order, then sorts them into columns.
+     */
+    static class Builder {
+        private long[] onTimes = new long[16];
+        private long[] offTimes = new long[16];
+        private byte[] keys = new byte[16];
+        private byte[] velocities = new byte[16];
+        private byte[] channels = new byte[16];
+        private int size;
+
+        /**
+         * Adds a note to this builder. Notes ending before they start are
+         * ignored.
+         *
+         * @param onTime
+         *            the time in microseconds that the note starts
+         * @param offTime
+         *            the time in microseconds that the note ends
+         * @param key
+         *            the raw MIDI key (note) between 0 and 127 inclusive
+         * @param velocity
+         *            the velocity of the note on event
+         * @param channel
+         *            the channel of the note between 0 and 15 inclusive
+         * @return this builder
+         */
+        Builder add(long onTime, long offTime, int key, int velocity, int channel) {
+            if (onTime > offTime) {
+                return this;
+            }
+
+            if (size == onTimes.length) {
+                final int capacity = size * 2;
+                onTimes = Arrays.copyOf(onTimes, capacity);
+                offTimes = Arrays.copyOf(offTimes, capacity);
+                keys = Arrays.copyOf(keys, capacity);
+                velocities = Arrays.copyOf(velocities, capacity);
+                channels = Arrays.copyOf(channels, capacity);
+            }
+            onTimes[size] = onTime;
+            offTimes[size] = offTime;
+            keys[size] = (byte) key;
+            velocities[size] = (byte) velocity;
+            channels[size] = (byte) channel;
+            size++;
+            return this;
+        }
+
+        /**
+         * Builds a table containing every added note. Notes with equal times
+         * keep the order they were added in.
+         *
+         * @return a new {@link NoteTable}
+         */
+        NoteTable build() {
+            return build(Long.MAX_VALUE);
+        }
+
+        /**
+         * Builds a table containing the added notes that start at or before
+         * the specified time. Notes with equal times keep the order they were
+         * added in.
+         * <p>
+         * The resulting table answers queries ending at or before
+         * {@code horizon} exactly as a table of every note would. This builder
+         * is not modified, so tables may be built concurrently.
+         *
+         * @param horizon
+         *            the latest time in microseconds that notes may start at
+         * @return a new {@link NoteTable}
+         */
+        NoteTable build(long horizon) {
+            int count = 0;
+            for (int i = 0; i != size; i++) {
+                if (onTimes[i] <= horizon) {
+                    count++;
+                }
+            }
+
+            final int[] order = new int[count];
+            for (int i = 0, j = 0; j != count; i++) {
+                if (onTimes[i] <= horizon) {
+                    order[j++] = i;
+                }
+            }
+            mergeSort(order, order.clone(), 0, count);
+
+            final long[] sortedOnTimes = new long[count];
+            final long[] sortedOffTimes = new long[count];
+            final byte[] sortedKeys = new byte[count];
+            final byte[] sortedVelocities = new byte[count];
+            final byte[] sortedChannels = new byte[count];
+            for (int i = 0; i != count; i++) {
+                final int index = order[i];
+                sortedOnTimes[i] = onTimes[index];
+                sortedOffTimes[i] = offTimes[index];
+                sortedKeys[i] = keys[index];
+                sortedVelocities[i] = velocities[index];
+                sortedChannels[i] = channels[index];
+            }
+            return new NoteTable(sortedOnTimes, sortedOffTimes, sortedKeys, sortedVelocities, sortedChannels);
+        }
+
+        private int compare(int first, int second) {
+            final int result = Long.compare(onTimes[first], onTimes[second]);
+            return result != 0 ? result : Long.compare(offTimes[first], offTimes[second]);
+        }
+
+        /**
+         * Stable merge sort of the indices in {@code [from, to)}, using
+         * {@code scratch} as a copy of {@code order} for the same range.
+         * Notes are mostly added in order, so halves that are already in
+         * order are copied instead of merged.
+         */
+        private void mergeSort(int[] order, int[] scratch, int from, int to) {
+            if (to - from < 2) {
+                return;
+            }
+
+            final int mid = (from + to) >>> 1;
+            mergeSort(scratch, order, from, mid);
+            mergeSort(scratch, order, mid, to);
+            if (compare(scratch[mid - 1], scratch[mid]) <= 0) {
+                System.arraycopy(scratch, from, order, from, to - from);
+                return;
+            }
+
+            int left = from;
+            int right = mid;
+            for (int i = from; i != to; i++) {
+                if (right == to || left != mid && compare(scratch[left], scratch[right]) <= 0) {
+                    order[i] = scratch[left++];
+                } else {
+                    order[i] = scratch[right++];
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the columns of this table, including the derived columns, so that
+     * {@link #read(ByteBuffer)} can restore it without sorting.
+     *
+     * @param output
+     *            the output to write to
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    void write(DataOutput output) throws IOException {
+        output.writeInt(onTimes.length);
+        for (final long[] column : new long[][] { onTimes, offTimes, maximums, sortedOffTimes }) {
+            for (final long value : column) {
+                output.writeLong(value);
+            }
+        }
+        output.write(keys);
+        output.write(velocities);
+        output.write(channels);
+    }
+
+    /**
+     * Reads a table written by {@link #write(DataOutput)}, advancing the
+     * position of the buffer past it.
+     *
+     * @param input
+     *            the buffer to read from
+     * @return a new {@link NoteTable}
+     * @throws java.nio.BufferUnderflowException
+     *             if the buffer is truncated
+     */
+    static NoteTable read(ByteBuffer input) {
+        final int size = input.getInt();
+        final long[][] columns = new long[4][size];
+        for (final long[] column : columns) {
+            input.asLongBuffer().get(column);
+            input.position(input.position() + size * Long.BYTES);
+        }
+
+        final byte[][] fields = new byte[3][size];
+        for (final byte[] field : fields) {
+            input.get(field);
+        }
+        return new NoteTable(columns[0], columns[1], columns[2], columns[3], fields[0], fields[1], fields[2]);
+    }
+
+    /**
+     * Returns the number of notes in this table.
+     *
+     * @return the number of notes
+     */
+    int size() {
+        return onTimes.length;
+    }
+
+    /**
+     * Counts the notes overlapping the specified interval in O(log n) time.
+     * <p>
+     * A note overlaps unless it starts after {@code high} or ends before
+     * {@code low}, and no note can do both.
+     *
+     * @param low
+     *            the lower inclusive bound to count notes for in microseconds
+     * @param high
+     *            the upper inclusive bound to count notes for in microseconds
+     * @return the number of notes overlapping the interval
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     */
+    long count(long low, long high) {
+        if (low > high) {
+            throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
+        }
+        return count(onTimes, high, true) - count(sortedOffTimes, low, false);
+    }
+
+    /**
+     * Counts the sorted values less than, or equal to if {@code inclusive},
+     * the specified value.
+     */
+    private static int count(long[] sorted, long value, boolean inclusive) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value || inclusive && sorted[mid] == value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Visits each note overlapping the specified interval in ascending order
+     * of on and off times. This method does not allocate any objects.
+     *
+     * @param low
+     *            the lower inclusive bound to visit notes for in microseconds
+     * @param high
+     *            the upper inclusive bound to visit notes for in microseconds
+     * @param visitor
+     *            the visitor to receive each note
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     */
+    void forEach(long low, long high, NoteVisitor visitor) {
+        if (low > high) {
+            throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
+        }
+        forEach(0, onTimes.length, low, high, visitor);
+    }
+
+    /**
+     * Visits the implicit subtree spanning {@code [from, to)}, recursing into
+     * left subtrees and looping over right subtrees.
+     */
+    private void forEach(int from, int to, long low, long high, NoteVisitor visitor) {
+        int lo = from;
+        while (lo < to) {
+            final int mid = (lo + to) >>> 1;
+            if (maximums[mid] < low) {
+                return;
+            }
+
+            forEach(lo, mid, low, high, visitor);
+            if (onTimes[mid] > high) {
+                return;
+            } else if (offTimes[mid] >= low) {
+                visitor.visitNote(onTimes[mid], offTimes[mid], keys[mid], velocities[mid], channels[mid]);
+            }
+            lo = mid + 1;
+        }
+    }
+
+    /**
+     * Performs the given action for each note overlapping the specified
+     * interval, creating a new note event pair for each note.
+     *
+     * @param low
+     *            the lower inclusive bound to visit notes for in microseconds
+     * @param high
+     *            the upper inclusive bound to visit notes for in microseconds
+     * @param action
+     *            the action to be performed for each note event pair
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     */
+    void forEachPair(long low, long high, Consumer<? super EventPair<NoteEvent>> action) {
+        forEach(low, high, (onTime, offTime, key, velocity, channel) -> action.accept(EventFactory.createNotePair(
+                channel, key, velocity, onTime, offTime)));
+    }
+
+    /**
+     * Creates a new reusable cursor over the notes in this table. Resetting
+     * and advancing the cursor does not allocate any objects; a note event
+     * pair is only created when {@link IntervalCursor#get()} is called.
+     *
+     * @return a new {@link IntervalCursor} over the notes
+     */
+    IntervalCursor<EventPair<NoteEvent>> cursor() {
+        return new NoteCursor();
+    }
+
+    /**
+     * Creates a new window cursor that sweeps across the notes in this table.
+     * A note event pair is created once for each note entering the window and
+     * is passed to the listener when the note exits.
+     *
+     * @return a new {@link WindowCursor} over the notes
+     */
+    WindowCursor<EventPair<NoteEvent>> windowCursor() {
+        return new SweepWindowCursor();
+    }
+
+    private EventPair<NoteEvent> createPair(int index) {
+        return EventFactory.createNotePair(channels[index], keys[index], velocities[index], onTimes[index],
+                offTimes[index]);
+    }
+
+    /**
+     * Performs an in order traversal of the implicit tree, skipping subtrees
+     * whose maximum ends before the range and stopping at the first note that
+     * starts after the range.
+     */
+    private class NoteCursor implements IntervalCursor<EventPair<NoteEvent>> {
+        private long low;
+        private long high;
+
+        /**
+         * Pairs of (note, exclusive end of its right subtree) whose left
+         * subtrees are being visited
+         */
+        private final int[] stack = new int[2 * (33 - Integer.numberOfLeadingZeros(onTimes.length))];
+        private int depth;
+        private int current = -1;
+
+        // Nullable - created by the first call to get
+        private EventPair<NoteEvent> pair;
+
+        @Override
+        public void reset(long low, long high) {
+            if (low > high) {
+                throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
+            }
+
+            this.low = low;
+            this.high = high;
+            depth = 0;
+            current = -1;
+            pair = null;
+            descend(0, onTimes.length);
+        }
+
+        private void descend(int lo, int hi) {
+            int end = hi;
+            while (lo < end) {
+                final int mid = (lo + end) >>> 1;
+                if (maximums[mid] < low) {
+                    return;
+                }
+                stack[depth++] = mid;
+                stack[depth++] = end;
+                end = mid;
+            }
+        }
+
+        @Override
+        public boolean advance() {
+            pair = null;
+            while (depth != 0) {
+                final int end = stack[--depth];
+                final int mid = stack[--depth];
+                if (onTimes[mid] > high) {
+                    break;
+                }
+
+                descend(mid + 1, end);
+                if (offTimes[mid] >= low) {
+                    current = mid;
+                    return true;
+                }
+            }
+            depth = 0;
+            current = -1;
+            return false;
+        }
+
+        @Override
+        public EventPair<NoteEvent> get() {
+            if (pair == null) {
+                pair = createPair(currentIndex());
+            }
+            return pair;
+        }
+
+        @Override
+        public long getLow() {
+            return onTimes[currentIndex()];
+        }
+
+        @Override
+        public long getHigh() {
+            return offTimes[currentIndex()];
+        }
+
+        private int currentIndex() {
+            if (current == -1) {
+                throw new NoSuchElementException();
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Sweeps the window across the sorted columns. Notes before
+     * {@code nextIndex} start at or before the window's high value; those
+     * overlapping the window are held in a min heap ordered by off time, along
+     * with the event pair created when they entered the window.
+     */
+    private class SweepWindowCursor implements WindowCursor<EventPair<NoteEvent>> {
+        private final NoteCursor seek = new NoteCursor();
+        private boolean positioned;
+        private long low;
+        private long high;
+        private int nextIndex;
+        private int[] heap = new int[16];
+        private Object[] pairs = new Object[16];
+        private int size;
+
+        @Override
+        public void moveTo(long newLow, long newHigh, Listener<? super EventPair<NoteEvent>> listener) {
+            if (newLow > newHigh) {
+                throw new IllegalArgumentException("Range " + newLow + " -> " + newHigh + " is invalid");
+            }
+
+            if (!positioned || newLow < low || newHigh < high || newLow > high) {
+                seek(newLow, newHigh, listener);
+            } else {
+                slide(newLow, newHigh, listener);
+            }
+            low = newLow;
+            high = newHigh;
+            positioned = true;
+        }
+
+        private void slide(long newLow, long newHigh, Listener<? super EventPair<NoteEvent>> listener) {
+            while (size != 0 && offTimes[heap[0]] < newLow) {
+                listener.exited(poll());
+            }
+
+            for (; nextIndex != onTimes.length && onTimes[nextIndex] <= newHigh; nextIndex++) {
+                if (offTimes[nextIndex] >= newLow) {
+                    final EventPair<NoteEvent> entered = createPair(nextIndex);
+                    push(nextIndex, entered);
+                    listener.entered(entered);
+                }
+            }
+        }
+
+        /**
+         * Keeps the notes overlapping both windows along with their event
+         * pairs, then adds the notes that only overlap the new window.
+         */
+        private void seek(long newLow, long newHigh, Listener<? super EventPair<NoteEvent>> listener) {
+            int retained = 0;
+            for (int i = 0; i != size; i++) {
+                if (onTimes[heap[i]] > newHigh || offTimes[heap[i]] < newLow) {
+                    listener.exited(pair(i));
+                } else {
+                    heap[retained] = heap[i];
+                    pairs[retained++] = pairs[i];
+                }
+            }
+            Arrays.fill(pairs, retained, size, null);
+
+            size = retained;
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i, heap[i], pairs[i]);
+            }
+
+            seek.reset(newLow, newHigh);
+            while (seek.advance()) {
+                final int index = seek.current;
+                if (!positioned || onTimes[index] > high || offTimes[index] < low) {
+                    final EventPair<NoteEvent> entered = createPair(index);
+                    push(index, entered);
+                    listener.entered(entered);
+                }
+            }
+            nextIndex = count(onTimes, newHigh, true);
+        }
+
+        private void push(int index, Object pair) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+                pairs = Arrays.copyOf(pairs, size * 2);
+            }
+
+            int child = size++;
+            while (child != 0) {
+                final int parent = (child - 1) >>> 1;
+                if (offTimes[heap[parent]] <= offTimes[index]) {
+                    break;
+                }
+                heap[child] = heap[parent];
+                pairs[child] = pairs[parent];
+                child = parent;
+            }
+            heap[child] = index;
+            pairs[child] = pair;
+        }
+
+        private EventPair<NoteEvent> poll() {
+            final EventPair<NoteEvent> result = pair(0);
+            size--;
+            siftDown(0, heap[size], pairs[size]);
+            pairs[size] = null;
+            return result;
+        }
+
+        private void siftDown(int position, int index, Object pair) {
+            int parent = position;
+            while (true) {
+                int child = 2 * parent + 1;
+                if (child >= size) {
+                    break;
+                } else if (child + 1 < size && offTimes[heap[child + 1]] < offTimes[heap[child]]) {
+                    child++;
+                }
+
+                if (offTimes[index] <= offTimes[heap[child]]) {
+                    break;
+                }
+                heap[parent] = heap[child];
+                pairs[parent] = pairs[child];
+                parent = child;
+            }
+            heap[parent] = index;
+            pairs[parent] = pair;
+        }
+
+        @SuppressWarnings("unchecked")
+        private EventPair<NoteEvent> pair(int position) {
+            return (EventPair<NoteEvent>) pairs[position];
+        }
+
+        @Override
+        public void forEach(Consumer<? super EventPair<NoteEvent>> action) {
+            for (int i = 0; i != size; i++) {
+                action.accept(pair(i));
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package net.kreatious.pianoleopard.midi.track;
+
+/**
+ * Receives the fields of a note without requiring an
+ * {@link net.kreatious.pianoleopard.midi.event.EventPair EventPair} to be
+ * created for it.
+ *
+ * @author Jay-R Studer
+ */
+@FunctionalInterface
+public interface NoteVisitor {
+    /**
+     * Visits a single note.
+     *
+     * @param onTime
+     *            the time in microseconds that the note starts
+     * @param offTime
+     *            the time in microseconds that the note ends
+     * @param key
+     *            the raw MIDI key (note) between 0 and 127 inclusive
+     * @param velocity
+     *            the velocity of the note on event
+     * @param channel
+     *            the channel of the note between 0 and 15 inclusive
+     */
+    void visitNote(long onTime, long offTime, int key, int velocity, int channel);
+}
@@ -2,44 +2,79 @@ package net.kreatious.pianoleopard.midi.track;
 
 import static java.util.stream.Collectors.toList;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Track;
 
-import net.kreatious.pianoleopard.midi.event.Event;
-import net.kreatious.pianoleopard.midi.event.EventFactory;
 import net.kreatious.pianoleopard.midi.event.TempoCache;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
 /**
  * Represents a parsed MIDI sequence containing multiple parsed tracks
  *
  * @author Jay-R Studer
  */
 public class ParsedSequence {
+    /**
+     * The length of the beginning of a file that is indexed before a parsed
+     * file is returned, so that playback can start while the rest is indexed.
+     */
+    static final long HORIZON = TimeUnit.SECONDS.toMicros(30);
+
     private final List<ParsedTrack> inactiveTracks = new CopyOnWriteArrayList<>();
     private final List<ParsedTrack> activeTracks = new CopyOnWriteArrayList<>();
     private final List<ParsedTrack> tracks;
-    private final Sequence sequence;
-
+    private final long length;
+    private final Supplier<Optional<HashCode>> contentHash;
     /**
      * Originally set to null to signify that the value has not been set -- this
      * is contrary to the normal expectations for an optional field
      */
     private Optional<File> file = null;
 
-    private ParsedSequence(Sequence sequence, Track[] tracks, TempoCache cache) {
-        this.sequence = sequence;
-        this.tracks = Stream.of(tracks).map(track -> new ImmutableParsedTrack(track, cache)).collect(toList());
-        activeTracks.addAll(this.tracks);
+    /**
+     * Parses each track on the common fork join pool. The tempo cache is only
+     * read after construction, so it is shared between the tracks. The tracks
+     * are collected in encounter order, so their order does not depend on
+     * which track finishes parsing first.
+     */
+    private ParsedSequence(Sequence sequence, Track[] tracks, TempoCache cache,
+            Supplier<Optional<HashCode>> contentHash) {
+        this(Stream.of(tracks).parallel().map(track -> new ImmutableParsedTrack(track, cache)).collect(toList()),
+                sequence.getMicrosecondLength(), contentHash);
+    }
+
+    ParsedSequence(List<ParsedTrack> tracks, long length, Supplier<Optional<HashCode>> contentHash) {
+        this.tracks = tracks;
+        this.length = length;
+        this.contentHash = contentHash;
+        activeTracks.addAll(tracks);
     }
 
     /**
@@ -73,6 +108,41 @@ public class ParsedSequence {
         this.file = file;
     }
 
+    /**
+     * Gets the SHA-256 hash of the MIDI file contents that this sequence was
+     * parsed from. The hash is computed on the first call.
+     *
+     * @return An optional containing the content hash, or empty if this
+     *         sequence was not parsed from the contents of a MIDI file.
+     */
+    public Optional<HashCode> getContentHash() {
+        return contentHash.get();
+    }
+
+    /**
+     * Gets the combined statistics of every track in this sequence. Until
+     * {@link #whenIndexed()} completes, the statistics only describe the
+     * indexed prefix of each track.
+     *
+     * @return the {@link TrackStatistics} describing every track
+     * @see TrackStatistics#combine(Collection)
+     */
+    public TrackStatistics getStatistics() {
+        return TrackStatistics.combine(tracks.stream().map(ParsedTrack::getStatistics).collect(toList()));
+    }
+
+    /**
+     * Gets the length of this sequence, which is the time of its last
+     * message, including messages that are not notes. The length is known as
+     * soon as the sequence is returned, even if its tracks are still being
+     * indexed.
+     *
+     * @return the length of this sequence in microseconds
+     */
+    public long getMicrosecondLength() {
+        return length;
+    }
+
     /**
      * Gets all tracks stored by this parsed MIDI sequence.
      *
@@ -133,12 +203,19 @@ public class ParsedSequence {
     }
 
     /**
-     * Gets the original MIDI sequence used to create this parsed MIDI sequence.
+     * Returns a future that is completed once every track of this sequence is
+     * completely decoded and indexed. Until then, queries on tracks parsed
+     * from a file that end after {@link #HORIZON} block until the track is
+     * indexed.
      *
-     * @return the original MIDI {@link Sequence}
+     * @return a future completed with the completely indexed tracks, in the
+     *         same order as {@link #getTracks()}
      */
-    public Sequence getSequence() {
-        return sequence;
+    public CompletableFuture<List<ParsedTrack>> whenIndexed() {
+        final List<CompletableFuture<ParsedTrack>> indexed = tracks.stream().map(ProgressiveParsedTrack::whenIndexed)
+                .collect(toList());
+        return CompletableFuture.allOf(indexed.toArray(new CompletableFuture<?>[indexed.size()])).thenApply(
+                x -> indexed.stream().map(CompletableFuture::join).collect(toList()));
     }
 
     /**
@@ -147,35 +224,155 @@ public class ParsedSequence {
      * @return a new empty {@link ParsedSequence}
      */
     public static ParsedSequence createEmpty() {
-        try {
-            final Sequence sequence = new Sequence(Sequence.SMPTE_25, 1);
-            return new ParsedSequence(sequence, new Track[0], new TempoCache(sequence));
-        } catch (final InvalidMidiDataException e) {
-            throw new IllegalStateException(e);
-        }
+        return new ParsedSequence(Collections.emptyList(), 0, Suppliers.ofInstance(Optional.empty()));
     }
 
     /**
-     * Parses a MIDI sequence, arranging it by tracks
+     * Parses a MIDI sequence, arranging it by tracks.
+     * <p>
+     * Sequences containing a single track are arranged by channel instead. Each
+     * message is decoded once and passed directly to the parsed track for its
+     * channel.
      *
      * @param sequence
      *            the sequence to parse
      * @return a new {@link ParsedSequence}
      */
     public static ParsedSequence parseByTracks(Sequence sequence) {
+        return parseByTracks(sequence, Suppliers.ofInstance(Optional.empty()));
+    }
+
+    private static ParsedSequence parseByTracks(Sequence sequence, Supplier<Optional<HashCode>> contentHash) {
         if (sequence.getTracks().length != 1) {
-            return new ParsedSequence(sequence, sequence.getTracks(), new TempoCache(sequence));
+            return new ParsedSequence(sequence, sequence.getTracks(), new TempoCache(sequence), contentHash);
         }
 
-        final Track[] tracks = IntStream.range(0, 16).mapToObj(x -> sequence.createTrack()).toArray(Track[]::new);
-        final TempoCache cache = new TempoCache(sequence);
+        final ImmutableParsedTrack.Builder[] channels = IntStream.range(0, 16)
+                .mapToObj(x -> new ImmutableParsedTrack.Builder()).toArray(ImmutableParsedTrack.Builder[]::new);
+        final TempoCache.Cursor cursor = new TempoCache(sequence).cursor();
 
         final Track track = sequence.getTracks()[0];
-        IntStream.range(0, track.size()).mapToObj(track::get).forEachOrdered(note -> {
-            tracks[EventFactory.create(note, cache).map(Event::getChannel).orElse(0)].add(note);
-        });
-        sequence.deleteTrack(track);
+        for (int i = 0; i != track.size(); i++) {
+            if (track.get(i).getMessage() instanceof ShortMessage) {
+                final ShortMessage message = (ShortMessage) track.get(i).getMessage();
+                channels[message.getChannel()].accept(cursor.ticksToMicroseconds(track.get(i).getTick()),
+                        message.getStatus(), message.getData1(), message.getData2());
+            }
+        }
+
+        return new ParsedSequence(Stream.of(channels).parallel().map(ImmutableParsedTrack.Builder::build)
+                .collect(toList()), sequence.getMicrosecondLength(), contentHash);
+    }
+
+    /**
+     * Parses a Standard MIDI File, arranging it by tracks.
+     * <p>
+     * The file is memory mapped and decoded directly into parsed tracks, which
+     * hold everything needed to play the file back. The mapping is not
+     * referenced once the tracks are decoded, so the content hash is read from
+     * the file again when it is first requested. Files that cannot be decoded
+     * directly, such as format 2 files, are read by the {@link MidiSystem}
+     * instead.
+     * <p>
+     * Only the first {@link #HORIZON} microseconds of each track are decoded
+     * and indexed before returning, and the rest is decoded and indexed in the
+     * background. Queries
+     * ending after the horizon block until the track is completely indexed.
+     *
+     * @param file
+     *            the MIDI file to parse
+     * @return a new {@link ParsedSequence}
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws InvalidMidiDataException
+     *             if the file is not a supported MIDI file
+     */
+    public static ParsedSequence parse(File file) throws IOException, InvalidMidiDataException {
+        final ByteBuffer contents;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            contents = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+        return parse(contents, Suppliers.memoize(() -> hash(file)));
+    }
+
+    /**
+     * Parses the contents of a Standard MIDI File, arranging it by tracks.
+     * <p>
+     * The content hash is only computed from the buffer when it is first
+     * requested, so the contents of the buffer must not be modified
+     * afterwards. Files that
+     * cannot be decoded directly, such as format 2 files, are read by the
+     * {@link MidiSystem} instead.
+     *
+     * @param buffer
+     *            the contents of the MIDI file to parse
+     * @return a new {@link ParsedSequence}
+     * @throws InvalidMidiDataException
+     *             if the buffer does not contain a supported MIDI file
+     */
+    public static ParsedSequence parse(ByteBuffer buffer) throws InvalidMidiDataException {
+        final ByteBuffer contents = buffer.duplicate();
+        return parse(buffer, Suppliers.memoize(() -> Optional.of(hash(contents))));
+    }
+
+    /**
+     * Parses the contents of a Standard MIDI File, or passes them to the
+     * {@link MidiSystem} if they cannot be decoded directly. The buffer is
+     * referenced until the tracks are decoded, and afterwards only if the
+     * content hash refers to it.
+     */
+    static ParsedSequence parse(ByteBuffer buffer, Supplier<Optional<HashCode>> contentHash)
+            throws InvalidMidiDataException {
+        final List<ParsedTrack> tracks;
+        final long length;
+        try {
+            final StandardMidiFileReader reader = new StandardMidiFileReader(buffer);
+            final TempoCache cache = reader.createTempoCache();
+            tracks = reader.readTracks(cache, HORIZON);
+            length = cache.ticksToMicroseconds(reader.getTickLength());
+        } catch (final InvalidMidiDataException e) {
+            try {
+                return parseByTracks(MidiSystem.getSequence(new ByteArrayInputStream(toByteArray(buffer))),
+                        contentHash);
+            } catch (InvalidMidiDataException | IOException ex) {
+                e.addSuppressed(ex);
+                throw e;
+            }
+        }
+        return new ParsedSequence(tracks, length, contentHash);
+    }
+
+    /**
+     * Computes the SHA-256 hash of the remaining contents of a buffer, without
+     * changing its position.
+     */
+    static HashCode hash(ByteBuffer contents) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(contents.duplicate());
+            return HashCode.fromBytes(digest.digest());
+        } catch (final NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Computes the SHA-256 hash of the contents of a file, or returns empty if
+     * the file can no longer be read.
+     */
+    private static Optional<HashCode> hash(File file) {
+        try {
+            return Optional.of(Files.hash(file, Hashing.sha256()));
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return Optional.empty();
+        }
+    }
 
-        return new ParsedSequence(sequence, tracks, cache);
+    private static byte[] toByteArray(ByteBuffer contents) {
+        final byte[] bytes = new byte[contents.remaining()];
+        contents.duplicate().get(bytes);
+        return bytes;
     }
 }
@@ -1,9 +1,14 @@
 package net.kreatious.pianoleopard.midi.track;
 
+import java.util.function.Consumer;
+
+import net.kreatious.pianoleopard.intervalset.IntervalCursor;
+import net.kreatious.pianoleopard.intervalset.WindowCursor;
 import net.kreatious.pianoleopard.midi.event.EventPair;
 import net.kreatious.pianoleopard.midi.event.NoteEvent;
 import net.kreatious.pianoleopard.midi.event.PedalEvent;
 
+import com.google.common.collect.Iterables;
 
 /**
  * Provides an immutable view of a MIDI track with efficient retrieval by time
@@ -12,6 +17,20 @@ import net.kreatious.pianoleopard.midi.event.PedalEvent;
  * @author Jay-R Studer
  */
 public interface ParsedTrack {
+    /**
+     * Gets the statistics of this track. Tracks parsed from a file compute
+     * their statistics while parsing, so this does not scan the track.
+     * <p>
+     * The default implementation scans every event pair of this track on
+     * each call.
+     *
+     * @return the {@link TrackStatistics} describing every event pair in this
+     *         track
+     */
+    default TrackStatistics getStatistics() {
+        return TrackStatistics.scan(this);
+    }
+
     /**
      * Gets the note event pairs overlapping with the specified interval
      *
@@ -39,4 +58,180 @@ public interface ParsedTrack {
      *         specified interval.
      */
     Iterable<EventPair<PedalEvent>> getPedalPairs(long low, long high);
+
+    /**
+     * Counts the note event pairs overlapping with the specified interval.
+     * Implementations backed by immutable storage or interval sets count
+     * without creating the pairs, so this may be called on every frame.
+     *
+     * @param low
+     *            the lower inclusive bound to count events for in microseconds
+     * @param high
+     *            the upper inclusive bound to count events for in microseconds
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     * @return the number of note event pairs overlapping the specified
+     *         interval
+     */
+    default long countNotePairs(long low, long high) {
+        return Iterables.size(getNotePairs(low, high));
+    }
+
+    /**
+     * Performs the given action for each note event pair overlapping with the
+     * specified interval. Implementations backed by immutable storage do not
+     * create an iterator, but do create an event pair for each visited note;
+     * use {@link #forEachNote} to visit notes without allocating.
+     *
+     * @param low
+     *            the lower inclusive bound to visit events for in microseconds
+     * @param high
+     *            the upper inclusive bound to visit events for in microseconds
+     * @param action
+     *            the action to be performed for each note event pair
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     */
+    default void forEachNotePair(long low, long high, Consumer<? super EventPair<NoteEvent>> action) {
+        getNotePairs(low, high).forEach(action);
+    }
+
+    /**
+     * Visits the fields of each note overlapping with the specified interval.
+     * Implementations backed by columnar storage neither create note event
+     * pairs nor allocate any other objects, making this the preferred query
+     * for consumers that only need the times, key, velocity or channel.
+     *
+     * @param low
+     *            the lower inclusive bound to visit notes for in microseconds
+     * @param high
+     *            the upper inclusive bound to visit notes for in microseconds
+     * @param visitor
+     *            the visitor to receive each note
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     */
+    default void forEachNote(long low, long high, NoteVisitor visitor) {
+        forEachNotePair(low, high, note -> visitor.visitNote(note.getOnTime(), note.getOffTime(), note.getOn()
+                .getKey(), note.getOn().getVelocity(), note.getOn().getChannel()));
+    }
+
+    /**
+     * Performs the given action for each note event pair overlapping with the
+     * specified interval whose key is within the specified range, such as the
+     * notes on part of the keyboard or under the mouse. Implementations backed
+     * by immutable storage only visit notes of the specified keys.
+     *
+     * @param low
+     *            the lower inclusive bound to visit events for in microseconds
+     * @param high
+     *            the upper inclusive bound to visit events for in microseconds
+     * @param lowKey
+     *            the lowest inclusive key to visit events for
+     * @param highKey
+     *            the highest inclusive key to visit events for
+     * @param action
+     *            the action to be performed for each note event pair
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}, or
+     *             {@code lowKey} is greater than {@code highKey}
+     */
+    default void forEachNotePair(long low, long high, int lowKey, int highKey,
+            Consumer<? super EventPair<NoteEvent>> action) {
+        if (lowKey > highKey) {
+            throw new IllegalArgumentException("Key range " + lowKey + " -> " + highKey + " is invalid");
+        }
+        forEachNotePair(low, high, note -> {
+            final int key = note.getOn().getKey();
+            if (key >= lowKey && key <= highKey) {
+                action.accept(note);
+            }
+        });
+    }
+
+    /**
+     * Performs the given action for each pedal event pair overlapping with the
+     * specified interval. Implementations backed by immutable storage do not
+     * allocate any objects, making this suitable for per frame queries.
+     *
+     * @param low
+     *            the lower inclusive bound to visit events for in microseconds
+     * @param high
+     *            the upper inclusive bound to visit events for in microseconds
+     * @param action
+     *            the action to be performed for each pedal event pair
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     */
+    default void forEachPedalPair(long low, long high, Consumer<? super EventPair<PedalEvent>> action) {
+        getPedalPairs(low, high).forEach(action);
+    }
+
+    /**
+     * Visits each channel message of this track that is not a note, such as
+     * controller, program and pitch bend changes, occurring within the
+     * specified interval in the order they occur. Implementations backed by
+     * immutable storage do not allocate any objects.
+     * <p>
+     * The default implementation visits nothing, for tracks that only hold
+     * event pairs.
+     *
+     * @param low
+     *            the lower inclusive bound to visit messages for in
+     *            microseconds
+     * @param high
+     *            the upper inclusive bound to visit messages for in
+     *            microseconds
+     * @param visitor
+     *            the visitor to receive each message
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}
+     */
+    default void forEachControl(long low, long high, ControlVisitor visitor) {
+        if (low > high) {
+            throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
+        }
+    }
+
+    /**
+     * Creates a new reusable cursor over the note event pairs in this track.
+     * The cursor must be positioned with {@link IntervalCursor#reset} before
+     * use.
+     *
+     * @return a new {@link IntervalCursor} over the note event pairs
+     */
+    default IntervalCursor<EventPair<NoteEvent>> createNoteCursor() {
+        return new IterableCursor<>(this::getNotePairs);
+    }
+
+    /**
+     * Creates a new reusable cursor over the pedal event pairs in this track.
+     * The cursor must be positioned with {@link IntervalCursor#reset} before
+     * use.
+     *
+     * @return a new {@link IntervalCursor} over the pedal event pairs
+     */
+    default IntervalCursor<EventPair<PedalEvent>> createPedalCursor() {
+        return new IterableCursor<>(this::getPedalPairs);
+    }
+
+    /**
+     * Creates a new window cursor over the note event pairs in this track,
+     * for consumers whose query window moves forward with playback.
+     *
+     * @return a new {@link WindowCursor} over the note event pairs
+     */
+    default WindowCursor<EventPair<NoteEvent>> createNoteWindow() {
+        return WindowCursor.requerying(createNoteCursor());
+    }
+
+    /**
+     * Creates a new window cursor over the pedal event pairs in this track,
+     * for consumers whose query window moves forward with playback.
+     *
+     * @return a new {@link WindowCursor} over the pedal event pairs
+     */
+    default WindowCursor<EventPair<PedalEvent>> createPedalWindow() {
+        return WindowCursor.requerying(createPedalCursor());
+    }
 }
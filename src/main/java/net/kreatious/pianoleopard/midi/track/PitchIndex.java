@@ -0,0 +1,101 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import java.util.function.Consumer;
+
+import net.kreatious.pianoleopard.midi.event.EventPair;
+import net.kreatious.pianoleopard.midi.event.NoteEvent;
+
+/**
+ * Indexes notes by both time and key, so that the notes within a time range
+ * and a key range are found without visiting notes of other keys.
+ * <p>
+ * Notes are partitioned into a note table for each MIDI key. Querying a range
+ * of m keys costs O(m log n + k) time for k matching notes, and since there
+ * are only 128 keys, this is O(log n + k).
+ *
+ * @author Jay-R Studer
+ */
+class PitchIndex {
+    private static final int KEYS = 128;
+
+    private final NoteTable[] notesByKey = new NoteTable[KEYS];
+
+    /**
+     * Constructs a new {@link PitchIndex} containing the notes of the
+     * specified table.
+     *
+     * @param notes
+     *            the notes to index
+     */
+    PitchIndex(NoteTable notes) {
+        final NoteTable.Builder[] builders = new NoteTable.Builder[KEYS];
+        for (int key = 0; key != KEYS; key++) {
+            builders[key] = new NoteTable.Builder();
+        }
+        notes.forEach(Long.MIN_VALUE, Long.MAX_VALUE, (onTime, offTime, key, velocity, channel) -> builders[key].add(
+                onTime, offTime, key, velocity, channel));
+        for (int key = 0; key != KEYS; key++) {
+            notesByKey[key] = builders[key].build();
+        }
+    }
+
+    /**
+     * Visits each note overlapping with the specified interval whose key is
+     * within the specified range, ordered by key and then by time. This method
+     * does not allocate any objects.
+     *
+     * @param low
+     *            the lower inclusive bound to visit notes for in microseconds
+     * @param high
+     *            the upper inclusive bound to visit notes for in microseconds
+     * @param lowKey
+     *            the lowest inclusive key to visit notes for
+     * @param highKey
+     *            the highest inclusive key to visit notes for
+     * @param visitor
+     *            the visitor to receive each note
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}, or
+     *             {@code lowKey} is greater than {@code highKey}
+     */
+    void forEachNote(long low, long high, int lowKey, int highKey, NoteVisitor visitor) {
+        checkRanges(low, high, lowKey, highKey);
+        for (int key = Math.max(0, lowKey); key <= Math.min(KEYS - 1, highKey); key++) {
+            notesByKey[key].forEach(low, high, visitor);
+        }
+    }
+
+    /**
+     * Performs the given action for each note overlapping with the specified
+     * interval whose key is within the specified range, ordered by key and
+     * then by time. A new note event pair is created for each note.
+     *
+     * @param low
+     *            the lower inclusive bound to visit events for in microseconds
+     * @param high
+     *            the upper inclusive bound to visit events for in microseconds
+     * @param lowKey
+     *            the lowest inclusive key to visit events for
+     * @param highKey
+     *            the highest inclusive key to visit events for
+     * @param action
+     *            the action to be performed for each note event pair
+     * @throws IllegalArgumentException
+     *             if {@code low} is greater than {@code high}, or
+     *             {@code lowKey} is greater than {@code highKey}
+     */
+    void forEachNotePair(long low, long high, int lowKey, int highKey, Consumer<? super EventPair<NoteEvent>> action) {
+        checkRanges(low, high, lowKey, highKey);
+        for (int key = Math.max(0, lowKey); key <= Math.min(KEYS - 1, highKey); key++) {
+            notesByKey[key].forEachPair(low, high, action);
+        }
+    }
+
+    private static void checkRanges(long low, long high, int lowKey, int highKey) {
+        if (low > high) {
+            throw new IllegalArgumentException("Range " + low + " -> " + high + " is invalid");
+        } else if (lowKey > highKey) {
+            throw new IllegalArgumentException("Key range " + lowKey + " -> " + highKey + " is invalid");
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import net.kreatious.pianoleopard.intervalset.IntervalCursor;
+import net.kreatious.pianoleopard.intervalset.WindowCursor;
+import net.kreatious.pianoleopard.midi.event.EventPair;
+import net.kreatious.pianoleopard.midi.event.NoteEvent;
+import net.kreatious.pianoleopard.midi.event.PedalEvent;
+
+/**
+ * Represents a parsed MIDI track that is still being indexed in the
+ * background.
+ * <p>
+ * Until the complete track is indexed, queries ending at or before the horizon
+ * are answered by a prefix of the track containing the event pairs starting at
+ * or before the horizon. Every event pair overlapping such a query starts
+ * before the query ends, so the results are exact. Queries ending after the
+ * horizon block until the complete track is indexed.
+ *
+ * @author Jay-R Studer
+ */
+class ProgressiveParsedTrack implements ParsedTrack {
+    private final long horizon;
+    private final ImmutableParsedTrack prefix;
+    private final CompletableFuture<ImmutableParsedTrack> complete;
+
+    /**
+     * Constructs a new {@link ProgressiveParsedTrack}.
+     *
+     * @param horizon
+     *            the latest time in microseconds that the prefix contains the
+     *            event pairs starting at
+     * @param prefix
+     *            the track containing the event pairs starting at or before
+     *            {@code horizon}
+     * @param complete
+     *            the future completed with the track containing every event
+     *            pair
+     */
+    ProgressiveParsedTrack(long horizon, ImmutableParsedTrack prefix,
+            CompletableFuture<ImmutableParsedTrack> complete) {
+        this.horizon = horizon;
+        this.prefix = prefix;
+        this.complete = complete;
+    }
+
+    /**
+     * Returns a future that is completed with a track containing every event
+     * pair of the specified track once it is completely indexed.
+     *
+     * @param track
+     *            the track to wait for
+     * @return a future completed with the indexed track
+     */
+    static CompletableFuture<ParsedTrack> whenIndexed(ParsedTrack track) {
+        if (track instanceof ProgressiveParsedTrack) {
+            return ((ProgressiveParsedTrack) track).complete.thenApply(ParsedTrack.class::cast);
+        }
+        return CompletableFuture.completedFuture(track);
+    }
+
+    /**
+     * Gets the track that answers queries ending at the specified time.
+     */
+    private ParsedTrack get(long high) {
+        if (high <= horizon && !complete.isDone()) {
+            return prefix;
+        }
+        return complete.join();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Until the complete track is indexed, the statistics only describe the
+     * prefix of the track.
+     */
+    @Override
+    public TrackStatistics getStatistics() {
+        if (complete.isDone()) {
+            return complete.join().getStatistics();
+        }
+        return prefix.getStatistics();
+    }
+
+    @Override
+    public Iterable<EventPair<NoteEvent>> getNotePairs(long low, long high) {
+        return get(high).getNotePairs(low, high);
+    }
+
+    @Override
+    public Iterable<EventPair<PedalEvent>> getPedalPairs(long low, long high) {
+        return get(high).getPedalPairs(low, high);
+    }
+
+    @Override
+    public long countNotePairs(long low, long high) {
+        return get(high).countNotePairs(low, high);
+    }
+
+    @Override
+    public void forEachNote(long low, long high, NoteVisitor visitor) {
+        get(high).forEachNote(low, high, visitor);
+    }
+
+    @Override
+    public void forEachNotePair(long low, long high, Consumer<? super EventPair<NoteEvent>> action) {
+        get(high).forEachNotePair(low, high, action);
+    }
+
+    @Override
+    public void forEachNotePair(long low, long high, int lowKey, int highKey,
+            Consumer<? super EventPair<NoteEvent>> action) {
+        get(high).forEachNotePair(low, high, lowKey, highKey, action);
+    }
+
+    @Override
+    public void forEachPedalPair(long low, long high, Consumer<? super EventPair<PedalEvent>> action) {
+        get(high).forEachPedalPair(low, high, action);
+    }
+
+    @Override
+    public void forEachControl(long low, long high, ControlVisitor visitor) {
+        get(high).forEachControl(low, high, visitor);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Cursors created before the complete track is indexed requery this track
+     * on every reset, so they remain horizon aware.
+     */
+    @Override
+    public IntervalCursor<EventPair<NoteEvent>> createNoteCursor() {
+        return complete.isDone() ? complete.join().createNoteCursor() : ParsedTrack.super.createNoteCursor();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Cursors created before the complete track is indexed requery this track
+     * on every reset, so they remain horizon aware.
+     */
+    @Override
+    public IntervalCursor<EventPair<PedalEvent>> createPedalCursor() {
+        return complete.isDone() ? complete.join().createPedalCursor() : ParsedTrack.super.createPedalCursor();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Windows created before the complete track is indexed requery this track
+     * on every move until it is indexed, and then switch to sweeping the
+     * complete track.
+     */
+    @Override
+    public WindowCursor<EventPair<NoteEvent>> createNoteWindow() {
+        if (complete.isDone()) {
+            return complete.join().createNoteWindow();
+        }
+        return new IndexingWindowCursor<>(ParsedTrack.super.createNoteWindow(), ParsedTrack::createNoteWindow);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Windows created before the complete track is indexed requery this track
+     * on every move until it is indexed, and then switch to sweeping the
+     * complete track.
+     */
+    @Override
+    public WindowCursor<EventPair<PedalEvent>> createPedalWindow() {
+        if (complete.isDone()) {
+            return complete.join().createPedalWindow();
+        }
+        return new IndexingWindowCursor<>(ParsedTrack.super.createPedalWindow(), ParsedTrack::createPedalWindow);
+    }
+
+    /**
+     * A window that requeries this track until the complete track is indexed,
+     * and then sweeps a window of the complete track. When switching, the
+     * values of the requerying window exit and the values of the complete
+     * track's window enter, as the two windows do not share value instances.
+     */
+    private final class IndexingWindowCursor<V> implements WindowCursor<V> {
+        private final Function<ParsedTrack, WindowCursor<V>> factory;
+        private WindowCursor<V> window;
+        private boolean indexed;
+
+        IndexingWindowCursor(WindowCursor<V> requerying, Function<ParsedTrack, WindowCursor<V>> factory) {
+            window = requerying;
+            this.factory = factory;
+        }
+
+        @Override
+        public void moveTo(long low, long high, Listener<? super V> listener) {
+            if (!indexed && complete.isDone()) {
+                window.forEach(listener::exited);
+                window = factory.apply(complete.join());
+                indexed = true;
+            }
+            window.moveTo(low, high, listener);
+        }
+
+        @Override
+        public void forEach(Consumer<? super V> action) {
+            window.forEach(action);
+        }
+
+        @Override
+        public int size() {
+            return window.size();
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Suppliers;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+/**
+ * Caches parsed sequences on disk, so that reopening a MIDI file skips
+ * parsing it.
+ * <p>
+ * After a file is parsed and its tracks are completely indexed, the length of
+ * the file and the notes, pedals and controls of its tracks are written in
+ * the background to an image. Images are named after the path, size and last
+ * modified time of their file, so later opens of an unchanged file memory map
+ * the image and read its columns in bulk without reading the file at all. The
+ * content hash of the file is stored in the image as well. Note times are
+ * stored in microseconds, so the tempo map is not needed to read an image.
+ * <p>
+ * Images starting with a different {@link #VERSION} are ignored and replaced,
+ * as are images that cannot be read. Images left behind by older versions or
+ * by files that have since changed are deleted by {@link #clean()}. Failing to
+ * write an image never prevents a file from being opened.
+ *
+ * @author Jay-R Studer
+ */
+public class SequenceCache {
+    private static final int MAGIC = 0x504C5351;
+
+    /**
+     * The version of the image format, which must be changed whenever the
+     * format of an image changes.
+     */
+    @VisibleForTesting
+    static final int VERSION = 5;
+
+    /**
+     * Temporary files older than this are left over from an interrupted write
+     */
+    private static final long TEMPORARY_AGE = TimeUnit.HOURS.toMillis(1);
+
+    private final Path directory;
+
+    /**
+     * Completed once the image of the last parsed file has been written
+     */
+    @VisibleForTesting
+    volatile CompletableFuture<Void> written = CompletableFuture.completedFuture(null);
+
+    /**
+     * Constructs a new {@link SequenceCache} that stores images in the
+     * specified directory. The directory is created when the first image is
+     * written.
+     *
+     * @param directory
+     *            the directory to store images in
+     */
+    public SequenceCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Parses a Standard MIDI File, arranging it by tracks, or reads the tracks
+     * from the cached image of the file if it has not changed since.
+     *
+     * @param file
+     *            the MIDI file to parse
+     * @return a new {@link ParsedSequence}
+     * @throws IOException
+     *             if an I/O error occurs while reading the MIDI file
+     * @throws InvalidMidiDataException
+     *             if the file is not a supported MIDI file
+     * @see ParsedSequence#parse(File)
+     */
+    public ParsedSequence parse(File file) throws IOException, InvalidMidiDataException {
+        final Source source = Source.of(file.toPath());
+        final Path image = getImage(source);
+        final Optional<ParsedSequence> cached = read(image, source);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        final ByteBuffer contents;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            contents = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        // The content hash is computed by the background write, or when it is first requested
+        final ParsedSequence result = ParsedSequence.parse(contents);
+        written = result.whenIndexed().thenAccept(tracks -> write(image, source, result, tracks));
+        return result;
+    }
+
+    /**
+     * Deletes the images in the cache directory that can no longer be read:
+     * images of a different {@link #VERSION}, images of files that were
+     * changed or removed, and temporary files left over from interrupted
+     * writes. The directory is scanned in the background.
+     *
+     * @return a future completed once the directory has been scanned
+     */
+    public CompletableFuture<Void> clean() {
+        return CompletableFuture.runAsync(() -> {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (final Path file : files) {
+                    if (isStale(file)) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            } catch (final NoSuchFileException e) {
+                // Nothing has been cached yet
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    @VisibleForTesting
+    Path getImage(File file) throws IOException {
+        return getImage(Source.of(file.toPath()));
+    }
+
+    private Path getImage(Source source) {
+        return directory.resolve(source.fingerprint() + ".dat");
+    }
+
+    private static boolean isStale(Path file) throws IOException {
+        final String name = file.getFileName().toString();
+        if (name.endsWith(".tmp")) {
+            return Files.getLastModifiedTime(file).toMillis() < System.currentTimeMillis() - TEMPORARY_AGE;
+        } else if (!name.endsWith(".dat")) {
+            return false;
+        }
+
+        // The header is copied instead of mapped, so that the image can be deleted on every platform
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate((int) Math.min(channel.size(), 1 << 16));
+            while (header.hasRemaining() && channel.read(header) != -1) {
+                continue;
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return true;
+            }
+
+            final Source source = Source.read(header);
+            return !Files.isRegularFile(source.path) || !source.equals(Source.of(source.path));
+        } catch (final BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            return true;
+        }
+    }
+
+    private static Optional<ParsedSequence> read(Path image, Source source) {
+        if (!Files.isRegularFile(image)) {
+            return Optional.empty();
+        }
+
+        try (FileChannel channel = FileChannel.open(image, StandardOpenOption.READ)) {
+            final ByteBuffer input = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            if (input.getInt() != MAGIC || input.getInt() != VERSION || !source.equals(Source.read(input))) {
+                return Optional.empty();
+            }
+
+            final byte[] hash = new byte[input.getInt()];
+            input.get(hash);
+            final long length = input.getLong();
+            final int size = input.getInt();
+            final List<ParsedTrack> tracks = new ArrayList<>();
+            for (int i = 0; i != size; i++) {
+                tracks.add(ImmutableParsedTrack.read(input));
+            }
+            return Optional.of(new ParsedSequence(tracks, length, Suppliers.ofInstance(Optional.of(HashCode
+                    .fromBytes(hash)))));
+        } catch (final IOException | BufferUnderflowException | IllegalArgumentException | ClassCastException
+                | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            // The image is replaced after the file is parsed again
+            e.printStackTrace();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes an image to a temporary file and then moves it into place, so
+     * that an image is never read while it is partially written.
+     */
+    private void write(Path image, Source source, ParsedSequence sequence, List<ParsedTrack> tracks) {
+        final Optional<HashCode> hash = sequence.getContentHash();
+        if (!hash.isPresent() || !tracks.stream().allMatch(ImmutableParsedTrack.class::isInstance)) {
+            return;
+        }
+
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, null, ".tmp");
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                source.write(output);
+                output.writeInt(hash.get().bits() / Byte.SIZE);
+                output.write(hash.get().asBytes());
+                output.writeLong(sequence.getMicrosecondLength());
+                output.writeInt(tracks.size());
+                for (final ParsedTrack track : tracks) {
+                    ((ImmutableParsedTrack) track).write(output);
+                }
+            }
+            Files.move(temporary, image, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            e.printStackTrace();
+            try {
+                if (temporary != null) {
+                    Files.deleteIfExists(temporary);
+                }
+            } catch (final IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Identifies the version of a file that an image was written from by its
+     * path, size and last modified time.
+     */
+    private static class Source {
+        private final Path path;
+        private final long size;
+        private final long modified;
+
+        private Source(Path path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        static Source of(Path file) throws IOException {
+            final Path path = file.toAbsolutePath().normalize();
+            final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new Source(path, attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
+
+        static Source read(ByteBuffer input) {
+            final byte[] path = new byte[input.getInt()];
+            input.get(path);
+            return new Source(Paths.get(new String(path, UTF_8)), input.getLong(), input.getLong());
+        }
+
+        void write(DataOutput output) throws IOException {
+            final byte[] bytes = path.toString().getBytes(UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+            output.writeLong(size);
+            output.writeLong(modified);
+        }
+
+        HashCode fingerprint() {
+            return Hashing.sha256().newHasher().putString(path.toString(), UTF_8).putLong(size).putLong(modified)
+                    .hash();
+        }
+
+        @Override
+        public int hashCode() {
+            return (path.hashCode() * 31 + Long.hashCode(size)) * 31 + Long.hashCode(modified);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            } else if (!(obj instanceof Source)) {
+                return false;
+            } else {
+                final Source other = (Source) obj;
+                return path.equals(other.path) && size == other.size && modified == other.modified;
+            }
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import static java.util.stream.Collectors.toList;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+
+import net.kreatious.pianoleopard.midi.event.TempoCache;
+
+/**
+ * Decodes a Standard MIDI File directly into parsed tracks.
+ * <p>
+ * Unlike {@link MidiSystem#getSequence}, no javax track, event or message
+ * objects are created. Delta times, running status, system exclusive and meta
+ * events are decoded in place from a byte buffer, which is typically memory
+ * mapped. Only note and pedal messages are turned into events, and the other
+ * channel messages are kept in place for playback.
+ *
+ * @author Jay-R Studer
+ */
+class StandardMidiFileReader {
+    private static final int HEADER_CHUNK = 0x4D546864;
+    private static final int TRACK_CHUNK = 0x4D54726B;
+    private static final int META = 0xFF;
+    private static final int SET_TEMPO = 0x51;
+    private static final int END_OF_TRACK = 0x2F;
+
+    private final float divisionType;
+    private final int resolution;
+    private final List<ByteBuffer> tracks = new ArrayList<>();
+    private long tickLength;
+
+    /**
+     * Receives the messages decoded from a track.
+     */
+    private interface MessageVisitor {
+        default void visitChannelMessage(long tick, int status, int data1, int data2) {
+            // Ignored by default
+        }
+
+        default void visitTempo(long tick, int tempo) {
+            // Ignored by default
+        }
+    }
+
+    /**
+     * Decodes the messages of a track chunk in order. Decoding may stop at a
+     * tick and be resumed later from the same message.
+     */
+    private static class TrackDecoder {
+        private final ByteBuffer track;
+        private long tick;
+        private int runningStatus;
+        private boolean ended;
+
+        TrackDecoder(ByteBuffer chunk) {
+            track = chunk.duplicate();
+        }
+
+        /**
+         * @return true if every message of the track has been decoded
+         */
+        boolean isEnded() {
+            return ended || !track.hasRemaining();
+        }
+
+        /**
+         * Decodes the messages occurring at or before the specified tick.
+         */
+        void read(MessageVisitor visitor, long lastTick) throws InvalidMidiDataException {
+            try {
+                while (!isEnded()) {
+                    final int start = track.position();
+                    final long next = tick + readVariableLength(track);
+                    if (next > lastTick) {
+                        track.position(start);
+                        return;
+                    }
+                    tick = next;
+
+                    int data1 = track.get() & 0xFF;
+                    if (data1 == META) {
+                        final int type = track.get() & 0xFF;
+                        final int length = readVariableLength(track);
+                        if (type == END_OF_TRACK) {
+                            ended = true;
+                        } else if (type == SET_TEMPO && length == 3) {
+                            visitor.visitTempo(tick, (track.get() & 0xFF) << 16 | (track.getShort() & 0xFFFF));
+                        } else {
+                            track.position(track.position() + length);
+                        }
+                        continue;
+                    } else if (data1 == 0xF0 || data1 == 0xF7) {
+                        final int length = readVariableLength(track);
+                        track.position(track.position() + length);
+                        continue;
+                    } else if (data1 >= 0xF0) {
+                        throw new InvalidMidiDataException("Unexpected status byte " + data1 + " at tick " + tick);
+                    } else if (data1 >= 0x80) {
+                        runningStatus = data1;
+                        data1 = track.get() & 0xFF;
+                    } else if (runningStatus == 0) {
+                        throw new InvalidMidiDataException("Data byte " + data1 + " without a status byte at tick "
+                                + tick);
+                    }
+
+                    final int command = runningStatus & 0xF0;
+                    final int data2 = command == 0xC0 || command == 0xD0 ? 0 : track.get() & 0xFF;
+                    visitor.visitChannelMessage(tick, runningStatus, data1, data2);
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new InvalidMidiDataException("Track is truncated");
+            }
+        }
+    }
+
+    /**
+     * Thrown from within a parallel stream to carry an
+     * {@link InvalidMidiDataException} out of it.
+     */
+    private static class InvalidTrackException extends RuntimeException {
+        private static final long serialVersionUID = -1741546258396120151L;
+
+        InvalidTrackException(InvalidMidiDataException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized InvalidMidiDataException getCause() {
+            return (InvalidMidiDataException) super.getCause();
+        }
+    }
+
+    /**
+     * Constructs a new {@link StandardMidiFileReader} by reading the chunks of
+     * the specified file contents. The contents of the buffer must not be
+     * modified while this reader is in use.
+     *
+     * @param buffer
+     *            the contents of a Standard MIDI File
+     * @throws InvalidMidiDataException
+     *             if the buffer does not contain a supported MIDI file
+     */
+    StandardMidiFileReader(ByteBuffer buffer) throws InvalidMidiDataException {
+        final ByteBuffer file = buffer.duplicate();
+        try {
+            if (file.getInt() != HEADER_CHUNK) {
+                throw new InvalidMidiDataException("Not a standard MIDI file");
+            }
+
+            final ByteBuffer header = readChunk(file);
+            final int format = header.getShort();
+            if (format != 0 && format != 1) {
+                throw new InvalidMidiDataException("MIDI file format " + format + " is not supported");
+            }
+
+            header.getShort();
+            final int division = header.getShort();
+            if (division >= 0) {
+                divisionType = Sequence.PPQ;
+                resolution = division;
+            } else {
+                divisionType = getSmpteDivisionType(-(division >> 8));
+                resolution = division & 0xFF;
+            }
+
+            while (file.remaining() >= 8) {
+                final int type = file.getInt();
+                final ByteBuffer chunk = readChunk(file);
+                if (type == TRACK_CHUNK) {
+                    tracks.add(chunk);
+                }
+            }
+        } catch (final BufferUnderflowException e) {
+            throw new InvalidMidiDataException("MIDI file header is truncated");
+        }
+    }
+
+    private static float getSmpteDivisionType(int framesPerSecond) throws InvalidMidiDataException {
+        switch (framesPerSecond) {
+        case 24:
+            return Sequence.SMPTE_24;
+        case 25:
+            return Sequence.SMPTE_25;
+        case 29:
+            return Sequence.SMPTE_30DROP;
+        case 30:
+            return Sequence.SMPTE_30;
+        default:
+            throw new InvalidMidiDataException(framesPerSecond + " frames per second is not supported");
+        }
+    }
+
+    /**
+     * Reads the length of a chunk and slices its contents out of the file.
+     */
+    private static ByteBuffer readChunk(ByteBuffer file) throws InvalidMidiDataException {
+        final int length = file.getInt();
+        if (length < 0 || length > file.remaining()) {
+            throw new InvalidMidiDataException("Chunk length " + length + " exceeds the remaining "
+                    + file.remaining() + " bytes");
+        }
+
+        final ByteBuffer chunk = file.slice();
+        chunk.limit(length);
+        file.position(file.position() + length);
+        return chunk;
+    }
+
+    /**
+     * Creates a tempo cache from the set tempo events of every track. If
+     * several tracks change the tempo at the same tick, the last track wins.
+     * The length of the file returned by {@link #getTickLength()} is found by
+     * the same scan.
+     *
+     * @return a new {@link TempoCache} for this file
+     * @throws InvalidMidiDataException
+     *             if a track is malformed
+     */
+    TempoCache createTempoCache() throws InvalidMidiDataException {
+        final Map<Long, Integer> tempos = new TreeMap<>();
+        final MessageVisitor visitor = new MessageVisitor() {
+            @Override
+            public void visitTempo(long tick, int tempo) {
+                tempos.put(tick, tempo);
+            }
+        };
+
+        tickLength = 0;
+        for (final ByteBuffer track : tracks) {
+            final TrackDecoder decoder = new TrackDecoder(track);
+            decoder.read(visitor, Long.MAX_VALUE);
+            tickLength = Math.max(tickLength, decoder.tick);
+        }
+        return new TempoCache(divisionType, resolution, divisionType == Sequence.PPQ ? tempos
+                : Collections.<Long, Integer> emptyMap());
+    }
+
+    /**
+     * Gets the length of this file, which is the tick of the last message in
+     * any track. The length is only known after {@link #createTempoCache()}
+     * has been called.
+     *
+     * @return the length of this file in MIDI ticks
+     */
+    long getTickLength() {
+        return tickLength;
+    }
+
+    /**
+     * Decodes the tracks of this file in parallel. Files containing a single
+     * track are arranged by channel instead.
+     * <p>
+     * Only the messages occurring at or before {@code horizon} are decoded and
+     * indexed before returning. The remainder of each track is decoded and
+     * indexed in the background. If the remainder of a track turns out to be
+     * malformed, the error is logged and the track keeps the events decoded
+     * before it.
+     *
+     * @param cache
+     *            the {@link TempoCache} to convert ticks into microseconds
+     * @param horizon
+     *            the latest time in microseconds that event pairs are indexed
+     *            for before returning
+     * @return the parsed tracks, in the order they appear in the file
+     * @throws InvalidMidiDataException
+     *             if a track is malformed
+     */
+    List<ParsedTrack> readTracks(TempoCache cache, long horizon) throws InvalidMidiDataException {
+        final long horizonTick = cache.microsecondsToTicks(horizon);
+        // Messages left undecoded occur after the horizon tick, so start after this time
+        final long covered = Math.min(horizon, cache.ticksToMicroseconds(horizonTick + 1) - 1);
+        if (tracks.size() == 1) {
+            final ImmutableParsedTrack.Builder[] channels = IntStream.range(0, 16)
+                    .mapToObj(x -> new ImmutableParsedTrack.Builder()).toArray(ImmutableParsedTrack.Builder[]::new);
+            final TempoCache.Cursor cursor = cache.cursor();
+            final MessageVisitor visitor = new MessageVisitor() {
+                @Override
+                public void visitChannelMessage(long tick, int status, int data1, int data2) {
+                    channels[status & 0x0F].accept(cursor.ticksToMicroseconds(tick), status, data1, data2);
+                }
+            };
+            final TrackDecoder decoder = new TrackDecoder(tracks.get(0));
+            decoder.read(visitor, horizonTick);
+
+            final CompletableFuture<Void> decoded = decoder.isEnded() ? CompletableFuture.completedFuture(null)
+                    : new CompletableFuture<>();
+            final List<ParsedTrack> result = Stream.of(channels).parallel()
+                    .map(channel -> channel.buildProgressively(covered, decoded)).collect(toList());
+            decodeRemainder(decoder, visitor, decoded);
+            return result;
+        }
+
+        try {
+            return tracks.parallelStream().map(track -> readTrack(track, cache, covered, horizonTick))
+                    .collect(toList());
+        } catch (final InvalidTrackException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static ParsedTrack readTrack(ByteBuffer track, TempoCache cache, long covered, long horizonTick) {
+        final ImmutableParsedTrack.Builder builder = new ImmutableParsedTrack.Builder();
+        final TempoCache.Cursor cursor = cache.cursor();
+        final MessageVisitor visitor = new MessageVisitor() {
+            @Override
+            public void visitChannelMessage(long tick, int status, int data1, int data2) {
+                builder.accept(cursor.ticksToMicroseconds(tick), status, data1, data2);
+            }
+        };
+        final TrackDecoder decoder = new TrackDecoder(track);
+        try {
+            decoder.read(visitor, horizonTick);
+        } catch (final InvalidMidiDataException e) {
+            throw new InvalidTrackException(e);
+        }
+
+        if (decoder.isEnded()) {
+            return builder.build();
+        }
+        final CompletableFuture<Void> decoded = new CompletableFuture<>();
+        final ParsedTrack result = builder.buildProgressively(covered, decoded);
+        decodeRemainder(decoder, visitor, decoded);
+        return result;
+    }
+
+    /**
+     * Decodes the remainder of a track on the common fork join pool, once the
+     * tracks built from its prefix no longer read the builders.
+     */
+    private static void decodeRemainder(TrackDecoder decoder, MessageVisitor visitor,
+            CompletableFuture<Void> decoded) {
+        if (decoded.isDone()) {
+            return;
+        }
+
+        CompletableFuture.runAsync(() -> {
+            try {
+                decoder.read(visitor, Long.MAX_VALUE);
+            } catch (final InvalidMidiDataException e) {
+                e.printStackTrace();
+            }
+            decoded.complete(null);
+        });
+    }
+
+    /**
+     * Reads a variable length quantity of up to 4 bytes, where each byte
+     * contributes its lower 7 bits and the high bit is set on all but the last
+     * byte.
+     */
+    private static int readVariableLength(ByteBuffer track) throws InvalidMidiDataException {
+        int value = 0;
+        for (int i = 0; i != 4; i++) {
+            final byte current = track.get();
+            value = value << 7 | current & 0x7F;
+            if (current >= 0) {
+                return value;
+            }
+        }
+        throw new InvalidMidiDataException("Variable length quantity exceeds 4 bytes");
+    }
+}
@@ -0,0 +1,389 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.kreatious.pianoleopard.midi.event.Event;
+import net.kreatious.pianoleopard.midi.event.NoteEvent;
+import net.kreatious.pianoleopard.midi.event.PairingTable;
+import net.kreatious.pianoleopard.midi.event.Pedal;
+import net.kreatious.pianoleopard.midi.event.Slot;
+
+/**
+ * Summarizes the notes and pedals of a parsed track.
+ * <p>
+ * Statistics are accumulated while a track is parsed, so reading them never
+ * scans the track. The note density histogram only stores the seconds in
+ * which notes start, so its size is bounded by the number of notes rather
+ * than by the time of the last note.
+ *
+ * @author Jay-R Studer
+ */
+public class TrackStatistics {
+    private static final long MICROS_PER_SECOND = TimeUnit.SECONDS.toMicros(1);
+    private static final Pedal[] PEDALS = Pedal.values();
+
+    private final int noteCount;
+    private final int lowestKey;
+    private final int highestKey;
+    private final int maxPolyphony;
+    private final long duration;
+    private final int[] pedalCounts;
+
+    /**
+     * The seconds in which notes start, in ascending order, each packed with
+     * the number of notes starting within it by {@link #pack(int, int)}
+     */
+    private final long[] density;
+
+    private TrackStatistics(int noteCount, int lowestKey, int highestKey, int maxPolyphony, long duration,
+            int[] pedalCounts, long[] density) {
+        this.noteCount = noteCount;
+        this.lowestKey = lowestKey;
+        this.highestKey = highestKey;
+        this.maxPolyphony = maxPolyphony;
+        this.duration = duration;
+        this.pedalCounts = pedalCounts;
+        this.density = density;
+    }
+
+    /**
+     * Accumulates statistics as the events and event pairs of a track are
+     * visited.
+     */
+    static class Builder {
+        private final int[] sounding = new int[Slot.COUNT];
+        private int polyphony;
+        private int maxPolyphony;
+
+        private int noteCount;
+        private int lowestKey = 128;
+        private int highestKey = -1;
+        private long duration;
+        private final int[] pedalCounts = new int[PEDALS.length];
+        private long[] density = new long[16];
+        private int densitySize;
+
+        /**
+         * Tracks the number of notes sounding at once, in the same way that
+         * {@link PairingTable} pairs overlapping notes on the same key. Events
+         * must be provided in the order they occur in the track.
+         *
+         * @param event
+         *            the next event of the track
+         */
+        void visit(Event event) {
+            if (!(event instanceof NoteEvent)) {
+                return;
+            }
+
+            final int slot = event.getSlot().getIndex();
+            if (event.isOn() && sounding[slot] != PairingTable.CAPACITY) {
+                sounding[slot]++;
+                maxPolyphony = Math.max(maxPolyphony, ++polyphony);
+            } else if (!event.isOn() && sounding[slot] != 0) {
+                sounding[slot]--;
+                polyphony--;
+            }
+        }
+
+        /**
+         * Adds a note to this builder.
+         *
+         * @param onTime
+         *            the time in microseconds that the note starts
+         * @param offTime
+         *            the time in microseconds that the note ends
+         * @param key
+         *            the raw MIDI key (note) between 0 and 127 inclusive
+         */
+        void addNote(long onTime, long offTime, int key) {
+            noteCount++;
+            lowestKey = Math.min(lowestKey, key);
+            highestKey = Math.max(highestKey, key);
+            duration = Math.max(duration, offTime);
+
+            final int second = (int) Math.min(Math.max(onTime / MICROS_PER_SECOND, 0), Integer.MAX_VALUE - 1);
+            if (densitySize != 0 && getSecond(density[densitySize - 1]) == second) {
+                density[densitySize - 1]++;
+                return;
+            }
+
+            if (densitySize == density.length) {
+                densitySize = merge(density, densitySize);
+                if (densitySize > density.length / 2) {
+                    density = Arrays.copyOf(density, density.length * 2);
+                }
+            }
+            density[densitySize++] = pack(second, 1);
+        }
+
+        /**
+         * Adds a pedal press to this builder.
+         *
+         * @param pedal
+         *            the pedal that was pressed
+         * @param offTime
+         *            the time in microseconds that the pedal was released
+         */
+        void addPedal(Pedal pedal, long offTime) {
+            pedalCounts[pedal.ordinal()]++;
+            duration = Math.max(duration, offTime);
+        }
+
+        /**
+         * Constructs new statistics describing the events visited so far.
+         *
+         * @return a new {@link TrackStatistics}
+         */
+        TrackStatistics build() {
+            final long[] histogram = Arrays.copyOf(density, densitySize);
+            return new TrackStatistics(noteCount, noteCount == 0 ? -1 : lowestKey, highestKey, maxPolyphony,
+                    duration, pedalCounts.clone(), Arrays.copyOf(histogram, merge(histogram, histogram.length)));
+        }
+    }
+
+    /**
+     * Packs a second and the number of notes starting within it, so that
+     * packed values sort by second and counts can be added directly.
+     */
+    private static long pack(int second, int count) {
+        return (long) second << Integer.SIZE | count;
+    }
+
+    private static int getSecond(long packed) {
+        return (int) (packed >>> Integer.SIZE);
+    }
+
+    private static int getCount(long packed) {
+        return (int) packed;
+    }
+
+    /**
+     * Sorts the first {@code size} packed values and adds together the counts
+     * of equal seconds, in place.
+     *
+     * @return the number of distinct seconds
+     */
+    private static int merge(long[] packed, int size) {
+        Arrays.sort(packed, 0, size);
+        int result = 0;
+        for (int i = 0; i != size; i++) {
+            if (result != 0 && getSecond(packed[result - 1]) == getSecond(packed[i])) {
+                packed[result - 1] += getCount(packed[i]);
+            } else {
+                packed[result++] = packed[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the statistics of a track by scanning every event pair, for
+     * tracks that are not parsed from a file.
+     *
+     * @param track
+     *            the track to scan
+     * @return new statistics describing the track
+     */
+    static TrackStatistics scan(ParsedTrack track) {
+        final Builder builder = new Builder();
+        final List<Event> events = new ArrayList<>();
+        track.forEachNotePair(Long.MIN_VALUE, Long.MAX_VALUE, pair -> {
+            builder.addNote(pair.getOnTime(), pair.getOffTime(), pair.getOn().getKey());
+            events.add(pair.getOn());
+            events.add(pair.getOff());
+        });
+        track.forEachPedalPair(Long.MIN_VALUE, Long.MAX_VALUE,
+                pair -> builder.addPedal(pair.getOn().getPedal(), pair.getOffTime()));
+
+        // Off events sort before on events occurring at the same time
+        events.sort(Comparator.comparingLong(Event::getTime).thenComparing(Event::isOn));
+        events.forEach(builder::visit);
+        return builder.build();
+    }
+
+    /**
+     * Combines the statistics of several tracks that are played together.
+     * <p>
+     * Tracks are summarized independently, so the maximum polyphony of the
+     * result is that of the busiest single track rather than of the tracks
+     * played together.
+     *
+     * @param tracks
+     *            the statistics to combine
+     * @return new statistics describing all of the tracks
+     */
+    public static TrackStatistics combine(Collection<TrackStatistics> tracks) {
+        int noteCount = 0;
+        int lowestKey = 128;
+        int highestKey = -1;
+        int maxPolyphony = 0;
+        long duration = 0;
+        final int[] pedalCounts = new int[PEDALS.length];
+        long[] density = new long[0];
+        for (final TrackStatistics track : tracks) {
+            noteCount += track.noteCount;
+            if (track.noteCount != 0) {
+                lowestKey = Math.min(lowestKey, track.lowestKey);
+                highestKey = Math.max(highestKey, track.highestKey);
+            }
+            maxPolyphony = Math.max(maxPolyphony, track.maxPolyphony);
+            duration = Math.max(duration, track.duration);
+            for (int i = 0; i != pedalCounts.length; i++) {
+                pedalCounts[i] += track.pedalCounts[i];
+            }
+            final int size = density.length;
+            density = Arrays.copyOf(density, size + track.density.length);
+            System.arraycopy(track.density, 0, density, size, track.density.length);
+            density = Arrays.copyOf(density, merge(density, density.length));
+        }
+        return new TrackStatistics(noteCount, noteCount == 0 ? -1 : lowestKey, highestKey, maxPolyphony, duration,
+                pedalCounts, density);
+    }
+
+    /**
+     * Writes these statistics in a format read by {@link #read(ByteBuffer)}.
+     *
+     * @param output
+     *            the output to write to
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    void write(DataOutput output) throws IOException {
+        output.writeInt(noteCount);
+        output.writeInt(lowestKey);
+        output.writeInt(highestKey);
+        output.writeInt(maxPolyphony);
+        output.writeLong(duration);
+        for (final int count : pedalCounts) {
+            output.writeInt(count);
+        }
+        output.writeInt(density.length);
+        for (final long packed : density) {
+            output.writeLong(packed);
+        }
+    }
+
+    /**
+     * Reads statistics written by {@link #write(DataOutput)}, advancing the
+     * position of the buffer past them.
+     *
+     * @param input
+     *            the buffer to read from
+     * @return new {@link TrackStatistics}
+     * @throws java.nio.BufferUnderflowException
+     *             if the buffer is truncated
+     */
+    static TrackStatistics read(ByteBuffer input) {
+        final int noteCount = input.getInt();
+        final int lowestKey = input.getInt();
+        final int highestKey = input.getInt();
+        final int maxPolyphony = input.getInt();
+        final long duration = input.getLong();
+        final int[] pedalCounts = new int[PEDALS.length];
+        for (int i = 0; i != pedalCounts.length; i++) {
+            pedalCounts[i] = input.getInt();
+        }
+        final long[] density = new long[input.getInt()];
+        input.asLongBuffer().get(density);
+        input.position(input.position() + density.length * Long.BYTES);
+        return new TrackStatistics(noteCount, lowestKey, highestKey, maxPolyphony, duration, pedalCounts, density);
+    }
+
+    /**
+     * Gets the number of notes in the track.
+     *
+     * @return the number of note event pairs
+     */
+    public int getNoteCount() {
+        return noteCount;
+    }
+
+    /**
+     * Gets the lowest key played in the track.
+     *
+     * @return the lowest raw MIDI key between 0 and 127 inclusive, or -1 if
+     *         the track contains no notes
+     */
+    public int getLowestKey() {
+        return lowestKey;
+    }
+
+    /**
+     * Gets the highest key played in the track.
+     *
+     * @return the highest raw MIDI key between 0 and 127 inclusive, or -1 if
+     *         the track contains no notes
+     */
+    public int getHighestKey() {
+        return highestKey;
+    }
+
+    /**
+     * Gets the largest number of notes sounding at the same time in the
+     * track.
+     *
+     * @return the maximum polyphony
+     */
+    public int getMaxPolyphony() {
+        return maxPolyphony;
+    }
+
+    /**
+     * Gets the time at which the last note or pedal of the track is released,
+     * measured from the start of the song.
+     *
+     * @return the duration in microseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Gets the number of times a pedal is pressed in the track.
+     *
+     * @param pedal
+     *            the pedal to count
+     * @return the number of pedal event pairs for {@code pedal}
+     */
+    public int getPedalCount(Pedal pedal) {
+        return pedalCounts[pedal.ordinal()];
+    }
+
+    /**
+     * Gets the number of seconds covered by the note density histogram.
+     *
+     * @return the number of seconds up to and including the last second in
+     *         which a note starts, which is zero if the track contains no
+     *         notes
+     */
+    public int getDensitySeconds() {
+        return density.length == 0 ? 0 : getSecond(density[density.length - 1]) + 1;
+    }
+
+    /**
+     * Gets the number of notes starting within a second of the track.
+     *
+     * @param second
+     *            the second of the song, starting from zero
+     * @return the number of notes starting at or after {@code second} and
+     *         before the next second, or zero if {@code second} is out of range
+     */
+    public int getNoteDensity(int second) {
+        if (second < 0) {
+            return 0;
+        }
+
+        final int index = Arrays.binarySearch(density, pack(second, 0));
+        final int next = index < 0 ? -index - 1 : index;
+        return next != density.length && getSecond(density[next]) == second ? getCount(density[next]) : 0;
+    }
+}
@@ -1,23 +1,27 @@
 package net.kreatious.pianoleopard.midi.track;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
-
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Track;
 
 import net.kreatious.pianoleopard.midi.event.Event;
 import net.kreatious.pianoleopard.midi.event.EventFactory;
 import net.kreatious.pianoleopard.midi.event.EventPair;
+import net.kreatious.pianoleopard.midi.event.NoteEvent;
+import net.kreatious.pianoleopard.midi.event.PairingTable;
 import net.kreatious.pianoleopard.midi.event.TempoCache;
 
 /**
  * Decomposes a {@link Track} into {@link EventPair}s
+ * <p>
+ * Overlapping notes on the same key are paired first in, first out. A pedal
+ * that is pressed again before being released is paired from its latest on
+ * event.
  *
  * @author Jay-R Studer
  */
 abstract class TrackVisitor {
-    private final Map<Object, Event> incompleteEvents = new HashMap<>();
+    private final PairingTable<Event> incompleteEvents = new PairingTable<>();
 
     /**
      * Invokes this visitor on the specified track.
@@ -28,17 +32,85 @@ abstract class TrackVisitor {
      *            the {@link TempoCache} to use for converting timestamps
      */
     public void accept(Track track, TempoCache cache) {
+        final TempoCache.Cursor cursor = cache.cursor();
         for (int i = 0; i != track.size(); i++) {
-            EventFactory.create(track.get(i), cache).ifPresent(
-                    event -> {
-                        if (event.isOn()) {
-                            incompleteEvents.put(event.getSlot(), event);
-                        } else {
-                            Optional.ofNullable(incompleteEvents.remove(event.getSlot())).ifPresent(
-                                    previousOnEvent -> visitEventPair(new EventPair<>(previousOnEvent, event)));
-                        }
-                    });
+            final MidiEvent event = track.get(i);
+            if (event.getMessage() instanceof ShortMessage) {
+                final ShortMessage message = (ShortMessage) event.getMessage();
+                accept(cursor.ticksToMicroseconds(event.getTick()), message.getStatus(), message.getData1(),
+                        message.getData2());
+            }
+        }
+    }
+
+    /**
+     * Invokes this visitor on the next channel message of the current track.
+     * Messages that are not notes are passed to {@link #visitControl}, and
+     * messages that form events are passed to {@link #accept(Event)}.
+     * <p>
+     * Messages must be provided in the order they occur in the track.
+     *
+     * @param time
+     *            the time in microseconds that the message occurs at
+     * @param status
+     *            the status byte of the message
+     * @param data1
+     *            the first data byte of the message
+     * @param data2
+     *            the second data byte of the message
+     */
+    void accept(long time, int status, int data1, int data2) {
+        final int command = status & 0xF0;
+        if (command >= ShortMessage.POLY_PRESSURE && command < 0xF0) {
+            visitControl(time, status, data1, data2);
         }
+        EventFactory.create(status, data1, data2, time).ifPresent(this::accept);
+    }
+
+    /**
+     * Invokes this visitor on the next event of the current track.
+     * <p>
+     * Events must be provided in the order they occur in the track.
+     *
+     * @param event
+     *            the decoded {@link Event} to visit
+     */
+    void accept(Event event) {
+        if (event.isOn() && event instanceof NoteEvent) {
+            incompleteEvents.add(event);
+        } else if (event.isOn()) {
+            incompleteEvents.set(event);
+        } else {
+            incompleteEvents.poll(event.getSlot()).ifPresent(
+                    previousOnEvent -> visitEventPair(new EventPair<>(previousOnEvent, event)));
+        }
+    }
+
+    /**
+     * Gets the time of the earliest on event that has not been paired yet.
+     *
+     * @return the earliest time in microseconds of an incomplete event pair,
+     *         or {@link Long#MAX_VALUE} if every visited event is paired
+     */
+    long getEarliestIncompleteTime() {
+        return incompleteEvents.getEarliestTime();
+    }
+
+    /**
+     * Called for each channel message of the current track that is not a
+     * note. Ignored by default.
+     *
+     * @param time
+     *            the time in microseconds that the message occurs at
+     * @param status
+     *            the status byte of the message
+     * @param data1
+     *            the first data byte of the message
+     * @param data2
+     *            the second data byte of the message
+     */
+    protected void visitControl(long time, int status, int data1, int data2) {
+        // Ignored by default
     }
 
     /**
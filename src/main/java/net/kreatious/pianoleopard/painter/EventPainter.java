@@ -3,10 +3,13 @@ package net.kreatious.pianoleopard.painter;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.function.Consumer;
 
 import net.kreatious.pianoleopard.midi.event.EventPair;
 import net.kreatious.pianoleopard.midi.event.NoteEvent;
 import net.kreatious.pianoleopard.midi.event.PedalEvent;
+import net.kreatious.pianoleopard.midi.track.NoteVisitor;
 import net.kreatious.pianoleopard.midi.track.ParsedTrack;
 import net.kreatious.pianoleopard.painter.layout.DefaultEventLayout;
 import net.kreatious.pianoleopard.painter.layout.EventLayout;
@@ -15,21 +18,40 @@ import net.kreatious.pianoleopard.painter.layout.PlayedEventLayout;
 
 /**
  * Paints events into a graphics context using a predetermined layout strategy.
+ * <p>
+ * When more than {@link #DENSE_NOTES} notes are visible, notes that would be
+ * painted entirely over the area already painted for the same key are skipped,
+ * so that the time spent painting dense files depends on the size of the
+ * component rather than on the number of visible notes.
  *
  * @author Jay-R Studer
  */
 class EventPainter {
-    private final StyleStrategy<NoteEvent> noteStrategy;
+    /**
+     * The number of visible notes above which covered notes are skipped
+     */
+    static final int DENSE_NOTES = 10_000;
+
+    private final NoteStyleStrategy noteStrategy;
     private final StyleStrategy<PedalEvent> pedalStrategy;
     private final EventLayout layout;
 
     private final Rectangle rect = new Rectangle();
+    private final Consumer<EventPair<PedalEvent>> pedalPainter = this::paintPedal;
+    private final NoteVisitor notePainter = this::paintNote;
+
+    // Only valid during a call to paint
+    private long paintTime;
+    private Graphics2D paintGraphics;
+    private boolean dense;
+    private final int[] paintedTop = new int[128];
+    private final int[] paintedBottom = new int[128];
 
     /**
      * Constructor declared private to prevent direct instantiation by
      * consumers.
      */
-    private EventPainter(StyleStrategy<NoteEvent> noteStrategy, StyleStrategy<PedalEvent> pedalStrategy,
+    private EventPainter(NoteStyleStrategy noteStrategy, StyleStrategy<PedalEvent> pedalStrategy,
             EventLayout layout) {
         this.noteStrategy = noteStrategy;
         this.pedalStrategy = pedalStrategy;
@@ -114,15 +136,51 @@ class EventPainter {
         final long low = layout.getLowestVisibleTime(currentTime);
         final long high = layout.getHighestVisibleTime(currentTime);
 
-        for (final EventPair<PedalEvent> pedal : track.getPedalPairs(low, high)) {
-            layout.layoutPedal(currentTime, pedal, rect);
-            pedalStrategy.paint(graphics, pedal, rect);
+        paintTime = currentTime;
+        paintGraphics = graphics;
+        dense = track.countNotePairs(low, high) > DENSE_NOTES;
+        if (dense) {
+            Arrays.fill(paintedTop, Integer.MAX_VALUE);
+            Arrays.fill(paintedBottom, Integer.MIN_VALUE);
         }
+        try {
+            track.forEachPedalPair(low, high, pedalPainter);
+            track.forEachNote(low, high, notePainter);
+        } finally {
+            paintGraphics = null;
+        }
+    }
 
-        for (final EventPair<NoteEvent> note : track.getNotePairs(low, high)) {
-            layout.layoutNote(currentTime, note, rect);
-            noteStrategy.paint(graphics, note, rect);
+    private void paintPedal(EventPair<PedalEvent> pedal) {
+        layout.layoutPedal(paintTime, pedal, rect);
+        pedalStrategy.paint(paintGraphics, pedal, rect);
+    }
+
+    private void paintNote(long onTime, long offTime, int key, int velocity, int channel) {
+        layout.layoutNote(paintTime, onTime, offTime, key, rect);
+        if (dense && isPainted(key)) {
+            return;
+        }
+        noteStrategy.paint(paintGraphics, key, rect);
+    }
+
+    /**
+     * Determines if the laid out note lies within the area already painted for
+     * its key, and otherwise records it as painted.
+     */
+    private boolean isPainted(int key) {
+        final int top = rect.y;
+        final int bottom = rect.y + rect.height;
+        if (top >= paintedTop[key] && bottom <= paintedBottom[key]) {
+            return true;
+        } else if (bottom < paintedTop[key] || top > paintedBottom[key]) {
+            paintedTop[key] = top;
+            paintedBottom[key] = bottom;
+        } else {
+            paintedTop[key] = Math.min(top, paintedTop[key]);
+            paintedBottom[key] = Math.max(bottom, paintedBottom[key]);
         }
+        return false;
     }
 
     /**
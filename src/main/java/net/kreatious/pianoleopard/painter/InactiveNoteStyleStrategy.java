@@ -6,7 +6,6 @@ import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.Stroke;
 
-import net.kreatious.pianoleopard.midi.event.EventPair;
 import net.kreatious.pianoleopard.midi.event.NoteEvent;
 
 /**
@@ -14,14 +13,14 @@ import net.kreatious.pianoleopard.midi.event.NoteEvent;
  *
  * @author Jay-R Studer
  */
-class InactiveNoteStyleStrategy implements StyleStrategy<NoteEvent> {
+class InactiveNoteStyleStrategy implements NoteStyleStrategy {
     private static final Color NATURAL_COLOR = new Color(0xBBBBBB);
     private static final Color SHARP_COLOR = new Color(0x333333);
     private static final Stroke STROKE = new BasicStroke(1.0f);
 
     @Override
-    public void paint(Graphics2D graphics, EventPair<NoteEvent> event, Rectangle rect) {
-        final boolean sharp = event.getOff().isSharp();
+    public void paint(Graphics2D graphics, int key, Rectangle rect) {
+        final boolean sharp = NoteEvent.isSharp(key);
         graphics.setColor(sharp ? SHARP_COLOR : NATURAL_COLOR);
         graphics.setStroke(STROKE);
         graphics.fillRect(rect.x, rect.y, rect.width, rect.height);
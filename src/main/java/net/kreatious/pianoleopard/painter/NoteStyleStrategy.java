@@ -0,0 +1,25 @@
+package net.kreatious.pianoleopard.painter;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+/**
+ * Draws a note to the screen from its key, so that notes can be painted
+ * without creating an event pair for each note.
+ *
+ * @author Jay-R Studer
+ */
+interface NoteStyleStrategy {
+    /**
+     * Paints into the specified graphics context the specified note in the
+     * appropriate color.
+     *
+     * @param graphics
+     *            the graphics class to set color and stroke information on
+     * @param key
+     *            the raw MIDI key (note) of the note being rendered
+     * @param rect
+     *            the location to draw the note at
+     */
+    void paint(Graphics2D graphics, int key, Rectangle rect);
+}
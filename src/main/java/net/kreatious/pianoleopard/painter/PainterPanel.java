@@ -36,21 +36,28 @@ public class PainterPanel {
         @Override
         public void paint(Graphics g) {
             painter.paint((Graphics2D) g, currentTime, sequence, playedTrack);
+            if (firstFrame) {
+                firstFrame = false;
+                outputModel.firstFramePainted();
+            }
         }
     }
 
     private final JPanel panel = new PainterPanelImpl();
     private final ParsedTrack playedTrack;
+    private final OutputModel outputModel;
 
     private volatile long currentTime;
+    private volatile boolean firstFrame;
     private volatile ParsedSequence sequence = ParsedSequence.createEmpty();
 
     /**
      * Constructor declared private to prevent direct instantiation by
      * consumers.
      */
-    private PainterPanel(ParsedTrack playedTrack) {
+    private PainterPanel(ParsedTrack playedTrack, OutputModel outputModel) {
         this.playedTrack = playedTrack;
+        this.outputModel = outputModel;
     }
 
     /**
@@ -64,7 +71,7 @@ public class PainterPanel {
      * @return a new instance of {@link PainterPanel}
      */
     public static JPanel create(OutputModel outputModel, InputModel inputModel) {
-        final PainterPanel result = new PainterPanel(inputModel);
+        final PainterPanel result = new PainterPanel(inputModel, outputModel);
         outputModel.addCurrentTimeListener(result::setCurrentTime);
         outputModel.addOpenListener(result::setCurrentSequence);
         return result.getPanel();
@@ -89,12 +96,15 @@ public class PainterPanel {
     }
 
     /**
-     * Sets the current sequence displayed by this panel
+     * Sets the current sequence displayed by this panel. The output model is
+     * notified once the first frame of the sequence is painted.
      *
      * @param sequence
      *            the parsed sequence to set
      */
     private void setCurrentSequence(ParsedSequence sequence) {
         this.sequence = sequence;
+        firstFrame = true;
+        panel.repaint();
     }
 }
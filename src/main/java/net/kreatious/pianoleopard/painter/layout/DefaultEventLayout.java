@@ -4,7 +4,6 @@ import java.awt.Dimension;
 import java.awt.Rectangle;
 
 import net.kreatious.pianoleopard.midi.event.EventPair;
-import net.kreatious.pianoleopard.midi.event.NoteEvent;
 import net.kreatious.pianoleopard.midi.event.PedalEvent;
 
 /**
@@ -29,9 +28,9 @@ public class DefaultEventLayout implements EventLayout {
     }
 
     @Override
-    public void layoutNote(long currentTime, EventPair<NoteEvent> event, Rectangle rect) {
-        yStrategy.layout(currentTime, event, rect);
-        xNoteStrategy.layout(event.getOn(), rect);
+    public void layoutNote(long currentTime, long onTime, long offTime, int key, Rectangle rect) {
+        yStrategy.layout(currentTime, onTime, offTime, rect);
+        xNoteStrategy.layout(key, rect);
     }
 
     @Override
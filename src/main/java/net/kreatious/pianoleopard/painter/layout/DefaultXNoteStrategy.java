@@ -3,8 +3,6 @@ package net.kreatious.pianoleopard.painter.layout;
 import java.awt.Dimension;
 import java.awt.Rectangle;
 
-import net.kreatious.pianoleopard.midi.event.NoteEvent;
-
 /**
  * Provides the default horizontal layout strategy, laying out low notes on the
  * left and high notes on the right.
@@ -19,8 +17,8 @@ class DefaultXNoteStrategy implements XNoteStrategy {
     private float normalWidth;
 
     @Override
-    public void layout(NoteEvent note, Rectangle rect) {
-        final NoteSize size = NoteSize.forPitch(note.getKey());
+    public void layout(int key, Rectangle rect) {
+        final NoteSize size = NoteSize.forPitch(key);
         rect.x = (int) (normalWidth * (size.getXOffsetFactor() - minXFactor));
         rect.width = (int) (normalWidth * size.getWidthFactor());
     }
@@ -4,9 +4,6 @@ import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.util.concurrent.TimeUnit;
 
-import net.kreatious.pianoleopard.midi.event.Event;
-import net.kreatious.pianoleopard.midi.event.EventPair;
-
 /**
  * Lays out notes such that they move from the top of the screen downwards.
  *
@@ -17,9 +14,9 @@ class DownwardsYStrategy implements YStrategy {
     private int playBarY;
 
     @Override
-    public void layout(long currentTime, EventPair<? extends Event> event, Rectangle rect) {
-        rect.y = (int) ((event.getOnTime() - currentTime) / MICROS_PER_PIXEL);
-        rect.height = (int) (event.getDuration() / MICROS_PER_PIXEL);
+    public void layout(long currentTime, long onTime, long offTime, Rectangle rect) {
+        rect.y = (int) ((onTime - currentTime) / MICROS_PER_PIXEL);
+        rect.height = (int) ((offTime - onTime) / MICROS_PER_PIXEL);
         rect.y = playBarY - rect.y - rect.height;
     }
 
@@ -24,7 +24,27 @@ public interface EventLayout {
      *            output parameter storing the resulting on screen location of
      *            the event.
      */
-    void layoutNote(long currentTime, EventPair<NoteEvent> event, Rectangle rect);
+    default void layoutNote(long currentTime, EventPair<NoteEvent> event, Rectangle rect) {
+        layoutNote(currentTime, event.getOnTime(), event.getOffTime(), event.getOn().getKey(), rect);
+    }
+
+    /**
+     * Lays out the coordinates for drawing a note with the specified fields,
+     * without requiring an event pair to be created for it.
+     *
+     * @param currentTime
+     *            the current song time in microseconds
+     * @param onTime
+     *            the time in microseconds that the note starts
+     * @param offTime
+     *            the time in microseconds that the note ends
+     * @param key
+     *            the raw MIDI key (note) of the note
+     * @param rect
+     *            output parameter storing the resulting on screen location of
+     *            the event.
+     */
+    void layoutNote(long currentTime, long onTime, long offTime, int key, Rectangle rect);
 
     /**
      * Lays out the coordinates for drawing the specified pedal event.
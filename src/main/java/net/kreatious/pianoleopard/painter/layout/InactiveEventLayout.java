@@ -3,9 +3,6 @@ package net.kreatious.pianoleopard.painter.layout;
 import java.awt.Dimension;
 import java.awt.Rectangle;
 
-import net.kreatious.pianoleopard.midi.event.EventPair;
-import net.kreatious.pianoleopard.midi.event.NoteEvent;
-
 /**
  * Provides the coordinates for drawing events not to be played by the user.
  *
@@ -24,8 +21,8 @@ public class InactiveEventLayout extends DefaultEventLayout {
     }
 
     @Override
-    public void layoutNote(long currentTime, EventPair<NoteEvent> event, Rectangle rect) {
-        super.layoutNote(currentTime, event, rect);
+    public void layoutNote(long currentTime, long onTime, long offTime, int key, Rectangle rect) {
+        super.layoutNote(currentTime, onTime, offTime, key, rect);
         rect.x += rect.width / 4;
         rect.width -= rect.width / 2;
     }
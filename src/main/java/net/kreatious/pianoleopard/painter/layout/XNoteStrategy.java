@@ -3,8 +3,6 @@ package net.kreatious.pianoleopard.painter.layout;
 import java.awt.Dimension;
 import java.awt.Rectangle;
 
-import net.kreatious.pianoleopard.midi.event.NoteEvent;
-
 /**
  * Provides the strategy used to horizontally layout notes on screen
  *
@@ -17,13 +15,13 @@ interface XNoteStrategy {
      * <p>
      * Implementors are to modify the x and width values of {@code rect}.
      *
-     * @param note
-     *            the note event to layout
+     * @param key
+     *            the raw MIDI key (note) to layout
      * @param rect
      *            output parameter storing the resulting on screen location of
      *            the event.
      */
-    void layout(NoteEvent note, Rectangle rect);
+    void layout(int key, Rectangle rect);
 
     /**
      * Sets the component dimensions to layout within
@@ -51,9 +49,9 @@ interface XNoteStrategy {
             }
 
             @Override
-            public void layout(NoteEvent note, Rectangle rect) {
-                xNoteStrategy.layout(note, rect);
-                next.layout(note, rect);
+            public void layout(int key, Rectangle rect) {
+                xNoteStrategy.layout(key, rect);
+                next.layout(key, rect);
             }
         };
     }
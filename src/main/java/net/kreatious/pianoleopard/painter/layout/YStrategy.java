@@ -25,7 +25,27 @@ interface YStrategy {
      *            output parameter storing the resulting on screen location of
      *            the event.
      */
-    void layout(long currentTime, EventPair<? extends Event> event, Rectangle rect);
+    default void layout(long currentTime, EventPair<? extends Event> event, Rectangle rect) {
+        layout(currentTime, event.getOnTime(), event.getOffTime(), rect);
+    }
+
+    /**
+     * Performs the vertical layout operation for an event spanning the
+     * specified times.
+     * <p>
+     * Implementors are to modify the y and height values of {@code rect}.
+     *
+     * @param currentTime
+     *            the current song time in microseconds
+     * @param onTime
+     *            the time in microseconds that the event starts
+     * @param offTime
+     *            the time in microseconds that the event ends
+     * @param rect
+     *            output parameter storing the resulting on screen location of
+     *            the event.
+     */
+    void layout(long currentTime, long onTime, long offTime, Rectangle rect);
 
     /**
      * Sets the component dimensions to layout within
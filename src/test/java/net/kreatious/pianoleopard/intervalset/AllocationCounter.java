@@ -0,0 +1,47 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Measures the number of bytes allocated by the current thread.
+ *
+ * @author Jay-R Studer
+ */
+final class AllocationCounter {
+    private static final int WARMUP_ITERATIONS = 10000;
+
+    private AllocationCounter() {
+    }
+
+    /**
+     * Measures the bytes allocated by a single invocation of the specified
+     * action, after running it enough times for it to be compiled. Skips the
+     * calling test if the JVM does not support allocation measurement.
+     *
+     * @param action
+     *            the action to measure
+     * @return the number of bytes allocated by the action
+     */
+    static long measure(Runnable action) {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof ThreadMXBean);
+        final ThreadMXBean threads = (ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        for (int i = 0; i != WARMUP_ITERATIONS; i++) {
+            action.run();
+        }
+
+        final long id = Thread.currentThread().getId();
+        final long overheadStart = threads.getThreadAllocatedBytes(id);
+        final long overheadEnd = threads.getThreadAllocatedBytes(id);
+        final long start = threads.getThreadAllocatedBytes(id);
+        action.run();
+        final long end = threads.getThreadAllocatedBytes(id);
+        return end - start - (overheadEnd - overheadStart);
+    }
+}
@@ -0,0 +1,350 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests for {@link ConcurrentIntervalSet}
+ *
+ * @author Jay-R Studer
+ */
+public class ConcurrentIntervalSetTest {
+    private long time;
+
+    /**
+     * Tests that {@link ConcurrentIntervalSet#subSet},
+     * {@link ConcurrentIntervalSet#forEachInRange} and
+     * {@link ConcurrentIntervalSet#cursor()} return the same values as a
+     * linear search
+     */
+    @Test
+    public void testSubSet() {
+        final Random rnd = new Random(311);
+        final List<Interval> intervals = new ArrayList<>();
+        final ConcurrentIntervalSet<String> set = new ConcurrentIntervalSet<>();
+        for (int i = 0; i != 1000; i++) {
+            final int low = rnd.nextInt(5000);
+            final Interval interval = new Interval(low, low + rnd.nextInt(i % 10 == 0 ? 1000 : 50));
+            intervals.add(interval);
+            set.put(interval.getLow(), interval.getHigh(), i + ":" + interval);
+        }
+
+        assertThat(set.size(), is(intervals.size()));
+        final IntervalCursor<String> cursor = set.cursor();
+        for (int low = -10; low <= 6100; low += 7) {
+            for (final int size : new int[] { 0, 1, 10, 100 }) {
+                final Interval range = new Interval(low, low + size);
+                final List<String> expected = new ArrayList<>();
+                for (int i = 0; i != intervals.size(); i++) {
+                    if (intervals.get(i).containsInterval(range)) {
+                        expected.add(i + ":" + intervals.get(i));
+                    }
+                }
+
+                final List<String> result = Lists.newArrayList(set.subSet(range.getLow(), range.getHigh()));
+                assertThat(result, containsInAnyOrder(expected.toArray()));
+
+                final List<String> visited = new ArrayList<>();
+                set.forEachInRange(range.getLow(), range.getHigh(), visited::add);
+                assertThat(visited, is(result));
+
+                final List<String> cursorValues = new ArrayList<>();
+                cursor.reset(range.getLow(), range.getHigh());
+                while (cursor.advance()) {
+                    cursorValues.add(cursor.get());
+                }
+                assertThat(cursorValues, is(result));
+            }
+        }
+    }
+
+    /**
+     * Tests that values are iterated in order of their intervals, with equal
+     * intervals in insertion order
+     */
+    @Test
+    public void testIterator() {
+        final ConcurrentIntervalSet<String> set = new ConcurrentIntervalSet<>();
+        set.put(5, 6, "c");
+        set.put(1, 9, "b");
+        set.put(1, 2, "a");
+        set.put(5, 6, "d");
+        assertThat(set.put(5, 6, "c"), is(Optional.of("c")));
+        set.put(8, 7, "invalid");
+
+        assertThat(set, contains("a", "b", "c", "d"));
+        assertThat(set.size(), is(4));
+        assertThat(set.subSet(6, 6), contains("b", "c", "d"));
+        assertThat(set.subSet(7, 7), contains("b"));
+
+        set.clear();
+        assertThat(set, is(emptyIterable()));
+        assertThat(set.size(), is(0));
+    }
+
+    /**
+     * Tests that range queries return values in ascending order
+     */
+    @Test
+    public void testSubSetOrder() {
+        final ConcurrentIntervalSet<Long> set = new ConcurrentIntervalSet<>();
+        for (long i = 100; i != 0; i--) {
+            set.put(i, i + 10, i);
+        }
+
+        final List<Long> result = Lists.newArrayList(set.subSet(20, 50));
+        assertThat(result, is(result.stream().sorted().collect(toList())));
+        assertThat(result.size(), is(41));
+    }
+
+    /**
+     * Tests that an iterator is unaffected by values inserted after it was
+     * created
+     */
+    @Test
+    public void testIteratorIsSnapshot() {
+        final ConcurrentIntervalSet<Integer> set = new ConcurrentIntervalSet<>();
+        for (int i = 0; i != 10; i++) {
+            set.put(i, i, i);
+        }
+
+        final Iterator<Integer> iterator = set.iterator();
+        for (int i = 10; i != 100; i++) {
+            set.put(-i, -i, -i);
+        }
+        set.clear();
+
+        assertThat(Lists.newArrayList(iterator), contains(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+    }
+
+    /**
+     * Tests that readers observe consistent snapshots while a writer inserts
+     * values concurrently
+     *
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    @Test
+    public void testConcurrentReaders() throws InterruptedException {
+        final ConcurrentIntervalSet<Integer> set = new ConcurrentIntervalSet<>();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread writer = new Thread(() -> {
+            for (int i = 0; i != 20000; i++) {
+                set.put(i, i + 5, i);
+            }
+        });
+        writer.start();
+
+        final Thread reader = new Thread(() -> {
+            try {
+                int previousSize = 0;
+                while (writer.isAlive() || previousSize != 20000) {
+                    final List<Integer> values = Lists.newArrayList(set);
+                    assertThat(values.size(), greaterThanOrEqualTo(previousSize));
+                    for (int i = 0; i != values.size(); i++) {
+                        assertThat(values.get(i), is(i));
+                    }
+                    previousSize = values.size();
+                }
+            } catch (final Throwable e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+
+        writer.join();
+        reader.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertThat(set.size(), is(20000));
+    }
+
+    /**
+     * Tests that {@link ConcurrentIntervalSet#removeEndingBefore} removes
+     * exactly the values ending before the specified time
+     */
+    @Test
+    public void testRemoveEndingBefore() {
+        final Random rnd = new Random(311);
+        final List<Interval> intervals = new ArrayList<>();
+        final ConcurrentIntervalSet<Integer> set = new ConcurrentIntervalSet<>();
+        for (int i = 0; i != 1000; i++) {
+            final int low = rnd.nextInt(5000);
+            final Interval interval = new Interval(low, low + rnd.nextInt(100));
+            intervals.add(interval);
+            set.put(interval.getLow(), interval.getHigh(), i);
+        }
+        final List<Integer> before = Lists.newArrayList(set);
+
+        final List<Integer> removed = new ArrayList<>();
+        set.removeEndingBefore(2500, removed::add);
+
+        final List<Integer> expectedRemoved = before.stream().filter(i -> intervals.get(i).getHigh() < 2500)
+                .collect(toList());
+        final List<Integer> expectedRetained = before.stream().filter(i -> intervals.get(i).getHigh() >= 2500)
+                .collect(toList());
+        assertThat(removed, is(expectedRemoved));
+        assertThat(Lists.newArrayList(set), is(expectedRetained));
+        assertThat(set.size(), is(expectedRetained.size()));
+        assertThat(Lists.newArrayList(set.subSet(2400, 2600)), containsInAnyOrder(expectedRetained.stream()
+                .filter(i -> intervals.get(i).getLow() <= 2600).toArray()));
+
+        set.removeEndingBefore(Long.MAX_VALUE, removed::add);
+        assertThat(set, is(emptyIterable()));
+        assertThat(removed, containsInAnyOrder(before.toArray()));
+    }
+
+    /**
+     * Tests that values inserted after
+     * {@link ConcurrentIntervalSet#removeEndingBefore} rebuilds the set are
+     * ordered and found by every kind of query
+     */
+    @Test
+    public void testPutAfterRemoveEndingBefore() {
+        final Random rnd = new Random(311);
+        for (int retained = 0; retained != 100; retained++) {
+            final ConcurrentIntervalSet<Integer> set = new ConcurrentIntervalSet<>();
+            for (int i = 0; i != 100; i++) {
+                set.put(i, i, i);
+            }
+            set.removeEndingBefore(100 - retained, value -> {
+                // Intentionally empty
+            });
+
+            final List<Integer> expected = new ArrayList<>();
+            for (int i = 100 - retained; i != 100; i++) {
+                expected.add(i);
+            }
+            for (int i = 0; i != 100; i++) {
+                final int value = rnd.nextInt(200);
+                if (!set.put(value, value, value).isPresent()) {
+                    expected.add(value);
+                }
+            }
+            expected.sort(null);
+
+            assertThat(Lists.newArrayList(set), is(expected));
+            final List<Integer> visited = new ArrayList<>();
+            set.forEachInRange(Long.MIN_VALUE, Long.MAX_VALUE, visited::add);
+            assertThat(visited, is(expected));
+            final IntervalCursor<Integer> cursor = set.cursor();
+            cursor.reset(50, 150);
+            final List<Integer> cursorValues = new ArrayList<>();
+            while (cursor.advance()) {
+                cursorValues.add(cursor.get());
+            }
+            assertThat(cursorValues, is(expected.stream().filter(i -> i >= 50 && i <= 150).collect(toList())));
+        }
+    }
+
+    /**
+     * Tests that a set with a horizon stays bounded and evicts only values
+     * that were inserted before the horizon
+     */
+    @Test
+    public void testHorizon() {
+        final List<Integer> evicted = new ArrayList<>();
+        final ConcurrentIntervalSet<Integer> set = new ConcurrentIntervalSet<>(1000, () -> time, evicted::add);
+        for (int i = 0; i != 100000; i++) {
+            time = i;
+            set.put(i, i + 10, i);
+            assertThat(set.size(), is(lessThanOrEqualTo(2 * 1001 + 256)));
+        }
+
+        assertThat(set.size() + evicted.size(), is(100000));
+        assertThat(evicted, is(evicted.stream().sorted().collect(toList())));
+        for (final int value : evicted) {
+            assertThat((long) value, lessThan(99999L - 1000));
+        }
+    }
+
+    /**
+     * Tests that a set with a horizon stays bounded when every value has the
+     * same interval, such as notes played while the song time is stopped
+     */
+    @Test
+    public void testHorizonConstantInterval() {
+        final List<Integer> evicted = new ArrayList<>();
+        final ConcurrentIntervalSet<Integer> set = new ConcurrentIntervalSet<>(1000, () -> time, evicted::add);
+        for (int i = 0; i != 100000; i++) {
+            time = i;
+            set.put(5, 5, i);
+            assertThat(set.size(), is(lessThanOrEqualTo(2 * 1001 + 256)));
+        }
+
+        assertThat(set.size() + evicted.size(), is(100000));
+        assertThat(Lists.newArrayList(set.subSet(5, 5)).size(), is(set.size()));
+        for (final int value : evicted) {
+            assertThat((long) value, lessThan(99999L - 1000));
+        }
+    }
+
+    /**
+     * Tests that {@link ConcurrentIntervalSet#forEachInRange} and repositioning
+     * a cursor do not allocate
+     */
+    @Test
+    public void testQueriesDoNotAllocate() {
+        final ConcurrentIntervalSet<Integer> set = new ConcurrentIntervalSet<>();
+        final Random rnd = new Random(311);
+        for (int i = 0; i != 1000; i++) {
+            final int low = rnd.nextInt(1000);
+            set.put(low, low + rnd.nextInt(50), i);
+        }
+        final long[] sum = new long[1];
+        final Consumer<Integer> action = value -> sum[0] += value;
+        final IntervalCursor<Integer> cursor = set.cursor();
+
+        assertThat(AllocationCounter.measure(() -> set.forEachInRange(400, 600, action)), is(0L));
+        assertThat(AllocationCounter.measure(() -> {
+            cursor.reset(400, 600);
+            while (cursor.advance()) {
+                sum[0] += cursor.getHigh();
+            }
+        }), is(0L));
+        assertThat(AllocationCounter.measure(() -> sum[0] += set.count(400, 600)), is(0L));
+    }
+
+    /**
+     * Tests that {@link ConcurrentIntervalSet#count} counts the same values as
+     * {@link ConcurrentIntervalSet#forEachInRange}
+     */
+    @Test
+    public void testCount() {
+        final ConcurrentIntervalSet<Integer> set = new ConcurrentIntervalSet<>();
+        final Random rnd = new Random(311);
+        for (int i = 0; i != 2000; i++) {
+            final int low = rnd.nextInt(10000);
+            set.put(low, low + rnd.nextInt(200), i);
+        }
+
+        for (int i = 0; i != 500; i++) {
+            final long low = rnd.nextInt(11000) - 500;
+            final long high = low + rnd.nextInt(500);
+            final int[] expected = new int[1];
+            set.forEachInRange(low, high, value -> expected[0]++);
+            assertThat(set.count(low, high), is(expected[0]));
+        }
+        assertThat(set.count(Long.MIN_VALUE, Long.MAX_VALUE), is(set.size()));
+    }
+}
@@ -9,7 +9,6 @@ import java.awt.Graphics;
 import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -17,6 +16,7 @@ import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.BiConsumer;
@@ -108,8 +108,8 @@ class DebugVisualization<V> extends JDialog {
         private final int number = ranges.size();
         private String action = "";
         private int step;
-        private Entry<V> previousPointer = set.getRoot().get();
-        private Entry<V> pointer = set.getRoot().get();
+        private Entry<V> previousPointer = set.getRoot();
+        private Entry<V> pointer = set.getRoot();
         private final Color color;
         private final Set<Entry<V>> expected;
         private final Set<Entry<V>> visited = new HashSet<>();
@@ -118,9 +118,8 @@ class DebugVisualization<V> extends JDialog {
             searchInterval = "[" + low + ", " + high + "]";
             this.color = color;
             final List<Entry<V>> children = new ArrayList<>();
-            visitChildren(set.getRoot().get(), children::add);
-            expected = children.stream().filter(child -> child.getKey().containsInterval(new Interval(low, high)))
-                    .collect(toSet());
+            visitChildren(set.getRoot(), children::add);
+            expected = children.stream().filter(child -> child.overlaps(low, high)).collect(toSet());
         }
     }
 
@@ -129,7 +128,8 @@ class DebugVisualization<V> extends JDialog {
 
         private TreeDrawingPanel() {
             final Map<Entry<V>, Rectangle> positions = new HashMap<>();
-            calculateNodePositions(positions, Collections.singletonList(set.getRoot()), 1, maxLevel(set.getRoot()), 100);
+            calculateNodePositions(positions, Collections.singletonList(Optional.ofNullable(set.getRoot())), 1,
+                    maxLevel(set.getRoot()), 100);
             setPreferredSize(new Dimension(positions.values().stream().map(rect -> rect.x + rect.width)
                     .max(Integer::compare).get(), positions.values().stream().map(rect -> rect.y + rect.height)
                     .max(Integer::compare).get()));
@@ -141,12 +141,13 @@ class DebugVisualization<V> extends JDialog {
             super.paint(g);
 
             final Map<Entry<V>, Rectangle> positions = new HashMap<>();
-            calculateNodePositions(positions, Collections.singletonList(set.getRoot()), 1, maxLevel(set.getRoot()), 100);
+            calculateNodePositions(positions, Collections.singletonList(Optional.ofNullable(set.getRoot())), 1,
+                    maxLevel(set.getRoot()), 100);
             positions.forEach((entry, position) -> {
                 g.setColor(Color.BLACK);
                 drawCenteredString(g, entry.toString(), position);
 
-                entry.getParent().ifPresent(
+                Optional.ofNullable(entry.getParent()).ifPresent(
                         parent -> {
                             final Rectangle parentPosition = positions.get(parent);
                             g.drawLine((int) parentPosition.getCenterX(), (int) parentPosition.getMaxY(),
@@ -195,10 +196,14 @@ class DebugVisualization<V> extends JDialog {
         final JButton step = new JButton("Step");
         step.addActionListener(event -> {
             ranges.forEach(new BiConsumer<Iterator<V>, Decorations>() {
-                final Map<Collection<V>, Entry<V>> entries = new IdentityHashMap<Collection<V>, Entry<V>>() {
+                final Map<V, Entry<V>> entries = new IdentityHashMap<V, Entry<V>>() {
                     private static final long serialVersionUID = 7676204394757535429L;
                     {
-                        visitChildren(set.getRoot().get(), entry -> put(entry.getValues(), entry));
+                        visitChildren(set.getRoot(), entry -> {
+                            for (int i = 0; i != entry.getValueCount(); i++) {
+                                put(entry.getValue(i), entry);
+                            }
+                        });
                     }
                 };
 
@@ -232,12 +237,12 @@ class DebugVisualization<V> extends JDialog {
         ranges.put(set.subSet(low, high).iterator(), new Decorations(low, high, color));
     }
 
-    private int maxLevel(Optional<Entry<V>> node) {
-        if (!node.isPresent()) {
+    private int maxLevel(Entry<V> node) {
+        if (node == null) {
             return 0;
         }
 
-        return Math.max(maxLevel(node.get().getLeft()), maxLevel(node.get().getRight())) + 1;
+        return Math.max(maxLevel(node.getLeft()), maxLevel(node.getRight())) + 1;
     }
 
     private static int stringHeight(Graphics g, String s) {
@@ -280,7 +285,7 @@ class DebugVisualization<V> extends JDialog {
             return true;
         }
         for (final Entry<V> next : Stream.of(start.getLeft(), start.getParent(), start.getRight())
-                .filter(Optional::isPresent).map(Optional::get).collect(toList())) {
+                .filter(Objects::nonNull).collect(toList())) {
             if (shortestPath(next, end, depth - 1, result)) {
                 result.add(start);
                 return true;
@@ -290,9 +295,13 @@ class DebugVisualization<V> extends JDialog {
     }
 
     private void visitChildren(Entry<V> node, Consumer<Entry<V>> consumer) {
-        node.getLeft().ifPresent(next -> visitChildren(next, consumer));
+        if (node.getLeft() != null) {
+            visitChildren(node.getLeft(), consumer);
+        }
         consumer.accept(node);
-        node.getRight().ifPresent(next -> visitChildren(next, consumer));
+        if (node.getRight() != null) {
+            visitChildren(node.getRight(), consumer);
+        }
     }
 
     private void calculateNodePositions(Map<Entry<V>, Rectangle> result, List<Optional<Entry<V>>> nodes, int level,
@@ -308,8 +317,8 @@ class DebugVisualization<V> extends JDialog {
         final List<Optional<Entry<V>>> newNodes = nodes
                 .stream()
                 .flatMap(
-                        node -> Stream.<Optional<Entry<V>>> of(node.flatMap(Entry::getLeft),
-                                node.flatMap(Entry::getRight))).collect(toList());
+                        node -> Stream.<Optional<Entry<V>>> of(node.map(Entry::getLeft),
+                                node.map(Entry::getRight))).collect(toList());
         final int betweenSpace = (int) Math.pow(2, maxLevel - level) * SPACE_MULTIPLIER;
         int x = betweenSpace / 2;
 
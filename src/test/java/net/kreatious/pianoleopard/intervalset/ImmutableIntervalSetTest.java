@@ -0,0 +1,239 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests for {@link ImmutableIntervalSet}
+ *
+ * @author Jay-R Studer
+ */
+public class ImmutableIntervalSetTest {
+    /**
+     * Tests that {@link ImmutableIntervalSet#subSet} returns the same values
+     * as a linear search
+     */
+    @Test
+    public void testSubSet() {
+        final Random rnd = new Random(311);
+        final List<Interval> intervals = new ArrayList<>();
+        final ImmutableIntervalSet.Builder<String> builder = ImmutableIntervalSet.builder();
+        for (int i = 0; i != 1000; i++) {
+            final int low = rnd.nextInt(5000);
+            final Interval interval = new Interval(low, low + rnd.nextInt(i % 10 == 0 ? 1000 : 50));
+            intervals.add(interval);
+            builder.add(interval.getLow(), interval.getHigh(), i + ":" + interval);
+        }
+        final ImmutableIntervalSet<String> set = builder.build();
+
+        assertThat(set.size(), is(intervals.size()));
+        for (int low = -10; low <= 6100; low += 7) {
+            for (final int size : new int[] { 0, 1, 10, 100 }) {
+                final Interval range = new Interval(low, low + size);
+                final List<String> expected = new ArrayList<>();
+                for (int i = 0; i != intervals.size(); i++) {
+                    if (intervals.get(i).containsInterval(range)) {
+                        expected.add(i + ":" + intervals.get(i));
+                    }
+                }
+
+                final List<String> result = Lists.newArrayList(set.subSet(range.getLow(), range.getHigh()));
+                assertThat(result, containsInAnyOrder(expected.toArray()));
+            }
+        }
+    }
+
+    /**
+     * Tests that values are iterated in order of their intervals, with equal
+     * intervals in insertion order
+     */
+    @Test
+    public void testIterator() {
+        final ImmutableIntervalSet<String> set = ImmutableIntervalSet.<String> builder().add(5, 6, "c")
+                .add(1, 9, "b").add(1, 2, "a").add(5, 6, "d").add(5, 6, "c").add(8, 7, "invalid").build();
+
+        assertThat(set, contains("a", "b", "c", "d"));
+        assertThat(set.subSet(6, 6), contains("b", "c", "d"));
+        assertThat(set.subSet(7, 7), contains("b"));
+    }
+
+    /**
+     * Tests that an empty set has no values
+     */
+    @Test
+    public void testEmpty() {
+        final ImmutableIntervalSet<String> set = ImmutableIntervalSet.<String> builder().build();
+
+        assertThat(set.size(), is(0));
+        assertThat(set, is(emptyIterable()));
+        assertThat(set.subSet(Long.MIN_VALUE, Long.MAX_VALUE), is(emptyIterable()));
+    }
+
+    /**
+     * Tests that range queries return values in ascending order
+     */
+    @Test
+    public void testSubSetOrder() {
+        final ImmutableIntervalSet.Builder<Long> builder = ImmutableIntervalSet.builder();
+        for (long i = 100; i != 0; i--) {
+            builder.add(i, i + 10, i);
+        }
+
+        final List<Long> result = Lists.newArrayList(builder.build().subSet(20, 50));
+        assertThat(result, is(result.stream().sorted().collect(toList())));
+        assertThat(result.size(), is(41));
+    }
+
+    /**
+     * Tests that {@link ImmutableIntervalSet#forEachInRange} and
+     * {@link ImmutableIntervalSet#cursor()} visit the same values as
+     * {@link ImmutableIntervalSet#subSet}
+     */
+    @Test
+    public void testForEachInRangeAndCursor() {
+        final ImmutableIntervalSet<Integer> set = createRandomSet();
+
+        final IntervalCursor<Integer> cursor = set.cursor();
+        assertThat(cursor.advance(), is(false));
+        final Random rnd = new Random(311);
+        for (int low = -10; low <= 1110; low += 3) {
+            final int high = low + rnd.nextInt(50);
+            final List<Integer> expected = Lists.newArrayList(set.subSet(low, high));
+
+            final List<Integer> visited = new ArrayList<>();
+            set.forEachInRange(low, high, visited::add);
+            assertThat(visited, is(expected));
+
+            final List<Integer> cursorValues = new ArrayList<>();
+            cursor.reset(low, high);
+            while (cursor.advance()) {
+                assertThat(cursor.getLow(), lessThanOrEqualTo((long) high));
+                assertThat((long) low, lessThanOrEqualTo(cursor.getHigh()));
+                cursorValues.add(cursor.get());
+            }
+            assertThat(cursorValues, is(expected));
+        }
+    }
+
+    /**
+     * Tests {@link ImmutableIntervalSet#rank} and
+     * {@link ImmutableIntervalSet#select} against the iteration order
+     */
+    @Test
+    public void testRankAndSelect() {
+        final ImmutableIntervalSet<String> set = ImmutableIntervalSet.<String> builder().add(5, 6, "c")
+                .add(1, 9, "b").add(1, 2, "a").add(5, 6, "d").add(8, 8, "e").build();
+
+        assertThat(set.select(0), is("a"));
+        assertThat(set.select(2), is("c"));
+        assertThat(set.select(4), is("e"));
+        assertThat(set.rank(1), is(0));
+        assertThat(set.rank(2), is(2));
+        assertThat(set.rank(6), is(4));
+        assertThat(set.rank(9), is(5));
+    }
+
+    /**
+     * Tests that {@link ImmutableIntervalSet#forEachInRange} does not allocate
+     */
+    @Test
+    public void testForEachInRangeDoesNotAllocate() {
+        final ImmutableIntervalSet<Integer> set = createRandomSet();
+        final long[] sum = new long[1];
+        final Consumer<Integer> action = value -> sum[0] += value;
+
+        assertThat(AllocationCounter.measure(() -> set.forEachInRange(400, 600, action)), is(0L));
+    }
+
+    /**
+     * Tests that repositioning and advancing an {@link IntervalCursor} does
+     * not allocate
+     */
+    @Test
+    public void testCursorDoesNotAllocate() {
+        final IntervalCursor<Integer> cursor = createRandomSet().cursor();
+        final long[] sum = new long[1];
+
+        assertThat(AllocationCounter.measure(() -> {
+            cursor.reset(400, 600);
+            while (cursor.advance()) {
+                sum[0] += cursor.getHigh();
+            }
+        }), is(0L));
+    }
+
+    /**
+     * Tests that moving a {@link WindowCursor} does not allocate
+     */
+    @Test
+    public void testWindowCursorDoesNotAllocate() {
+        final WindowCursor<Integer> cursor = createRandomSet().windowCursor();
+        final long[] time = new long[1];
+
+        assertThat(AllocationCounter.measure(() -> {
+            time[0] = (time[0] + 8) % 1200;
+            cursor.moveTo(time[0], time[0] + 50);
+        }), is(0L));
+    }
+
+    /**
+     * Tests {@link ImmutableIntervalSet#stab}, {@link ImmutableIntervalSet#nextStartingAfter} and
+     * {@link ImmutableIntervalSet#previousEndingBefore} against a linear search
+     */
+    @Test
+    public void testPointQueries() {
+        final Random rnd = new Random(311);
+        final List<Interval> intervals = new ArrayList<>();
+        final ImmutableIntervalSet.Builder<Interval> builder = ImmutableIntervalSet.builder();
+        for (int i = 0; i != 500; i++) {
+            final int low = rnd.nextInt(2000);
+            final Interval interval = new Interval(low, low + rnd.nextInt(i % 10 == 0 ? 500 : 30));
+            intervals.add(interval);
+            builder.add(interval.getLow(), interval.getHigh(), interval);
+        }
+        final ImmutableIntervalSet<Interval> pointSet = builder.build();
+
+        for (int point = -10; point <= 2600; point++) {
+            final Interval stab = new Interval(point, point);
+            assertThat(Lists.newArrayList(pointSet.stab(point)), containsInAnyOrder(intervals.stream()
+                    .filter(interval -> interval.containsInterval(stab)).distinct().toArray()));
+
+            final long after = point;
+            final OptionalLong expectedNext = intervals.stream().mapToLong(Interval::getLow).filter(x -> x > after)
+                    .min();
+            assertThat(pointSet.nextStartingAfter(point).map(Interval::getLow),
+                    is(expectedNext.isPresent() ? Optional.of(expectedNext.getAsLong()) : Optional.empty()));
+
+            final OptionalLong expectedPrevious = intervals.stream().mapToLong(Interval::getHigh)
+                    .filter(x -> x < after).max();
+            assertThat(pointSet.previousEndingBefore(point).map(Interval::getHigh),
+                    is(expectedPrevious.isPresent() ? Optional.of(expectedPrevious.getAsLong()) : Optional.empty()));
+        }
+    }
+
+    private static ImmutableIntervalSet<Integer> createRandomSet() {
+        final Random rnd = new Random(311);
+        final ImmutableIntervalSet.Builder<Integer> builder = ImmutableIntervalSet.builder();
+        for (int i = 0; i != 1000; i++) {
+            final int low = rnd.nextInt(1000);
+            builder.add(low, low + rnd.nextInt(100), i);
+        }
+        return builder.build();
+    }
+}
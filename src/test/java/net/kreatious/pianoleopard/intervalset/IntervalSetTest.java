@@ -5,6 +5,7 @@ import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.emptyIterable;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.iterableWithSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.assertThat;
 
 import java.util.ArrayList;
@@ -12,10 +13,16 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
 
 import org.junit.Test;
 
+import com.google.common.collect.Lists;
+
 /**
  * Tests for {@link IntervalSet}
  *
@@ -87,6 +94,313 @@ public class IntervalSetTest {
         }
     }
 
+    /**
+     * Tests {@link IntervalSet#subSet(long, long)} after interleaved insertions
+     * and removals
+     */
+    @Test
+    public void testSubSetAfterRemove() {
+        final Random rnd = new Random(311);
+        final List<Interval> intervals = new ArrayList<>();
+        for (int i = 0; i != 500; i++) {
+            if (intervals.isEmpty() || rnd.nextInt(3) != 0) {
+                final int low = rnd.nextInt(1000);
+                final Interval interval = new Interval(low, low + rnd.nextInt(100));
+                intervals.add(interval);
+                set.put(interval.getLow(), interval.getHigh(), i);
+            } else {
+                final Interval interval = intervals.remove(rnd.nextInt(intervals.size()));
+                set.removeFirst(interval.getLow(), interval.getHigh(), x -> true);
+            }
+
+            final int low = rnd.nextInt(1100);
+            final Interval range = new Interval(low, low + rnd.nextInt(50));
+            assertThat(set.subSet(range.getLow(), range.getHigh()),
+                    iterableWithSize((int) intervals.stream().filter(x -> x.containsInterval(range)).count()));
+        }
+        assertThat(set.size(), is(intervals.size()));
+    }
+
+    /**
+     * Tests {@link IntervalSet#removeIf} and {@link IntervalSet#removeRange}
+     * against a linear search, for batches small enough to be removed
+     * individually and large enough to rebuild the tree
+     */
+    @Test
+    public void testRemoveIf() {
+        final Random rnd = new Random(311);
+        final Summary<Object> count = Summary.count();
+        final IntervalSet<Integer> countedSet = new IntervalSet<Integer>(count);
+        final List<Interval> intervals = new ArrayList<>();
+        final List<Integer> values = new ArrayList<>();
+        for (int i = 0; i != 2000; i++) {
+            final int low = rnd.nextInt(1000);
+            final Interval interval = new Interval(low, low + rnd.nextInt(i % 10 == 0 ? 5 : 100));
+            intervals.add(interval);
+            values.add(i);
+            countedSet.put(interval.getLow(), interval.getHigh(), i);
+
+            if (i % 50 == 49) {
+                final int removeLow = rnd.nextInt(1100);
+                final Interval range = new Interval(removeLow, removeLow + rnd.nextInt(i % 500 == 499 ? 500 : 5));
+                final int expected;
+                if (i % 100 == 49) {
+                    expected = removeMatching(intervals, values, (x, value) -> x.containsInterval(range));
+                    assertThat(countedSet.removeRange(range.getLow(), range.getHigh()), is(expected));
+                } else {
+                    expected = removeMatching(intervals, values,
+                            (x, value) -> x.containsInterval(range) && value % 2 == 0);
+                    assertThat(countedSet.removeIf(range.getLow(), range.getHigh(), x -> x % 2 == 0),
+                            is(expected));
+                }
+
+                assertThat(countedSet.size(), is(values.size()));
+                assertThat(countedSet.summarize(count, Long.MIN_VALUE, Long.MAX_VALUE), is((long) values.size()));
+                assertThat(height(countedSet.getRoot()),
+                        lessThanOrEqualTo(2 * (32 - Integer.numberOfLeadingZeros(values.size() + 1))));
+                for (int queryLow = -10; queryLow <= 1110; queryLow += 37) {
+                    final Interval query = new Interval(queryLow, queryLow + 20);
+                    final List<Integer> expectedValues = new ArrayList<>();
+                    for (int j = 0; j != intervals.size(); j++) {
+                        if (intervals.get(j).containsInterval(query)) {
+                            expectedValues.add(values.get(j));
+                        }
+                    }
+                    assertThat(Lists.newArrayList(countedSet.subSet(query.getLow(), query.getHigh())),
+                            containsInAnyOrder(expectedValues.toArray()));
+                    assertThat(countedSet.summarize(count, query.getLow(), query.getHigh()),
+                            is((long) expectedValues.size()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests {@link IntervalSet#rank} and {@link IntervalSet#select} against the
+     * iteration order after interleaved insertions and removals
+     */
+    @Test
+    public void testRankAndSelect() {
+        final Random rnd = new Random(311);
+        for (int i = 0; i != 3000; i++) {
+            final int low = rnd.nextInt(1000);
+            set.put(low, low + rnd.nextInt(50), i);
+            if (i % 7 == 0) {
+                final int removeLow = rnd.nextInt(1000);
+                set.removeFirst(removeLow, removeLow + rnd.nextInt(50), x -> true);
+            }
+            if (i % 500 == 499) {
+                final int removeLow = rnd.nextInt(1000);
+                set.removeRange(removeLow, removeLow + rnd.nextInt(i % 1000 == 999 ? 500 : 10));
+            }
+        }
+
+        final List<Integer> values = Lists.newArrayList(set);
+        for (int i = 0; i != values.size(); i++) {
+            assertThat(set.select(i), is(values.get(i)));
+        }
+
+        final List<Long> lows = new ArrayList<>();
+        final IntervalCursor<Integer> cursor = set.cursor();
+        cursor.reset(Long.MIN_VALUE, Long.MAX_VALUE);
+        while (cursor.advance()) {
+            lows.add(cursor.getLow());
+        }
+        for (long point = -1; point <= 1001; point++) {
+            final long before = point;
+            assertThat(set.rank(point), is((int) lows.stream().filter(low -> low < before).count()));
+        }
+    }
+
+    /**
+     * Tests that {@link IntervalSet#select} rejects positions outside the set
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testSelectOutOfBounds() {
+        addValues(3);
+        set.select(3);
+    }
+
+    private static int removeMatching(List<Interval> intervals, List<Integer> values,
+            BiPredicate<Interval, Integer> criteria) {
+        int removed = 0;
+        for (int i = intervals.size() - 1; i >= 0; i--) {
+            if (criteria.test(intervals.get(i), values.get(i))) {
+                intervals.remove(i);
+                values.remove(i);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private static int height(Entry<?> entry) {
+        return entry == null ? 0 : 1 + Math.max(height(entry.getLeft()), height(entry.getRight()));
+    }
+
+    /**
+     * Tests that {@link IntervalSet#forEachInRange} and
+     * {@link IntervalSet#cursor()} visit the same values as
+     * {@link IntervalSet#subSet}
+     */
+    @Test
+    public void testForEachInRangeAndCursor() {
+        final Random rnd = new Random(311);
+        for (int i = 0; i != 300; i++) {
+            final int low = rnd.nextInt(1000);
+            set.put(low, low + rnd.nextInt(100), i);
+        }
+
+        final IntervalCursor<Integer> cursor = set.cursor();
+        assertThat(cursor.advance(), is(false));
+        for (int low = -10; low <= 1110; low += 3) {
+            final int high = low + rnd.nextInt(50);
+            final List<Integer> expected = Lists.newArrayList(set.subSet(low, high));
+
+            final List<Integer> visited = new ArrayList<>();
+            set.forEachInRange(low, high, visited::add);
+            assertThat(visited, is(expected));
+
+            final List<Integer> cursorValues = new ArrayList<>();
+            cursor.reset(low, high);
+            while (cursor.advance()) {
+                assertThat(cursor.getLow(), lessThanOrEqualTo((long) high));
+                assertThat((long) low, lessThanOrEqualTo(cursor.getHigh()));
+                cursorValues.add(cursor.get());
+            }
+            assertThat(cursorValues, is(expected));
+        }
+    }
+
+    /**
+     * Tests that {@link IntervalSet#forEachInRange} does not allocate
+     */
+    @Test
+    public void testForEachInRangeDoesNotAllocate() {
+        addRandomValues();
+        final long[] sum = new long[1];
+        final Consumer<Integer> action = value -> sum[0] += value;
+
+        assertThat(AllocationCounter.measure(() -> set.forEachInRange(400, 600, action)), is(0L));
+    }
+
+    /**
+     * Tests that repositioning and advancing an {@link IntervalCursor} does
+     * not allocate
+     */
+    @Test
+    public void testCursorDoesNotAllocate() {
+        addRandomValues();
+        final IntervalCursor<Integer> cursor = set.cursor();
+        final long[] sum = new long[1];
+
+        assertThat(AllocationCounter.measure(() -> {
+            cursor.reset(400, 600);
+            while (cursor.advance()) {
+                sum[0] += cursor.getHigh();
+            }
+        }), is(0L));
+    }
+
+    /**
+     * Tests that sliding a window forwards does not allocate once its heap is
+     * large enough
+     */
+    @Test
+    public void testWindowCursorDoesNotAllocate() {
+        addRandomValues();
+        final WindowCursor<Integer> window = set.windowCursor();
+        window.moveTo(0, 1100);
+        window.moveTo(0, 100);
+
+        assertThat(AllocationCounter.measure(() -> {
+            for (int low = 1; low != 900; low++) {
+                window.moveTo(low, low + 100);
+            }
+        }), is(0L));
+    }
+
+    /**
+     * Tests that a window reports the values removed and inserted since it
+     * last moved
+     */
+    @Test
+    public void testWindowCursorAfterModification() {
+        set.put(0, 10, 1);
+        set.put(5, 15, 2);
+        final List<Integer> entered = new ArrayList<>();
+        final List<Integer> exited = new ArrayList<>();
+        final WindowCursor.Listener<Integer> listener = new WindowCursor.Listener<Integer>() {
+            @Override
+            public void entered(Integer value) {
+                entered.add(value);
+            }
+
+            @Override
+            public void exited(Integer value) {
+                exited.add(value);
+            }
+        };
+
+        final WindowCursor<Integer> window = set.windowCursor();
+        window.moveTo(0, 10, listener);
+        assertThat(entered, containsInAnyOrder(1, 2));
+
+        set.removeFirst(0, 10, value -> value == 1);
+        set.put(8, 12, 3);
+        entered.clear();
+        window.moveTo(1, 11, listener);
+        assertThat(exited, contains(1));
+        assertThat(entered, contains(3));
+
+        exited.clear();
+        window.moveTo(13, 20, listener);
+        assertThat(exited, contains(3));
+        assertThat(window.size(), is(1));
+    }
+
+    /**
+     * Tests {@link IntervalSet#stab}, {@link IntervalSet#nextStartingAfter} and
+     * {@link IntervalSet#previousEndingBefore} against a linear search
+     */
+    @Test
+    public void testPointQueries() {
+        final Random rnd = new Random(311);
+        final List<Interval> intervals = new ArrayList<>();
+        final IntervalSet<Interval> pointSet = new IntervalSet<>();
+        for (int i = 0; i != 500; i++) {
+            final int low = rnd.nextInt(2000);
+            final Interval interval = new Interval(low, low + rnd.nextInt(i % 10 == 0 ? 500 : 30));
+            intervals.add(interval);
+            pointSet.put(interval.getLow(), interval.getHigh(), interval);
+        }
+
+        for (int point = -10; point <= 2600; point++) {
+            final Interval stab = new Interval(point, point);
+            assertThat(Lists.newArrayList(pointSet.stab(point)), containsInAnyOrder(intervals.stream()
+                    .filter(interval -> interval.containsInterval(stab)).distinct().toArray()));
+
+            final long after = point;
+            final OptionalLong expectedNext = intervals.stream().mapToLong(Interval::getLow).filter(x -> x > after)
+                    .min();
+            assertThat(pointSet.nextStartingAfter(point).map(Interval::getLow),
+                    is(expectedNext.isPresent() ? Optional.of(expectedNext.getAsLong()) : Optional.empty()));
+
+            final OptionalLong expectedPrevious = intervals.stream().mapToLong(Interval::getHigh)
+                    .filter(x -> x < after).max();
+            assertThat(pointSet.previousEndingBefore(point).map(Interval::getHigh),
+                    is(expectedPrevious.isPresent() ? Optional.of(expectedPrevious.getAsLong()) : Optional.empty()));
+        }
+    }
+
+    private void addRandomValues() {
+        final Random rnd = new Random(311);
+        for (int i = 0; i != 1000; i++) {
+            final int low = rnd.nextInt(1000);
+            set.put(low, low + rnd.nextInt(100), i);
+        }
+    }
+
     private Integer[] addValues(int count) {
         final Integer[] addedValues = new Integer[count];
         for (int i = 0; i != count; i++) {
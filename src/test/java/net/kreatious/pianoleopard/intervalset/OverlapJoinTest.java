@@ -0,0 +1,169 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link OverlapJoin}
+ *
+ * @author Jay-R Studer
+ */
+public class OverlapJoinTest {
+    private final List<String> matched = new ArrayList<>();
+    private final List<Interval> unmatchedLeft = new ArrayList<>();
+    private final List<Interval> unmatchedRight = new ArrayList<>();
+    private final OverlapJoin.Listener<Interval, Interval> listener = new OverlapJoin.Listener<Interval, Interval>() {
+        @Override
+        public void matched(Interval left, Interval right) {
+            matched.add(left + "=" + right);
+        }
+
+        @Override
+        public void unmatchedLeft(Interval left) {
+            unmatchedLeft.add(left);
+        }
+
+        @Override
+        public void unmatchedRight(Interval right) {
+            unmatchedRight.add(right);
+        }
+    };
+
+    /**
+     * Tests joining intervals keyed by their duration, where matches may be
+     * apart by the tolerance
+     */
+    @Test
+    public void testJoin() {
+        final IntervalSet<Interval> left = new IntervalSet<>();
+        final ImmutableIntervalSet.Builder<Interval> right = ImmutableIntervalSet.builder();
+        put(left, 0, 10);
+        put(left, 20, 30);
+        put(left, 40, 45);
+        put(left, 60, 65);
+        add(right, 11, 21);
+        add(right, 22, 32);
+        add(right, 48, 53);
+        add(right, 70, 80);
+
+        OverlapJoin.join(left.cursor(), OverlapJoinTest::duration, right.build().cursor(), OverlapJoinTest::duration,
+                2, listener);
+
+        assertThat(matched, contains("0-10=11-21", "20-30=22-32"));
+        assertThat(unmatchedLeft, contains(new Interval(40, 45), new Interval(60, 65)));
+        assertThat(unmatchedRight, contains(new Interval(48, 53), new Interval(70, 80)));
+    }
+
+    /**
+     * Tests that every value is reported once, that matches overlap, and that
+     * no overlapping values with equal keys are left unmatched
+     */
+    @Test
+    public void testRandomJoin() {
+        final Random rnd = new Random(311);
+        final IntervalSet<Interval> left = new IntervalSet<>();
+        final IntervalSet<Interval> right = new IntervalSet<>();
+        for (int i = 0; i != 500; i++) {
+            final int low = rnd.nextInt(5000);
+            put(rnd.nextBoolean() ? left : right, low, low + rnd.nextInt(4));
+        }
+
+        final long tolerance = 3;
+        final List<Interval> matchedLeft = new ArrayList<>();
+        final List<Interval> matchedRight = new ArrayList<>();
+        OverlapJoin.join(left.cursor(), OverlapJoinTest::duration, right.cursor(), OverlapJoinTest::duration,
+                tolerance, new OverlapJoin.Listener<Interval, Interval>() {
+                    @Override
+                    public void matched(Interval l, Interval r) {
+                        assertThat(duration(l), is(duration(r)));
+                        assertTrue(l + " " + r, overlaps(l, r, tolerance));
+                        matchedLeft.add(l);
+                        matchedRight.add(r);
+                    }
+
+                    @Override
+                    public void unmatchedLeft(Interval l) {
+                        unmatchedLeft.add(l);
+                    }
+
+                    @Override
+                    public void unmatchedRight(Interval r) {
+                        unmatchedRight.add(r);
+                    }
+                });
+
+        final List<Interval> allLeft = new ArrayList<>(matchedLeft);
+        allLeft.addAll(unmatchedLeft);
+        assertThat(allLeft, containsInAnyOrder(toArray(left)));
+        final List<Interval> allRight = new ArrayList<>(matchedRight);
+        allRight.addAll(unmatchedRight);
+        assertThat(allRight, containsInAnyOrder(toArray(right)));
+
+        for (final Interval l : unmatchedLeft) {
+            for (final Interval r : unmatchedRight) {
+                assertTrue(l + " " + r, duration(l) != duration(r) || !overlaps(l, r, tolerance));
+            }
+        }
+    }
+
+    /**
+     * Tests that intervals exactly the tolerance apart are matched, and
+     * intervals one further apart are not
+     */
+    @Test
+    public void testToleranceBoundary() {
+        final IntervalSet<Interval> left = new IntervalSet<>();
+        final IntervalSet<Interval> right = new IntervalSet<>();
+        put(left, 0, 10);
+        put(right, 13, 23);
+        put(left, 30, 40);
+        put(right, 44, 54);
+
+        OverlapJoin.join(left.cursor(), OverlapJoinTest::duration, right.cursor(), OverlapJoinTest::duration, 3,
+                listener);
+
+        assertThat(matched, contains("0-10=13-23"));
+        assertThat(unmatchedLeft, contains(new Interval(30, 40)));
+        assertThat(unmatchedRight, contains(new Interval(44, 54)));
+    }
+
+    /**
+     * Tests that a negative tolerance is rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeTolerance() {
+        OverlapJoin.join(new IntervalSet<Interval>().cursor(), OverlapJoinTest::duration,
+                new IntervalSet<Interval>().cursor(), OverlapJoinTest::duration, -1, listener);
+    }
+
+    private static long duration(Interval interval) {
+        return interval.getHigh() - interval.getLow();
+    }
+
+    private static boolean overlaps(Interval left, Interval right, long tolerance) {
+        return left.getLow() <= right.getHigh() + tolerance && right.getLow() <= left.getHigh() + tolerance;
+    }
+
+    private static Object[] toArray(IntervalSet<Interval> set) {
+        final List<Interval> result = new ArrayList<>();
+        set.forEach(result::add);
+        return result.toArray();
+    }
+
+    private static void put(IntervalSet<Interval> set, long low, long high) {
+        set.put(low, high, new Interval(low, high));
+    }
+
+    private static void add(ImmutableIntervalSet.Builder<Interval> builder, long low, long high) {
+        builder.add(low, high, new Interval(low, high));
+    }
+}
@@ -0,0 +1,119 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Summary}
+ *
+ * @author Jay-R Studer
+ */
+public class SummaryTest {
+    private static final int VALUES = 600;
+
+    private final Random rnd = new Random(311);
+    private final long[] lows = new long[VALUES];
+    private final long[] highs = new long[VALUES];
+    private final Summary<Integer> count = Summary.count();
+    private final Summary<Integer> longest = Summary.maximum(value -> highs[value] - lows[value]);
+    private final Summary<Integer> earliestEnd = Summary.minimum(value -> highs[value]);
+
+    {
+        for (int i = 0; i != VALUES; i++) {
+            lows[i] = rnd.nextInt(200) * 5;
+            highs[i] = lows[i] + rnd.nextInt(i % 10 == 0 ? 20 : 4) * 5;
+        }
+    }
+
+    /**
+     * Tests {@link IntervalSet#summarize} and
+     * {@link IntervalSet#summarizeStarting} during interleaved insertions and
+     * removals
+     */
+    @Test
+    public void testIntervalSet() {
+        final IntervalSet<Integer> set = new IntervalSet<Integer>(count, longest, earliestEnd);
+        final List<Integer> contents = new ArrayList<>();
+        for (int i = 0; i != VALUES; i++) {
+            if (contents.isEmpty() || rnd.nextInt(4) != 0) {
+                set.put(lows[i], highs[i], i);
+                contents.add(i);
+            } else {
+                final int value = contents.remove(rnd.nextInt(contents.size()));
+                set.removeFirst(lows[value], highs[value], x -> x == value);
+            }
+
+            final long low = rnd.nextInt(1100) - 50;
+            final long high = low + rnd.nextInt(100);
+            for (final Summary<Integer> summary : asList(count, longest, earliestEnd)) {
+                assertThat(set.summarize(summary, low, high),
+                        is(expected(summary, contents, value -> lows[value] <= high && highs[value] >= low)));
+                assertThat(set.summarizeStarting(summary, low, high),
+                        is(expected(summary, contents, value -> lows[value] >= low && lows[value] <= high)));
+            }
+        }
+    }
+
+    /**
+     * Tests {@link ImmutableIntervalSet#summarize} and
+     * {@link ImmutableIntervalSet#summarizeStarting}
+     */
+    @Test
+    public void testImmutableIntervalSet() {
+        final ImmutableIntervalSet.Builder<Integer> builder = ImmutableIntervalSet.<Integer> builder()
+                .summarizedBy(count).summarizedBy(longest).summarizedBy(earliestEnd);
+        final List<Integer> contents = new ArrayList<>();
+        for (int i = 0; i != VALUES; i++) {
+            builder.add(lows[i], highs[i], i);
+            contents.add(i);
+        }
+        final ImmutableIntervalSet<Integer> set = builder.build();
+
+        for (long low = -50; low <= 1050; low += 5) {
+            final long high = low + rnd.nextInt(100);
+            for (final Summary<Integer> summary : asList(count, longest, earliestEnd)) {
+                final long from = low;
+                assertThat(set.summarize(summary, low, high),
+                        is(expected(summary, contents, value -> lows[value] <= high && highs[value] >= from)));
+                assertThat(set.summarizeStarting(summary, low, high),
+                        is(expected(summary, contents, value -> lows[value] >= from && lows[value] <= high)));
+            }
+        }
+    }
+
+    /**
+     * Tests that an empty set summarizes to the identity
+     */
+    @Test
+    public void testEmpty() {
+        assertThat(new IntervalSet<Integer>(count).summarize(count, 0, 10), is(0L));
+        assertThat(ImmutableIntervalSet.<Integer> builder().summarizedBy(earliestEnd).build()
+                .summarize(earliestEnd, 0, 10), is(Long.MAX_VALUE));
+    }
+
+    /**
+     * Tests that summarizing with an unregistered summary is rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownSummary() {
+        new IntervalSet<Integer>(count).summarize(longest, 0, 10);
+    }
+
+    private static long expected(Summary<Integer> summary, List<Integer> contents, IntPredicate filter) {
+        long result = summary.identity();
+        for (final int value : contents) {
+            if (filter.test(value)) {
+                result = summary.combine(result, summary.of(0, 0, value));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,118 @@
+package net.kreatious.pianoleopard.intervalset;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests for {@link WindowCursor}
+ *
+ * @author Jay-R Studer
+ */
+@RunWith(Parameterized.class)
+public class WindowCursorTest {
+    private static final IntervalSet<String> SET = new IntervalSet<>();
+    private static final ImmutableIntervalSet<String> IMMUTABLE_SET;
+
+    static {
+        final Random rnd = new Random(311);
+        final ImmutableIntervalSet.Builder<String> builder = ImmutableIntervalSet.builder();
+        for (int i = 0; i != 1000; i++) {
+            final int low = rnd.nextInt(10000);
+            final int high = low + rnd.nextInt(i % 20 == 0 ? 2000 : 100);
+            SET.put(low, high, i + ":" + low + "-" + high);
+            builder.add(low, high, i + ":" + low + "-" + high);
+        }
+        IMMUTABLE_SET = builder.build();
+    }
+
+    /**
+     * The name of the set being tested
+     */
+    @Parameter(0)
+    public String name;
+
+    /**
+     * Creates the window cursor being tested
+     */
+    @Parameter(1)
+    public Supplier<WindowCursor<String>> factory;
+
+    /**
+     * Provides a list of parameters to inject into the parameter fields
+     *
+     * @return a list of test cases
+     */
+    @Parameters(name = "{0}")
+    public static List<Object[]> parameters() {
+        final Supplier<WindowCursor<String>> mutable = SET::windowCursor;
+        final Supplier<WindowCursor<String>> immutable = IMMUTABLE_SET::windowCursor;
+        return Arrays.asList(new Object[] { "IntervalSet", mutable }, new Object[] { "ImmutableIntervalSet",
+                immutable });
+    }
+
+    private static List<String> subSet(long low, long high) {
+        return Lists.newArrayList(SET.subSet(low, high));
+    }
+
+    /**
+     * Tests that the reported changes to the window track its contents while
+     * it moves forwards, backwards and skips ahead
+     */
+    @Test
+    public void testMoveTo() {
+        final WindowCursor<String> cursor = factory.get();
+        final Set<String> contents = new HashSet<>();
+        final WindowCursor.Listener<String> listener = new WindowCursor.Listener<String>() {
+            @Override
+            public void entered(String value) {
+                assertTrue(value + " entered twice", contents.add(value));
+            }
+
+            @Override
+            public void exited(String value) {
+                assertTrue(value + " exited without entering", contents.remove(value));
+            }
+        };
+
+        final Random rnd = new Random(311);
+        long low = -100;
+        for (int i = 0; i != 5000; i++) {
+            final int step = rnd.nextInt(100);
+            if (step == 0) {
+                low -= rnd.nextInt(3000);
+            } else if (step == 1) {
+                low += rnd.nextInt(3000);
+            } else {
+                low += rnd.nextInt(20);
+            }
+            final long high = low + rnd.nextInt(200);
+            cursor.moveTo(low, high, listener);
+
+            final List<String> expected = subSet(low, high);
+            assertThat(contents, containsInAnyOrder(expected.toArray()));
+            assertThat(cursor.size(), is(expected.size()));
+
+            final List<String> visited = new ArrayList<>();
+            cursor.forEach(visited::add);
+            assertThat(visited, containsInAnyOrder(expected.toArray()));
+        }
+    }
+}
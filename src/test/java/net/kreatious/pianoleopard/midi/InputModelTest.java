@@ -3,15 +3,20 @@ package net.kreatious.pianoleopard.midi;
 import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.describedAs;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasProperty;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.iterableWithSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.Mockito.mock;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.function.LongConsumer;
 
 import javax.sound.midi.InvalidMidiDataException;
@@ -23,13 +28,17 @@ import javax.sound.midi.Transmitter;
 
 import net.kreatious.pianoleopard.midi.InputModel;
 import net.kreatious.pianoleopard.midi.OutputModel;
+import net.kreatious.pianoleopard.midi.event.Event;
 import net.kreatious.pianoleopard.midi.event.EventPair;
 import net.kreatious.pianoleopard.midi.event.NoteEvent;
+import net.kreatious.pianoleopard.midi.event.PackedEvent;
 
 import org.hamcrest.Matcher;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import com.google.common.collect.Iterables;
+
 /**
  * Tests for {@link InputModel}
  *
@@ -41,8 +50,9 @@ public class InputModelTest {
     private final Transmitter transmitter = mock(Transmitter.class);
     private final MidiDevice input = given(mock(MidiDevice.class).getTransmitter()).willReturn(transmitter).getMock();
 
+    private long clock;
     private final OutputModel outputModel = mock(OutputModel.class);
-    private final InputModel inputModel = InputModel.create(outputModel);
+    private final InputModel inputModel = InputModel.create(outputModel, () -> clock);
     private final Receiver receiver;
 
     private long currentTime;
@@ -145,6 +155,68 @@ public class InputModelTest {
         assertThat(inputModel.getNotePairs(0, 1), contains(noteWithTime(60, 0, 2)));
     }
 
+    /**
+     * Tests that counting note pairs includes pressed notes and the completed
+     * notes overlapping the interval
+     */
+    @Test
+    public void testCountNotePairs() {
+        pressNote(60);
+        timeAdvancesBy(1);
+        releaseNote(60);
+        timeAdvancesBy(10);
+        pressNote(61);
+        pressNote(62);
+
+        assertThat(inputModel.countNotePairs(0, 2), is(3L));
+        assertThat(inputModel.countNotePairs(5, 20), is(2L));
+        assertThat(inputModel.countNotePairs(0, 2), is((long) Iterables.size(inputModel.getNotePairs(0, 2))));
+    }
+
+    /**
+     * Tests that the recorded notes stay bounded while the song time does not
+     * advance, since the recording horizon is measured by the clock
+     */
+    @Test
+    public void testRecordingHorizonWhileStopped() {
+        for (int i = 0; i != 100000; i++) {
+            clock += TimeUnit.SECONDS.toNanos(1);
+            pressNote(60);
+            releaseNote(60);
+        }
+
+        final long horizon = TimeUnit.MINUTES.toSeconds(10);
+        assertThat(inputModel.countNotePairs(0, 0), is(lessThanOrEqualTo(2 * horizon + 256)));
+        assertThat(inputModel.countNotePairs(0, 0), is(greaterThanOrEqualTo(horizon)));
+    }
+
+    /**
+     * Tests that input listeners receive an event object, and packed input
+     * listeners the same event as a {@link PackedEvent}
+     */
+    @Test
+    public void testInputListeners() {
+        final List<Event> events = new ArrayList<>();
+        final List<Long> packedEvents = new ArrayList<>();
+        inputModel.addInputListener(events::add);
+        inputModel.addPackedInputListener(packedEvents::add);
+
+        timeAdvancesBy(5);
+        pressNote(60);
+        releaseNote(60);
+
+        assertThat(events.size(), is(2));
+        assertThat(events.get(0).isOn(), is(true));
+        assertThat(events.get(1).isOn(), is(false));
+        assertThat(((NoteEvent) events.get(0)).getKey(), is(60));
+        assertThat(events.get(0).getTime(), is(5L));
+        assertThat(packedEvents.size(), is(2));
+        assertThat(PackedEvent.getKey(packedEvents.get(0)), is(60));
+        assertThat(PackedEvent.isOn(packedEvents.get(0)), is(true));
+        assertThat(PackedEvent.getTime(packedEvents.get(1)), is(5L));
+        assertThat(inputModel.getNotePairs(0, 10), contains(noteWithTime(60, 5, 5)));
+    }
+
     private void pressNote(int key) {
         try {
             receiver.send(new ShortMessage(ShortMessage.NOTE_ON, CHANNEL, key, 127), -1);
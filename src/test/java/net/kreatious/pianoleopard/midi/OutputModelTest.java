@@ -1,15 +1,20 @@
 package net.kreatious.pianoleopard.midi;
 
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.timeout;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.function.Consumer;
 import java.util.function.LongConsumer;
 
@@ -17,10 +22,7 @@ import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiDevice;
 import javax.sound.midi.MidiUnavailableException;
 import javax.sound.midi.Receiver;
-import javax.sound.midi.Sequence;
-import javax.sound.midi.Sequencer;
 import javax.sound.midi.ShortMessage;
-import javax.sound.midi.Transmitter;
 
 import net.kreatious.pianoleopard.midi.OutputModel;
 import net.kreatious.pianoleopard.midi.track.ParsedSequence;
@@ -35,19 +37,18 @@ import org.mockito.InOrder;
  */
 public class OutputModelTest {
     private final MidiDevice output = mock(MidiDevice.class);
-    private final Sequencer sequencer = mock(Sequencer.class);
+    private final SequencePlayer player = mock(SequencePlayer.class);
     private final OutputModel outputModel;
 
     /**
      * Constructs a new {@link OutputModelTest}
      *
      * @throws MidiUnavailableException
-     *             if the mock sequencer is unavailable
+     *             if the mock output device is unavailable
      */
     public OutputModelTest() throws MidiUnavailableException {
         given(output.getReceiver()).willReturn(mock(Receiver.class));
-        given(sequencer.getTransmitter()).willReturn(mock(Transmitter.class));
-        outputModel = new OutputModel(() -> sequencer);
+        outputModel = new OutputModel(player);
         outputModel.setOutputDevice(output);
     }
 
@@ -65,10 +66,10 @@ public class OutputModelTest {
     public void testClose() throws MidiUnavailableException, InterruptedException, IOException {
         outputModel.close();
 
-        final InOrder order = inOrder(output, sequencer);
+        final InOrder order = inOrder(output, player);
         order.verify(output).open();
-        order.verify(sequencer).open();
-        order.verify(sequencer).close();
+        order.verify(player).setReceiver(any(Receiver.class));
+        order.verify(player).close();
         order.verify(output).close();
         order.verifyNoMoreInteractions();
     }
@@ -89,14 +90,14 @@ public class OutputModelTest {
         outputModel.setOutputDevice(output);
         outputModel.close();
 
-        final InOrder order = inOrder(output, sequencer);
+        final InOrder order = inOrder(output, player);
         order.verify(output).open();
-        order.verify(sequencer).open();
-        order.verify(sequencer).close();
+        order.verify(player).setReceiver(any(Receiver.class));
+        order.verify(player).stop();
         order.verify(output).close();
         order.verify(output).open();
-        order.verify(sequencer).open();
-        order.verify(sequencer).close();
+        order.verify(player).setReceiver(any(Receiver.class));
+        order.verify(player).close();
         order.verify(output).close();
         order.verifyNoMoreInteractions();
     }
@@ -119,12 +120,12 @@ public class OutputModelTest {
         outputModel.start();
         outputModel.close();
 
-        final InOrder order = inOrder(openListener, sequencer);
-        order.verify(sequencer).setSequence(any(Sequence.class));
+        final InOrder order = inOrder(openListener, player);
+        order.verify(player).setSequence(any(ParsedSequence.class));
         order.verify(openListener).accept(any());
-        order.verify(sequencer).setMicrosecondPosition(0);
-        order.verify(sequencer).start();
-        order.verify(sequencer).close();
+        order.verify(player).setMicrosecondPosition(0);
+        order.verify(player).start();
+        order.verify(player).close();
     }
 
     /**
@@ -144,13 +145,13 @@ public class OutputModelTest {
         outputModel.start();
         outputModel.close();
 
-        final InOrder order = inOrder(sequencer);
-        order.verify(sequencer).setSequence(any(Sequence.class));
-        order.verify(sequencer).setMicrosecondPosition(0);
-        order.verify(sequencer).start();
-        order.verify(sequencer).setMicrosecondPosition(0);
-        order.verify(sequencer).start();
-        order.verify(sequencer).close();
+        final InOrder order = inOrder(player);
+        order.verify(player).setSequence(any(ParsedSequence.class));
+        order.verify(player).setMicrosecondPosition(0);
+        order.verify(player).start();
+        order.verify(player).setMicrosecondPosition(0);
+        order.verify(player).start();
+        order.verify(player).close();
     }
 
     /**
@@ -175,6 +176,63 @@ public class OutputModelTest {
         outputModel.close();
     }
 
+    /**
+     * Tests that the time to the first frame is reported once for each opened
+     * sequence
+     *
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws InterruptedException
+     *             if the current thread is interrupted
+     */
+    @Test
+    public void testFirstFramePainted() throws IOException, InterruptedException {
+        final LongConsumer firstFrameListener = mock(LongConsumer.class);
+        outputModel.addFirstFrameListener(firstFrameListener);
+        outputModel.openMidiFile(ClassLoader.getSystemResourceAsStream("grieg_hallofking.mid"), Optional.empty());
+        assertThat(outputModel.getTimeToFirstFrame(), is(OptionalLong.empty()));
+
+        outputModel.firstFramePainted();
+        final long elapsed = outputModel.getTimeToFirstFrame().getAsLong();
+        outputModel.firstFramePainted();
+        then(firstFrameListener).should().accept(elapsed);
+        assertThat(outputModel.getTimeToFirstFrame(), is(OptionalLong.of(elapsed)));
+
+        outputModel.openMidiFile(ClassLoader.getSystemResourceAsStream("grieg_hallofking.mid"), Optional.empty());
+        assertThat(outputModel.getTimeToFirstFrame(), is(OptionalLong.empty()));
+
+        outputModel.close();
+    }
+
+    /**
+     * Tests that a file which cannot be parsed is reported with a checked
+     * exception, without replacing the current sequence
+     *
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws InterruptedException
+     *             if the current thread is interrupted
+     */
+    @Test
+    public void testOpenUnsupportedFile() throws IOException, InterruptedException {
+        @SuppressWarnings("unchecked")
+        final Consumer<ParsedSequence> openListener = mock(Consumer.class);
+        outputModel.addOpenListener(openListener);
+
+        // The track ends in the middle of a note on message
+        final byte[] file = { 0x4D, 0x54, 0x68, 0x64, 0, 0, 0, 6, 0, 0, 0, 1, 0x01, (byte) 0xE0, 0x4D, 0x54, 0x72,
+                0x6B, 0, 0, 0, 3, 0x00, (byte) 0x90, 0x3C };
+        try {
+            outputModel.openMidiFile(new ByteArrayInputStream(file), Optional.empty());
+            throw new AssertionError("Expected an IOException");
+        } catch (final IOException e) {
+            then(openListener).should(never()).accept(any());
+            then(player).should(never()).setSequence(any());
+        }
+
+        outputModel.close();
+    }
+
     /**
      * Tests for {@link OutputModel#sendMessage}
      *
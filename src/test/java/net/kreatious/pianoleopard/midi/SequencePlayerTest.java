@@ -0,0 +1,138 @@
+package net.kreatious.pianoleopard.midi;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+import net.kreatious.pianoleopard.midi.track.ParsedSequence;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests for {@link SequencePlayer}
+ *
+ * @author Jay-R Studer
+ */
+public class SequencePlayerTest {
+    private static final int[] HEADER = { 0x4D, 0x54, 0x68, 0x64, 0, 0, 0, 6, 0, 0, 0, 1, 0x01, 0xE0 };
+
+    private final Receiver receiver = mock(Receiver.class);
+    private final SequencePlayer player = new SequencePlayer();
+
+    /**
+     * Constructs a new {@link SequencePlayerTest}
+     */
+    public SequencePlayerTest() {
+        player.setReceiver(receiver);
+    }
+
+    /**
+     * Closes the player
+     *
+     * @throws InterruptedException
+     *             if the current thread is interrupted
+     */
+    @After
+    public void tearDown() throws InterruptedException {
+        player.close();
+    }
+
+    /**
+     * Tests that a sequence is played in order and stops at its end
+     *
+     * @throws InvalidMidiDataException
+     *             if the test file is invalid
+     * @throws InterruptedException
+     *             if the current thread is interrupted
+     */
+    @Test
+    public void testPlay() throws InvalidMidiDataException, InterruptedException {
+        // A program change and a note from 0 to 100 milliseconds
+        player.setSequence(ParsedSequence.parse(createFile(0x00, 0x90, 0x3C, 0x40, 0x00, 0xC0, 0x05, 0x60, 0x80,
+                0x3C, 0x00, 0x00, 0xFF, 0x2F, 0x00)));
+        player.start();
+
+        assertThat(describeMessages(3), contains("192 5 0", "144 60 64", "128 60 0"));
+        for (int i = 0; player.isRunning() && i != 100; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(player.isRunning(), is(false));
+        assertThat(player.getMicrosecondPosition(), is(TimeUnit.MILLISECONDS.toMicros(100)));
+    }
+
+    /**
+     * Tests that stopping turns off the sounding notes
+     *
+     * @throws InvalidMidiDataException
+     *             if the test file is invalid
+     */
+    @Test
+    public void testStop() throws InvalidMidiDataException {
+        // A note from 0 to 2 seconds
+        player.setSequence(ParsedSequence.parse(createFile(0x00, 0x90, 0x3C, 0x40, 0x8F, 0x00, 0x3C, 0x00, 0x00,
+                0xFF, 0x2F, 0x00)));
+        player.start();
+        assertThat(describeMessages(1), contains("144 60 64"));
+
+        player.stop();
+        assertThat(player.isRunning(), is(false));
+        assertThat(describeMessages(2), contains("144 60 64", "128 60 0"));
+    }
+
+    /**
+     * Tests that seeking sends the latest controller, program and pitch bend
+     * values before the new position
+     *
+     * @throws InvalidMidiDataException
+     *             if the test file is invalid
+     */
+    @Test
+    public void testChase() throws InvalidMidiDataException {
+        // Program and volume changes at 0, pitch bends at 100 and 300 milliseconds
+        player.setSequence(ParsedSequence.parse(createFile(0x00, 0xC0, 0x05, 0x00, 0xB0, 0x07, 0x64, 0x60, 0xE0,
+                0x00, 0x50, 0x81, 0x40, 0xE0, 0x00, 0x40, 0x00, 0xFF, 0x2F, 0x00)));
+        player.setMicrosecondPosition(TimeUnit.MILLISECONDS.toMicros(200));
+
+        assertThat(describeMessages(3), contains("176 7 100", "192 5 0", "224 0 80"));
+        assertThat(player.getMicrosecondPosition(), is(TimeUnit.MILLISECONDS.toMicros(200)));
+    }
+
+    private List<String> describeMessages(int count) {
+        final ArgumentCaptor<MidiMessage> messages = ArgumentCaptor.forClass(MidiMessage.class);
+        then(receiver).should(timeout(1000).times(count)).send(messages.capture(), eq(-1L));
+        return Lists.transform(messages.getAllValues(), message -> {
+            final ShortMessage shortMessage = (ShortMessage) message;
+            return shortMessage.getStatus() + " " + shortMessage.getData1() + " " + shortMessage.getData2();
+        });
+    }
+
+    private static ByteBuffer createFile(int... track) {
+        final ByteBuffer result = ByteBuffer.allocate(HEADER.length + 8 + track.length);
+        for (final int value : HEADER) {
+            result.put((byte) value);
+        }
+        result.putInt(0x4D54726B).putInt(track.length);
+        for (final int value : track) {
+            result.put((byte) value);
+        }
+        result.flip();
+        return result;
+    }
+}
@@ -0,0 +1,96 @@
+package net.kreatious.pianoleopard.midi.event;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link PackedEvent}
+ *
+ * @author Jay-R Studer
+ */
+public class PackedEventTest {
+    /**
+     * Tests that note messages are packed with all of their fields
+     */
+    @Test
+    public void testNote() {
+        final long event = EventFactory.createPacked(ShortMessage.NOTE_ON | 9, 60, 100, 123_456_789_000L);
+
+        assertThat(PackedEvent.isNote(event), is(true));
+        assertThat(PackedEvent.isPedal(event), is(false));
+        assertThat(PackedEvent.isOn(event), is(true));
+        assertThat(PackedEvent.getChannel(event), is(9));
+        assertThat(PackedEvent.getKey(event), is(60));
+        assertThat(PackedEvent.getVelocity(event), is(100));
+        assertThat(PackedEvent.getTime(event), is(123_456_789_000L));
+
+        final Event expected = EventFactory.create(ShortMessage.NOTE_ON | 9, 60, 100, 0).get();
+        assertThat(PackedEvent.getSlot(event), is(sameInstance(expected.getSlot())));
+
+        final NoteEvent note = (NoteEvent) PackedEvent.toEvent(event);
+        assertThat(note.getKey(), is(60));
+        assertThat(note.getVelocity(), is(100));
+        assertThat(note.getChannel(), is(9));
+        assertThat(note.getTime(), is(123_456_789_000L));
+        assertThat(note.isOn(), is(true));
+    }
+
+    /**
+     * Tests that note on messages with a velocity of zero are off events
+     */
+    @Test
+    public void testNoteOnZeroVelocity() {
+        assertThat(PackedEvent.isOn(EventFactory.createPacked(ShortMessage.NOTE_ON, 60, 0, 5)), is(false));
+        assertThat(PackedEvent.isOn(EventFactory.createPacked(ShortMessage.NOTE_OFF, 60, 64, 5)), is(false));
+    }
+
+    /**
+     * Tests that pedal messages are packed and unpacked to the same pedal
+     */
+    @Test
+    public void testPedal() {
+        for (final Pedal pedal : Pedal.values()) {
+            final long event = PackedEvent.encodePedal(15, pedal, true, 1000);
+            assertThat(PackedEvent.isPedal(event), is(true));
+            assertThat(PackedEvent.isNote(event), is(false));
+            assertThat(PackedEvent.getPedal(event), is(pedal));
+            assertThat(PackedEvent.getChannel(event), is(15));
+            assertThat(PackedEvent.getTime(event), is(1000L));
+
+            final Event unpacked = PackedEvent.toEvent(event);
+            assertThat(unpacked, is(instanceOf(PedalEvent.class)));
+            assertThat(((PedalEvent) unpacked).getPedal(), is(pedal));
+            assertThat(unpacked.getSlot(), is(sameInstance(PackedEvent.getSlot(event))));
+        }
+
+        final long off = EventFactory.createPacked(ShortMessage.CONTROL_CHANGE | 2, 64, 10, 0);
+        assertThat(PackedEvent.getPedal(off), is(Pedal.SUSTAIN));
+        assertThat(PackedEvent.isOn(off), is(false));
+    }
+
+    /**
+     * Tests that unsupported messages are packed as {@link PackedEvent#NONE}
+     */
+    @Test
+    public void testUnsupported() {
+        assertThat(EventFactory.createPacked(ShortMessage.PROGRAM_CHANGE, 5, 0, 10), is(PackedEvent.NONE));
+        assertThat(EventFactory.createPacked(ShortMessage.CONTROL_CHANGE, 7, 100, 10), is(PackedEvent.NONE));
+        assertThat(PackedEvent.isNote(PackedEvent.NONE), is(false));
+        assertThat(PackedEvent.isPedal(PackedEvent.NONE), is(false));
+        assertThat(PackedEvent.encodeNote(0, 0, 0, false, 0) != PackedEvent.NONE, is(true));
+    }
+
+    /**
+     * Tests that negative times are preserved
+     */
+    @Test
+    public void testNegativeTime() {
+        assertThat(PackedEvent.getTime(PackedEvent.encodeNote(3, 127, 127, true, -5)), is(-5L));
+    }
+}
@@ -0,0 +1,114 @@
+package net.kreatious.pianoleopard.midi.event;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link PackedPairingTable}
+ *
+ * @author Jay-R Studer
+ */
+public class PackedPairingTableTest {
+    private final PackedPairingTable table = new PackedPairingTable();
+
+    /**
+     * Tests that overlapping events in the same slot are removed first in,
+     * first out
+     */
+    @Test
+    public void testFirstInFirstOut() {
+        final long first = note(60, 0);
+        final long second = note(60, 10);
+        final long third = note(60, 20);
+        table.add(first);
+        table.add(second);
+        table.add(third);
+
+        assertThat(table.peek(first), is(first));
+        assertThat(table.poll(first), is(first));
+        assertThat(table.poll(first), is(second));
+        assertThat(table.peek(first), is(third));
+        table.add(first);
+        assertThat(table.poll(first), is(third));
+        assertThat(table.poll(first), is(first));
+        assertThat(table.poll(first), is(PackedEvent.NONE));
+    }
+
+    /**
+     * Tests that events in different slots do not interfere with each other
+     */
+    @Test
+    public void testSlots() {
+        final long note = note(60, 0);
+        final long other = note(61, 0);
+        final long pedal = PackedEvent.encodePedal(0, Pedal.SUSTAIN, true, 0);
+        table.add(note);
+        table.add(other);
+        table.add(pedal);
+
+        final List<Long> events = new ArrayList<>();
+        table.forEach(events::add);
+        assertThat(events, contains(note, other, pedal));
+        assertThat(table.poll(other), is(other));
+        assertThat(table.peek(other), is(PackedEvent.NONE));
+        assertThat(table.peek(note), is(note));
+    }
+
+    /**
+     * Tests that setting an event replaces every event held for its slot
+     */
+    @Test
+    public void testSet() {
+        final long replacement = note(60, 20);
+        table.add(note(60, 0));
+        table.add(note(60, 10));
+        table.set(replacement);
+
+        final List<Long> events = new ArrayList<>();
+        table.forEach(events::add);
+        assertThat(events, contains(replacement));
+        assertThat(table.poll(replacement), is(replacement));
+        assertThat(table.poll(replacement), is(PackedEvent.NONE));
+    }
+
+    /**
+     * Tests that the oldest event is discarded once a slot is full
+     */
+    @Test
+    public void testCapacity() {
+        for (int i = 0; i <= PairingTable.CAPACITY; i++) {
+            table.add(note(60, i));
+        }
+
+        final List<Long> events = new ArrayList<>();
+        table.forEach(events::add);
+        assertThat(events.size(), is(PairingTable.CAPACITY));
+        assertThat(PackedEvent.getTime(events.get(0)), is(1L));
+    }
+
+    /**
+     * Tests that clearing the table removes every event
+     */
+    @Test
+    public void testClear() {
+        table.add(note(60, 0));
+        table.add(note(60, 10));
+        table.add(note(61, 0));
+        table.clear();
+
+        final List<Long> events = new ArrayList<>();
+        table.forEach(events::add);
+        assertThat(events.isEmpty(), is(true));
+        assertThat(table.peek(note(60, 0)), is(PackedEvent.NONE));
+    }
+
+    private static long note(int key, long time) {
+        return PackedEvent.encodeNote(0, key, 100, true, time);
+    }
+}
@@ -0,0 +1,106 @@
+package net.kreatious.pianoleopard.midi.event;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Optional;
+
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link PairingTable}
+ *
+ * @author Jay-R Studer
+ */
+public class PairingTableTest {
+    private final PairingTable<Event> table = new PairingTable<>();
+
+    /**
+     * Tests that overlapping events in the same slot are removed first in,
+     * first out
+     */
+    @Test
+    public void testFirstInFirstOut() {
+        final Event first = note(60, 0);
+        final Event second = note(60, 10);
+        final Event third = note(60, 20);
+        table.add(first);
+        table.add(second);
+        table.add(third);
+
+        assertThat(table.poll(first.getSlot()), is(Optional.of(first)));
+        assertThat(table.poll(first.getSlot()), is(Optional.of(second)));
+        assertThat(table.poll(first.getSlot()), is(Optional.of(third)));
+        assertThat(table.poll(first.getSlot()), is(Optional.empty()));
+    }
+
+    /**
+     * Tests that events in different slots do not interfere with each other
+     */
+    @Test
+    public void testSlots() {
+        final Event note = note(60, 0);
+        final Event other = note(61, 0);
+        final Event pedal = EventFactory.create(ShortMessage.CONTROL_CHANGE, 64, 127, 0).get();
+        table.add(note);
+        table.add(other);
+        table.add(pedal);
+
+        assertThat(table.poll(other.getSlot()), is(Optional.of(other)));
+        assertThat(table.poll(other.getSlot()), is(Optional.empty()));
+        assertThat(table.poll(pedal.getSlot()), is(Optional.of(pedal)));
+        assertThat(table.poll(note.getSlot()), is(Optional.of(note)));
+    }
+
+    /**
+     * Tests that setting an event replaces every event held for its slot
+     */
+    @Test
+    public void testSet() {
+        final Event replacement = note(60, 20);
+        table.add(note(60, 0));
+        table.add(note(60, 10));
+        table.set(replacement);
+
+        assertThat(table.poll(replacement.getSlot()), is(Optional.of(replacement)));
+        assertThat(table.poll(replacement.getSlot()), is(Optional.empty()));
+    }
+
+    /**
+     * Tests that the earliest held event is found across slots
+     */
+    @Test
+    public void testEarliestTime() {
+        assertThat(table.getEarliestTime(), is(Long.MAX_VALUE));
+
+        table.add(note(61, 20));
+        table.add(note(60, 10));
+        table.add(note(60, 30));
+        assertThat(table.getEarliestTime(), is(10L));
+
+        table.poll(note(60, 0).getSlot());
+        assertThat(table.getEarliestTime(), is(20L));
+    }
+
+    /**
+     * Tests that the oldest event is discarded once a slot is full
+     */
+    @Test
+    public void testCapacity() {
+        for (int i = 0; i <= PairingTable.CAPACITY; i++) {
+            table.add(note(60, i));
+        }
+
+        final Slot slot = note(60, 0).getSlot();
+        for (int i = 1; i <= PairingTable.CAPACITY; i++) {
+            assertThat(table.poll(slot).get().getTime(), is((long) i));
+        }
+        assertThat(table.poll(slot), is(Optional.empty()));
+    }
+
+    private static Event note(int key, long time) {
+        return EventFactory.create(ShortMessage.NOTE_ON, key, 100, time).get();
+    }
+}
@@ -0,0 +1,55 @@
+package net.kreatious.pianoleopard.midi.event;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Slot}
+ *
+ * @author Jay-R Studer
+ */
+public class SlotTest {
+    /**
+     * Tests that events for the same channel and key share a single slot
+     */
+    @Test
+    public void testInterned() {
+        final Event on = EventFactory.create(ShortMessage.NOTE_ON | 3, 60, 100, 0).get();
+        final Event off = EventFactory.create(ShortMessage.NOTE_OFF | 3, 60, 0, 10).get();
+        final Event pedal = EventFactory.create(ShortMessage.CONTROL_CHANGE | 3, 64, 127, 0).get();
+
+        assertThat(off.getSlot(), is(sameInstance(on.getSlot())));
+        assertThat(on.createOff(20).getSlot(), is(sameInstance(on.getSlot())));
+        assertThat(new NoteEvent(60, true, 0).getSlot(), is(not(on.getSlot())));
+        assertThat(pedal.getSlot(), is(not(on.getSlot())));
+        assertThat(EventFactory.create(ShortMessage.CONTROL_CHANGE | 3, 64, 0, 5).get().getSlot(),
+                is(sameInstance(pedal.getSlot())));
+    }
+
+    /**
+     * Tests that every slot has a distinct index within range
+     */
+    @Test
+    public void testIndex() {
+        final Set<Integer> indices = new HashSet<>();
+        for (int channel = 0; channel != 16; channel++) {
+            for (int key = 0; key != 128; key++) {
+                indices.add(Slot.of(channel, key).getIndex());
+            }
+            for (final Pedal pedal : Pedal.values()) {
+                indices.add(Slot.of(channel, pedal).getIndex());
+            }
+        }
+        assertThat(indices.size(), is(Slot.COUNT));
+        assertThat(indices.stream().allMatch(index -> index >= 0 && index < Slot.COUNT), is(true));
+    }
+}
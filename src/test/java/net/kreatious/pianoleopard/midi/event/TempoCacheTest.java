@@ -155,8 +155,75 @@ public class TempoCacheTest {
             assertThat(cache.ticksToMicroseconds(1500), is(10_009_800L));
         }
 
-        private static void createSetTempoEvent(Track track, long tick, int tempo) throws InvalidMidiDataException {
+        static void createSetTempoEvent(Track track, long tick, int tempo) throws InvalidMidiDataException {
             track.add(new MidiEvent(new MetaMessage(0x51, ByteBuffer.allocate(4).putInt(tempo << 8).array(), 3), tick));
         }
+        /**
+         * Tests that set tempo events are read from every track of a sequence
+         *
+         * @throws InvalidMidiDataException
+         *             This exception is never thrown by this test
+         */
+        @Test
+        public void testTicks2MicrosMultipleTracks() throws InvalidMidiDataException {
+            final Sequence sequence = new Sequence(Sequence.PPQ, 2);
+            createSetTempoEvent(sequence.createTrack(), 0, 500);
+            createSetTempoEvent(sequence.createTrack(), 1000, 50000);
+
+            final TempoCache cache = new TempoCache(sequence);
+            assertThat(cache.ticksToMicroseconds(1000), is(250_000L));
+            assertThat(cache.ticksToMicroseconds(3000), is(50_250_000L));
+        }
+    }
+
+    /**
+     * Unit tests for {@link TempoCache.Cursor} and
+     * {@link TempoCache#microsecondsToTicks(long)}
+     */
+    public static class CursorTest {
+        /**
+         * Tests that a cursor converts increasing and decreasing ticks the same
+         * way as {@link TempoCache#ticksToMicroseconds(long)}
+         *
+         * @throws InvalidMidiDataException
+         *             This exception is never thrown by this test
+         */
+        @Test
+        public void testCursor() throws InvalidMidiDataException {
+            final TempoCache cache = createCache();
+            final TempoCache.Cursor cursor = cache.cursor();
+            for (long tick = 0; tick <= 15000; tick += 250) {
+                assertThat(cursor.ticksToMicroseconds(tick), is(cache.ticksToMicroseconds(tick)));
+            }
+            for (long tick = 15000; tick >= 0; tick -= 750) {
+                assertThat(cursor.ticksToMicroseconds(tick), is(cache.ticksToMicroseconds(tick)));
+            }
+        }
+
+        /**
+         * Tests that {@link TempoCache#microsecondsToTicks(long)} is the
+         * inverse of {@link TempoCache#ticksToMicroseconds(long)}
+         *
+         * @throws InvalidMidiDataException
+         *             This exception is never thrown by this test
+         */
+        @Test
+        public void testMicros2Ticks() throws InvalidMidiDataException {
+            final TempoCache cache = createCache();
+            for (long tick = 0; tick <= 15000; tick += 250) {
+                assertThat(cache.microsecondsToTicks(cache.ticksToMicroseconds(tick)), is(tick));
+            }
+            assertThat(cache.microsecondsToTicks(50_250_000L + 12_500L), is(3000L));
+        }
+
+        private static TempoCache createCache() throws InvalidMidiDataException {
+            final Sequence sequence = new Sequence(Sequence.PPQ, 2);
+            final Track track = sequence.createTrack();
+            TicksToMicrosTest.createSetTempoEvent(track, 0, 500);
+            TicksToMicrosTest.createSetTempoEvent(track, 1000, 50000);
+            TicksToMicrosTest.createSetTempoEvent(track, 5000, 75000);
+            TicksToMicrosTest.createSetTempoEvent(track, 10000, 5000);
+            return new TempoCache(sequence);
+        }
     }
 }
@@ -0,0 +1,104 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for opening dense files generated by {@link MidiFileGenerator}
+ *
+ * @author Jay-R Studer
+ */
+public class DenseSequenceTest {
+    private static final int TRACKS = 4;
+    private static final int NOTES = 200_000;
+    private static final long WINDOW = TimeUnit.SECONDS.toMicros(5);
+
+    /**
+     * The folder containing the generated MIDI file
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File midi;
+
+    /**
+     * Generates the MIDI file
+     *
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    @Before
+    public void setUp() throws IOException {
+        midi = folder.newFile("dense.mid");
+        MidiFileGenerator.write(midi.toPath(), TRACKS, NOTES, 311);
+    }
+
+    /**
+     * Tests that every generated note is parsed once the file is indexed
+     *
+     * @throws IOException
+     *             if the file cannot be read
+     * @throws InvalidMidiDataException
+     *             if the generated file is invalid
+     */
+    @Test
+    public void testStatistics() throws IOException, InvalidMidiDataException {
+        final ParsedSequence sequence = ParsedSequence.parse(midi);
+        sequence.whenIndexed().join();
+        assertThat(sequence.getTracks().size(), is(TRACKS));
+        for (final ParsedTrack track : sequence.getTracks()) {
+            assertThat(track.getStatistics().getNoteCount(), is(NOTES / TRACKS));
+        }
+
+        final TrackStatistics statistics = sequence.getStatistics();
+        assertThat(statistics.getNoteCount(), is(NOTES));
+        assertThat(statistics.getMaxPolyphony(), is(2));
+        assertThat(statistics.getDuration(), greaterThan(ParsedSequence.HORIZON));
+    }
+
+    /**
+     * Tests that the start of a file queried before it is completely indexed
+     * contains the same notes as after it is indexed
+     *
+     * @throws IOException
+     *             if the file cannot be read
+     * @throws InvalidMidiDataException
+     *             if the generated file is invalid
+     */
+    @Test
+    public void testProgressiveQueries() throws IOException, InvalidMidiDataException {
+        final ParsedSequence sequence = ParsedSequence.parse(midi);
+        final long[] counts = new long[TRACKS];
+        final long[] keys = new long[TRACKS];
+        for (int i = 0; i != TRACKS; i++) {
+            counts[i] = sequence.getTracks().get(i).countNotePairs(0, WINDOW);
+            keys[i] = sumKeys(sequence.getTracks().get(i));
+        }
+
+        sequence.whenIndexed().join();
+        for (int i = 0; i != TRACKS; i++) {
+            final ParsedTrack track = sequence.getTracks().get(i);
+            assertThat(counts[i], greaterThan(0L));
+            assertThat(track.countNotePairs(0, WINDOW), is(counts[i]));
+            assertThat(sumKeys(track), is(keys[i]));
+        }
+    }
+
+    private static long sumKeys(ParsedTrack track) {
+        final long[] result = new long[1];
+        track.forEachNote(0, WINDOW, (onTime, offTime, key, velocity, channel) -> result[0] += key);
+        return result[0];
+    }
+}
@@ -0,0 +1,114 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import javax.sound.midi.ShortMessage;
+
+/**
+ * Generates dense Standard MIDI Files for testing and benchmarking, in the
+ * style of "black MIDI" files containing millions of notes.
+ * <p>
+ * Each track plays a chord of random keys on every tick, where each note lasts
+ * for two ticks and overlaps the next chord, so that notes on the same key
+ * often overlap. The chords are sized so that a file lasts for at most
+ * {@link #MAX_TICKS} ticks, which is three minutes at the default tempo.
+ *
+ * @author Jay-R Studer
+ */
+class MidiFileGenerator {
+    /**
+     * The resolution of generated files in ticks per quarter note
+     */
+    static final int RESOLUTION = 480;
+
+    /**
+     * The greatest number of ticks between the first and last chords of a
+     * track
+     */
+    static final int MAX_TICKS = 180 * 2 * RESOLUTION;
+
+    private static final int LENGTH = 2;
+
+    private MidiFileGenerator() {
+    }
+
+    /**
+     * Writes a generated file.
+     *
+     * @param file
+     *            the file to write
+     * @param tracks
+     *            the number of tracks, each on its own channel
+     * @param notes
+     *            the total number of notes
+     * @param seed
+     *            the seed for the random keys
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    static void write(Path file, int tracks, int notes, long seed) throws IOException {
+        final Random random = new Random(seed);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            output.writeBytes("MThd");
+            output.writeInt(6);
+            output.writeShort(1);
+            output.writeShort(tracks);
+            output.writeShort(RESOLUTION);
+
+            for (int track = 0; track != tracks; track++) {
+                final byte[] chunk = createTrack(track % 16, notes / tracks + (track < notes % tracks ? 1 : 0),
+                        random);
+                output.writeBytes("MTrk");
+                output.writeInt(chunk.length);
+                output.write(chunk);
+            }
+        }
+    }
+
+    private static byte[] createTrack(int channel, int notes, Random random) {
+        final int chord = Math.max(1, (notes + MAX_TICKS - 1) / MAX_TICKS);
+        final int[][] keys = new int[LENGTH][chord];
+        final int[] sizes = new int[LENGTH];
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(notes * 7 + 16);
+        int remaining = notes;
+        int delta = 0;
+        for (int tick = 0; remaining != 0 || sizes[0] + sizes[1] != 0; tick++) {
+            final int slot = tick % LENGTH;
+            for (int i = 0; i != sizes[slot]; i++) {
+                writeEvent(output, delta, ShortMessage.NOTE_OFF | channel, keys[slot][i], 0);
+                delta = 0;
+            }
+
+            sizes[slot] = Math.min(chord, remaining);
+            remaining -= sizes[slot];
+            for (int i = 0; i != sizes[slot]; i++) {
+                keys[slot][i] = 21 + random.nextInt(88);
+                writeEvent(output, delta, ShortMessage.NOTE_ON | channel, keys[slot][i], 100);
+                delta = 0;
+            }
+            delta++;
+        }
+
+        // End of track
+        writeEvent(output, 0, 0xFF, 0x2F, 0);
+        return output.toByteArray();
+    }
+
+    /**
+     * Writes an event, whose delta time is always less than 128 ticks and so
+     * is encoded in a single byte.
+     */
+    private static void writeEvent(ByteArrayOutputStream output, int delta, int status, int data1, int data2) {
+        output.write(delta);
+        output.write(status);
+        output.write(data1);
+        output.write(data2);
+    }
+}
@@ -0,0 +1,198 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import net.kreatious.pianoleopard.intervalset.IntervalCursor;
+import net.kreatious.pianoleopard.intervalset.WindowCursor;
+import net.kreatious.pianoleopard.midi.event.EventPair;
+import net.kreatious.pianoleopard.midi.event.NoteEvent;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link NoteTable}
+ *
+ * @author Jay-R Studer
+ */
+public class NoteTableTest {
+    /**
+     * Tests that queries visit and count the same notes as a linear search, in
+     * ascending order of on and off times
+     */
+    @Test
+    public void testForEachAndCount() {
+        final Random rnd = new Random(311);
+        final List<long[]> notes = new ArrayList<>();
+        final NoteTable.Builder builder = new NoteTable.Builder();
+        for (int i = 0; i != 2000; i++) {
+            final long on = rnd.nextInt(100000);
+            final long[] note = { on, on + rnd.nextInt(2000), rnd.nextInt(128), 1 + rnd.nextInt(127), rnd.nextInt(16) };
+            notes.add(note);
+            builder.add(note[0], note[1], (int) note[2], (int) note[3], (int) note[4]);
+        }
+        final NoteTable table = builder.build();
+        assertThat(table.size(), is(2000));
+
+        for (int i = 0; i != 200; i++) {
+            final long low = rnd.nextInt(110000) - 5000;
+            final long high = low + rnd.nextInt(5000);
+
+            final List<String> expected = new ArrayList<>();
+            for (final long[] note : notes) {
+                if (note[0] <= high && note[1] >= low) {
+                    expected.add(describe(note[0], note[1], (int) note[2], (int) note[3], (int) note[4]));
+                }
+            }
+
+            final List<String> visited = new ArrayList<>();
+            final List<long[]> times = new ArrayList<>();
+            table.forEach(low, high, (onTime, offTime, key, velocity, channel) -> {
+                visited.add(describe(onTime, offTime, key, velocity, channel));
+                times.add(new long[] { onTime, offTime });
+            });
+            assertThat(visited.size(), is(expected.size()));
+            assertThat(visited.containsAll(expected), is(true));
+            for (int j = 1; j < times.size(); j++) {
+                final long[] previous = times.get(j - 1);
+                final long[] current = times.get(j);
+                assertThat(previous[0] < current[0] || previous[0] == current[0] && previous[1] <= current[1],
+                        is(true));
+            }
+            assertThat(table.count(low, high), is((long) expected.size()));
+        }
+        assertThat(table.count(Long.MIN_VALUE, Long.MAX_VALUE), is(2000L));
+    }
+
+    /**
+     * Tests that note event pairs are created with the stored fields
+     */
+    @Test
+    public void testForEachPair() {
+        final NoteTable table = new NoteTable.Builder().add(10, 20, 60, 100, 3).add(5, 30, 61, 90, 4).build();
+
+        final List<EventPair<NoteEvent>> result = new ArrayList<>();
+        table.forEachPair(15, 15, result::add);
+        assertThat(result.size(), is(2));
+        assertThat(result.get(0).getOnTime(), is(5L));
+        assertThat(result.get(0).getOffTime(), is(30L));
+        assertThat(result.get(0).getOn().getKey(), is(61));
+        assertThat(result.get(0).getOn().getVelocity(), is(90));
+        assertThat(result.get(0).getOn().getChannel(), is(4));
+        assertThat(result.get(1).getOn().getKey(), is(60));
+    }
+
+    /**
+     * Tests that a cursor visits the same notes as {@link NoteTable#forEach}
+     * and creates a single event pair for the current note
+     */
+    @Test
+    public void testCursor() {
+        final NoteTable table = createRandomTable(new Random(311));
+        final IntervalCursor<EventPair<NoteEvent>> cursor = table.cursor();
+        for (final long low : new long[] { -5000, 0, 500, 40000, 99000, 200000 }) {
+            final long high = low + 3000;
+            final List<String> expected = new ArrayList<>();
+            table.forEach(low, high, (onTime, offTime, key, velocity, channel) -> expected.add(describe(onTime,
+                    offTime, key, velocity, channel)));
+
+            final List<String> visited = new ArrayList<>();
+            cursor.reset(low, high);
+            while (cursor.advance()) {
+                final EventPair<NoteEvent> pair = cursor.get();
+                assertThat(cursor.get(), is(sameInstance(pair)));
+                assertThat(cursor.getLow(), is(pair.getOnTime()));
+                assertThat(cursor.getHigh(), is(pair.getOffTime()));
+                visited.add(describe(pair));
+            }
+            assertThat(visited, is(expected));
+            assertThat(cursor.advance(), is(false));
+        }
+    }
+
+    /**
+     * Tests that a window reports the notes overlapping it while it moves
+     * forwards, backwards and skips ahead, passing the same event pair to the
+     * listener when a note exits as when it entered
+     */
+    @Test
+    public void testWindowCursor() {
+        final Random rnd = new Random(311);
+        final NoteTable table = createRandomTable(rnd);
+        final WindowCursor<EventPair<NoteEvent>> window = table.windowCursor();
+        final Set<EventPair<NoteEvent>> contents = Collections.newSetFromMap(new IdentityHashMap<>());
+        final WindowCursor.Listener<EventPair<NoteEvent>> listener = new WindowCursor.Listener<EventPair<NoteEvent>>() {
+            @Override
+            public void entered(EventPair<NoteEvent> value) {
+                assertTrue(value + " entered twice", contents.add(value));
+            }
+
+            @Override
+            public void exited(EventPair<NoteEvent> value) {
+                assertTrue(value + " exited without entering", contents.remove(value));
+            }
+        };
+
+        long low = -1000;
+        for (int i = 0; i != 3000; i++) {
+            final int step = rnd.nextInt(100);
+            if (step == 0) {
+                low -= rnd.nextInt(10000);
+            } else if (step == 1) {
+                low += rnd.nextInt(10000);
+            } else {
+                low += rnd.nextInt(100);
+            }
+            final long high = low + rnd.nextInt(3000);
+            window.moveTo(low, high, listener);
+
+            final List<String> expected = new ArrayList<>();
+            table.forEach(low, high, (onTime, offTime, key, velocity, channel) -> expected.add(describe(onTime,
+                    offTime, key, velocity, channel)));
+            final List<String> visited = new ArrayList<>();
+            window.forEach(pair -> {
+                assertTrue(pair + " was not reported", contents.contains(pair));
+                visited.add(describe(pair));
+            });
+            assertThat(visited, containsInAnyOrder(expected.toArray()));
+            assertThat(contents.size(), is(expected.size()));
+            assertThat(window.size(), is(expected.size()));
+        }
+    }
+
+    /**
+     * Tests that an inverted range is rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRange() {
+        new NoteTable.Builder().build().count(10, 9);
+    }
+
+    private static NoteTable createRandomTable(Random rnd) {
+        final NoteTable.Builder builder = new NoteTable.Builder();
+        for (int i = 0; i != 2000; i++) {
+            final long on = rnd.nextInt(100000);
+            builder.add(on, on + rnd.nextInt(2000), rnd.nextInt(128), 1 + rnd.nextInt(127), rnd.nextInt(16));
+        }
+        return builder.build();
+    }
+
+    private static String describe(EventPair<NoteEvent> pair) {
+        final NoteEvent on = pair.getOn();
+        return describe(pair.getOnTime(), pair.getOffTime(), on.getKey(), on.getVelocity(), on.getChannel());
+    }
+
+    private static String describe(long onTime, long offTime, int key, int velocity, int channel) {
+        return onTime + " -> " + offTime + ", key " + key + ", velocity " + velocity + ", channel " + channel;
+    }
+}
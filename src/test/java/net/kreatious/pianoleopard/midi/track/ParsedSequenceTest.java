@@ -0,0 +1,81 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import net.kreatious.pianoleopard.midi.event.EventPair;
+import net.kreatious.pianoleopard.midi.event.NoteEvent;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ParsedSequence}
+ *
+ * @author Jay-R Studer
+ */
+public class ParsedSequenceTest {
+    /**
+     * Tests that tracks parsed in parallel keep the order of the original
+     * sequence
+     *
+     * @throws InvalidMidiDataException
+     *             if a MIDI message is invalid
+     */
+    @Test
+    public void testParseByTracksOrder() throws InvalidMidiDataException {
+        final Sequence sequence = new Sequence(Sequence.PPQ, 480);
+        for (int key = 0; key != 64; key++) {
+            final Track track = sequence.createTrack();
+            for (int tick = 0; tick < 100 * (64 - key); tick += 10) {
+                track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, key, 127), tick));
+                track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, key, 0), tick + 5));
+            }
+        }
+
+        final List<ParsedTrack> tracks = ParsedSequence.parseByTracks(sequence).getTracks();
+        assertThat(tracks.size(), is(64));
+        for (int key = 0; key != 64; key++) {
+            for (final EventPair<NoteEvent> note : tracks.get(key).getNotePairs(0, Long.MAX_VALUE)) {
+                assertThat(note.getOn().getKey(), is(key));
+            }
+        }
+    }
+
+    /**
+     * Tests that a sequence with a single track is arranged by channel, and is
+     * left unchanged for playback
+     *
+     * @throws InvalidMidiDataException
+     *             if a MIDI message is invalid
+     */
+    @Test
+    public void testParseByTracksSingleTrack() throws InvalidMidiDataException {
+        final Sequence sequence = new Sequence(Sequence.PPQ, 480);
+        final Track track = sequence.createTrack();
+        for (int tick = 0; tick != 1600; tick += 10) {
+            final int channel = tick / 10 % 16;
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, channel, 60, 127), tick));
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, channel, 60, 0), tick + 5));
+        }
+        final int events = track.size();
+
+        final ParsedSequence parsed = ParsedSequence.parseByTracks(sequence);
+        assertThat(sequence.getTracks().length, is(1));
+        assertThat(sequence.getTracks()[0].size(), is(events));
+        assertThat(parsed.getTracks().size(), is(16));
+        for (int channel = 0; channel != 16; channel++) {
+            assertThat(parsed.getTracks().get(channel).countNotePairs(0, Long.MAX_VALUE), is(10L));
+            for (final EventPair<NoteEvent> note : parsed.getTracks().get(channel).getNotePairs(0, Long.MAX_VALUE)) {
+                assertThat(note.getOn().getChannel(), is(channel));
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.kreatious.pianoleopard.midi.event.EventPair;
+import net.kreatious.pianoleopard.midi.event.NoteEvent;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link PitchIndex}
+ *
+ * @author Jay-R Studer
+ */
+public class PitchIndexTest {
+    /**
+     * Tests that queries on time and key return the same notes as a linear
+     * search, ordered by key
+     */
+    @Test
+    public void testForEachNotePair() {
+        final Random rnd = new Random(311);
+        final List<EventPair<NoteEvent>> notes = new ArrayList<>();
+        final NoteTable.Builder builder = new NoteTable.Builder();
+        for (int i = 0; i != 2000; i++) {
+            final int key = rnd.nextInt(128);
+            final long on = rnd.nextInt(100000);
+            final long off = on + rnd.nextInt(2000);
+            notes.add(new EventPair<>(new NoteEvent(key, true, on), new NoteEvent(key, false, off)));
+            builder.add(on, off, key, 127, 0);
+        }
+        final PitchIndex index = new PitchIndex(builder.build());
+
+        for (int i = 0; i != 200; i++) {
+            final long low = rnd.nextInt(100000);
+            final long high = low + rnd.nextInt(5000);
+            final int lowKey = rnd.nextInt(140) - 6;
+            final int highKey = lowKey + rnd.nextInt(30);
+
+            final List<String> expected = new ArrayList<>();
+            for (final EventPair<NoteEvent> note : notes) {
+                final int key = note.getOn().getKey();
+                if (note.getOnTime() <= high && note.getOffTime() >= low && key >= lowKey && key <= highKey) {
+                    expected.add(describe(note));
+                }
+            }
+
+            final List<EventPair<NoteEvent>> result = new ArrayList<>();
+            index.forEachNotePair(low, high, lowKey, highKey, result::add);
+            assertThat(result.stream().map(PitchIndexTest::describe).collect(toList()),
+                    containsInAnyOrder(expected.toArray()));
+            for (int j = 1; j < result.size(); j++) {
+                assertThat(result.get(j - 1).getOn().getKey() <= result.get(j).getOn().getKey(), is(true));
+            }
+
+            final List<String> visited = new ArrayList<>();
+            index.forEachNote(low, high, lowKey, highKey, (onTime, offTime, key, velocity, channel) -> visited
+                    .add(onTime + " -> " + offTime + ", key " + key));
+            assertThat(visited, is(result.stream().map(PitchIndexTest::describe).collect(toList())));
+        }
+    }
+
+    /**
+     * Tests that an inverted key range is rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidKeyRange() {
+        new PitchIndex(new NoteTable.Builder().build()).forEachNotePair(0, 10, 60, 59, note -> {
+            // Intentionally empty
+        });
+    }
+
+    private static String describe(EventPair<NoteEvent> note) {
+        return note.getOnTime() + " -> " + note.getOffTime() + ", key " + note.getOn().getKey();
+    }
+}
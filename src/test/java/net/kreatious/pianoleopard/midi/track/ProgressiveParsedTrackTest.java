@@ -0,0 +1,171 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+
+import javax.sound.midi.ShortMessage;
+
+import net.kreatious.pianoleopard.intervalset.WindowCursor;
+import net.kreatious.pianoleopard.midi.event.EventFactory;
+import net.kreatious.pianoleopard.midi.event.EventPair;
+import net.kreatious.pianoleopard.midi.event.NoteEvent;
+import net.kreatious.pianoleopard.midi.event.PedalEvent;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ProgressiveParsedTrack}
+ *
+ * @author Jay-R Studer
+ */
+public class ProgressiveParsedTrackTest {
+    private static final long HORIZON = 1000;
+
+    private final ImmutableParsedTrack.Builder builder = new ImmutableParsedTrack.Builder();
+    private final CompletableFuture<ImmutableParsedTrack> complete = new CompletableFuture<>();
+    private final ProgressiveParsedTrack track;
+
+    /**
+     * Constructs a track with a note every 100 microseconds and a pedal
+     * before and after the horizon
+     */
+    public ProgressiveParsedTrackTest() {
+        for (long time = 0; time != 2000; time += 100) {
+            add(ShortMessage.NOTE_ON, 60, 127, time);
+            add(ShortMessage.NOTE_OFF, 60, 0, time + 50);
+        }
+        add(ShortMessage.CONTROL_CHANGE, 64, 127, 0);
+        add(ShortMessage.CONTROL_CHANGE, 64, 0, 150);
+        add(ShortMessage.CONTROL_CHANGE, 64, 127, 1500);
+        add(ShortMessage.CONTROL_CHANGE, 64, 0, 1600);
+        track = new ProgressiveParsedTrack(HORIZON, builder.build(HORIZON), complete);
+    }
+
+    /**
+     * Tests that queries ending at the horizon are answered exactly before the
+     * complete track is indexed
+     */
+    @Test
+    public void testBeforeHorizon() {
+        assertThat(track.countNotePairs(0, HORIZON), is(11L));
+        assertThat(track.countNotePairs(920, HORIZON), is(2L));
+        assertThat(size(track.getPedalPairs(0, HORIZON)), is(1));
+        assertThat(complete.isDone(), is(false));
+    }
+
+    /**
+     * Tests that queries ending after the horizon are answered by the complete
+     * track
+     */
+    @Test
+    public void testAfterHorizon() {
+        complete.complete(builder.build());
+        assertThat(track.countNotePairs(0, Long.MAX_VALUE), is(20L));
+        assertThat(track.countNotePairs(920, 1120), is(3L));
+        assertThat(size(track.getPedalPairs(0, Long.MAX_VALUE)), is(2));
+    }
+
+    /**
+     * Tests that a pedal window created before the track is indexed sees the
+     * pedals after the horizon once the track is indexed
+     */
+    @Test
+    public void testPedalWindow() {
+        final WindowCursor<EventPair<PedalEvent>> window = track.createPedalWindow();
+        window.moveTo(0, HORIZON);
+        assertThat(window.size(), is(1));
+
+        complete.complete(builder.build());
+        window.moveTo(HORIZON, 2000);
+        assertThat(window.size(), is(1));
+        window.forEach(pedal -> assertThat(pedal.getOnTime(), is(1500L)));
+    }
+
+    /**
+     * Tests that a note window created before the track is indexed reports
+     * the switch to the complete track as exits and entries, so listeners
+     * tracking the window's contents remain consistent
+     */
+    @Test
+    public void testNoteWindow() {
+        final WindowCursor<EventPair<NoteEvent>> window = track.createNoteWindow();
+        final int[] contents = new int[1];
+        final WindowCursor.Listener<EventPair<NoteEvent>> listener = new WindowCursor.Listener<EventPair<NoteEvent>>() {
+            @Override
+            public void entered(EventPair<NoteEvent> value) {
+                contents[0]++;
+            }
+
+            @Override
+            public void exited(EventPair<NoteEvent> value) {
+                contents[0]--;
+            }
+        };
+        window.moveTo(920, HORIZON, listener);
+        assertThat(window.size(), is(2));
+        assertThat(contents[0], is(2));
+
+        complete.complete(builder.build());
+        window.moveTo(920, 1120, listener);
+        assertThat(window.size(), is(3));
+        assertThat(contents[0], is(3));
+
+        window.moveTo(1860, 1950, listener);
+        assertThat(window.size(), is(1));
+        assertThat(contents[0], is(1));
+    }
+
+    /**
+     * Tests that tracks are only indexed progressively while they are still
+     * being decoded
+     */
+    @Test
+    public void testBuildProgressively() {
+        assertThat(builder.buildProgressively(HORIZON, CompletableFuture.completedFuture(null)),
+                instanceOf(ImmutableParsedTrack.class));
+
+        final CompletableFuture<Void> decoded = new CompletableFuture<>();
+        final ParsedTrack progressive = builder.buildProgressively(HORIZON, decoded);
+        assertThat(progressive, instanceOf(ProgressiveParsedTrack.class));
+        assertThat(progressive.countNotePairs(0, HORIZON), is(11L));
+
+        add(ShortMessage.NOTE_ON, 61, 127, 2100);
+        add(ShortMessage.NOTE_OFF, 61, 0, 2200);
+        decoded.complete(null);
+        assertThat(ProgressiveParsedTrack.whenIndexed(progressive).join().countNotePairs(0, Long.MAX_VALUE),
+                is(21L));
+        assertThat(progressive.getStatistics().getNoteCount(), is(21));
+    }
+
+    /**
+     * Tests that event pairs that are still incomplete when the track is
+     * built are found once the track is decoded
+     */
+    @Test
+    public void testBuildProgressivelyIncomplete() {
+        add(ShortMessage.NOTE_ON, 62, 127, 900);
+        final CompletableFuture<Void> decoded = new CompletableFuture<>();
+        final ParsedTrack progressive = builder.buildProgressively(HORIZON, decoded);
+        assertThat(progressive.countNotePairs(0, 850), is(9L));
+
+        add(ShortMessage.NOTE_OFF, 62, 0, 2500);
+        decoded.complete(null);
+        assertThat(progressive.countNotePairs(960, 990), is(1L));
+    }
+
+    private void add(int command, int data1, int data2, long time) {
+        EventFactory.create(command, data1, data2, time).ifPresent(builder::accept);
+    }
+
+    private static int size(Iterable<?> iterable) {
+        int result = 0;
+        for (@SuppressWarnings("unused")
+        final Object value : iterable) {
+            result++;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,228 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import net.kreatious.pianoleopard.midi.event.EventPair;
+import net.kreatious.pianoleopard.midi.event.NoteEvent;
+import net.kreatious.pianoleopard.midi.event.PedalEvent;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.hash.HashCode;
+
+/**
+ * Tests for {@link SequenceCache}
+ *
+ * @author Jay-R Studer
+ */
+public class SequenceCacheTest {
+    /**
+     * The folder containing the MIDI file and the cache directory
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File midi;
+    private SequenceCache cache;
+
+    /**
+     * Copies the test MIDI file into the temporary folder
+     *
+     * @throws IOException
+     *             if the file cannot be copied
+     */
+    @Before
+    public void setUp() throws IOException {
+        midi = folder.newFile("grieg_hallofking.mid");
+        try (InputStream input = ClassLoader.getSystemResourceAsStream("grieg_hallofking.mid")) {
+            Files.copy(input, midi.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        cache = new SequenceCache(folder.getRoot().toPath().resolve("cache"));
+    }
+
+    /**
+     * Tests that a sequence read from its image contains the same tracks as
+     * the parsed sequence
+     *
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws InvalidMidiDataException
+     *             if the test file is invalid
+     */
+    @Test
+    public void testRoundTrip() throws IOException, InvalidMidiDataException {
+        final ParsedSequence expected = ParsedSequence.parse(midi);
+        final ParsedSequence parsed = cache.parse(midi);
+        cache.written.join();
+        assertThat(parsed.getTracks().size(), is(expected.getTracks().size()));
+        assertThat(Files.isRegularFile(cache.getImage(midi)), is(true));
+
+        final ParsedSequence cached = cache.parse(midi);
+        assertThat(cached.getContentHash(), is(expected.getContentHash()));
+        assertThat(cached.getTracks().size(), is(expected.getTracks().size()));
+        for (int i = 0; i != expected.getTracks().size(); i++) {
+            assertThat(describe(cached.getTracks().get(i)), is(describe(expected.getTracks().get(i))));
+        }
+        assertThat(cached.getStatistics().getNoteCount(), is(expected.getStatistics().getNoteCount()));
+        assertThat(cached.getStatistics().getMaxPolyphony(), is(expected.getStatistics().getMaxPolyphony()));
+        assertThat(cached.getMicrosecondLength(), is(expected.getMicrosecondLength()));
+    }
+
+    /**
+     * Tests that later opens read the image instead of parsing or hashing the
+     * file
+     *
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws InvalidMidiDataException
+     *             if the test file is invalid
+     */
+    @Test
+    public void testReadsImage() throws IOException, InvalidMidiDataException {
+        final Path image = cache.getImage(midi);
+        final HashCode hash = cache.parse(midi).getContentHash().get();
+        cache.written.join();
+
+        // Magic, version, source path, size and modified time, content hash and length
+        final int trackCount = 4 + 4 + 4 + midi.getPath().getBytes(UTF_8).length + 8 + 8 + 4 + 32 + 8;
+        final ByteBuffer header = ByteBuffer.wrap(Arrays.copyOf(Files.readAllBytes(image), trackCount + 4));
+        header.putInt(trackCount, 0);
+        Files.write(image, header.array());
+
+        final ParsedSequence cached = cache.parse(midi);
+        assertThat(cached.getTracks().size(), is(0));
+        assertThat(cached.getContentHash().get(), is(hash));
+    }
+
+    /**
+     * Tests that an image with a different version is replaced
+     *
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws InvalidMidiDataException
+     *             if the test file is invalid
+     */
+    @Test
+    public void testVersionChanged() throws IOException, InvalidMidiDataException {
+        final int tracks = ParsedSequence.parse(midi).getTracks().size();
+        final Path image = cache.getImage(midi);
+        cache.parse(midi);
+        cache.written.join();
+        Files.write(image, ByteBuffer.allocate(12).putInt(0x504C5351).putInt(SequenceCache.VERSION + 1).array());
+
+        assertThat(cache.parse(midi).getTracks().size(), is(tracks));
+        cache.written.join();
+        assertThat(ByteBuffer.wrap(Files.readAllBytes(image)).getInt(4), is(SequenceCache.VERSION));
+        assertThat(cache.parse(midi).getTracks().size(), is(tracks));
+    }
+
+    /**
+     * Tests that a changed file is parsed again instead of reading the image
+     * of its previous contents
+     *
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws InvalidMidiDataException
+     *             if the test file is invalid
+     */
+    @Test
+    public void testFileChanged() throws IOException, InvalidMidiDataException {
+        final int tracks = ParsedSequence.parse(midi).getTracks().size();
+        final Path previous = cache.getImage(midi);
+        cache.parse(midi);
+        cache.written.join();
+
+        midi.setLastModified(midi.lastModified() - TimeUnit.DAYS.toMillis(1));
+        assertThat(cache.getImage(midi).equals(previous), is(false));
+        assertThat(cache.parse(midi).getTracks().size(), is(tracks));
+        cache.written.join();
+        assertThat(Files.isRegularFile(cache.getImage(midi)), is(true));
+    }
+
+    /**
+     * Tests that cleaning deletes old version images, images of changed or
+     * removed files, and abandoned temporary files
+     *
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws InvalidMidiDataException
+     *             if the test file is invalid
+     */
+    @Test
+    public void testClean() throws IOException, InvalidMidiDataException {
+        final File removed = folder.newFile("removed.mid");
+        Files.copy(midi.toPath(), removed.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        cache.parse(removed);
+        cache.written.join();
+        removed.delete();
+
+        final Path changed = cache.getImage(midi);
+        cache.parse(midi);
+        cache.written.join();
+        midi.setLastModified(midi.lastModified() - TimeUnit.DAYS.toMillis(1));
+        cache.parse(midi);
+        cache.written.join();
+        final Path current = cache.getImage(midi);
+
+        final Path directory = current.getParent();
+        Files.write(directory.resolve("version.dat"), ByteBuffer.allocate(12).putInt(0x504C5351)
+                .putInt(SequenceCache.VERSION - 1).array());
+        Files.write(directory.resolve("truncated.dat"), new byte[2]);
+        final Path abandoned = Files.write(directory.resolve("abandoned.tmp"), new byte[2]);
+        abandoned.toFile().setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1));
+        final Path writing = Files.write(directory.resolve("writing.tmp"), new byte[2]);
+        final Path unrelated = Files.write(directory.resolve("unrelated.txt"), new byte[2]);
+        assertThat(Files.isRegularFile(changed), is(true));
+
+        cache.clean().join();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.collect(Collectors.toList()), containsInAnyOrder(current, writing, unrelated));
+        }
+    }
+
+    /**
+     * Tests that cleaning a missing cache directory does nothing
+     */
+    @Test
+    public void testCleanMissingDirectory() {
+        cache.clean().join();
+        assertThat(Files.exists(folder.getRoot().toPath().resolve("cache")), is(false));
+    }
+
+    private static List<String> describe(ParsedTrack track) {
+        final List<String> result = new ArrayList<>();
+        for (final EventPair<NoteEvent> note : track.getNotePairs(Long.MIN_VALUE, Long.MAX_VALUE)) {
+            result.add(note.getOnTime() + " -> " + note.getOffTime() + ", key " + note.getOn().getKey()
+                    + ", velocity " + note.getOn().getVelocity() + ", channel " + note.getOn().getChannel());
+        }
+        for (final EventPair<PedalEvent> pedal : track.getPedalPairs(Long.MIN_VALUE, Long.MAX_VALUE)) {
+            result.add(pedal.getOnTime() + " -> " + pedal.getOffTime() + ", pedal " + pedal.getOn().getPedal()
+                    + ", channel " + pedal.getOn().getChannel());
+        }
+        track.forEachControl(Long.MIN_VALUE, Long.MAX_VALUE, (time, status, data1, data2) -> result.add(time
+                + ", status " + status + ", " + data1 + ", " + data2));
+        return result;
+    }
+}
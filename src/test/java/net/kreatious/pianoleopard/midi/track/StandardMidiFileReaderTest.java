@@ -0,0 +1,228 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+
+import net.kreatious.pianoleopard.midi.event.Event;
+import net.kreatious.pianoleopard.midi.event.EventPair;
+import net.kreatious.pianoleopard.midi.event.NoteEvent;
+import net.kreatious.pianoleopard.midi.event.PedalEvent;
+
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Tests for {@link StandardMidiFileReader}
+ *
+ * @author Jay-R Studer
+ */
+public class StandardMidiFileReaderTest {
+    private static final int[] HEADER = { 0x4D, 0x54, 0x68, 0x64, 0, 0, 0, 6, 0, 0, 0, 1, 0x01, 0xE0 };
+
+    /**
+     * Tests that a MIDI file is parsed into the same tracks and length as the
+     * javax parser
+     *
+     * @throws IOException
+     *             if the test file cannot be read
+     * @throws InvalidMidiDataException
+     *             if the test file is invalid
+     */
+    @Test
+    public void testMatchesSequence() throws IOException, InvalidMidiDataException {
+        final byte[] file = ByteStreams.toByteArray(ClassLoader.getSystemResourceAsStream("grieg_hallofking.mid"));
+        final Sequence sequence = MidiSystem.getSequence(ClassLoader.getSystemResourceAsStream(
+                "grieg_hallofking.mid"));
+        final ParsedSequence expected = ParsedSequence.parseByTracks(sequence);
+        final ParsedSequence actual = ParsedSequence.parse(ByteBuffer.wrap(file));
+
+        assertThat(actual.getMicrosecondLength(), is(sequence.getMicrosecondLength()));
+        assertThat(actual.getTracks().size(), is(expected.getTracks().size()));
+        assertThat(describeNotes(actual.getTracks().get(1)).isEmpty(), is(false));
+        for (int i = 0; i != expected.getTracks().size(); i++) {
+            final ParsedTrack expectedTrack = expected.getTracks().get(i);
+            final ParsedTrack actualTrack = actual.getTracks().get(i);
+            assertThat(describeNotes(actualTrack), is(describeNotes(expectedTrack)));
+            assertThat(describePedals(actualTrack), is(describePedals(expectedTrack)));
+            assertThat(describeControls(actualTrack), is(describeControls(expectedTrack)));
+        }
+    }
+
+    /**
+     * Tests that running status and system exclusive events are decoded
+     *
+     * @throws InvalidMidiDataException
+     *             if the file is rejected
+     */
+    @Test
+    public void testRunningStatus() throws InvalidMidiDataException {
+        final ParsedSequence sequence = ParsedSequence.parse(createFile(0x00, 0x91, 0x3C, 0x40, 0x00, 0xF0, 0x02,
+                0x7E, 0xF7, 0x83, 0x60, 0x3C, 0x00, 0x00, 0xFF, 0x2F, 0x00));
+
+        assertThat(sequence.getTracks().size(), is(16));
+        assertThat(describeNotes(sequence.getTracks().get(1)), contains("0 -> 500000, channel 1, key 60"));
+    }
+
+    /**
+     * Tests that the channel messages that are not notes are kept in order,
+     * and that the length includes the messages after the last note
+     *
+     * @throws InvalidMidiDataException
+     *             if the file is rejected
+     */
+    @Test
+    public void testControls() throws InvalidMidiDataException {
+        final ParsedSequence sequence = ParsedSequence.parse(createFile(0x00, 0xC0, 0x05, 0x00, 0xB0, 0x07, 0x64,
+                0x00, 0x90, 0x3C, 0x40, 0x60, 0x3C, 0x00, 0x60, 0xE0, 0x00, 0x50, 0x60, 0xFF, 0x2F, 0x00));
+
+        assertThat(describeControls(sequence.getTracks().get(0)), contains("0, status 192, 5, 0",
+                "0, status 176, 7, 100", "200000, status 224, 0, 80"));
+        assertThat(sequence.getMicrosecondLength(), is(300000L));
+    }
+
+    /**
+     * Tests that a file whose header claims a missing track is still opened,
+     * even though the MIDI system rejects it
+     *
+     * @throws InvalidMidiDataException
+     *             if the file is rejected
+     */
+    @Test
+    public void testMissingTrack() throws InvalidMidiDataException {
+        final ByteBuffer file = createFile(0x00, 0x90, 0x3C, 0x40, 0x60, 0x3C, 0x00, 0x00, 0xFF, 0x2F, 0x00);
+        file.put(11, (byte) 2);
+        final ParsedSequence sequence = ParsedSequence.parse(file);
+
+        assertThat(describeNotes(sequence.getTracks().get(0)), contains("0 -> 100000, channel 0, key 60"));
+        assertThat(sequence.getMicrosecondLength(), is(100000L));
+    }
+
+    /**
+     * Tests that files which cannot be decoded directly are read by the MIDI
+     * system instead
+     *
+     * @throws InvalidMidiDataException
+     *             if the file is rejected
+     */
+    @Test
+    public void testMidiSystemFallback() throws InvalidMidiDataException {
+        // A delta time padded to 5 bytes is accepted by the MIDI system
+        final ParsedSequence sequence = ParsedSequence.parse(createFile(0x80, 0x80, 0x80, 0x80, 0x00, 0x90, 0x3C,
+                0x40, 0x60, 0x3C, 0x00, 0x00, 0xFF, 0x2F, 0x00));
+
+        assertThat(sequence.getTracks().size(), is(16));
+        assertThat(describeNotes(sequence.getTracks().get(0)), contains("0 -> 100000, channel 0, key 60"));
+    }
+
+    /**
+     * Tests that a truncated track is rejected
+     *
+     * @throws InvalidMidiDataException
+     *             always
+     */
+    @Test(expected = InvalidMidiDataException.class)
+    public void testTruncatedTrack() throws InvalidMidiDataException {
+        ParsedSequence.parse(createFile(0x00, 0x90, 0x3C));
+    }
+
+    /**
+     * Tests that a data byte without a preceding status byte is rejected
+     *
+     * @throws InvalidMidiDataException
+     *             always
+     */
+    @Test(expected = InvalidMidiDataException.class)
+    public void testMissingStatus() throws InvalidMidiDataException {
+        ParsedSequence.parse(createFile(0x00, 0x3C, 0x40));
+    }
+
+    /**
+     * Tests that only the beginning of a track is decoded before returning,
+     * and the rest is decoded in the background
+     *
+     * @throws InvalidMidiDataException
+     *             if the test file is invalid
+     */
+    @Test
+    public void testReadTracksProgressively() throws InvalidMidiDataException {
+        // Notes from 0 to 1 second, and from 2 to 2.5 seconds
+        final StandardMidiFileReader reader = new StandardMidiFileReader(createFile(0x00, 0x90, 0x3C, 0x40, 0x87,
+                0x40, 0x3C, 0x00, 0x87, 0x40, 0x3E, 0x40, 0x83, 0x60, 0x3E, 0x00, 0x00, 0xFF, 0x2F, 0x00));
+        final ParsedTrack track = reader.readTracks(reader.createTempoCache(), TimeUnit.MILLISECONDS.toMicros(1500))
+                .get(0);
+
+        assertThat(track, instanceOf(ProgressiveParsedTrack.class));
+        assertThat(track.countNotePairs(0, TimeUnit.SECONDS.toMicros(1)), is(1L));
+        assertThat(ProgressiveParsedTrack.whenIndexed(track).join().countNotePairs(0, Long.MAX_VALUE), is(2L));
+    }
+
+    /**
+     * Tests that a note starting before the horizon and ending after it is
+     * found by queries ending before the horizon
+     *
+     * @throws InvalidMidiDataException
+     *             if the test file is invalid
+     */
+    @Test
+    public void testReadTracksAcrossHorizon() throws InvalidMidiDataException {
+        // A note from 0 to 4 seconds
+        final StandardMidiFileReader reader = new StandardMidiFileReader(createFile(0x00, 0x90, 0x3C, 0x40, 0x8F,
+                0x00, 0x3C, 0x00, 0x00, 0xFF, 0x2F, 0x00));
+        final ParsedTrack track = reader.readTracks(reader.createTempoCache(), TimeUnit.SECONDS.toMicros(1)).get(0);
+
+        assertThat(track.countNotePairs(0, TimeUnit.MILLISECONDS.toMicros(500)), is(1L));
+    }
+
+    private static ByteBuffer createFile(int... track) {
+        final ByteBuffer result = ByteBuffer.allocate(HEADER.length + 8 + track.length);
+        for (final int value : HEADER) {
+            result.put((byte) value);
+        }
+        result.putInt(0x4D54726B).putInt(track.length);
+        for (final int value : track) {
+            result.put((byte) value);
+        }
+        result.flip();
+        return result;
+    }
+
+    private static List<String> describeNotes(ParsedTrack track) {
+        final List<String> result = new ArrayList<>();
+        for (final EventPair<NoteEvent> note : track.getNotePairs(Long.MIN_VALUE, Long.MAX_VALUE)) {
+            result.add(describe(note) + ", key " + note.getOn().getKey());
+        }
+        return result;
+    }
+
+    private static List<String> describePedals(ParsedTrack track) {
+        final List<String> result = new ArrayList<>();
+        for (final EventPair<PedalEvent> pedal : track.getPedalPairs(Long.MIN_VALUE, Long.MAX_VALUE)) {
+            result.add(describe(pedal) + ", pedal " + pedal.getOn().getPedal());
+        }
+        return result;
+    }
+
+    private static List<String> describeControls(ParsedTrack track) {
+        final List<String> result = new ArrayList<>();
+        track.forEachControl(Long.MIN_VALUE, Long.MAX_VALUE, (time, status, data1, data2) -> result.add(time
+                + ", status " + status + ", " + data1 + ", " + data2));
+        return result;
+    }
+
+    private static String describe(EventPair<? extends Event> pair) {
+        return pair.getOnTime() + " -> " + pair.getOffTime() + ", channel " + pair.getOn().getChannel();
+    }
+}
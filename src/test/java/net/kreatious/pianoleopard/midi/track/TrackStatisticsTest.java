@@ -0,0 +1,160 @@
+package net.kreatious.pianoleopard.midi.track;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import javax.sound.midi.ShortMessage;
+
+import net.kreatious.pianoleopard.midi.event.EventFactory;
+import net.kreatious.pianoleopard.midi.event.Pedal;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link TrackStatistics}
+ *
+ * @author Jay-R Studer
+ */
+public class TrackStatisticsTest {
+    private final ImmutableParsedTrack.Builder builder = new ImmutableParsedTrack.Builder();
+
+    /**
+     * Constructs a track with a three note chord, a run of single notes and a
+     * sustained pedal
+     */
+    public TrackStatisticsTest() {
+        add(ShortMessage.CONTROL_CHANGE, 64, 127, 0);
+        for (final int key : new int[] { 60, 64, 67 }) {
+            add(ShortMessage.NOTE_ON, key, 100, 0);
+        }
+        for (final int key : new int[] { 60, 64, 67 }) {
+            add(ShortMessage.NOTE_OFF, key, 0, 500_000);
+        }
+        for (int i = 0; i != 4; i++) {
+            add(ShortMessage.NOTE_ON, 40 + i, 100, 1_000_000 + i * 500_000);
+            add(ShortMessage.NOTE_OFF, 40 + i, 0, 1_500_000 + i * 500_000);
+        }
+        add(ShortMessage.CONTROL_CHANGE, 64, 0, 3_200_000);
+    }
+
+    /**
+     * Tests the statistics accumulated while parsing
+     */
+    @Test
+    public void testParsed() {
+        assertStatistics(builder.build().getStatistics());
+    }
+
+    /**
+     * Tests that the statistics of a track indexed progressively describe the
+     * whole track once it is indexed
+     */
+    @Test
+    public void testProgressive() {
+        final CompletableFuture<Void> decoded = new CompletableFuture<>();
+        final ParsedTrack track = builder.buildProgressively(0, decoded);
+        decoded.complete(null);
+        ProgressiveParsedTrack.whenIndexed(track).join();
+        assertStatistics(track.getStatistics());
+    }
+
+    /**
+     * Tests that scanning a track computes the same statistics as parsing it
+     */
+    @Test
+    public void testScan() {
+        assertStatistics(TrackStatistics.scan(builder.build()));
+    }
+
+    /**
+     * Tests that statistics survive being written and read back
+     *
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        builder.build().getStatistics().write(new DataOutputStream(bytes));
+        final ByteBuffer input = ByteBuffer.wrap(bytes.toByteArray());
+
+        assertStatistics(TrackStatistics.read(input));
+        assertThat(input.hasRemaining(), is(false));
+    }
+
+    /**
+     * Tests that combined statistics sum the counts of each track
+     */
+    @Test
+    public void testCombine() {
+        final TrackStatistics empty = new ImmutableParsedTrack.Builder().build().getStatistics();
+        final TrackStatistics track = builder.build().getStatistics();
+        final TrackStatistics combined = TrackStatistics.combine(asList(track, empty, track));
+
+        assertThat(combined.getNoteCount(), is(14));
+        assertThat(combined.getLowestKey(), is(40));
+        assertThat(combined.getHighestKey(), is(67));
+        assertThat(combined.getMaxPolyphony(), is(3));
+        assertThat(combined.getDuration(), is(3_200_000L));
+        assertThat(combined.getPedalCount(Pedal.SUSTAIN), is(2));
+        assertThat(combined.getNoteDensity(0), is(6));
+    }
+
+    /**
+     * Tests that a note starting decades into the track only adds the second
+     * it starts in to the density histogram
+     */
+    @Test
+    public void testDistantNote() {
+        add(ShortMessage.NOTE_ON, 72, 100, 1_000_000_000_000_000L);
+        add(ShortMessage.NOTE_OFF, 72, 0, 1_000_000_000_500_000L);
+        final TrackStatistics statistics = builder.build().getStatistics();
+
+        assertThat(statistics.getNoteCount(), is(8));
+        assertThat(statistics.getDensitySeconds(), is(1_000_000_001));
+        assertThat(statistics.getNoteDensity(1), is(2));
+        assertThat(statistics.getNoteDensity(3), is(0));
+        assertThat(statistics.getNoteDensity(999_999_999), is(0));
+        assertThat(statistics.getNoteDensity(1_000_000_000), is(1));
+    }
+
+    /**
+     * Tests the statistics of a track without any events
+     */
+    @Test
+    public void testEmpty() {
+        final TrackStatistics statistics = new ImmutableParsedTrack.Builder().build().getStatistics();
+        assertThat(statistics.getNoteCount(), is(0));
+        assertThat(statistics.getLowestKey(), is(-1));
+        assertThat(statistics.getHighestKey(), is(-1));
+        assertThat(statistics.getMaxPolyphony(), is(0));
+        assertThat(statistics.getDensitySeconds(), is(0));
+    }
+
+    private static void assertStatistics(TrackStatistics statistics) {
+        assertThat(statistics.getNoteCount(), is(7));
+        assertThat(statistics.getLowestKey(), is(40));
+        assertThat(statistics.getHighestKey(), is(67));
+        assertThat(statistics.getMaxPolyphony(), is(3));
+        assertThat(statistics.getDuration(), is(3_200_000L));
+        assertThat(statistics.getPedalCount(Pedal.SUSTAIN), is(1));
+        assertThat(statistics.getPedalCount(Pedal.SOFT), is(0));
+        assertThat(statistics.getDensitySeconds(), is(3));
+        assertThat(statistics.getNoteDensity(0), is(3));
+        assertThat(statistics.getNoteDensity(1), is(2));
+        assertThat(statistics.getNoteDensity(2), is(2));
+        assertThat(statistics.getNoteDensity(3), is(0));
+        assertThat(statistics.getNoteDensity(-1), is(0));
+    }
+
+    private void add(int command, int data1, int data2, long time) {
+        EventFactory.create(command, data1, data2, time).ifPresent(builder::accept);
+    }
+}
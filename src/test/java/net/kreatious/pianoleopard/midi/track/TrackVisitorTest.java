@@ -114,7 +114,20 @@ public class TrackVisitorTest {
 
         visitor.accept(track, cache);
 
-        order.verify(visitor).visitEventPair(ofIds(2, 3));
+        order.verify(visitor).visitEventPair(ofIds(0, 3));
+    }
+
+    @Test
+    public void testOverlappingNotesSameKey() throws InvalidMidiDataException {
+        noteOn().addId(0);
+        noteOn().addId(1);
+        noteOff().addId(2);
+        noteOff().addId(3);
+
+        visitor.accept(track, cache);
+
+        order.verify(visitor).visitEventPair(ofIds(0, 2));
+        order.verify(visitor).visitEventPair(ofIds(1, 3));
     }
 
     @Test